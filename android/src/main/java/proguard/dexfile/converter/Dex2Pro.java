@@ -16,9 +16,11 @@
  */
 package proguard.dexfile.converter;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -26,8 +28,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import proguard.analysis.Metrics;
@@ -74,7 +79,9 @@ import proguard.classfile.editor.ConstantPoolEditor;
 import proguard.classfile.editor.ExceptionsAttributeEditor;
 import proguard.classfile.editor.InnerClassesAttributeEditor;
 import proguard.classfile.util.ClassUtil;
+import proguard.classfile.visitor.ClassPoolFiller;
 import proguard.classfile.visitor.ClassVisitor;
+import proguard.classfile.visitor.ParallelAllClassVisitor.ClassVisitorFactory;
 import proguard.dexfile.ir.IrMethod;
 import proguard.dexfile.ir.ts.AggTransformer;
 import proguard.dexfile.ir.ts.CleanLabel;
@@ -88,7 +95,9 @@ import proguard.dexfile.ir.ts.TypeTransformer;
 import proguard.dexfile.ir.ts.UnSSATransformer;
 import proguard.dexfile.ir.ts.VoidInvokeTransformer;
 import proguard.dexfile.ir.ts.ZeroTransformer;
+import proguard.dexfile.reader.BaseDexFileReader;
 import proguard.dexfile.reader.DexConstants;
+import proguard.dexfile.reader.DexFileReader;
 import proguard.dexfile.reader.DexType;
 import proguard.dexfile.reader.Field;
 import proguard.dexfile.reader.MethodHandle;
@@ -99,6 +108,9 @@ import proguard.dexfile.reader.node.DexClassNode;
 import proguard.dexfile.reader.node.DexFieldNode;
 import proguard.dexfile.reader.node.DexFileNode;
 import proguard.dexfile.reader.node.DexMethodNode;
+import proguard.dexfile.reader.visitors.DexClassVisitor;
+import proguard.dexfile.reader.visitors.DexFieldVisitor;
+import proguard.dexfile.reader.visitors.DexMethodVisitor;
 
 // Derived from dex-translator/src/main/java/com/googlecode/d2j/dex/Dex2Asm.java
 // We're preserving the original code as much as possible, to allow comparing
@@ -171,10 +183,10 @@ public class Dex2Pro {
       this.name = name;
     }
 
-    void addInner(Clz clz) {
+    void addInner(Clz clz, boolean concurrent) {
       if (inners == null) {
         inners =
-            executor != null
+            concurrent
                 ? Collections.newSetFromMap(new ConcurrentHashMap<>())
                 : new LinkedHashSet<>();
       }
@@ -502,7 +514,23 @@ public class Dex2Pro {
   }
 
   private Map<String, Clz> collectClzInfo(DexFileNode fileNode) {
-    Map<String, Clz> classes = new LinkedHashMap<>();
+    return collectClzInfo(fileNode, executor != null);
+  }
+
+  /**
+   * Collects the inner class information of the classes in the given file node. If the classes
+   * will be converted concurrently, the sets of inner classes are thread-safe.
+   */
+  private Map<String, Clz> collectClzInfo(DexFileNode fileNode, boolean concurrent) {
+    return collectClzInfo(fileNode, new LinkedHashMap<>(), concurrent);
+  }
+
+  /**
+   * Collects the inner class information of the classes in the given file node into the given
+   * map, which may already contain the information of other file nodes, and returns it.
+   */
+  private Map<String, Clz> collectClzInfo(
+      DexFileNode fileNode, Map<String, Clz> classes, boolean concurrent) {
     for (DexClassNode classNode : fileNode.clzs) {
       Clz clz = get(classes, classNode.className);
       clz.access = (clz.access & ~ACC_INTERFACE_ABSTRACT) | classNode.access;
@@ -522,7 +550,7 @@ public class Dex2Pro {
                   // if(!clz.name.equals(clz.enclosingClass.name)) {
                   //    enclosingClass.addInner(clz);
                   // }
-                  enclosingClass.addInner(clz);
+                  enclosingClass.addInner(clz, concurrent);
                 }
                 break;
               case DexConstants.ANNOTATION_ENCLOSING_METHOD_TYPE:
@@ -532,7 +560,7 @@ public class Dex2Pro {
                   Clz enclosingClass = get(classes, Objects.requireNonNull(m).getOwner());
                   clz.enclosingClass = enclosingClass;
                   clz.enclosingMethod = m;
-                  enclosingClass.addInner(clz);
+                  enclosingClass.addInner(clz, concurrent);
                 }
                 break;
               case DexConstants.ANNOTATION_INNER_CLASS_TYPE:
@@ -552,7 +580,7 @@ public class Dex2Pro {
                   for (Object v : ts) {
                     DexType type = (DexType) v;
                     Clz inner = get(classes, type.desc);
-                    clz.addInner(inner);
+                    clz.addInner(inner, concurrent);
                     inner.enclosingClass = clz;
                   }
                 }
@@ -595,10 +623,14 @@ public class Dex2Pro {
     // process them directly on the main thread, to save time on spin-up overhead etc.
     Map<String, Clz> classInfo = Collections.unmodifiableMap(collectClzInfo(fileNode));
     if (executor != null) {
-      // Wrap the visitor in a synchronized helper class
-      ClassVisitor syncVisitor = new SynchronizedClassVisitor(classVisitor);
+      // Wrap the visitor in a synchronized helper class, unless it is
+      // thread-safe already.
+      ClassVisitor syncVisitor =
+          classVisitor instanceof ClassPoolFiller && ((ClassPoolFiller) classVisitor).isThreadSafe()
+              ? classVisitor
+              : new SynchronizedClassVisitor(classVisitor);
       fileNode.clzs.stream()
-          .map(classNode -> new WorkItem(classInfo, fileNode, classNode, syncVisitor))
+          .map(classNode -> new WorkItem(classInfo, fileNode.dexVersion, classNode, syncVisitor))
           .forEach(executor::execute);
     } else {
       fileNode.clzs.forEach(
@@ -606,6 +638,177 @@ public class Dex2Pro {
     }
   }
 
+  /**
+   * Converts the classes of the given dex reader and applies the given class visitor to them.
+   * Unlike {@link #convertDex(DexFileNode, ClassVisitor)}, this method doesn't keep all decoded
+   * classes in memory: it first only collects the class annotations, for the inner class
+   * information, and then decodes the fields, methods, and code of each class right before it is
+   * converted.
+   *
+   * @param reader the dex reader, e.g. for a memory-mapped dex file.
+   * @param readerConfig the configuration flags for the reader, like {@link
+   *     DexFileReader#SKIP_CODE}.
+   * @param classVisitor the class visitor to which the converted classes will be passed.
+   */
+  public void convertDex(BaseDexFileReader reader, int readerConfig, ClassVisitor classVisitor) {
+    // Collect the inner class information from the class annotations.
+    DexFileNode headerNode = readClassHeaders(reader, readerConfig);
+    Map<String, Clz> classInfo = Collections.unmodifiableMap(collectClzInfo(headerNode));
+
+    // Take the version as visited, like for a fully decoded file node.
+    int dexVersion = headerNode.dexVersion;
+
+    ClassVisitor convertedClassVisitor =
+        executor == null
+                || classVisitor instanceof ClassPoolFiller
+                    && ((ClassPoolFiller) classVisitor).isThreadSafe()
+            ? classVisitor
+            : new SynchronizedClassVisitor(classVisitor);
+
+    // Decode and convert the classes one by one. The reader itself
+    // isn't thread-safe, so the classes are decoded on this thread.
+    int classCount = reader.getClassNames().size();
+    for (int classIndex = 0; classIndex < classCount; classIndex++) {
+      DexFileNode classFileNode = new DexFileNode();
+      reader.accept(classFileNode, classIndex, readerConfig);
+
+      for (DexClassNode classNode : classFileNode.clzs) {
+        if (executor != null) {
+          executor.execute(new WorkItem(classInfo, dexVersion, classNode, convertedClassVisitor));
+        } else {
+          convertClass(dexVersion, classNode, convertedClassVisitor, classInfo);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts the classes of the given dex reader on the given number of threads, and applies class
+   * visitors from the given factory to them, one visitor per thread. Like {@link
+   * #convertDex(BaseDexFileReader, int, ClassVisitor)}, it decodes each class right before it is
+   * converted. At most the given number of classes wait for a thread, so only a bounded number of
+   * classes is in memory at any time. The method returns when all classes have been converted, so
+   * it doesn't need a {@link #shutdown(int)}.
+   *
+   * @param reader the dex reader, e.g. for a memory-mapped dex file.
+   * @param readerConfig the configuration flags for the reader, like {@link
+   *     DexFileReader#SKIP_CODE}.
+   * @param classVisitorFactory the factory for the class visitors to which the converted classes
+   *     will be passed. The visitors of different threads may be called concurrently, so they
+   *     should e.g. fill a thread-safe class pool.
+   * @param threadCount the number of conversion threads.
+   * @param maxPendingClasses the maximum number of classes that wait for a thread.
+   */
+  public void convertDex(
+      BaseDexFileReader reader,
+      int readerConfig,
+      ClassVisitorFactory classVisitorFactory,
+      int threadCount,
+      int maxPendingClasses) {
+    convertDexFiles(
+        Collections.singletonList(reader),
+        readerConfig,
+        classVisitorFactory,
+        threadCount,
+        maxPendingClasses);
+  }
+
+  /**
+   * Converts the classes of the given dex readers, e.g. for the dex files of a multidex apk, like
+   * {@link #convertDex(BaseDexFileReader, int, ClassVisitorFactory, int, int)}. The threads first
+   * read the class headers of all dex files concurrently, for an inner class index that is shared
+   * by all dex files, so inner classes and their outer classes may be in different dex files. They
+   * then decode and convert the classes of all dex files in turn, so they don't wait for each other
+   * at the end of each dex file.
+   *
+   * @param readers the dex readers, e.g. for memory-mapped dex files.
+   * @param readerConfig the configuration flags for the readers, like {@link
+   *     DexFileReader#SKIP_CODE}.
+   * @param classVisitorFactory the factory for the class visitors to which the converted classes
+   *     will be passed. The visitors of different threads may be called concurrently, so they
+   *     should e.g. fill a thread-safe class pool.
+   * @param threadCount the number of conversion threads.
+   * @param maxPendingClasses the maximum number of classes that wait for a thread.
+   */
+  public void convertDexFiles(
+      List<BaseDexFileReader> readers,
+      int readerConfig,
+      ClassVisitorFactory classVisitorFactory,
+      int threadCount,
+      int maxPendingClasses) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount needs to be at least 1.");
+    }
+
+    ExecutorService conversionExecutor =
+        Executors.newFixedThreadPool(threadCount, new ConversionThreadFactory());
+
+    try {
+      // Read the class headers of all dex files concurrently.
+      List<Future<DexFileNode>> headerNodes = new ArrayList<>(readers.size());
+      for (BaseDexFileReader reader : readers) {
+        headerNodes.add(conversionExecutor.submit(() -> readClassHeaders(reader, readerConfig)));
+      }
+
+      // Collect the inner class information of all dex files in a
+      // shared index, in the order of the dex files.
+      Map<String, Clz> sharedClassInfo = new LinkedHashMap<>();
+      int[] dexVersions = new int[readers.size()];
+      int[] classCounts = new int[readers.size()];
+      int maxClassCount = 0;
+      for (int dexIndex = 0; dexIndex < readers.size(); dexIndex++) {
+        DexFileNode headerNode = waitFor(headerNodes.get(dexIndex));
+        collectClzInfo(headerNode, sharedClassInfo, true);
+        dexVersions[dexIndex] = headerNode.dexVersion;
+        classCounts[dexIndex] = readers.get(dexIndex).getClassNames().size();
+        maxClassCount = Math.max(maxClassCount, classCounts[dexIndex]);
+      }
+      headerNodes.clear();
+
+      Map<String, Clz> classInfo = Collections.unmodifiableMap(sharedClassInfo);
+      ThreadLocal<ClassVisitor> classVisitors =
+          ThreadLocal.withInitial(classVisitorFactory::createClassVisitor);
+      Deque<Future<?>> pendingConversions = new ArrayDeque<>();
+
+      // Take the classes of the dex files in turn, so the threads
+      // rarely wait for the same reader.
+      for (int classIndex = 0; classIndex < maxClassCount; classIndex++) {
+        for (int dexIndex = 0; dexIndex < readers.size(); dexIndex++) {
+          if (classIndex < classCounts[dexIndex]) {
+            BaseDexFileReader reader = readers.get(dexIndex);
+            int dexVersion = dexVersions[dexIndex];
+            int readerClassIndex = classIndex;
+            pendingConversions.addLast(
+                conversionExecutor.submit(
+                    () ->
+                        convertClass(
+                            reader,
+                            readerClassIndex,
+                            readerConfig,
+                            dexVersion,
+                            classVisitors.get(),
+                            classInfo)));
+
+            // Collect the finished conversions, and wait for the oldest
+            // ones while too many classes are pending.
+            while (!pendingConversions.isEmpty()
+                && (pendingConversions.peekFirst().isDone()
+                    || pendingConversions.size() > threadCount + maxPendingClasses)) {
+              waitFor(pendingConversions.removeFirst());
+            }
+          }
+        }
+      }
+
+      while (!pendingConversions.isEmpty()) {
+        waitFor(pendingConversions.removeFirst());
+      }
+    } finally {
+      // Cancel any remaining conversions, in case of an exception.
+      conversionExecutor.shutdownNow();
+    }
+  }
+
   /** Shuts down and waits for any remaining conversion workers, up to timeoutSeconds. */
   public void shutdown(int timeoutSeconds) {
     if (executor == null) {
@@ -620,6 +823,63 @@ public class Dex2Pro {
     }
   }
 
+  /**
+   * Returns a file node with only the headers and annotations of the classes of the given reader.
+   */
+  private DexFileNode readClassHeaders(BaseDexFileReader reader, int readerConfig) {
+    DexFileNode headerNode = new ClassHeaderNode();
+    reader.accept(
+        headerNode,
+        readerConfig
+            | DexFileReader.SKIP_CODE
+            | DexFileReader.SKIP_DEBUG
+            | DexFileReader.SKIP_FIELD_CONSTANT);
+
+    return headerNode;
+  }
+
+  /** Waits for the given task and returns its result, rethrowing any exception it has thrown. */
+  private static <T> T waitFor(Future<T> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while converting dex classes", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Decodes the class at the given index of the given dex reader, converts it, and applies the
+   * given class visitor to it.
+   */
+  private void convertClass(
+      BaseDexFileReader reader,
+      int classIndex,
+      int readerConfig,
+      int dexVersion,
+      ClassVisitor classVisitor,
+      Map<String, Clz> classes) {
+    // The reader itself isn't thread-safe, so the classes of a dex
+    // file are decoded one at a time.
+    DexFileNode classFileNode = new DexFileNode();
+    synchronized (reader) {
+      reader.accept(classFileNode, classIndex, readerConfig);
+    }
+
+    for (DexClassNode classNode : classFileNode.clzs) {
+      convertClass(dexVersion, classNode, classVisitor, classes);
+    }
+  }
+
   /** Converts the given Dex class and applies the given class visitor to it. */
   private void convertClass(
       DexFileNode dfn,
@@ -1276,24 +1536,62 @@ public class Dex2Pro {
   /** Basic helper class to hold information on a single class for multithreaded processing. */
   private class WorkItem implements Runnable {
     private final Map<String, Clz> classInfo;
-    private final DexFileNode fileNode;
+    private final int dexVersion;
     private final DexClassNode classNode;
     private final ClassVisitor classVisitor;
 
     public WorkItem(
         Map<String, Clz> classInfo,
-        DexFileNode fileNode,
+        int dexVersion,
         DexClassNode classNode,
         ClassVisitor classVisitor) {
       this.classInfo = classInfo;
-      this.fileNode = fileNode;
+      this.dexVersion = dexVersion;
       this.classNode = classNode;
       this.classVisitor = classVisitor;
     }
 
     @Override
     public void run() {
-      convertClass(fileNode, classNode, classVisitor, classInfo);
+      convertClass(dexVersion, classNode, classVisitor, classInfo);
+    }
+  }
+
+  /**
+   * Dex file node that only keeps the headers and annotations of its classes, without their fields
+   * and methods.
+   */
+  private static class ClassHeaderNode extends DexFileNode {
+    @Override
+    public DexClassVisitor visit(
+        int access_flags, String className, String superClass, String[] interfaceNames) {
+      DexClassNode classNode =
+          new DexClassNode(access_flags, className, superClass, interfaceNames) {
+            @Override
+            public DexFieldVisitor visitField(int accessFlags, Field field, Object value) {
+              return null;
+            }
+
+            @Override
+            public DexMethodVisitor visitMethod(
+                int accessFlags, proguard.dexfile.reader.Method method) {
+              return null;
+            }
+          };
+      clzs.add(classNode);
+      return classNode;
+    }
+  }
+
+  /** Creates daemon threads for converting classes, so they don't keep the JVM alive. */
+  private static class ConversionThreadFactory implements ThreadFactory {
+    private int threadCounter = 0;
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "Dex2Pro Converter " + ++threadCounter);
+      thread.setDaemon(true);
+      return thread;
     }
   }
 
@@ -2,9 +2,12 @@ package proguard.dexfile.reader;
 
 import static proguard.dexfile.reader.DexConstants.DEX_041;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 import java.util.List;
 import proguard.dexfile.reader.util.InputStreams;
@@ -15,6 +18,19 @@ public class DexReaderFactory {
     return createSingleReader(InputStreams.toByteArray(in));
   }
 
+  /**
+   * Creates a reader for the given dex file, which it maps into memory instead of reading it, so
+   * the data are only paged in as the classes are decoded.
+   */
+  public static BaseDexFileReader createSingleReader(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+
+      // The mapped buffer remains valid after the file has been closed.
+      return createSingleReader(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size()));
+    }
+  }
+
   public static BaseDexFileReader createSingleReader(byte[] data) {
     return createSingleReader(ByteBuffer.wrap(data));
   }
@@ -25,11 +25,14 @@ import static proguard.dexfile.reader.DexReaderFactory.createSingleReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
 import proguard.classfile.constant.PrimitiveArrayConstant;
 import proguard.classfile.util.PrimitiveArrayConstantReplacer;
 import proguard.classfile.visitor.ClassPrinter;
 import proguard.classfile.visitor.ClassVisitor;
 import proguard.dexfile.converter.Dex2Pro;
+import proguard.dexfile.reader.BaseDexFileReader;
 import proguard.dexfile.reader.DexException;
 import proguard.dexfile.reader.node.DexFileNode;
 
@@ -37,9 +40,20 @@ import proguard.dexfile.reader.node.DexFileNode;
  * This data entry reader reads dex files, converts their classes, and passes them to a given class
  * visitor.
  *
+ * <p>If {@link #ENABLE_LAZY_READING} is set, dex files and uncompressed dex entries in zip files
+ * are memory-mapped instead of read into memory, and each class is only decoded right before it is
+ * converted.
+ *
  * @author Eric Lafortune
  */
 public class DexClassReader implements DataEntryReader {
+  /**
+   * Specifies whether to read dex files lazily. This reduces the memory footprint of large
+   * (multi-)dex files, since neither their data nor all their decoded classes are kept on the heap.
+   */
+  public static boolean ENABLE_LAZY_READING =
+      System.getProperty("proguard.io.lazydexreading") != null;
+
   private final boolean readCode;
   private final ClassVisitor classVisitor;
   private final boolean usePrimitiveArrayConstants;
@@ -80,11 +94,25 @@ public class DexClassReader implements DataEntryReader {
 
   @Override
   public void read(DataEntry dataEntry) throws IOException {
+    int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
+
+    if (ENABLE_LAZY_READING) {
+      try {
+        // Decode and convert the classes one by one.
+        new Dex2Pro()
+            .usePrimitiveArrayConstants(usePrimitiveArrayConstants)
+            .convertDex(createMappedReader(dataEntry), readerConfig, classVisitor);
+      } catch (DexException e) {
+        throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
+      }
+
+      return;
+    }
+
     // Get the input.
     try (InputStream inputStream = dataEntry.getInputStream()) {
       // Fill out a Dex2jar file node.
       DexFileNode fileNode = new DexFileNode();
-      int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
       createSingleReader(inputStream).accept(fileNode, readerConfig);
 
       // Convert it to classes, with the help of Dex2Pro.
@@ -98,6 +126,30 @@ public class DexClassReader implements DataEntryReader {
 
   // Small utility methods.
 
+  /**
+   * Returns a dex reader for the given data entry, memory-mapping its data if it is a file or an
+   * uncompressed entry of a zip file, or reading them from its input stream otherwise.
+   */
+  static BaseDexFileReader createMappedReader(DataEntry dataEntry) throws IOException {
+    if (dataEntry instanceof FileDataEntry) {
+      return createSingleReader(((FileDataEntry) dataEntry).getFile());
+    }
+
+    if (dataEntry instanceof ZipFileDataEntry) {
+      ZipFileDataEntry zipFileDataEntry = (ZipFileDataEntry) dataEntry;
+      if (zipFileDataEntry.getZipEntry().getMethod() == ZipEntry.STORED) {
+        ByteBuffer buffer = zipFileDataEntry.mapRawData();
+        if (buffer != null) {
+          return createSingleReader(buffer);
+        }
+      }
+    }
+
+    try (InputStream inputStream = dataEntry.getInputStream()) {
+      return createSingleReader(inputStream);
+    }
+  }
+
   /**
    * This main method illustrates and tests the class. It reads an input dex file (or jar file with
    * a dex file) and prints out its classes.
@@ -22,12 +22,17 @@ import static proguard.dexfile.reader.DexFileReader.SKIP_CODE;
 import static proguard.dexfile.reader.DexFileReader.SKIP_DEBUG;
 import static proguard.dexfile.reader.DexReaderFactory.createSingleReader;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import proguard.classfile.constant.PrimitiveArrayConstant;
 import proguard.classfile.util.PrimitiveArrayConstantReplacer;
 import proguard.classfile.visitor.ClassVisitor;
+import proguard.classfile.visitor.ParallelAllClassVisitor.ClassVisitorFactory;
 import proguard.dexfile.converter.Dex2Pro;
+import proguard.dexfile.reader.BaseDexFileReader;
 import proguard.dexfile.reader.DexException;
 import proguard.dexfile.reader.node.DexFileNode;
 
@@ -35,10 +40,36 @@ import proguard.dexfile.reader.node.DexFileNode;
  * This data entry reader reads dex files, converts their classes, and passes them to a given class
  * visitor. It is essential to call shutdown() after pumping to this {@link DataEntryReader}, as
  * there might be active workers left that need an orderly shutdown.
+ *
+ * <p>Like the {@link DexClassReader}, it reads dex files lazily if {@link
+ * DexClassReader#ENABLE_LAZY_READING} is set.
+ *
+ * <p>Alternatively, with a {@link ClassVisitorFactory}, it streams the classes of the dex files to
+ * its own conversion threads, with a class visitor per thread, through a bounded queue. It then
+ * always reads the dex files lazily. It collects the dex files that it reads, e.g. all dex files of
+ * a multidex apk, and converts them together when it is flushed, or shut down, reading their class
+ * headers concurrently for an inner class index that is shared by all dex files. It only converts
+ * them in {@link #read(DataEntry)} once a maximum number of dex files is pending, which bounds the
+ * memory of the dex files that couldn't be mapped and had to be inflated. A {@link JarReader}
+ * flushes it after the last entry of each archive, also through a {@link
+ * FilteredDataEntryReader}. Other callers must call {@link #flush()} or {@link #shutdown(int)}
+ * after the last dex file, or the classes of the pending dex files are never passed to the class
+ * visitors.
  */
-public class ParallelDexClassReader implements DataEntryReader {
+public class ParallelDexClassReader implements DataEntryReader, Flushable {
+  /** The default maximum number of decoded classes that wait for a conversion thread. */
+  public static final int DEFAULT_MAX_PENDING_CLASSES = 256;
+
+  /** The default maximum number of dex files that wait to be converted together. */
+  public static final int DEFAULT_MAX_PENDING_DEX_FILES = 8;
+
   private final boolean readCode;
   private final ClassVisitor classVisitor;
+  private final ClassVisitorFactory classVisitorFactory;
+  private final int threadCount;
+  private final int maxPendingClasses;
+  private final int maxPendingDexFiles;
+  private final List<BaseDexFileReader> pendingDexFiles = new ArrayList<>();
   public final Dex2Pro dex2pro;
 
   /**
@@ -60,19 +91,123 @@ public class ParallelDexClassReader implements DataEntryReader {
       int maximumThreads) {
     this.readCode = readCode;
     this.classVisitor = classVisitor;
+    this.classVisitorFactory = null;
+    this.threadCount = maximumThreads;
+    this.maxPendingClasses = 0;
+    this.maxPendingDexFiles = 0;
     this.dex2pro = new Dex2Pro(maximumThreads);
     dex2pro.usePrimitiveArrayConstants(usePrimitiveArrayConstants);
   }
 
+  /**
+   * Creates a new ParallelDexClassReader that streams the classes of the dex files to the given
+   * number of conversion threads when it is flushed, keeping at most {@link
+   * #DEFAULT_MAX_PENDING_DEX_FILES} dex files pending.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param classVisitorFactory the factory for the class visitors to which converted classes will
+   *     be passed, one for each conversion thread. The visitors may be called concurrently, so they
+   *     should e.g. fill a thread-safe class pool.
+   * @param threadCount the number of conversion threads.
+   * @param maxPendingClasses the maximum number of decoded classes that wait for a conversion
+   *     thread, e.g. {@link #DEFAULT_MAX_PENDING_CLASSES}.
+   */
+  public ParallelDexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      ClassVisitorFactory classVisitorFactory,
+      int threadCount,
+      int maxPendingClasses) {
+    this(
+        readCode,
+        usePrimitiveArrayConstants,
+        classVisitorFactory,
+        threadCount,
+        maxPendingClasses,
+        DEFAULT_MAX_PENDING_DEX_FILES);
+  }
+
+  /**
+   * Creates a new ParallelDexClassReader that streams the classes of the dex files to the given
+   * number of conversion threads when it is flushed, or when the given number of dex files is
+   * pending.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param classVisitorFactory the factory for the class visitors to which converted classes will
+   *     be passed, one for each conversion thread. The visitors may be called concurrently, so they
+   *     should e.g. fill a thread-safe class pool.
+   * @param threadCount the number of conversion threads.
+   * @param maxPendingClasses the maximum number of decoded classes that wait for a conversion
+   *     thread, e.g. {@link #DEFAULT_MAX_PENDING_CLASSES}.
+   * @param maxPendingDexFiles the maximum number of dex files that wait to be converted together,
+   *     e.g. {@link #DEFAULT_MAX_PENDING_DEX_FILES}. With 1, each dex file is converted before
+   *     {@link #read(DataEntry)} returns.
+   */
+  public ParallelDexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      ClassVisitorFactory classVisitorFactory,
+      int threadCount,
+      int maxPendingClasses,
+      int maxPendingDexFiles) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount needs to be at least 1.");
+    }
+    if (maxPendingDexFiles < 1) {
+      throw new IllegalArgumentException("maxPendingDexFiles needs to be at least 1.");
+    }
+
+    this.readCode = readCode;
+    this.classVisitor = null;
+    this.classVisitorFactory = classVisitorFactory;
+    this.threadCount = threadCount;
+    this.maxPendingClasses = maxPendingClasses;
+    this.maxPendingDexFiles = maxPendingDexFiles;
+    this.dex2pro = new Dex2Pro();
+    dex2pro.usePrimitiveArrayConstants(usePrimitiveArrayConstants);
+  }
+
   // Implementation for classVisitor.
 
   @Override
   public void read(DataEntry dataEntry) throws IOException {
+    int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
+
+    if (classVisitorFactory != null) {
+      try {
+        // Collect the dex file, to convert it together with the others,
+        // unless too many dex files are pending already.
+        pendingDexFiles.add(DexClassReader.createMappedReader(dataEntry));
+        if (pendingDexFiles.size() >= maxPendingDexFiles) {
+          convertPendingDexFiles();
+        }
+      } catch (DexException e) {
+        throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
+      }
+
+      return;
+    }
+
+    if (DexClassReader.ENABLE_LAZY_READING) {
+      try {
+        // Decode the classes one by one, and convert them on the workers.
+        dex2pro.convertDex(
+            DexClassReader.createMappedReader(dataEntry), readerConfig, classVisitor);
+      } catch (DexException e) {
+        throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
+      }
+
+      return;
+    }
+
     // Get the input.
     try (InputStream inputStream = dataEntry.getInputStream()) {
       // Fill out a Dex2jar file node.
       DexFileNode fileNode = new DexFileNode();
-      int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
       createSingleReader(inputStream).accept(fileNode, readerConfig);
 
       // Convert it to classes, with the help of Dex2Pro.
@@ -82,8 +217,48 @@ public class ParallelDexClassReader implements DataEntryReader {
     }
   }
 
-  /** Shuts down and waits for up to timeoutSeconds for any outstanding workers to finish. */
+  // Implementation for Flushable.
+
+  /**
+   * Converts the dex files that have been read since the last flush, if the reader was created with
+   * a {@link ClassVisitorFactory}.
+   */
+  @Override
+  public void flush() throws IOException {
+    try {
+      convertPendingDexFiles();
+    } catch (DexException e) {
+      throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Shuts down and waits for up to timeoutSeconds for any outstanding workers to finish. Streaming
+   * readers, created with a {@link ClassVisitorFactory}, convert any dex files that they haven't
+   * converted yet instead.
+   */
   public void shutdown(int timeoutSeconds) {
-    dex2pro.shutdown(timeoutSeconds);
+    if (classVisitorFactory == null) {
+      dex2pro.shutdown(timeoutSeconds);
+    } else {
+      convertPendingDexFiles();
+    }
+  }
+
+  // Small utility methods.
+
+  /** Converts the collected dex files on the conversion threads. */
+  private void convertPendingDexFiles() {
+    if (!pendingDexFiles.isEmpty()) {
+      List<BaseDexFileReader> dexFiles = new ArrayList<>(pendingDexFiles);
+      pendingDexFiles.clear();
+
+      dex2pro.convertDexFiles(
+          dexFiles,
+          readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG),
+          classVisitorFactory,
+          threadCount,
+          maxPendingClasses);
+    }
   }
 }
@@ -0,0 +1,144 @@
+package proguard.dexfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.engine.spec.tempfile
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.android.testutils.getDexFromJar
+import proguard.classfile.ClassPool
+import proguard.classfile.ConcurrentClassPool
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassPrinter
+import proguard.io.DataEntryReader
+import proguard.io.DexClassReader
+import proguard.io.FileDataEntry
+import proguard.io.JarReader
+import proguard.io.NameFilteredDataEntryReader
+import proguard.io.ParallelDexClassReader
+import java.io.File
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.util.Collections
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class LazyDexReadingTest : FreeSpec({
+    val dexBytes = getDexFromJar("v41.jar").use { it.readBytes() }
+
+    val dexFile = tempfile(suffix = ".dex")
+    dexFile.writeBytes(dexBytes)
+
+    // Store the dex file uncompressed, so it can be memory-mapped from the apk.
+    val apkFile = tempfile(suffix = ".apk")
+    ZipOutputStream(apkFile.outputStream()).use { zip ->
+        val crc = CRC32()
+        crc.update(dexBytes)
+        val entry = ZipEntry("classes.dex")
+        entry.method = ZipEntry.STORED
+        entry.size = dexBytes.size.toLong()
+        entry.crc = crc.value
+        zip.putNextEntry(entry)
+        zip.write(dexBytes)
+        zip.closeEntry()
+    }
+
+    // Add the same dex file a few times, compressed, like a multidex apk.
+    val multidexApkFile = tempfile(suffix = ".apk")
+    ZipOutputStream(multidexApkFile.outputStream()).use { zip ->
+        for (index in 1..3) {
+            zip.putNextEntry(ZipEntry(if (index == 1) "classes.dex" else "classes$index.dex"))
+            zip.write(dexBytes)
+            zip.closeEntry()
+        }
+    }
+
+    fun printClasses(classPool: ClassPool): String {
+        val stringWriter = StringWriter()
+        classPool.classesAccept(ClassPrinter(PrintWriter(stringWriter)))
+        return stringWriter.toString()
+    }
+
+    fun readClasses(file: File, lazy: Boolean): String {
+        val lazyReading = DexClassReader.ENABLE_LAZY_READING
+        DexClassReader.ENABLE_LAZY_READING = lazy
+        try {
+            val classPool = ClassPool()
+            var reader: DataEntryReader = DexClassReader(true, ClassPoolFiller(classPool))
+            if (file.name.endsWith(".apk")) {
+                reader = JarReader(reader)
+            }
+            reader.read(FileDataEntry(file.parentFile, file))
+
+            return printClasses(classPool)
+        } finally {
+            DexClassReader.ENABLE_LAZY_READING = lazyReading
+        }
+    }
+
+    "Given a dex file" - {
+        val expectedClasses = readClasses(dexFile, false)
+
+        "When it is read lazily from a memory-mapped file" - {
+            "Then the classes are the same as when it is read eagerly" {
+                readClasses(dexFile, true) shouldBe expectedClasses
+            }
+        }
+
+        "When it is read lazily from an uncompressed apk entry" - {
+            "Then the classes are the same as when it is read eagerly" {
+                readClasses(apkFile, true) shouldBe expectedClasses
+            }
+        }
+
+        "When it is streamed to several conversion threads" - {
+            val classPool = ConcurrentClassPool()
+            val classVisitors = Collections.synchronizedList(mutableListOf<ClassPoolFiller>())
+            val reader = ParallelDexClassReader(
+                true,
+                false,
+                { ClassPoolFiller(classPool).also { classVisitors.add(it) } },
+                2,
+                1,
+            )
+            reader.read(FileDataEntry(dexFile.parentFile, dexFile))
+            val classCountBeforeFlush = classPool.size()
+            reader.flush()
+
+            "Then the classes are converted when the reader is flushed" {
+                classCountBeforeFlush shouldBe 0
+                printClasses(classPool) shouldBe expectedClasses
+            }
+
+            "Then at most one class visitor is created per conversion thread" {
+                classVisitors.size shouldBeLessThanOrEqual 2
+            }
+        }
+
+        "When the dex files of a multidex apk are streamed to several conversion threads" - {
+            val classPool = ConcurrentClassPool()
+            val reader = ParallelDexClassReader(true, false, { ClassPoolFiller(classPool) }, 2, 1)
+            JarReader(NameFilteredDataEntryReader("classes*.dex", reader))
+                .read(FileDataEntry(multidexApkFile.parentFile, multidexApkFile))
+
+            "Then the classes of all dex files are converted when the apk has been read" {
+                printClasses(classPool) shouldBe expectedClasses
+            }
+        }
+
+        "When more dex files are streamed than may be pending" - {
+            val classPool = ConcurrentClassPool()
+            val reader = ParallelDexClassReader(true, false, { ClassPoolFiller(classPool) }, 2, 1, 2)
+            reader.read(FileDataEntry(dexFile.parentFile, dexFile))
+            val classCountAfterFirstRead = classPool.size()
+            reader.read(FileDataEntry(dexFile.parentFile, dexFile))
+            val classCountAfterSecondRead = classPool.size()
+
+            "Then the pending dex files are converted before the reader returns" {
+                classCountAfterFirstRead shouldBe 0
+                printClasses(classPool) shouldBe expectedClasses
+                classCountAfterSecondRead shouldBe classPool.size()
+            }
+        }
+    }
+})
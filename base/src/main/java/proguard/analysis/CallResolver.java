@@ -1103,6 +1103,23 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     }
 
     public CallResolver build() {
+      return build(callGraph);
+    }
+
+    /**
+     * Returns a {@link ParallelCallResolver} which resolves the calls of a class pool with the given
+     * number of threads, each with its own {@link CallResolver} with the settings of this builder.
+     * The calls are added to the call graph of this builder in the same order as by a single {@link
+     * CallResolver}. The {@link CallVisitor}s are called from the worker threads.
+     *
+     * @param threadCount the number of threads
+     */
+    public ParallelCallResolver buildParallel(int threadCount) {
+      return new ParallelCallResolver(this, callGraph, threadCount);
+    }
+
+    /** Returns a {@link CallResolver} with the settings of this builder and the given call graph. */
+    CallResolver build(CallGraph callGraph) {
       return new CallResolver(
           programClassPool,
           libraryClassPool,
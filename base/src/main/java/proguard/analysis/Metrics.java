@@ -1,10 +1,25 @@
 package proguard.analysis;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
-/** Utility to collect statistical information. */
+/**
+ * Utility to collect statistical information.
+ *
+ * <p>The counters and timers are backed by {@link LongAdder}s, which spread concurrent updates
+ * over separate cells, so threads updating the same metric do not contend on a lock. Reading a
+ * metric sums up the cells, hence it is only exact when no updates are in progress.
+ */
 public class Metrics {
 
   /** Constants which are used as metric types. */
@@ -25,20 +40,306 @@ public class Metrics {
     DEX2PRO_UNPARSEABLE_METHOD_SKIPPED
   }
 
-  public static final Map<MetricType, Integer> counts =
-      Collections.synchronizedMap(new EnumMap<>(MetricType.class));
+  /** Constants which are used as timer types. */
+  public enum TimerType {
+    /** The partial evaluation of a method. */
+    PARTIAL_EVALUATION,
+    /** The run of a CPA from its initial states. */
+    CPA_RUN,
+    /** The parsing of a class file. */
+    CLASS_READING
+  }
+
+  private static final LongAdder[] counters = new LongAdder[MetricType.values().length];
+  private static final Timer[] timers = new Timer[TimerType.values().length];
+
+  static {
+    for (int index = 0; index < counters.length; index++) {
+      counters[index] = new LongAdder();
+    }
+    for (int index = 0; index < timers.length; index++) {
+      timers[index] = new Timer();
+    }
+  }
+
+  /**
+   * A live view of the counters which have been increased, e.g., since the last {@link #flush()}.
+   *
+   * @deprecated Use {@link #getCount(MetricType)} instead.
+   */
+  @Deprecated public static final Map<MetricType, Integer> counts = new CountMap();
 
+  /** Increases the counter of the given metric type by one. */
   public static void increaseCount(MetricType type) {
-    counts.merge(type, 1, Integer::sum);
+    counters[type.ordinal()].increment();
+  }
+
+  /** Increases the counter of the given metric type by the given amount. */
+  public static void increaseCount(MetricType type, long amount) {
+    counters[type.ordinal()].add(amount);
+  }
+
+  /** Returns the current value of the counter of the given metric type. */
+  public static long getCount(MetricType type) {
+    return counters[type.ordinal()].sum();
+  }
+
+  /** Returns the timer of the given timer type. */
+  public static Timer getTimer(TimerType type) {
+    return timers[type.ordinal()];
+  }
+
+  /**
+   * Returns the current values of all metrics, in a fixed order. The counters are keyed by their
+   * metric type, the timers have the keys of {@link Timer#export(String, Map)}. This can be polled
+   * periodically, e.g., to export the throughput to a monitoring system.
+   */
+  public static Map<String, Long> snapshot() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (MetricType type : MetricType.values()) {
+      result.put(type.name(), getCount(type));
+    }
+    for (TimerType type : TimerType.values()) {
+      getTimer(type).export(type.name(), result);
+    }
+    return result;
+  }
+
+  /** Resets all counters and timers. */
+  public static void reset() {
+    for (LongAdder counter : counters) {
+      counter.reset();
+    }
+    for (Timer timer : timers) {
+      timer.reset();
+    }
   }
 
   /** Get all collected data as a string and clear it afterwards. */
   public static String flush() {
     StringBuilder result = new StringBuilder("Metrics:\n");
 
-    counts.forEach(
-        (type, count) -> result.append(type.name()).append(": ").append(count).append("\n"));
-    counts.clear();
+    for (MetricType type : MetricType.values()) {
+      long count = counters[type.ordinal()].sumThenReset();
+      if (count != 0) {
+        result.append(type.name()).append(": ").append(count).append("\n");
+      }
+    }
+    for (TimerType type : TimerType.values()) {
+      Timer timer = getTimer(type);
+      if (timer.getCount() != 0) {
+        result.append(type.name()).append(": ").append(timer).append("\n");
+      }
+      timer.reset();
+    }
     return result.toString();
   }
+
+  /**
+   * A histogram of non-negative values. The values are counted in buckets of powers of two, so the
+   * percentiles are approximated within a factor of two.
+   */
+  public static class Histogram {
+
+    private static final int BUCKET_COUNT = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /** Creates an empty histogram. */
+    public Histogram() {
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        buckets[index] = new LongAdder();
+      }
+    }
+
+    /** Records the given value. Negative values are recorded as 0. */
+    public void record(long value) {
+      long recordedValue = Math.max(value, 0L);
+      buckets[Long.SIZE - Long.numberOfLeadingZeros(recordedValue)].increment();
+      count.increment();
+      sum.add(recordedValue);
+      max.accumulate(recordedValue);
+    }
+
+    /** Returns the number of recorded values. */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Returns the sum of the recorded values. */
+    public long getSum() {
+      return sum.sum();
+    }
+
+    /** Returns the largest recorded value, or 0 if there are none. */
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values, i.e., the upper bound
+     * of the bucket which contains it, or 0 if there are no values.
+     *
+     * @param percentile the percentile, between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0.0 || percentile > 100.0) {
+        throw new IllegalArgumentException(
+            "The percentile must be between 0 and 100, got " + percentile);
+      }
+      long[] bucketCounts = new long[BUCKET_COUNT];
+      long total = 0L;
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        bucketCounts[index] = buckets[index].sum();
+        total += bucketCounts[index];
+      }
+      long rank = (long) Math.ceil(total * percentile / 100.0);
+      long seen = 0L;
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        seen += bucketCounts[index];
+        if (bucketCounts[index] != 0 && seen >= rank) {
+          return Math.min((1L << index) - 1, getMax());
+        }
+      }
+      return 0L;
+    }
+
+    /**
+     * Adds the count, sum, maximum, and median and 99th percentile of the recorded values to the
+     * given map, with keys starting with the given prefix.
+     */
+    public void export(String prefix, Map<String, Long> result) {
+      result.put(prefix + ".count", getCount());
+      result.put(prefix + ".sum", getSum());
+      result.put(prefix + ".max", getMax());
+      result.put(prefix + ".p50", getPercentile(50.0));
+      result.put(prefix + ".p99", getPercentile(99.0));
+    }
+
+    /** Clears the recorded values. */
+    public void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+      count.reset();
+      sum.reset();
+      max.reset();
+    }
+
+    @Override
+    public String toString() {
+      return "count="
+          + getCount()
+          + ", sum="
+          + getSum()
+          + ", max="
+          + getMax()
+          + ", p50="
+          + getPercentile(50.0)
+          + ", p99="
+          + getPercentile(99.0);
+    }
+  }
+
+  /** A {@link Histogram} of durations in nanoseconds. */
+  public static class Timer extends Histogram {
+
+    /** Returns the current time to be passed to {@link #recordSince(long)}. */
+    public long start() {
+      return System.nanoTime();
+    }
+
+    /** Records the time elapsed since the given start time, as returned by {@link #start()}. */
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public String toString() {
+      return "count="
+          + getCount()
+          + ", total="
+          + TimeUnit.NANOSECONDS.toMillis(getSum())
+          + " ms, max="
+          + TimeUnit.NANOSECONDS.toMillis(getMax())
+          + " ms, p50="
+          + TimeUnit.NANOSECONDS.toMicros(getPercentile(50.0))
+          + " us, p99="
+          + TimeUnit.NANOSECONDS.toMicros(getPercentile(99.0))
+          + " us";
+    }
+  }
+
+  /** The map view of the non-zero counters. */
+  private static class CountMap extends AbstractMap<MetricType, Integer> {
+
+    @Override
+    public Integer get(Object key) {
+      if (!(key instanceof MetricType)) {
+        return null;
+      }
+      long count = getCount((MetricType) key);
+      return count == 0 ? null : (int) count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Integer put(MetricType key, Integer value) {
+      Integer previous = get(key);
+      counters[key.ordinal()].reset();
+      counters[key.ordinal()].add(value);
+      return previous;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+      Integer previous = get(key);
+      if (previous != null) {
+        counters[((MetricType) key).ordinal()].reset();
+      }
+      return previous;
+    }
+
+    @Override
+    public void clear() {
+      for (LongAdder counter : counters) {
+        counter.reset();
+      }
+    }
+
+    @Override
+    public Set<Entry<MetricType, Integer>> entrySet() {
+      return new AbstractSet<Entry<MetricType, Integer>>() {
+        @Override
+        public Iterator<Entry<MetricType, Integer>> iterator() {
+          List<Entry<MetricType, Integer>> entries = new ArrayList<>();
+          for (MetricType type : MetricType.values()) {
+            Integer count = get(type);
+            if (count != null) {
+              entries.add(new SimpleImmutableEntry<>(type, count));
+            }
+          }
+          return Collections.unmodifiableList(entries).iterator();
+        }
+
+        @Override
+        public int size() {
+          int size = 0;
+          for (MetricType type : MetricType.values()) {
+            if (getCount(type) != 0) {
+              size++;
+            }
+          }
+          return size;
+        }
+      };
+    }
+  }
 }
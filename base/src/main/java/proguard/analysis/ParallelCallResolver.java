@@ -0,0 +1,140 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import proguard.analysis.datastructure.callgraph.Call;
+import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.visitor.ClassCollector;
+import proguard.classfile.visitor.ClassPoolVisitor;
+
+/**
+ * This {@link ClassPoolVisitor} resolves the calls of all classes in a class pool like a {@link
+ * CallResolver}, but with several threads. Each thread has its own {@link CallResolver}, with its
+ * own partial evaluators, built with the settings of a {@link CallResolver.Builder}.
+ *
+ * <p>The calls of each class are collected separately and added to the {@link CallGraph} of the
+ * builder in the order of the classes in the class pool, so the call graph is the same as after a
+ * sequential run. The {@link CallVisitor}s of the builder and its {@code
+ * shouldAnalyzeNextCodeAttribute} supplier are however called from the worker threads, so they
+ * need to be thread-safe.
+ */
+public class ParallelCallResolver implements ClassPoolVisitor {
+
+  private final CallResolver.Builder builder;
+  private final CallGraph callGraph;
+  private final int threadCount;
+
+  /**
+   * Creates a new ParallelCallResolver.
+   *
+   * @param builder the builder of the {@link CallResolver}s of the threads
+   * @param callGraph the {@link CallGraph} to fill with the discovered {@link Call}s, or null
+   * @param threadCount the number of threads
+   */
+  ParallelCallResolver(CallResolver.Builder builder, CallGraph callGraph, int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("The thread count must be positive, got " + threadCount);
+    }
+    this.builder = builder;
+    this.callGraph = callGraph;
+    this.threadCount = threadCount;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    if (threadCount == 1) {
+      classPool.classesAccept(builder.build(callGraph));
+      return;
+    }
+
+    List<Clazz> classes = new ArrayList<>(classPool.size());
+    classPool.classesAccept(new ClassCollector(classes));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    try {
+      List<Future<List<Call>>> futures = new ArrayList<>(classes.size());
+      for (Clazz clazz : classes) {
+        futures.add(executor.submit(() -> workers.get().resolve(clazz)));
+      }
+
+      // Add the calls in the order of the classes, while the remaining classes are resolved.
+      for (Future<List<Call>> future : futures) {
+        List<Call> calls = future.get();
+        if (callGraph != null) {
+          calls.forEach(callGraph::addCall);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while resolving calls", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** The call resolver of a thread, with the call graph collecting its calls. */
+  private class Worker {
+
+    private final CallRecorder callRecorder = new CallRecorder();
+    private final CallResolver callResolver = builder.build(callRecorder);
+
+    private List<Call> resolve(Clazz clazz) {
+      clazz.accept(callResolver);
+      return callRecorder.takeCalls();
+    }
+  }
+
+  /** A {@link CallGraph} which only records the added calls in order. */
+  private static class CallRecorder extends CallGraph {
+
+    private List<Call> calls = new ArrayList<>();
+
+    private CallRecorder() {
+      super(Collections.emptyMap(), Collections.emptyMap(), false);
+    }
+
+    @Override
+    public void addCall(Call call) {
+      calls.add(call);
+    }
+
+    /** Returns the calls recorded since the previous invocation. */
+    private List<Call> takeCalls() {
+      List<Call> result = calls;
+      calls = new ArrayList<>();
+      return result;
+    }
+  }
+}
@@ -18,8 +18,6 @@
 
 package proguard.analysis.cpa.algorithms;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import proguard.analysis.cpa.defaults.PrecisionAdjustmentResult;
@@ -109,34 +107,7 @@ public class CpaAlgorithm implements Algorithm {
 
         for (AbstractState successorState :
             transferRelation.generateAbstractSuccessors(currentState, currentPrecision)) {
-          Set<AbstractState> gen =
-              new LinkedHashSet<>(); // abstract states to be added to the waitlist and reached set
-          Set<AbstractState> kill =
-              new LinkedHashSet<>(); // abstract states to be removed from the waitlist and reached
-          // set
-          for (AbstractState reachedState :
-              reachedSet.getReached(
-                  successorState)) // iterate only over the reached sets which may be merged with
-          // the successor state
-          {
-            AbstractState mergedState =
-                mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
-            if (!mergedState.equals(reachedState)) {
-              gen.add(mergedState);
-              kill.add(reachedState);
-            }
-          }
-          reachedSet.addAll(gen);
-          reachedSet.removeAll(kill);
-          waitlist.addAll(gen);
-          waitlist.removeAll(kill);
-          if (!stopOperator.stop(
-              successorState,
-              reachedSet.getReached(successorState),
-              successorState.getPrecision())) {
-            waitlist.add(successorState);
-            reachedSet.add(successorState);
-          }
+          reachedSet.mergeAndStop(successorState, mergeOperator, stopOperator, waitlist);
         }
       } catch (Exception exception) {
         log.error("CPA run stopped for the following error: ", exception);
@@ -0,0 +1,303 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.MergeJoinOperator;
+import proguard.analysis.cpa.defaults.PrecisionAdjustmentResult;
+import proguard.analysis.cpa.interfaces.AbortOperator;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
+import proguard.analysis.cpa.interfaces.MergeOperator;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.PrecisionAdjustment;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.StopOperator;
+import proguard.analysis.cpa.interfaces.TransferRelation;
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This is a parallel version of the {@link CpaAlgorithm}. Every abstract state of the waitlist is
+ * processed as a separate task on a work-stealing {@link ForkJoinPool}, so that states at different
+ * program locations are processed at the same time.
+ *
+ * <p>The algorithm requires the abstract states to be {@link ProgramLocationDependent} and the
+ * reached set to be a {@link ConcurrentProgramLocationDependentReachedSet}. Since the merge and the
+ * stop operators only consider reached states at the location of the successor, merging and
+ * stopping are serialized per {@link CfaNode} by locking the corresponding bin of the reached set,
+ * while the transfer relation runs unsynchronized. Hence, the transfer relation, the merge
+ * operator, the stop operator, and the precision adjustment need to be thread safe.
+ *
+ * <p>For analyses whose result does not depend on the order in which the waitlist is processed,
+ * e.g., analyses with a monotone transfer relation and a {@link MergeJoinOperator}, the algorithm
+ * computes the same fixpoint as the {@link CpaAlgorithm}. The order of the states within the
+ * reached set is not deterministic.
+ */
+public class ParallelCpaAlgorithm implements Algorithm {
+
+  private static final Logger log = LogManager.getLogger(ParallelCpaAlgorithm.class);
+  private final TransferRelation transferRelation;
+  private final MergeOperator mergeOperator;
+  private final StopOperator stopOperator;
+  private final PrecisionAdjustment precisionAdjustment;
+  private final int parallelism;
+
+  /**
+   * Create an algorithm to run the specified CPA using all available processors.
+   *
+   * @param cpa a CPA instance wrapping the transfer relation, the merge, and the stop operator, and
+   *     the precision adjustment
+   */
+  public ParallelCpaAlgorithm(ConfigurableProgramAnalysis cpa) {
+    this(cpa, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create an algorithm to run the specified CPA.
+   *
+   * @param cpa a CPA instance wrapping the transfer relation, the merge, and the stop operator, and
+   *     the precision adjustment
+   * @param parallelism the number of worker threads
+   */
+  public ParallelCpaAlgorithm(ConfigurableProgramAnalysis cpa, int parallelism) {
+    this(
+        cpa.getTransferRelation(),
+        cpa.getMergeOperator(),
+        cpa.getStopOperator(),
+        cpa.getPrecisionAdjustment(),
+        parallelism);
+  }
+
+  /**
+   * Create a parallel CPA algorithm from CPA components.
+   *
+   * @param transferRelation a thread safe transfer relation specifying how successor states are
+   *     computed
+   * @param mergeOperator a merge operator defining how (and whether) the older {@link
+   *     AbstractState} should be updated with the newly discovered {@link AbstractState}
+   * @param stopOperator a stop operator deciding whether the successor state should be added to the
+   *     {@link ReachedSet} based on the content of the latter
+   * @param precisionAdjustment a precision adjustment selecting the {@link Precision} for the
+   *     currently processed {@link AbstractState} considering the {@link ReachedSet} content
+   * @param parallelism the number of worker threads
+   */
+  public ParallelCpaAlgorithm(
+      TransferRelation transferRelation,
+      MergeOperator mergeOperator,
+      StopOperator stopOperator,
+      PrecisionAdjustment precisionAdjustment,
+      int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive, got " + parallelism);
+    }
+    this.transferRelation = transferRelation;
+    this.mergeOperator = mergeOperator;
+    this.stopOperator = stopOperator;
+    this.precisionAdjustment = precisionAdjustment;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Processes the {@code waitlist} in parallel until it is exhausted. If the {@code abortOperator}
+   * terminates the analysis, the states which have not been processed yet are returned to the
+   * {@code waitlist}, so that the analysis can be resumed. The {@code reachedSet} must be a {@link
+   * ConcurrentProgramLocationDependentReachedSet}.
+   */
+  @Override
+  public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+    if (!(reachedSet instanceof ConcurrentProgramLocationDependentReachedSet)) {
+      throw new IllegalArgumentException(
+          "The parallel CPA algorithm requires a "
+              + ConcurrentProgramLocationDependentReachedSet.class.getSimpleName()
+              + ", got "
+              + reachedSet.getClass().getName());
+    }
+    if (waitlist.isEmpty()) {
+      return;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      Run run =
+          new Run(
+              (ConcurrentProgramLocationDependentReachedSet) reachedSet, abortOperator, pool);
+      Collection<AbstractState> initialStates = new ArrayList<>();
+      waitlist.forEach(initialStates::add);
+      waitlist.clear();
+      run.seed(initialStates);
+      run.await();
+
+      if (run.failed) {
+        return;
+      }
+      if (run.aborted) {
+        // Return the unprocessed states to the waitlist in the same way the sequential
+        // algorithm leaves them there.
+        waitlist.addAll(run.pending.keySet());
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      log.error("Parallel CPA run was interrupted: ", exception);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** The state of a single parallel run. */
+  private class Run {
+
+    private final ConcurrentProgramLocationDependentReachedSet reachedSet;
+    private final AbortOperator abortOperator;
+    private final ForkJoinPool pool;
+
+    // The states scheduled for processing, i.e., the concurrent counterpart of the waitlist.
+    // States killed by a merge are removed from it, so that their tasks are skipped.
+    private final ConcurrentHashMap<AbstractState, Boolean> pending = new ConcurrentHashMap<>();
+    // The number of scheduled tasks which have not finished yet, plus one while seeding.
+    private final AtomicLong runningTaskCount = new AtomicLong(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean aborted;
+    private volatile boolean failed;
+
+    private Run(
+        ConcurrentProgramLocationDependentReachedSet reachedSet,
+        AbortOperator abortOperator,
+        ForkJoinPool pool) {
+      this.reachedSet = reachedSet;
+      this.abortOperator = abortOperator;
+      this.pool = pool;
+    }
+
+    /** Schedules the initial states. */
+    private void seed(Collection<AbstractState> initialStates) {
+      initialStates.forEach(this::schedule);
+      finishTask();
+    }
+
+    /** Schedules the given state for processing, unless it is already pending. */
+    private void schedule(AbstractState state) {
+      if (pending.putIfAbsent(state, Boolean.TRUE) != null) {
+        return;
+      }
+      runningTaskCount.incrementAndGet();
+      ForkJoinTask<?> task = ForkJoinTask.adapt(() -> process(state));
+      if (ForkJoinTask.getPool() == pool) {
+        // Push the task on the local queue of the current worker, so idle workers can steal it.
+        task.fork();
+      } else {
+        pool.execute(task);
+      }
+    }
+
+    /** Waits until there are no more running tasks. */
+    private void await() throws InterruptedException {
+      done.await();
+    }
+
+    private void process(AbstractState currentState) {
+      try {
+        if (aborted || failed || !pending.remove(currentState, Boolean.TRUE)) {
+          return;
+        }
+        if (abortOperator.abort(currentState)) {
+          aborted = true;
+          return;
+        }
+        Precision currentPrecision = currentState.getPrecision();
+        PrecisionAdjustmentResult precisionAdjustmentResult =
+            precisionAdjustment.prec(
+                currentState, currentPrecision, snapshot(reachedSet.getReached(currentState)));
+        currentState = precisionAdjustmentResult.getAbstractState();
+        currentPrecision = currentState.getPrecision();
+
+        for (AbstractState successorState :
+            transferRelation.generateAbstractSuccessors(currentState, currentPrecision)) {
+          mergeAndStop(successorState);
+        }
+      } catch (Exception exception) {
+        log.error("CPA run stopped for the following error: ", exception);
+        failed = true;
+        pending.clear();
+      } finally {
+        finishTask();
+      }
+    }
+
+    private void finishTask() {
+      if (runningTaskCount.decrementAndGet() == 0) {
+        done.countDown();
+      }
+    }
+
+    /**
+     * Merges the successor into the reached states at its location and adds it if it is not
+     * covered. This is the only place where the reached set is modified, and it holds the lock of
+     * the corresponding location for the whole update.
+     */
+    private void mergeAndStop(AbstractState successorState) {
+      Collection<? extends AbstractState> reached = reachedSet.getReached(successorState);
+      synchronized (reached) {
+        Set<AbstractState> gen = null;
+        Set<AbstractState> kill = null;
+        for (AbstractState reachedState : reached) {
+          AbstractState mergedState =
+              mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
+          if (!mergedState.equals(reachedState)) {
+            if (gen == null) {
+              gen = new LinkedHashSet<>();
+              kill = new LinkedHashSet<>();
+            }
+            gen.add(mergedState);
+            kill.add(reachedState);
+          }
+        }
+        if (gen != null) {
+          reachedSet.addAll(gen);
+          reachedSet.removeAll(kill);
+          kill.forEach(pending::remove);
+          gen.forEach(this::schedule);
+        }
+        if (!stopOperator.stop(successorState, reached, successorState.getPrecision())) {
+          reachedSet.add(successorState);
+          schedule(successorState);
+        }
+      }
+    }
+
+    private Collection<AbstractState> snapshot(Collection<? extends AbstractState> reached) {
+      synchronized (reached) {
+        return new ArrayList<>(reached);
+      }
+    }
+  }
+}
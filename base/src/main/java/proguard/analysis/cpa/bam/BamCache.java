@@ -73,4 +73,23 @@ public interface BamCache<SignatureT extends Signature> {
 
   /** Returns a set of all the methods that have an entry in the cache. */
   Set<SignatureT> getAllMethods();
+
+  /**
+   * Marks the block abstraction identified by the provided keys as in use, e.g., because its block
+   * is on the call stack of the analysis. A cache which evicts entries must keep it, also if it is
+   * only added later, until it is unpinned with {@link #unpin(AbstractState, Precision,
+   * Signature)}. Pins of the same keys are counted.
+   */
+  default void pin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {}
+
+  /** Releases a pin of the block abstraction identified by the provided keys. */
+  default void unpin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {}
+
+  /**
+   * Returns whether the cache may be accessed by several threads at once without external
+   * synchronization, e.g., by the tasks of a {@link ParallelBamSummarizer}.
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
 }
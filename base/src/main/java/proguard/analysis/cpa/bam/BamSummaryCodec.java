@@ -0,0 +1,55 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import proguard.analysis.cpa.interfaces.AbstractState;
+
+/**
+ * A {@link BamSummaryCodec} serializes the abstract states of block abstractions, so they can be
+ * stored in a {@link BamSummaryStore}. Encoding must be canonical, i.e., equal states must be
+ * encoded to equal bytes, because the encoded entry states are used as lookup keys.
+ */
+public interface BamSummaryCodec {
+
+  /**
+   * Returns a fingerprint of everything besides the analyzed code that influences the summaries,
+   * e.g., the taint sources. Summaries stored with a different fingerprint are not reused.
+   */
+  long getFingerprint();
+
+  /**
+   * Writes the abstract state to the output.
+   *
+   * @throws IllegalArgumentException if the codec does not support the abstract state, in which
+   *     case the block abstraction containing it is not persisted
+   * @throws IOException if the output cannot be written
+   */
+  void writeState(AbstractState abstractState, DataOutput output) throws IOException;
+
+  /**
+   * Reads an abstract state written by {@link #writeState(AbstractState, DataOutput)}.
+   *
+   * @throws IOException if the input is malformed or refers to program elements which are not
+   *     available in the current analysis
+   */
+  AbstractState readState(DataInput input) throws IOException;
+}
@@ -0,0 +1,355 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An immutable on-disk store of serialized block abstractions, which lets a {@link
+ * PersistentBamCache} reuse the summaries computed by earlier analysis runs. A record is identified
+ * by the fully qualified name of its block, a content hash of the code the summary depends on, and
+ * the serialized entry state. The summary itself is an opaque byte array, see {@link
+ * BamSummaryCodec}.
+ *
+ * <p>The file is memory-mapped when it is opened. It starts with a header and an index of the
+ * records sorted by the hash of their keys, so a lookup is a binary search in the mapped index
+ * followed by a comparison of the full key. Only the records which are actually looked up are
+ * paged in, which keeps opening large stores cheap. Stores are limited to 2 GB.
+ *
+ * <p>The header contains a fingerprint of the analysis configuration. Opening a store with a
+ * different fingerprint, or a store written by an incompatible version, yields an empty store,
+ * since its summaries may not be valid for the current analysis.
+ */
+public final class BamSummaryStore {
+
+  private static final Logger log = LogManager.getLogger(BamSummaryStore.class);
+
+  private static final int MAGIC = 0x50474253;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 20;
+  private static final int INDEX_ENTRY_SIZE = 12;
+
+  private final long fingerprint;
+  private final ByteBuffer buffer;
+  private final int recordCount;
+
+  private BamSummaryStore(long fingerprint, ByteBuffer buffer, int recordCount) {
+    this.fingerprint = fingerprint;
+    this.buffer = buffer;
+    this.recordCount = recordCount;
+  }
+
+  /** Returns an empty store for the given configuration fingerprint. */
+  public static BamSummaryStore empty(long fingerprint) {
+    return new BamSummaryStore(fingerprint, null, 0);
+  }
+
+  /**
+   * Opens the store in the given file. If the file does not exist, or if it was written for a
+   * different configuration fingerprint or by an incompatible version, the returned store is empty.
+   *
+   * @param path the file containing the store
+   * @param fingerprint the fingerprint of the current analysis configuration
+   * @throws IOException if the file cannot be read or is corrupt
+   */
+  public static BamSummaryStore open(Path path, long fingerprint) throws IOException {
+    if (!Files.exists(path)) {
+      return empty(fingerprint);
+    }
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize > Integer.MAX_VALUE) {
+        throw new IOException("BAM summary store " + path + " exceeds 2 GB");
+      }
+      if (fileSize < HEADER_SIZE) {
+        throw new IOException("BAM summary store " + path + " is truncated");
+      }
+      // The mapping remains valid after the channel is closed.
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+    }
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not a BAM summary store");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      log.info("Ignoring BAM summary store {} written by an incompatible version", path);
+      return empty(fingerprint);
+    }
+    if (buffer.getLong(8) != fingerprint) {
+      log.info("Ignoring BAM summary store {} written for a different configuration", path);
+      return empty(fingerprint);
+    }
+    int recordCount = buffer.getInt(16);
+    if (recordCount < 0
+        || (long) HEADER_SIZE + (long) recordCount * INDEX_ENTRY_SIZE > buffer.capacity()) {
+      throw new IOException("BAM summary store " + path + " is corrupt");
+    }
+    return new BamSummaryStore(fingerprint, buffer, recordCount);
+  }
+
+  /**
+   * Writes the given records to a new store in the given file, replacing any existing one. The
+   * records are first written to a temporary file in the same directory, which is then moved to
+   * the target, so concurrent readers never see a partially written store.
+   *
+   * @param path the target file
+   * @param fingerprint the fingerprint of the analysis configuration which computed the records
+   * @param records the records, which must have pairwise distinct keys
+   * @throws IOException if the store cannot be written or would exceed 2 GB
+   */
+  public static void write(Path path, long fingerprint, Collection<Record> records)
+      throws IOException {
+    List<Record> sortedRecords = new ArrayList<>(records);
+    sortedRecords.sort(Comparator.comparingLong(record -> record.keyHash));
+
+    long offset = HEADER_SIZE + (long) sortedRecords.size() * INDEX_ENTRY_SIZE;
+    int[] offsets = new int[sortedRecords.size()];
+    for (int index = 0; index < offsets.length; index++) {
+      if (offset > Integer.MAX_VALUE) {
+        throw new IOException("BAM summary store " + path + " would exceed 2 GB");
+      }
+      offsets[index] = (int) offset;
+      offset += sortedRecords.get(index).serializedSize();
+    }
+    if (offset > Integer.MAX_VALUE) {
+      throw new IOException("BAM summary store " + path + " would exceed 2 GB");
+    }
+
+    Path directory = path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temporaryFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(fingerprint);
+        output.writeInt(sortedRecords.size());
+        for (int index = 0; index < offsets.length; index++) {
+          output.writeLong(sortedRecords.get(index).keyHash);
+          output.writeInt(offsets[index]);
+        }
+        for (Record record : sortedRecords) {
+          output.writeInt(record.blockKey.length);
+          output.write(record.blockKey);
+          output.writeLong(record.contentHash);
+          output.writeInt(record.stateKey.length);
+          output.write(record.stateKey);
+          output.writeInt(record.summary.length);
+          output.write(record.summary);
+        }
+      }
+      try {
+        Files.move(
+            temporaryFile,
+            path,
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /** Returns the fingerprint of the analysis configuration the store belongs to. */
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
+  /** Returns the number of records in the store. */
+  public int size() {
+    return recordCount;
+  }
+
+  /**
+   * Returns the serialized summary with the given key, or null if the store does not contain it.
+   *
+   * @param blockKey the fully qualified name of the block
+   * @param contentHash the content hash of the code the summary depends on
+   * @param stateKey the serialized entry state
+   */
+  public byte[] get(String blockKey, long contentHash, byte[] stateKey) {
+    if (recordCount == 0) {
+      return null;
+    }
+    byte[] blockKeyBytes = blockKey.getBytes(StandardCharsets.UTF_8);
+    long keyHash = keyHash(blockKeyBytes, contentHash, stateKey);
+    try {
+      // Find the first index entry with the hash, then check all entries with the same hash.
+      int low = 0;
+      int high = recordCount;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (indexHash(middle) < keyHash) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      for (int index = low; index < recordCount && indexHash(index) == keyHash; index++) {
+        int offset = buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE + 8);
+        int blockKeyLength = buffer.getInt(offset);
+        if (!regionEquals(offset + 4, blockKeyBytes)
+            || buffer.getLong(offset + 4 + blockKeyLength) != contentHash) {
+          continue;
+        }
+        int stateKeyOffset = offset + 4 + blockKeyLength + 8;
+        if (!regionEquals(stateKeyOffset + 4, stateKey)) {
+          continue;
+        }
+        int summaryOffset = stateKeyOffset + 4 + stateKey.length;
+        return bytesAt(summaryOffset + 4, buffer.getInt(summaryOffset));
+      }
+    } catch (IndexOutOfBoundsException | BufferUnderflowException | NegativeArraySizeException e) {
+      log.warn("The BAM summary store is corrupt, ignoring the summary of {}", blockKey);
+    }
+    return null;
+  }
+
+  /** Passes all records of the store to the given consumer, in no particular order. */
+  public void forEach(Consumer<Record> consumer) {
+    for (int index = 0; index < recordCount; index++) {
+      int offset = buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE + 8);
+      byte[] blockKey = bytesAt(offset + 4, buffer.getInt(offset));
+      offset += 4 + blockKey.length;
+      long contentHash = buffer.getLong(offset);
+      offset += 8;
+      byte[] stateKey = bytesAt(offset + 4, buffer.getInt(offset));
+      offset += 4 + stateKey.length;
+      byte[] summary = bytesAt(offset + 4, buffer.getInt(offset));
+      consumer.accept(new Record(blockKey, contentHash, stateKey, summary));
+    }
+  }
+
+  // Private utility methods.
+
+  private long indexHash(int index) {
+    return buffer.getLong(HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+  }
+
+  private boolean regionEquals(int offset, byte[] bytes) {
+    if (buffer.getInt(offset - 4) != bytes.length) {
+      return false;
+    }
+    for (int index = 0; index < bytes.length; index++) {
+      if (buffer.get(offset + index) != bytes[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] bytesAt(int offset, int length) {
+    byte[] bytes = new byte[length];
+    // Work on a duplicate, so concurrent lookups don't interfere with each other's position.
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.get(bytes);
+    return bytes;
+  }
+
+  /** Returns the 64-bit FNV-1a hash of the given key. */
+  private static long keyHash(byte[] blockKey, long contentHash, byte[] stateKey) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : blockKey) {
+      hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    for (int shift = 0; shift < 64; shift += 8) {
+      hash = (hash ^ ((contentHash >>> shift) & 0xff)) * 0x100000001b3L;
+    }
+    for (byte b : stateKey) {
+      hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /** A serialized block abstraction with its key. */
+  public static final class Record {
+
+    private final byte[] blockKey;
+    private final long contentHash;
+    private final byte[] stateKey;
+    private final byte[] summary;
+    private final long keyHash;
+
+    /**
+     * Create a record.
+     *
+     * @param blockKey the fully qualified name of the block
+     * @param contentHash the content hash of the code the summary depends on
+     * @param stateKey the serialized entry state
+     * @param summary the serialized block abstraction
+     */
+    public Record(String blockKey, long contentHash, byte[] stateKey, byte[] summary) {
+      this(blockKey.getBytes(StandardCharsets.UTF_8), contentHash, stateKey, summary);
+    }
+
+    private Record(byte[] blockKey, long contentHash, byte[] stateKey, byte[] summary) {
+      this.blockKey = blockKey;
+      this.contentHash = contentHash;
+      this.stateKey = stateKey;
+      this.summary = summary;
+      this.keyHash = keyHash(blockKey, contentHash, stateKey);
+    }
+
+    /** Returns the fully qualified name of the block. */
+    public String getBlockKey() {
+      return new String(blockKey, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the content hash of the code the summary depends on. */
+    public long getContentHash() {
+      return contentHash;
+    }
+
+    /** Returns the serialized entry state. */
+    public byte[] getStateKey() {
+      return stateKey;
+    }
+
+    /** Returns the serialized block abstraction. */
+    public byte[] getSummary() {
+      return summary;
+    }
+
+    private long serializedSize() {
+      return 4L + blockKey.length + 8 + 4 + stateKey.length + 4 + summary.length;
+    }
+  }
+}
@@ -29,8 +29,8 @@ import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
-import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
 import proguard.analysis.cpa.defaults.Cfa;
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
 import proguard.analysis.cpa.defaults.StopSepOperator;
@@ -221,10 +221,10 @@ public class BamTransferRelation<
 
   /**
    * By default the {@link Waitlist} used by the applyBlockAbstraction algorithm is a {@link
-   * BreadthFirstWaitlist}, this method can be overridden to provide a different waitlist.
+   * IndexedBreadthFirstWaitlist}, this method can be overridden to provide a different waitlist.
    */
   protected Waitlist getWaitlist() {
-    return new BreadthFirstWaitlist();
+    return new IndexedBreadthFirstWaitlist();
   }
 
   /**
@@ -325,59 +325,66 @@ public class BamTransferRelation<
       }
 
       stack.push(new StackEntry(currentFunction, reducedEntryState));
+      // the block abstraction must survive until it is compared with the new one below, and
+      // recursive calls covered by this entry state read it as well
+      cache.pin(reducedEntryState, precision, currentFunction);
+
+      try {
+        // analyze the current procedure call with the CPA algorithm, this is the recursive step of
+        // the BAM CPA
+        // n.b. if the procedure has been already analyzed completely for the input the CPA
+        // algorithm will return immediately
+        new CpaAlgorithm(
+                this,
+                wrappedCpa.getMergeOperator(),
+                wrappedCpa.getStopOperator(),
+                wrappedCpa.getPrecisionAdjustment())
+            .run(reached, waitlist, abortOperator);
+
+        StackEntry stackEntry = stack.pop();
+
+        // since the fixed point has not been reached all the calls not analyzed are added to the
+        // waitlist
+        if (!stackEntry.incompleteCallStates.isEmpty()) {
+          // the call to the current method will be added to the waitlist of the caller
+          if (!stack.isEmpty()) {
+            stack.peek().incompleteCallStates.add(callState);
+          }
 
-      // analyze the current procedure call with the CPA algorithm, this is the recursive step of
-      // the BAM CPA
-      // n.b. if the procedure has been already analyzed completely for the input the CPA algorithm
-      // will return immediately
-      new CpaAlgorithm(
-              this,
-              wrappedCpa.getMergeOperator(),
-              wrappedCpa.getStopOperator(),
-              wrappedCpa.getPrecisionAdjustment())
-          .run(reached, waitlist, abortOperator);
-
-      StackEntry stackEntry = stack.pop();
-
-      // since the fixed point has not been reached all the calls not analyzed are added to the
-      // waitlist
-      if (!stackEntry.incompleteCallStates.isEmpty()) {
-        // the call to the current method will be added to the waitlist of the caller
-        if (!stack.isEmpty()) {
-          stack.peek().incompleteCallStates.add(callState);
-        }
-
-        for (AbstractState incompleteCallState : stackEntry.incompleteCallStates) {
-          waitlist.add(incompleteCallState);
+          for (AbstractState incompleteCallState : stackEntry.incompleteCallStates) {
+            waitlist.add(incompleteCallState);
+          }
         }
-      }
 
-      cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
-
-      // check if the fixed point has not been reached at this iteration (i.e. some new exit state
-      // is not covered by one already calculated)
-      if (cacheEntry != null) {
-        // TODO: as above, we might want to add all instead of copying
-        ReachedSet reachedOld = cacheEntry.getReachedSet();
-
-        for (AbstractState reachedState : reached.asCollection()) {
-          CfaNodeT reachedLocation =
-              ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) reachedState)
-                  .getProgramLocation();
-          if (reachedLocation.getSignature().equals(currentFunction)
-              && reachedLocation.isExitNode()
-              && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null))) {
-            if (!stack.isEmpty()) {
-              stack.peek().incompleteCallStates.add(callState);
+        cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+
+        // check if the fixed point has not been reached at this iteration (i.e. some new exit state
+        // is not covered by one already calculated)
+        if (cacheEntry != null) {
+          // TODO: as above, we might want to add all instead of copying
+          ReachedSet reachedOld = cacheEntry.getReachedSet();
+
+          for (AbstractState reachedState : reached.asCollection()) {
+            CfaNodeT reachedLocation =
+                ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) reachedState)
+                    .getProgramLocation();
+            if (reachedLocation.getSignature().equals(currentFunction)
+                && reachedLocation.isExitNode()
+                && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null))) {
+              if (!stack.isEmpty()) {
+                stack.peek().incompleteCallStates.add(callState);
+              }
+              fixedPointReached = false;
+              break;
             }
-            fixedPointReached = false;
-            break;
           }
         }
-      }
 
-      cache.put(
-          reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
+        cache.put(
+            reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
+      } finally {
+        cache.unpin(reducedEntryState, precision, currentFunction);
+      }
     }
 
     Collection<? extends AbstractState> exitStates = reached.asCollection();
@@ -0,0 +1,507 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.defaults.Cfa;
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.interfaces.AbortOperator;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.CallEdge;
+import proguard.analysis.cpa.interfaces.CfaEdge;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.classfile.Signature;
+
+/**
+ * This {@link ParallelBamSummarizer} computes BAM block abstractions (i.e., method summaries) for
+ * many methods at once. The methods are grouped into the strongly connected components of their
+ * call graph, which are processed bottom-up on a work-stealing {@link ForkJoinPool}: a component is
+ * summarized as soon as all components it calls are done, so independent components, e.g., the
+ * leaves of the call graph, are summarized in parallel.
+ *
+ * <p>Each component is analyzed by a separate {@link BamCpa} with a fresh wrapped CPA, starting
+ * from the given entry states of its methods. The block abstractions the task computes are kept in
+ * a task-local cache until the task is done, and the complete ones are then published to the
+ * shared {@link BamCache}. Tasks look up block abstractions of callees in the shared cache, which
+ * already contains them for callees in the components summarized before. Hence, a subsequent BAM
+ * analysis with the shared cache, e.g., the {@link proguard.analysis.cpa.defaults.BamCpaRun} whose
+ * cache was summarized, only needs to compute the block abstractions for the calling contexts
+ * which were not anticipated by the entry states.
+ *
+ * <p>A thread-safe shared cache (see {@link BamCache#isThreadSafe()}), e.g., a {@link
+ * ShardedBamCache}, is accessed by all tasks concurrently. Accesses to any other cache are
+ * synchronized on the cache itself, so the tasks then wait for each other at every lookup of a
+ * callee. The published block abstractions are complete and only read afterwards, so they can be
+ * shared by the tasks. The wrapped CPAs and their operators must not share mutable
+ * state across the instances returned by the supplier.
+ */
+public class ParallelBamSummarizer<
+    CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
+    CfaEdgeT extends CfaEdge<CfaNodeT>,
+    SignatureT extends Signature> {
+
+  private static final Logger log = LogManager.getLogger(ParallelBamSummarizer.class);
+
+  private final Supplier<CpaWithBamOperators<CfaNodeT, CfaEdgeT, SignatureT>> wrappedCpaSupplier;
+  private final Cfa<CfaNodeT, CfaEdgeT, SignatureT> cfa;
+  private final BamCache<SignatureT> cache;
+  private final int maxCallStackDepth;
+  private final AbortOperator abortOperator;
+  private final int parallelism;
+
+  /**
+   * Create a parallel BAM summarizer.
+   *
+   * @param wrappedCpaSupplier a supplier of fresh wrapped CPAs with BAM operators, called once per
+   *     component
+   * @param cfa the control flow automaton of the analyzed program
+   * @param cache the cache the summaries are published to
+   * @param maxCallStackDepth the maximum depth of the call stack analyzed interprocedurally, 0
+   *     means intraprocedural analysis, a negative value means no maximum depth
+   * @param abortOperator an abort operator, shared by all tasks
+   * @param parallelism the number of worker threads
+   */
+  public ParallelBamSummarizer(
+      Supplier<CpaWithBamOperators<CfaNodeT, CfaEdgeT, SignatureT>> wrappedCpaSupplier,
+      Cfa<CfaNodeT, CfaEdgeT, SignatureT> cfa,
+      BamCache<SignatureT> cache,
+      int maxCallStackDepth,
+      AbortOperator abortOperator,
+      int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive, got " + parallelism);
+    }
+    this.wrappedCpaSupplier = wrappedCpaSupplier;
+    this.cfa = cfa;
+    this.cache = cache;
+    this.maxCallStackDepth = maxCallStackDepth;
+    this.abortOperator = abortOperator;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Summarizes the given methods, taking the callees from the call edges of the CFA.
+   *
+   * @param methods the methods to summarize
+   * @param entryStates the entry states for which each method is summarized
+   */
+  public void summarize(
+      Collection<SignatureT> methods,
+      Function<SignatureT, ? extends Collection<? extends AbstractState>> entryStates) {
+    summarize(methods, this::getCallees, entryStates);
+  }
+
+  /**
+   * Summarizes the given methods. The callees may be taken from any call graph, e.g., from a {@link
+   * proguard.analysis.datastructure.callgraph.CallGraph} with {@code method ->
+   * callGraph.outgoing.getOrDefault(method, emptySet()).stream().map(Call::getTarget)...}. Callees
+   * outside of {@code methods} are ignored for the scheduling.
+   *
+   * @param methods the methods to summarize
+   * @param callees the methods called by each method
+   * @param entryStates the entry states for which each method is summarized
+   */
+  public void summarize(
+      Collection<SignatureT> methods,
+      Function<SignatureT, ? extends Collection<SignatureT>> callees,
+      Function<SignatureT, ? extends Collection<? extends AbstractState>> entryStates) {
+    Set<SignatureT> methodSet = new LinkedHashSet<>(methods);
+    Map<SignatureT, List<SignatureT>> successors = new HashMap<>();
+    for (SignatureT method : methodSet) {
+      successors.put(
+          method,
+          callees.apply(method).stream()
+              .filter(methodSet::contains)
+              .distinct()
+              .collect(Collectors.toList()));
+    }
+
+    List<List<SignatureT>> components = getStronglyConnectedComponents(methodSet, successors);
+    log.debug("Summarizing {} methods in {} components", methodSet.size(), components.size());
+
+    // Build the condensed call graph.
+    Map<SignatureT, Integer> componentIndices = new HashMap<>();
+    for (int index = 0; index < components.size(); index++) {
+      for (SignatureT method : components.get(index)) {
+        componentIndices.put(method, index);
+      }
+    }
+    List<AtomicInteger> pendingCalleeCounts = new ArrayList<>(components.size());
+    List<List<Integer>> callers = new ArrayList<>(components.size());
+    for (int index = 0; index < components.size(); index++) {
+      pendingCalleeCounts.add(new AtomicInteger());
+      callers.add(new ArrayList<>());
+    }
+    for (int index = 0; index < components.size(); index++) {
+      Set<Integer> calleeComponents = new HashSet<>();
+      for (SignatureT method : components.get(index)) {
+        for (SignatureT callee : successors.get(method)) {
+          int calleeComponent = componentIndices.get(callee);
+          if (calleeComponent != index && calleeComponents.add(calleeComponent)) {
+            callers.get(calleeComponent).add(index);
+          }
+        }
+      }
+      pendingCalleeCounts.get(index).set(calleeComponents.size());
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    CountDownLatch latch = new CountDownLatch(components.size());
+    Scheduler scheduler =
+        new Scheduler(pool, latch, components, pendingCalleeCounts, callers, entryStates);
+    try {
+      for (int index = 0; index < components.size(); index++) {
+        if (pendingCalleeCounts.get(index).get() == 0) {
+          scheduler.submit(index);
+        }
+      }
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("The parallel BAM summarization was interrupted", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Private utility methods.
+
+  private Collection<SignatureT> getCallees(SignatureT method) {
+    Set<SignatureT> result = new LinkedHashSet<>();
+    for (CfaNodeT node : cfa.getFunctionNodes(method)) {
+      for (CfaEdgeT edge : node.getLeavingEdges()) {
+        if (edge instanceof CallEdge && !edge.getTarget().isUnknownNode()) {
+          result.add(edge.getTarget().getSignature());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the strongly connected components of the given graph, computed with an iterative
+   * version of Tarjan's algorithm. Each component comes after all components reachable from it.
+   */
+  private static <NodeT> List<List<NodeT>> getStronglyConnectedComponents(
+      Collection<NodeT> nodes, Map<NodeT, List<NodeT>> successors) {
+    List<List<NodeT>> components = new ArrayList<>();
+    Map<NodeT, Integer> indices = new HashMap<>();
+    Map<NodeT, Integer> lowLinks = new HashMap<>();
+    Deque<NodeT> stack = new ArrayDeque<>();
+    Set<NodeT> onStack = new HashSet<>();
+    Deque<NodeT> path = new ArrayDeque<>();
+    Deque<Iterator<NodeT>> pathIterators = new ArrayDeque<>();
+
+    for (NodeT root : nodes) {
+      if (indices.containsKey(root)) {
+        continue;
+      }
+      visit(root, indices, lowLinks, stack, onStack, path, pathIterators, successors);
+      while (!path.isEmpty()) {
+        NodeT node = path.peek();
+        Iterator<NodeT> iterator = pathIterators.peek();
+        if (iterator.hasNext()) {
+          NodeT successor = iterator.next();
+          if (!indices.containsKey(successor)) {
+            visit(successor, indices, lowLinks, stack, onStack, path, pathIterators, successors);
+          } else if (onStack.contains(successor)) {
+            lowLinks.put(node, Math.min(lowLinks.get(node), indices.get(successor)));
+          }
+          continue;
+        }
+
+        path.pop();
+        pathIterators.pop();
+        if (!path.isEmpty()) {
+          NodeT parent = path.peek();
+          lowLinks.put(parent, Math.min(lowLinks.get(parent), lowLinks.get(node)));
+        }
+        if (lowLinks.get(node).equals(indices.get(node))) {
+          List<NodeT> component = new ArrayList<>();
+          NodeT member;
+          do {
+            member = stack.pop();
+            onStack.remove(member);
+            component.add(member);
+          } while (member != node);
+          Collections.reverse(component);
+          components.add(component);
+        }
+      }
+    }
+    return components;
+  }
+
+  private static <NodeT> void visit(
+      NodeT node,
+      Map<NodeT, Integer> indices,
+      Map<NodeT, Integer> lowLinks,
+      Deque<NodeT> stack,
+      Set<NodeT> onStack,
+      Deque<NodeT> path,
+      Deque<Iterator<NodeT>> pathIterators,
+      Map<NodeT, List<NodeT>> successors) {
+    int index = indices.size();
+    indices.put(node, index);
+    lowLinks.put(node, index);
+    stack.push(node);
+    onStack.add(node);
+    path.push(node);
+    pathIterators.push(successors.get(node).iterator());
+  }
+
+  /**
+   * Submits the components whose callees are summarized and counts down the latch for every
+   * finished component.
+   */
+  private class Scheduler {
+
+    private final ForkJoinPool pool;
+    private final CountDownLatch latch;
+    private final List<List<SignatureT>> components;
+    private final List<AtomicInteger> pendingCalleeCounts;
+    private final List<List<Integer>> callers;
+    private final Function<SignatureT, ? extends Collection<? extends AbstractState>> entryStates;
+
+    private Scheduler(
+        ForkJoinPool pool,
+        CountDownLatch latch,
+        List<List<SignatureT>> components,
+        List<AtomicInteger> pendingCalleeCounts,
+        List<List<Integer>> callers,
+        Function<SignatureT, ? extends Collection<? extends AbstractState>> entryStates) {
+      this.pool = pool;
+      this.latch = latch;
+      this.components = components;
+      this.pendingCalleeCounts = pendingCalleeCounts;
+      this.callers = callers;
+      this.entryStates = entryStates;
+    }
+
+    private void submit(int component) {
+      pool.execute(
+          () -> {
+            try {
+              summarizeComponent(components.get(component));
+            } catch (RuntimeException e) {
+              log.error("Failed to summarize {}", components.get(component), e);
+            } finally {
+              // The callers may still reuse the summaries published so far.
+              for (int caller : callers.get(component)) {
+                if (pendingCalleeCounts.get(caller).decrementAndGet() == 0) {
+                  submit(caller);
+                }
+              }
+              latch.countDown();
+            }
+          });
+    }
+
+    private void summarizeComponent(List<SignatureT> component) {
+      TaskCache taskCache = new TaskCache();
+      CpaWithBamOperators<CfaNodeT, CfaEdgeT, SignatureT> wrappedCpa = wrappedCpaSupplier.get();
+      for (SignatureT method : component) {
+        for (AbstractState entryState : entryStates.apply(method)) {
+          if (abortOperator.abort(entryState)) {
+            break;
+          }
+          if (taskCache.get(entryState, entryState.getPrecision(), method) != null) {
+            continue;
+          }
+          BamCpa<CfaNodeT, CfaEdgeT, SignatureT> bamCpa =
+              new BamCpa<>(wrappedCpa, cfa, method, taskCache, maxCallStackDepth, abortOperator);
+          ReachedSet reachedSet = new ProgramLocationDependentReachedSet<>();
+          Waitlist waitlist = new IndexedBreadthFirstWaitlist();
+          reachedSet.add(entryState);
+          waitlist.add(entryState);
+          new CpaAlgorithm(bamCpa).run(reachedSet, waitlist, abortOperator);
+        }
+      }
+      taskCache.publish();
+    }
+  }
+
+  /**
+   * A {@link BamCache} local to a task. It falls back to the complete block abstractions of the
+   * shared cache and publishes its own complete block abstractions once the task is done.
+   */
+  private class TaskCache implements BamCache<SignatureT> {
+
+    private final Map<SignatureT, Map<CacheKey, BlockAbstraction>> entries = new LinkedHashMap<>();
+    // The reached sets of the block abstractions taken from the shared cache.
+    private final Set<ReachedSet> sharedReachedSets =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Adds the complete block abstractions computed by the task to the shared cache. */
+    private void publish() {
+      if (cache.isThreadSafe()) {
+        publishUnsynchronized();
+      } else {
+        synchronized (cache) {
+          publishUnsynchronized();
+        }
+      }
+    }
+
+    private void publishUnsynchronized() {
+      for (Map.Entry<SignatureT, Map<CacheKey, BlockAbstraction>> methodEntries :
+          entries.entrySet()) {
+        for (Map.Entry<CacheKey, BlockAbstraction> entry : methodEntries.getValue().entrySet()) {
+          BlockAbstraction blockAbstraction = entry.getValue();
+          if (blockAbstraction.getWaitlist().isEmpty()
+              && !sharedReachedSets.contains(blockAbstraction.getReachedSet())) {
+            cache.put(
+                entry.getKey().state,
+                entry.getKey().precision,
+                methodEntries.getKey(),
+                blockAbstraction);
+          }
+        }
+      }
+    }
+
+    /** Looks up a block abstraction in the shared cache. */
+    private BlockAbstraction getShared(
+        AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+      if (cache.isThreadSafe()) {
+        return cache.get(stateKey, precisionKey, blockKey);
+      }
+      synchronized (cache) {
+        return cache.get(stateKey, precisionKey, blockKey);
+      }
+    }
+
+    // implementations for BamCache
+
+    @Override
+    public void put(
+        AbstractState stateKey,
+        Precision precisionKey,
+        SignatureT blockKey,
+        BlockAbstraction blockAbstraction) {
+      entries
+          .computeIfAbsent(blockKey, k -> new LinkedHashMap<>())
+          .put(new CacheKey(stateKey, precisionKey), blockAbstraction);
+    }
+
+    @Override
+    public BlockAbstraction get(
+        AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+      BlockAbstraction result =
+          entries
+              .getOrDefault(blockKey, Collections.emptyMap())
+              .get(new CacheKey(stateKey, precisionKey));
+      if (result != null) {
+        return result;
+      }
+      result = getShared(stateKey, precisionKey, blockKey);
+      // Incomplete block abstractions of the shared cache are recomputed locally.
+      if (result == null || !result.getWaitlist().isEmpty()) {
+        return null;
+      }
+      sharedReachedSets.add(result.getReachedSet());
+      return result;
+    }
+
+    @Override
+    public Collection<BlockAbstraction> get(SignatureT blockKey) {
+      return entries.getOrDefault(blockKey, Collections.emptyMap()).values();
+    }
+
+    @Override
+    public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+      return entries.getOrDefault(blockKey, Collections.emptyMap()).entrySet().stream()
+          .filter(e -> Objects.equals(e.getKey().precision, precision))
+          .map(Map.Entry::getValue)
+          .collect(Collectors.toList());
+    }
+
+    @Override
+    public Collection<BlockAbstraction> values() {
+      return entries.values().stream()
+          .flatMap(e -> e.values().stream())
+          .collect(Collectors.toList());
+    }
+
+    @Override
+    public int size() {
+      return entries.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public Set<SignatureT> getAllMethods() {
+      return entries.keySet();
+    }
+  }
+
+  private static class CacheKey {
+
+    private final AbstractState state;
+    private final Precision precision;
+
+    private CacheKey(AbstractState state, Precision precision) {
+      this.state = state;
+      this.precision = precision;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return Objects.equals(state, other.state) && Objects.equals(precision, other.precision);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(state, precision);
+    }
+  }
+}
@@ -0,0 +1,477 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.classfile.Signature;
+
+/**
+ * This {@link BamCache} reuses the block abstractions computed by earlier analysis runs. It wraps
+ * another cache and, when the wrapped cache misses, looks the block abstraction up in a {@link
+ * BamSummaryStore}. The store is keyed by the block signature, a content hash of the code the block
+ * abstraction depends on, and the serialized entry state, so summaries of unchanged methods are
+ * loaded instead of being recomputed, while summaries of changed methods are simply not found.
+ *
+ * <p>After the analysis, {@link #save(Path)} writes the complete block abstractions of the run to
+ * a new store, together with the still valid records of the old store. Only block abstractions
+ * with the default (i.e., null) precision and an empty waitlist are persisted.
+ *
+ * <p>Each record also lists the entry states of the callee blocks its block abstraction was
+ * computed from. The cache learns them from the {@link BamTransferRelation}, which pins the blocks
+ * on its call stack and looks up the callees of the innermost one. A block abstraction is only
+ * loaded together with the block abstractions of all its transitive callees, so the methods
+ * returning several block abstractions, e.g., {@link #values()}, return the same entries as in a
+ * run without the store. Block abstractions which have not been computed on a call stack, e.g.,
+ * the ones published by a {@link ParallelBamSummarizer}, have unknown callees and are not
+ * persisted.
+ *
+ * @param <SignatureT> the type of the block signatures
+ */
+public class PersistentBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(PersistentBamCache.class);
+
+  private final BamCache<SignatureT> delegate;
+  private final BamSummaryStore store;
+  private final BamSummaryCodec codec;
+  private final ToLongFunction<SignatureT> contentHasher;
+  private final Supplier<ReachedSet> reachedSetSupplier;
+  private final Map<SignatureT, Long> contentHashes = new ConcurrentHashMap<>();
+  private final Map<EntryKey<SignatureT>, BlockAbstraction> completedEntries =
+      new ConcurrentHashMap<>();
+  // The states of the loaded block abstractions, by identity, to tell whether they changed.
+  private final Map<EntryKey<SignatureT>, Set<AbstractState>> loadedStates =
+      new ConcurrentHashMap<>();
+  // The callees of the block abstractions computed on a call stack or loaded from the store.
+  private final Map<EntryKey<SignatureT>, Set<EntryKey<SignatureT>>> calleeEntries =
+      new ConcurrentHashMap<>();
+  private final ThreadLocal<Deque<EntryKey<SignatureT>>> callStack =
+      ThreadLocal.withInitial(ArrayDeque::new);
+  private final LongAdder loadCount = new LongAdder();
+
+  /**
+   * Create a persistent cache which loads block abstractions into {@link
+   * ProgramLocationDependentReachedSet}s.
+   *
+   * @param delegate the cache holding the block abstractions of the current run
+   * @param store the store with the block abstractions of earlier runs
+   * @param codec the codec for the abstract states, whose fingerprint should match the one of the
+   *     store
+   * @param contentHasher a function computing a hash of all code the block abstractions of a block
+   *     depend on
+   */
+  public PersistentBamCache(
+      BamCache<SignatureT> delegate,
+      BamSummaryStore store,
+      BamSummaryCodec codec,
+      ToLongFunction<SignatureT> contentHasher) {
+    this(delegate, store, codec, contentHasher, ProgramLocationDependentReachedSet::new);
+  }
+
+  /**
+   * Create a persistent cache.
+   *
+   * @param delegate the cache holding the block abstractions of the current run
+   * @param store the store with the block abstractions of earlier runs
+   * @param codec the codec for the abstract states, whose fingerprint should match the one of the
+   *     store
+   * @param contentHasher a function computing a hash of all code the block abstractions of a block
+   *     depend on
+   * @param reachedSetSupplier a supplier of the reached sets loaded block abstractions are put in
+   */
+  public PersistentBamCache(
+      BamCache<SignatureT> delegate,
+      BamSummaryStore store,
+      BamSummaryCodec codec,
+      ToLongFunction<SignatureT> contentHasher,
+      Supplier<ReachedSet> reachedSetSupplier) {
+    this.delegate = delegate;
+    this.store = store;
+    this.codec = codec;
+    this.contentHasher = contentHasher;
+    this.reachedSetSupplier = reachedSetSupplier;
+  }
+
+  // implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    delegate.put(stateKey, precisionKey, blockKey, blockAbstraction);
+    if (precisionKey == null) {
+      completedEntries.put(new EntryKey<>(blockKey, stateKey), blockAbstraction);
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    if (precisionKey == null) {
+      addCallee(new EntryKey<>(blockKey, stateKey));
+    }
+    BlockAbstraction blockAbstraction = delegate.get(stateKey, precisionKey, blockKey);
+    if (blockAbstraction != null || precisionKey != null || store.size() == 0) {
+      return blockAbstraction;
+    }
+    return load(new EntryKey<>(blockKey, stateKey));
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return delegate.get(blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return delegate.get(precision, blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return delegate.values();
+  }
+
+  @Override
+  public int size() {
+    return delegate.size();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return delegate.getAllMethods();
+  }
+
+  @Override
+  public void pin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    delegate.pin(stateKey, precisionKey, blockKey);
+    if (precisionKey == null) {
+      EntryKey<SignatureT> key = new EntryKey<>(blockKey, stateKey);
+      calleeEntries.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+      callStack.get().push(key);
+    }
+  }
+
+  @Override
+  public void unpin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    delegate.unpin(stateKey, precisionKey, blockKey);
+    if (precisionKey == null) {
+      callStack.get().removeFirstOccurrence(new EntryKey<>(blockKey, stateKey));
+    }
+  }
+
+  /** Returns whether the wrapped cache is thread-safe, since the rest of this cache is. */
+  @Override
+  public boolean isThreadSafe() {
+    return delegate.isThreadSafe();
+  }
+
+  /** Returns the number of block abstractions loaded from the store. */
+  public long getLoadCount() {
+    return loadCount.sum();
+  }
+
+  /**
+   * Writes the block abstractions of the current run and the still valid records of the store to
+   * a new store in the given file. Records of the old store are dropped if the current run
+   * computed a different content hash for their block. Loaded block abstractions are written again
+   * if any of their states has been replaced since loading them. Block abstractions containing
+   * states the codec does not support and block abstractions with unknown callees are skipped.
+   *
+   * @param path the target file, which may be the file of the current store
+   * @throws IOException if the store cannot be written
+   */
+  public void save(Path path) throws IOException {
+    Map<RecordKey, BamSummaryStore.Record> records = new LinkedHashMap<>();
+    int skippedCount = 0;
+    for (Map.Entry<EntryKey<SignatureT>, BlockAbstraction> entry : completedEntries.entrySet()) {
+      EntryKey<SignatureT> key = entry.getKey();
+      ReachedSet reachedSet = entry.getValue().getReachedSet();
+      Set<EntryKey<SignatureT>> callees = calleeEntries.get(key);
+      if (!entry.getValue().getWaitlist().isEmpty() || isUnchangedSinceLoading(key, reachedSet)) {
+        // Incomplete block abstractions aren't persisted, unchanged loaded ones are still stored.
+        continue;
+      }
+      BamSummaryStore.Record record;
+      try {
+        if (callees == null) {
+          throw new IllegalArgumentException("Unknown callees of " + key.blockKey);
+        }
+        record =
+            new BamSummaryStore.Record(
+                key.blockKey.getFqn(),
+                contentHash(key.blockKey),
+                encode(key.stateKey),
+                encode(reachedSet.asCollection(), callees));
+      } catch (IllegalArgumentException e) {
+        skippedCount++;
+        continue;
+      }
+      records.put(new RecordKey(record), record);
+    }
+    if (skippedCount > 0) {
+      log.debug("Skipped {} block abstractions with unsupported states or callees", skippedCount);
+    }
+
+    Map<String, Long> currentContentHashes = new HashMap<>();
+    contentHashes.forEach((signature, hash) -> currentContentHashes.put(signature.getFqn(), hash));
+    store.forEach(
+        record -> {
+          Long currentContentHash = currentContentHashes.get(record.getBlockKey());
+          if (currentContentHash == null || currentContentHash == record.getContentHash()) {
+            records.putIfAbsent(new RecordKey(record), record);
+          }
+        });
+
+    BamSummaryStore.write(path, store.getFingerprint(), records.values());
+  }
+
+  // Private utility methods.
+
+  /**
+   * Returns whether the given reached set was loaded with the given key and still contains exactly
+   * the same state instances, e.g. no merge has replaced any of them.
+   */
+  private boolean isUnchangedSinceLoading(EntryKey<SignatureT> key, ReachedSet reachedSet) {
+    Set<AbstractState> states = loadedStates.get(key);
+    if (states == null) {
+      return false;
+    }
+    Collection<? extends AbstractState> currentStates = reachedSet.asCollection();
+    return currentStates.size() == states.size() && states.containsAll(currentStates);
+  }
+
+  /** Records the given block abstraction as a callee of the innermost block on the call stack. */
+  private void addCallee(EntryKey<SignatureT> key) {
+    EntryKey<SignatureT> callerKey = callStack.get().peek();
+    if (callerKey != null && !callerKey.equals(key)) {
+      calleeEntries.get(callerKey).add(key);
+    }
+  }
+
+  /**
+   * Loads the block abstraction with the given key together with the block abstractions of its
+   * transitive callees which are not in the delegate cache yet. Returns null, without loading
+   * anything, if any of them is missing from the store.
+   */
+  private BlockAbstraction load(EntryKey<SignatureT> key) {
+    Map<EntryKey<SignatureT>, Summary<SignatureT>> summaries = new LinkedHashMap<>();
+    Deque<EntryKey<SignatureT>> pendingKeys = new ArrayDeque<>();
+    pendingKeys.push(key);
+    while (!pendingKeys.isEmpty()) {
+      EntryKey<SignatureT> pendingKey = pendingKeys.pop();
+      if (summaries.containsKey(pendingKey)
+          || pendingKey != key
+              && delegate.get(pendingKey.stateKey, null, pendingKey.blockKey) != null) {
+        continue;
+      }
+      Summary<SignatureT> summary = read(pendingKey);
+      if (summary == null) {
+        return null;
+      }
+      summaries.put(pendingKey, summary);
+      summary.calleeKeys.forEach(pendingKeys::push);
+    }
+
+    summaries.forEach(
+        (summaryKey, summary) -> {
+          delegate.put(summaryKey.stateKey, null, summaryKey.blockKey, summary.blockAbstraction);
+          completedEntries.put(summaryKey, summary.blockAbstraction);
+          Set<AbstractState> states = Collections.newSetFromMap(new IdentityHashMap<>());
+          states.addAll(summary.blockAbstraction.getReachedSet().asCollection());
+          loadedStates.put(summaryKey, states);
+          calleeEntries
+              .computeIfAbsent(summaryKey, k -> ConcurrentHashMap.newKeySet())
+              .addAll(summary.calleeKeys);
+          loadCount.increment();
+        });
+    return summaries.get(key).blockAbstraction;
+  }
+
+  /** Reads the summary with the given key from the store, or returns null if it isn't there. */
+  private Summary<SignatureT> read(EntryKey<SignatureT> key) {
+    byte[] bytes;
+    try {
+      bytes = store.get(key.blockKey.getFqn(), contentHash(key.blockKey), encode(key.stateKey));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (bytes == null) {
+      return null;
+    }
+    ReachedSet reachedSet = reachedSetSupplier.get();
+    List<EntryKey<SignatureT>> calleeKeys = new ArrayList<>();
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      for (int count = input.readInt(); count > 0; count--) {
+        reachedSet.add(codec.readState(input));
+      }
+      for (int count = input.readInt(); count > 0; count--) {
+        AbstractState calleeState = codec.readState(input);
+        if (!(calleeState instanceof ProgramLocationDependent)) {
+          throw new IOException("The entry state of a callee has no program location");
+        }
+        calleeKeys.add(
+            new EntryKey<>(
+                (SignatureT)
+                    ((ProgramLocationDependent<?, ?, ?>) calleeState)
+                        .getProgramLocation()
+                        .getSignature(),
+                calleeState));
+      }
+    } catch (IOException e) {
+      log.debug("Cannot load the block abstraction of {}: {}", key.blockKey, e.getMessage());
+      return null;
+    }
+    return new Summary<>(
+        new BlockAbstraction(reachedSet, new IndexedBreadthFirstWaitlist()), calleeKeys);
+  }
+
+  private long contentHash(SignatureT blockKey) {
+    return contentHashes.computeIfAbsent(blockKey, contentHasher::applyAsLong);
+  }
+
+  private byte[] encode(AbstractState abstractState) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      codec.writeState(abstractState, output);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] encode(
+      Collection<? extends AbstractState> abstractStates,
+      Collection<EntryKey<SignatureT>> calleeKeys) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeInt(abstractStates.size());
+      for (AbstractState abstractState : abstractStates) {
+        codec.writeState(abstractState, output);
+      }
+      output.writeInt(calleeKeys.size());
+      for (EntryKey<SignatureT> calleeKey : calleeKeys) {
+        codec.writeState(calleeKey.stateKey, output);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** The key of a block abstraction with the default precision. */
+  private static final class EntryKey<SignatureT extends Signature> {
+
+    private final SignatureT blockKey;
+    private final AbstractState stateKey;
+
+    private EntryKey(SignatureT blockKey, AbstractState stateKey) {
+      this.blockKey = blockKey;
+      this.stateKey = stateKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof EntryKey)) {
+        return false;
+      }
+      EntryKey<?> other = (EntryKey<?>) o;
+      return blockKey.equals(other.blockKey) && stateKey.equals(other.stateKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(blockKey, stateKey);
+    }
+  }
+
+  /** A block abstraction read from the store, with the keys of its callees. */
+  private static final class Summary<SignatureT extends Signature> {
+
+    private final BlockAbstraction blockAbstraction;
+    private final List<EntryKey<SignatureT>> calleeKeys;
+
+    private Summary(BlockAbstraction blockAbstraction, List<EntryKey<SignatureT>> calleeKeys) {
+      this.blockAbstraction = blockAbstraction;
+      this.calleeKeys = calleeKeys;
+    }
+  }
+
+  /** The key of a store record. */
+  private static final class RecordKey {
+
+    private final String blockKey;
+    private final long contentHash;
+    private final ByteBuffer stateKey;
+
+    private RecordKey(BamSummaryStore.Record record) {
+      this.blockKey = record.getBlockKey();
+      this.contentHash = record.getContentHash();
+      this.stateKey = ByteBuffer.wrap(record.getStateKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof RecordKey)) {
+        return false;
+      }
+      RecordKey other = (RecordKey) o;
+      return blockKey.equals(other.blockKey)
+          && contentHash == other.contentHash
+          && stateKey.equals(other.stateKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(blockKey, contentHash, stateKey);
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A thread-safe implementation of {@link BamCache} which can bound the number of cached block
+ * abstractions. The entries are distributed over shards by their method signature, each shard
+ * being guarded by its own lock. When a shard exceeds its share of the maximum size, its least
+ * recently used entries are evicted.
+ *
+ * <p>Only complete block abstractions which are not in use can be evicted. Block abstractions with
+ * a non-empty waitlist and block abstractions pinned with {@link #pin(AbstractState, Precision,
+ * Signature)}, which the {@link BamTransferRelation} does for the blocks on its call stack, are
+ * kept, since the fixed point computation compares them with their next iterate and reads them for
+ * recursive calls. A shard may thus temporarily hold more entries than its share of the maximum
+ * size. An evicted block abstraction is simply recomputed the next time it is needed, so bounding
+ * the cache trades analysis time for memory. Consumers of the final results, e.g., via {@link
+ * #values()}, only see the entries which have not been evicted.
+ *
+ * <p>The cache counts hits, misses, and evictions of {@link #get(AbstractState, Precision,
+ * Signature)}. {@link proguard.analysis.cpa.defaults.BamCpaRun}s can use it by overriding {@link
+ * proguard.analysis.cpa.defaults.BamCpaRun#createCache()}.
+ */
+public class ShardedBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(ShardedBamCache.class);
+
+  /** The default number of shards. */
+  public static final int DEFAULT_SHARD_COUNT = 16;
+
+  private final List<Shard> shards;
+  private final int maximumShardSize;
+  private final AtomicInteger size = new AtomicInteger();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  /** Create an unbounded cache. */
+  public ShardedBamCache() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a cache holding at most approximately the given number of block abstractions.
+   *
+   * @param maximumSize the maximum number of cached block abstractions
+   */
+  public ShardedBamCache(int maximumSize) {
+    this(maximumSize, DEFAULT_SHARD_COUNT);
+  }
+
+  /**
+   * Create a cache holding at most approximately the given number of block abstractions.
+   *
+   * @param maximumSize the maximum number of cached block abstractions, which is evenly divided
+   *     among the shards
+   * @param shardCount the number of independently locked shards
+   */
+  public ShardedBamCache(int maximumSize, int shardCount) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("The maximum size must be positive (" + maximumSize + ")");
+    }
+    if (shardCount < 1) {
+      throw new IllegalArgumentException(
+          "The number of shards must be positive (" + shardCount + ")");
+    }
+    this.shards = new ArrayList<>(shardCount);
+    for (int index = 0; index < shardCount; index++) {
+      shards.add(new Shard());
+    }
+    this.maximumShardSize =
+        maximumSize == Integer.MAX_VALUE
+            ? Integer.MAX_VALUE
+            : Math.max(1, (maximumSize + shardCount - 1) / shardCount);
+  }
+
+  // implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    Shard shard = shardFor(blockKey);
+    synchronized (shard) {
+      shard.put(new CacheKey<>(blockKey, stateKey, precisionKey), blockAbstraction);
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    Shard shard = shardFor(blockKey);
+    BlockAbstraction blockAbstraction;
+    synchronized (shard) {
+      blockAbstraction = shard.entries.get(new CacheKey<>(blockKey, stateKey, precisionKey));
+    }
+    (blockAbstraction == null ? missCount : hitCount).increment();
+    return blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    Shard shard = shardFor(blockKey);
+    synchronized (shard) {
+      Map<Precision, Map<AbstractState, BlockAbstraction>> methodIndex =
+          shard.methodIndices.get(blockKey);
+      if (methodIndex == null) {
+        return Collections.emptyList();
+      }
+      Collection<BlockAbstraction> result = new ArrayList<>();
+      methodIndex.values().forEach(precisionIndex -> result.addAll(precisionIndex.values()));
+      return result;
+    }
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    Shard shard = shardFor(blockKey);
+    synchronized (shard) {
+      Map<Precision, Map<AbstractState, BlockAbstraction>> methodIndex =
+          shard.methodIndices.get(blockKey);
+      Map<AbstractState, BlockAbstraction> precisionIndex =
+          methodIndex == null ? null : methodIndex.get(precision);
+      return precisionIndex == null
+          ? Collections.emptySet()
+          : new LinkedHashSet<>(precisionIndex.values());
+    }
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    Collection<BlockAbstraction> result = new LinkedHashSet<>(size.get());
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        result.addAll(shard.entries.values());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    Set<SignatureT> result = new LinkedHashSet<>();
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        result.addAll(shard.methodIndices.keySet());
+      }
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  @Override
+  public void pin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    Shard shard = shardFor(blockKey);
+    synchronized (shard) {
+      shard.pinCounts.merge(new CacheKey<>(blockKey, stateKey, precisionKey), 1, Integer::sum);
+    }
+  }
+
+  @Override
+  public void unpin(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    Shard shard = shardFor(blockKey);
+    synchronized (shard) {
+      shard.pinCounts.computeIfPresent(
+          new CacheKey<>(blockKey, stateKey, precisionKey),
+          (key, count) -> count == 1 ? null : count - 1);
+      shard.evict();
+    }
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  /** Returns the number of lookups of a single block abstraction which found it. */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /** Returns the number of lookups of a single block abstraction which did not find it. */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /** Returns the number of block abstractions evicted because the cache was full. */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  // Private utility methods.
+
+  private Shard shardFor(SignatureT blockKey) {
+    int hash = blockKey.hashCode();
+    return shards.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.size());
+  }
+
+  /** A part of the cache with its own lock, recency order, and per-method indices. */
+  private final class Shard {
+
+    /** All entries of the shard, from the least to the most recently used. */
+    private final LinkedHashMap<CacheKey<SignatureT>, BlockAbstraction> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The entries of each method, grouped by precision. */
+    private final Map<SignatureT, Map<Precision, Map<AbstractState, BlockAbstraction>>>
+        methodIndices = new HashMap<>();
+
+    /** The number of pins of the keys in use, which may not have an entry yet. */
+    private final Map<CacheKey<SignatureT>, Integer> pinCounts = new HashMap<>();
+
+    private void put(CacheKey<SignatureT> key, BlockAbstraction blockAbstraction) {
+      if (entries.put(key, blockAbstraction) == null) {
+        log.trace("BamCacheSize: {}", size.incrementAndGet());
+      }
+      methodIndices
+          .computeIfAbsent(key.blockKey, k -> new HashMap<>())
+          .computeIfAbsent(key.precisionKey, k -> new HashMap<>())
+          .put(key.stateKey, blockAbstraction);
+      evict();
+    }
+
+    /** Evicts the least recently used entries which are not in use, while the shard is too big. */
+    private void evict() {
+      Iterator<Map.Entry<CacheKey<SignatureT>, BlockAbstraction>> iterator =
+          entries.entrySet().iterator();
+      while (entries.size() > maximumShardSize && iterator.hasNext()) {
+        Map.Entry<CacheKey<SignatureT>, BlockAbstraction> eldestEntry = iterator.next();
+        if (pinCounts.containsKey(eldestEntry.getKey())
+            || !eldestEntry.getValue().getWaitlist().isEmpty()) {
+          continue;
+        }
+        iterator.remove();
+        removeFromIndex(eldestEntry.getKey());
+        size.decrementAndGet();
+        evictionCount.increment();
+      }
+    }
+
+    private void removeFromIndex(CacheKey<SignatureT> key) {
+      Map<Precision, Map<AbstractState, BlockAbstraction>> methodIndex =
+          methodIndices.get(key.blockKey);
+      Map<AbstractState, BlockAbstraction> precisionIndex = methodIndex.get(key.precisionKey);
+      precisionIndex.remove(key.stateKey);
+      if (precisionIndex.isEmpty()) {
+        methodIndex.remove(key.precisionKey);
+        if (methodIndex.isEmpty()) {
+          methodIndices.remove(key.blockKey);
+        }
+      }
+    }
+  }
+
+  /** The key of a block abstraction, with its hash code precomputed. */
+  private static final class CacheKey<SignatureT extends Signature> {
+
+    private final SignatureT blockKey;
+    private final AbstractState stateKey;
+    private final Precision precisionKey;
+    private final int hashCode;
+
+    private CacheKey(SignatureT blockKey, AbstractState stateKey, Precision precisionKey) {
+      this.blockKey = blockKey;
+      this.stateKey = stateKey;
+      this.precisionKey = precisionKey;
+      this.hashCode = Objects.hash(blockKey, stateKey, precisionKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey<?> other = (CacheKey<?>) o;
+      return hashCode == other.hashCode
+          && blockKey.equals(other.blockKey)
+          && Objects.equals(stateKey, other.stateKey)
+          && Objects.equals(precisionKey, other.precisionKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.jetbrains.annotations.NotNull;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This is a base class for {@link Waitlist}s which keep their abstract states in insertion order
+ * in a doubly linked list indexed by a hash map. Like a {@link java.util.LinkedHashSet}, adding an
+ * abstract state which is already present does not change its position. Adding, removing, and
+ * popping from either end take constant time, regardless of the size of the waitlist.
+ */
+public abstract class AbstractIndexedWaitlist implements Waitlist {
+
+  private final Map<AbstractState, Node> index = new HashMap<>();
+  private Node first;
+  private Node last;
+  private int modificationCount;
+
+  // implementations for Waitlist
+
+  @Override
+  public void add(AbstractState abstractState) {
+    if (index.containsKey(abstractState)) {
+      return;
+    }
+    Node node = new Node(abstractState);
+    index.put(abstractState, node);
+    if (last == null) {
+      first = node;
+    } else {
+      last.next = node;
+      node.previous = last;
+    }
+    last = node;
+    modificationCount++;
+  }
+
+  @Override
+  public void addAll(Collection<? extends AbstractState> abstractStates) {
+    for (AbstractState abstractState : abstractStates) {
+      add(abstractState);
+    }
+  }
+
+  @Override
+  public void clear() {
+    index.clear();
+    first = null;
+    last = null;
+    modificationCount++;
+  }
+
+  @Override
+  public boolean contains(AbstractState abstractState) {
+    return index.containsKey(abstractState);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return index.isEmpty();
+  }
+
+  @Override
+  public boolean remove(AbstractState abstractState) {
+    Node node = index.remove(abstractState);
+    if (node == null) {
+      return false;
+    }
+    unlink(node);
+    return true;
+  }
+
+  @Override
+  public void removeAll(Collection<?> abstractStates) {
+    for (Object abstractState : abstractStates) {
+      if (abstractState instanceof AbstractState) {
+        remove((AbstractState) abstractState);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  // implementations for Iterable
+
+  @NotNull
+  @Override
+  public Iterator<AbstractState> iterator() {
+    return new Iterator<AbstractState>() {
+      private Node next = first;
+      private Node lastReturned;
+      private int expectedModificationCount = modificationCount;
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public AbstractState next() {
+        checkForComodification();
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        lastReturned = next;
+        next = next.next;
+        return lastReturned.abstractState;
+      }
+
+      @Override
+      public void remove() {
+        if (lastReturned == null) {
+          throw new IllegalStateException();
+        }
+        checkForComodification();
+        AbstractIndexedWaitlist.this.remove(lastReturned.abstractState);
+        lastReturned = null;
+        expectedModificationCount = modificationCount;
+      }
+
+      private void checkForComodification() {
+        if (modificationCount != expectedModificationCount) {
+          throw new ConcurrentModificationException();
+        }
+      }
+    };
+  }
+
+  /** Removes the abstract state which was added first and returns it. */
+  protected AbstractState popFirst() {
+    return pop(first);
+  }
+
+  /** Removes the abstract state which was added last and returns it. */
+  protected AbstractState popLast() {
+    return pop(last);
+  }
+
+  // Private utility methods.
+
+  private AbstractState pop(Node node) {
+    if (node == null) {
+      throw new NoSuchElementException("The waitlist is empty");
+    }
+    index.remove(node.abstractState);
+    unlink(node);
+    return node.abstractState;
+  }
+
+  private void unlink(Node node) {
+    if (node.previous == null) {
+      first = node.next;
+    } else {
+      node.previous.next = node.next;
+    }
+    if (node.next == null) {
+      last = node.previous;
+    } else {
+      node.next.previous = node.previous;
+    }
+    modificationCount++;
+  }
+
+  private static final class Node {
+
+    private final AbstractState abstractState;
+    private Node previous;
+    private Node next;
+
+    private Node(AbstractState abstractState) {
+      this.abstractState = abstractState;
+    }
+  }
+}
@@ -18,13 +18,16 @@
 
 package proguard.analysis.cpa.defaults;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.function.Function;
 import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BamCacheImpl;
 import proguard.analysis.cpa.bam.BamCpa;
 import proguard.analysis.cpa.bam.CpaWithBamOperators;
 import proguard.analysis.cpa.bam.ExpandOperator;
 import proguard.analysis.cpa.bam.NoOpRebuildOperator;
+import proguard.analysis.cpa.bam.ParallelBamSummarizer;
 import proguard.analysis.cpa.bam.RebuildOperator;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.interfaces.AbortOperator;
@@ -134,6 +137,38 @@ public abstract class BamCpaRun<
     return getCpa().getCache().getAllMethods();
   }
 
+  /**
+   * Summarizes the given methods for the given entry states with a {@link ParallelBamSummarizer},
+   * processing the strongly connected components of the call graph bottom-up in parallel. The
+   * block abstractions are published to the cache of the BAM CPA, so that a subsequent {@link
+   * #execute()} can reuse them instead of computing them sequentially.
+   *
+   * <p>The summarized block abstractions are analyzed up to the maximum call stack depth from the
+   * summarized method rather than from the main method.
+   *
+   * @param methods the methods to summarize
+   * @param entryStates the entry states for which each method is summarized
+   * @param parallelism the number of worker threads
+   */
+  public void summarizeInParallel(
+      Collection<SignatureT> methods,
+      Function<SignatureT, ? extends Collection<? extends AbstractState>> entryStates,
+      int parallelism) {
+    new ParallelBamSummarizer<>(
+            () ->
+                new CpaWithBamOperators<>(
+                    createIntraproceduralCPA(),
+                    createReduceOperator(),
+                    createExpandOperator(),
+                    createRebuildOperator()),
+            getCfa(),
+            getCpa().getCache(),
+            getMaxCallStackDepth(),
+            abortOperator,
+            parallelism)
+        .summarize(methods, entryStates);
+  }
+
   /**
    * A builder for {@link BamCpaRun}. It assumes either the best performing parameters or the most
    * basic one, if there is no absolute benefit.
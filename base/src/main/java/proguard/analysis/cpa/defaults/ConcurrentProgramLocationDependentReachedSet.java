@@ -0,0 +1,125 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.CfaEdge;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.classfile.Signature;
+
+/**
+ * This thread safe {@link ReachedSet} stores {@link ProgramLocationDependent} {@link
+ * AbstractState}s in separate bins per {@link CfaNode}, like the {@link
+ * ProgramLocationDependentReachedSet}. The bins are synchronized sets, so that states belonging to
+ * different program locations can be added and removed concurrently, e.g., by the {@link
+ * ParallelCpaAlgorithm}.
+ *
+ * <p>The collections returned by {@link #getReached(CfaNode)} are the live bins. As with {@link
+ * Collections#synchronizedSet(Set)}, callers need to synchronize on them while iterating over
+ * them in a concurrent setting.
+ */
+public final class ConcurrentProgramLocationDependentReachedSet<
+        CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
+        CfaEdgeT extends CfaEdge<CfaNodeT>,
+        AbstractStateT extends
+            AbstractState & ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>,
+        SignatureT extends Signature>
+    implements ReachedSet {
+
+  private final ConcurrentMap<CfaNodeT, Set<AbstractStateT>> locationToStates =
+      new ConcurrentHashMap<>();
+
+  // implementations for ReachedSet
+
+  @Override
+  public boolean add(AbstractState abstractState) {
+    AbstractStateT state = (AbstractStateT) abstractState;
+    return getBin(state.getProgramLocation()).add(state);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends AbstractState> abstractStates) {
+    boolean result = false;
+
+    for (AbstractState state : abstractStates) {
+      result |= add(state);
+    }
+
+    return result;
+  }
+
+  @Override
+  public boolean remove(AbstractState abstractState) {
+    AbstractStateT state = (AbstractStateT) abstractState;
+    Set<AbstractStateT> bin = locationToStates.get(state.getProgramLocation());
+    return bin != null && bin.remove(state);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> abstractStates) {
+    boolean result = false;
+
+    for (Object state : abstractStates) {
+      result |= remove((AbstractState) state);
+    }
+
+    return result;
+  }
+
+  /** Returns a snapshot of all reached states. */
+  @Override
+  public Collection<AbstractStateT> asCollection() {
+    Set<AbstractStateT> result = new LinkedHashSet<>();
+    for (Set<AbstractStateT> bin : locationToStates.values()) {
+      synchronized (bin) {
+        result.addAll(bin);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Collection<AbstractStateT> getReached(AbstractState abstractState) {
+    return getReached(((AbstractStateT) abstractState).getProgramLocation());
+  }
+
+  /**
+   * Returns the synchronized collection of abstract states belonging to the given {@code
+   * location}. The returned collection is also the lock guarding the states at that location.
+   */
+  public Collection<AbstractStateT> getReached(CfaNodeT location) {
+    return getBin(location);
+  }
+
+  // Private utility methods.
+
+  private Set<AbstractStateT> getBin(CfaNodeT location) {
+    return locationToStates.computeIfAbsent(
+        location, x -> Collections.synchronizedSet(new LinkedHashSet<>()));
+  }
+}
@@ -19,6 +19,7 @@
 package proguard.analysis.cpa.defaults;
 
 import java.util.Collection;
+import proguard.analysis.Metrics;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractState;
@@ -49,7 +50,13 @@ public abstract class CpaRun<
     Collection<AbstractStateT> initialStates = getInitialStates();
     waitList.addAll(initialStates);
     reachedSet.addAll(initialStates);
-    cpaAlgorithm.run(reachedSet, waitList, getAbortOperator());
+    Metrics.Timer timer = Metrics.getTimer(Metrics.TimerType.CPA_RUN);
+    long startTime = timer.start();
+    try {
+      cpaAlgorithm.run(reachedSet, waitList, getAbortOperator());
+    } finally {
+      timer.recordSince(startTime);
+    }
     return reachedSet;
   }
 
@@ -60,7 +67,7 @@ public abstract class CpaRun<
 
   /** Returns an empty {@link Waitlist}. */
   protected Waitlist createWaitlist() {
-    return new BreadthFirstWaitlist();
+    return new IndexedBreadthFirstWaitlist();
   }
 
   /** Returns a collection of initial {@link AbstractState}s. */
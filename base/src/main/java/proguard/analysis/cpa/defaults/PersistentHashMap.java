@@ -0,0 +1,611 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A map backed by an immutable hash array mapped trie. Every modification replaces the trie by a
+ * new one which shares all unmodified nodes with the old one, so copying the map with {@link
+ * #PersistentHashMap(Map)} takes constant time if the argument is a {@link PersistentHashMap}.
+ *
+ * <p>The map does not permit {@code null} keys.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+  private static final int SHIFT = 5;
+  private static final int MASK = (1 << SHIFT) - 1;
+
+  private Node root;
+
+  /** Create an empty persistent hash map. */
+  public PersistentHashMap() {
+    root = BitmapNode.EMPTY;
+  }
+
+  /**
+   * Create a persistent hash map from another map.
+   *
+   * @param m map which elements are used for initialization, if it is a persistent hash map, its
+   *     trie is shared
+   */
+  public PersistentHashMap(Map<? extends K, ? extends V> m) {
+    if (m instanceof PersistentHashMap) {
+      root = ((PersistentHashMap<?, ?>) m).root;
+    } else {
+      root = BitmapNode.EMPTY;
+      putAll(m);
+    }
+  }
+
+  // implementations for Map
+
+  @Override
+  public int size() {
+    return root.size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root.size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key != null && root.find(0, hash(key), key) != null;
+  }
+
+  @Override
+  public V get(Object key) {
+    if (key == null) {
+      return null;
+    }
+    Object[] entry = root.find(0, hash(key), key);
+    return entry == null ? null : (V) entry[1];
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Objects.requireNonNull(key, "Persistent hash maps do not support null keys");
+    int hash = hash(key);
+    Object[] entry = root.find(0, hash, key);
+    root = root.put(0, hash, key, value);
+    return entry == null ? null : (V) entry[1];
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (key == null) {
+      return null;
+    }
+    int hash = hash(key);
+    Object[] entry = root.find(0, hash, key);
+    if (entry == null) {
+      return null;
+    }
+    root = root.remove(0, hash, key);
+    return (V) entry[1];
+  }
+
+  @Override
+  public void clear() {
+    root = BitmapNode.EMPTY;
+  }
+
+  @NotNull
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new EntrySet();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof PersistentHashMap && ((PersistentHashMap<?, ?>) o).root == root) {
+      return true;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  /** Returns whether both maps share the same trie, which implies that they are equal. */
+  protected boolean sharesStructureWith(PersistentHashMap<?, ?> other) {
+    return root == other.root;
+  }
+
+  /**
+   * Replaces the content of this map by the union of this map and {@code other}. The values of
+   * keys present in both maps are combined with {@code joinValues}, called with the value of this
+   * map first. Subtries shared by both maps are not traversed, hence {@code joinValues} must be
+   * idempotent. If a combined value is equal to the value in {@code other}, the latter is kept.
+   *
+   * @return whether the content of this map is now structurally identical to {@code other}
+   */
+  protected boolean joinWith(PersistentHashMap<K, V> other, BinaryOperator<V> joinValues) {
+    root = join(0, root, other.root, (BinaryOperator<Object>) joinValues);
+    return root == other.root;
+  }
+
+  // Private utility methods.
+
+  private static int hash(Object key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int bitPosition(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  /**
+   * Returns the union of the nodes {@code left} and {@code right} at the given level, reusing
+   * {@code right} and its subtries where possible.
+   */
+  private static Node join(int shift, Node left, Node right, BinaryOperator<Object> joinValues) {
+    if (left == right || left.size == 0) {
+      return right;
+    }
+    if (right.size == 0) {
+      return left;
+    }
+    if (!(left instanceof BitmapNode) || !(right instanceof BitmapNode)) {
+      // Fall back to inserting the entries of the left node one by one.
+      Node[] result = {right};
+      left.forEachEntry(
+          (key, value) -> {
+            int hash = hash(key);
+            Object[] rightEntry = result[0].find(shift, hash, key);
+            Object joinedValue =
+                rightEntry == null ? value : joinValue(value, rightEntry[1], joinValues);
+            if (rightEntry == null || joinedValue != rightEntry[1]) {
+              result[0] = result[0].put(shift, hash, key, joinedValue);
+            }
+          });
+      return result[0];
+    }
+
+    BitmapNode leftNode = (BitmapNode) left;
+    BitmapNode rightNode = (BitmapNode) right;
+    int bitmap = leftNode.bitmap | rightNode.bitmap;
+    Object[] array = new Object[2 * Integer.bitCount(bitmap)];
+    boolean sameAsRight = bitmap == rightNode.bitmap;
+    int index = 0;
+    for (int bits = bitmap; bits != 0; bits &= bits - 1) {
+      int bit = bits & -bits;
+      boolean inLeft = (leftNode.bitmap & bit) != 0;
+      boolean inRight = (rightNode.bitmap & bit) != 0;
+      int leftIndex = 2 * leftNode.index(bit);
+      int rightIndex = 2 * rightNode.index(bit);
+      Object key;
+      Object valueOrNode;
+      if (!inLeft) {
+        key = rightNode.array[rightIndex];
+        valueOrNode = rightNode.array[rightIndex + 1];
+      } else if (!inRight) {
+        key = leftNode.array[leftIndex];
+        valueOrNode = leftNode.array[leftIndex + 1];
+      } else {
+        Object leftKey = leftNode.array[leftIndex];
+        Object rightKey = rightNode.array[rightIndex];
+        Object leftValueOrNode = leftNode.array[leftIndex + 1];
+        Object rightValueOrNode = rightNode.array[rightIndex + 1];
+        if (leftKey != null && leftKey.equals(rightKey)) {
+          key = rightKey;
+          valueOrNode = joinValue(leftValueOrNode, rightValueOrNode, joinValues);
+        } else if (leftKey != null && rightKey != null) {
+          key = null;
+          valueOrNode =
+              BitmapNode.createNode(
+                  shift + SHIFT,
+                  rightKey,
+                  rightValueOrNode,
+                  hash(leftKey),
+                  leftKey,
+                  leftValueOrNode);
+        } else {
+          key = null;
+          valueOrNode =
+              join(
+                  shift + SHIFT,
+                  toNode(shift + SHIFT, leftKey, leftValueOrNode),
+                  toNode(shift + SHIFT, rightKey, rightValueOrNode),
+                  joinValues);
+        }
+        sameAsRight &= key == rightKey && valueOrNode == rightValueOrNode;
+      }
+      array[index++] = key;
+      array[index++] = valueOrNode;
+    }
+    return sameAsRight ? rightNode : new BitmapNode(bitmap, array);
+  }
+
+  private static Object joinValue(
+      Object leftValue, Object rightValue, BinaryOperator<Object> joinValues) {
+    if (leftValue == rightValue) {
+      return rightValue;
+    }
+    Object joinedValue = joinValues.apply(leftValue, rightValue);
+    return Objects.equals(joinedValue, rightValue) ? rightValue : joinedValue;
+  }
+
+  /** Returns the given slot content as a node at the given level. */
+  private static Node toNode(int shift, Object key, Object valueOrNode) {
+    return key == null
+        ? (Node) valueOrNode
+        : BitmapNode.EMPTY.put(shift, hash(key), key, valueOrNode);
+  }
+
+  private abstract static class Node {
+
+    /** The number of entries in the subtrie. */
+    protected final int size;
+
+    protected Node(int size) {
+      this.size = size;
+    }
+
+    /** Returns the key value pair for the given key or {@code null}. */
+    abstract Object[] find(int shift, int hash, Object key);
+
+    abstract Node put(int shift, int hash, Object key, Object value);
+
+    abstract Node remove(int shift, int hash, Object key);
+
+    abstract void forEachEntry(EntryConsumer consumer);
+  }
+
+  private interface EntryConsumer {
+    void accept(Object key, Object value);
+  }
+
+  /**
+   * An inner node. The array contains a key and a value for every bit in the bitmap, or {@code
+   * null} and the child node if several keys share the hash bits of this level.
+   */
+  private static final class BitmapNode extends Node {
+
+    private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] array;
+
+    private BitmapNode(int bitmap, Object[] array) {
+      super(size(array));
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    private static int size(Object[] array) {
+      int size = 0;
+      for (int index = 0; index < array.length; index += 2) {
+        size += array[index] == null ? ((Node) array[index + 1]).size : 1;
+      }
+      return size;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Object[] find(int shift, int hash, Object key) {
+      int bit = bitPosition(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      int index = 2 * index(bit);
+      Object keyOrNull = array[index];
+      if (keyOrNull == null) {
+        return ((Node) array[index + 1]).find(shift + SHIFT, hash, key);
+      }
+      return key.equals(keyOrNull) ? new Object[] {keyOrNull, array[index + 1]} : null;
+    }
+
+    @Override
+    Node put(int shift, int hash, Object key, Object value) {
+      int bit = bitPosition(hash, shift);
+      int index = 2 * index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, index);
+        newArray[index] = key;
+        newArray[index + 1] = value;
+        System.arraycopy(array, index, newArray, index + 2, array.length - index);
+        return new BitmapNode(bitmap | bit, newArray);
+      }
+      Object keyOrNull = array[index];
+      Object valueOrNode = array[index + 1];
+      if (keyOrNull == null) {
+        Node child = ((Node) valueOrNode).put(shift + SHIFT, hash, key, value);
+        return child == valueOrNode ? this : new BitmapNode(bitmap, set(index + 1, child));
+      }
+      if (key.equals(keyOrNull)) {
+        return value == valueOrNode ? this : new BitmapNode(bitmap, set(index + 1, value));
+      }
+      Node child = createNode(shift + SHIFT, keyOrNull, valueOrNode, hash, key, value);
+      Object[] newArray = set(index + 1, child);
+      newArray[index] = null;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    @Override
+    Node remove(int shift, int hash, Object key) {
+      int bit = bitPosition(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = 2 * index(bit);
+      Object keyOrNull = array[index];
+      if (keyOrNull == null) {
+        Node child = ((Node) array[index + 1]).remove(shift + SHIFT, hash, key);
+        if (child == array[index + 1]) {
+          return this;
+        }
+        if (child.size > 0) {
+          return new BitmapNode(bitmap, set(index + 1, child));
+        }
+      } else if (!key.equals(keyOrNull)) {
+        return this;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+      return newArray.length == 0 ? EMPTY : new BitmapNode(bitmap ^ bit, newArray);
+    }
+
+    @Override
+    void forEachEntry(EntryConsumer consumer) {
+      for (int index = 0; index < array.length; index += 2) {
+        if (array[index] == null) {
+          ((Node) array[index + 1]).forEachEntry(consumer);
+        } else {
+          consumer.accept(array[index], array[index + 1]);
+        }
+      }
+    }
+
+    private Object[] set(int index, Object element) {
+      Object[] newArray = array.clone();
+      newArray[index] = element;
+      return newArray;
+    }
+
+    private static Node createNode(
+        int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+      int hash1 = hash(key1);
+      if (hash1 == hash2) {
+        return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+      }
+      return EMPTY.put(shift, hash1, key1, value1).put(shift, hash2, key2, value2);
+    }
+  }
+
+  /** A leaf with keys which have identical hashes. */
+  private static final class CollisionNode extends Node {
+
+    private final int hash;
+    private final Object[] array;
+
+    private CollisionNode(int hash, Object[] array) {
+      super(array.length / 2);
+      this.hash = hash;
+      this.array = array;
+    }
+
+    private int indexOf(Object key) {
+      for (int index = 0; index < array.length; index += 2) {
+        if (key.equals(array[index])) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object[] find(int shift, int hash, Object key) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      return index < 0 ? null : new Object[] {array[index], array[index + 1]};
+    }
+
+    @Override
+    Node put(int shift, int hash, Object key, Object value) {
+      if (hash != this.hash) {
+        // Nest this node in a bitmap node which distinguishes the hashes.
+        return new BitmapNode(bitPosition(this.hash, shift), new Object[] {null, this})
+            .put(shift, hash, key, value);
+      }
+      int index = indexOf(key);
+      if (index >= 0) {
+        if (array[index + 1] == value) {
+          return this;
+        }
+        Object[] newArray = array.clone();
+        newArray[index + 1] = value;
+        return new CollisionNode(hash, newArray);
+      }
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    Node remove(int shift, int hash, Object key) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      if (index < 0) {
+        return this;
+      }
+      if (array.length == 2) {
+        return BitmapNode.EMPTY;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    void forEachEntry(EntryConsumer consumer) {
+      for (int index = 0; index < array.length; index += 2) {
+        consumer.accept(array[index], array[index + 1]);
+      }
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+    @NotNull
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+      return new EntryIterator(root);
+    }
+
+    @Override
+    public int size() {
+      return PersistentHashMap.this.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?, ?> entry = (Entry<?, ?>) o;
+      return containsKey(entry.getKey()) && Objects.equals(get(entry.getKey()), entry.getValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!contains(o)) {
+        return false;
+      }
+      PersistentHashMap.this.remove(((Entry<?, ?>) o).getKey());
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      PersistentHashMap.this.clear();
+    }
+  }
+
+  /** Iterates over a snapshot of the trie. Modifications write through to the map. */
+  private class EntryIterator implements Iterator<Entry<K, V>> {
+
+    private final Deque<Object[]> arrays = new ArrayDeque<>();
+    private final Deque<Integer> indices = new ArrayDeque<>();
+    private Object[] currentArray;
+    private int currentIndex;
+    private Entry<K, V> next;
+    private Entry<K, V> last;
+
+    private EntryIterator(Node root) {
+      push(root);
+      advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      advance();
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      PersistentHashMap.this.remove(last.getKey());
+      last = null;
+    }
+
+    private void push(Node node) {
+      if (currentArray != null) {
+        arrays.push(currentArray);
+        indices.push(currentIndex);
+      }
+      currentArray =
+          node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array;
+      currentIndex = 0;
+    }
+
+    private void advance() {
+      while (true) {
+        if (currentIndex >= currentArray.length) {
+          if (arrays.isEmpty()) {
+            next = null;
+            return;
+          }
+          currentArray = arrays.pop();
+          currentIndex = indices.pop();
+          continue;
+        }
+        Object key = currentArray[currentIndex];
+        Object valueOrNode = currentArray[currentIndex + 1];
+        currentIndex += 2;
+        if (key == null) {
+          push((Node) valueOrNode);
+        } else {
+          next = new MapEntry((K) key, (V) valueOrNode);
+          return;
+        }
+      }
+    }
+  }
+
+  /** An entry which writes value updates through to the map. */
+  private class MapEntry extends SimpleEntry<K, V> {
+
+    private MapEntry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+}
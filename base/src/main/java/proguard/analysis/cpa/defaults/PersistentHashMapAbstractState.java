@@ -0,0 +1,81 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.Map;
+
+/**
+ * This {@link PersistentHashMapAbstractState} represents a map to {@link LatticeAbstractState}s
+ * with the semilattice operators lifted to the map, like the {@link HashMapAbstractState}. Since
+ * it is backed by a {@link PersistentHashMap}, {@link #copy()} takes constant time and the join
+ * and the partial order skip the subtries both maps share.
+ */
+public class PersistentHashMapAbstractState<
+        KeyT, AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+    extends PersistentHashMap<KeyT, AbstractSpaceT>
+    implements MapAbstractState<KeyT, AbstractSpaceT> {
+
+  /** Create an empty persistent hash map abstract state. */
+  public PersistentHashMapAbstractState() {}
+
+  /**
+   * Create a persistent hash map abstract state from another map.
+   *
+   * @param m map which elements are used for initialization
+   */
+  public PersistentHashMapAbstractState(Map<? extends KeyT, ? extends AbstractSpaceT> m) {
+    super(m);
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public MapAbstractState<KeyT, AbstractSpaceT> join(
+      MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    if (!(abstractState instanceof PersistentHashMapAbstractState)) {
+      return MapAbstractState.super.join(abstractState);
+    }
+    PersistentHashMapAbstractState<KeyT, AbstractSpaceT> other =
+        (PersistentHashMapAbstractState<KeyT, AbstractSpaceT>) abstractState;
+    if (this == other || sharesStructureWith(other)) {
+      return this;
+    }
+    PersistentHashMapAbstractState<KeyT, AbstractSpaceT> joinResult = copy();
+    if (joinResult.joinWith(other, LatticeAbstractState::join)) {
+      return other;
+    }
+    return equals(joinResult) ? this : joinResult;
+  }
+
+  @Override
+  public boolean isLessOrEqual(MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    if (abstractState instanceof PersistentHashMap
+        && sharesStructureWith((PersistentHashMap<?, ?>) abstractState)) {
+      return true;
+    }
+    return MapAbstractState.super.isLessOrEqual(abstractState);
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public PersistentHashMapAbstractState<KeyT, AbstractSpaceT> copy() {
+    return new PersistentHashMapAbstractState<>(this);
+  }
+}
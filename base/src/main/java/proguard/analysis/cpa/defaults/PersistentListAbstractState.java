@@ -0,0 +1,227 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * This {@link PersistentListAbstractState} represents a list of {@link LatticeAbstractState}s with
+ * the semilattice operators lifted to the list, like the {@link ListAbstractState}. The elements
+ * are stored in a {@link PersistentVector}, so {@link #copy()} takes constant time and the copies
+ * share their structure until they are modified. The join skips the chunks both lists share.
+ *
+ * <p>Only appending and removing the last element are supported as structural modifications.
+ */
+public class PersistentListAbstractState<
+        AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+    extends AbstractList<AbstractSpaceT>
+    implements LatticeAbstractState<PersistentListAbstractState<AbstractSpaceT>> {
+
+  private PersistentVector<AbstractSpaceT> elements;
+
+  /** Create an empty list abstract state. */
+  public PersistentListAbstractState() {
+    this(PersistentVector.empty());
+  }
+
+  /**
+   * Create a list abstract state with the given elements.
+   *
+   * @param elements the initial elements
+   */
+  public PersistentListAbstractState(List<? extends AbstractSpaceT> elements) {
+    this();
+    addAll(elements);
+  }
+
+  private PersistentListAbstractState(PersistentVector<AbstractSpaceT> elements) {
+    this.elements = elements;
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public PersistentListAbstractState<AbstractSpaceT> join(
+      PersistentListAbstractState<AbstractSpaceT> abstractState) {
+    if (this == abstractState || elements == abstractState.elements) {
+      return this;
+    }
+    PersistentListAbstractState<AbstractSpaceT> shorterState;
+    PersistentListAbstractState<AbstractSpaceT> longerState;
+    if (size() > abstractState.size()) {
+      shorterState = abstractState;
+      longerState = this;
+    } else {
+      shorterState = this;
+      longerState = abstractState;
+    }
+    PersistentVector<AbstractSpaceT> joinResult =
+        joinElements(shorterState.elements, longerState.elements, 0);
+    return joinResult == longerState.elements
+        ? longerState
+        : new PersistentListAbstractState<>(joinResult);
+  }
+
+  @Override
+  public boolean isLessOrEqual(PersistentListAbstractState<AbstractSpaceT> abstractState) {
+    return size() <= abstractState.size()
+        && isLessOrEqual(elements, abstractState.elements, 0);
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public PersistentListAbstractState<AbstractSpaceT> copy() {
+    return new PersistentListAbstractState<>(elements);
+  }
+
+  // implementations for List
+
+  @Override
+  public AbstractSpaceT get(int index) {
+    return elements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  @Override
+  public AbstractSpaceT set(int index, AbstractSpaceT element) {
+    AbstractSpaceT previous = elements.get(index);
+    elements = elements.set(index, element);
+    return previous;
+  }
+
+  @Override
+  public void add(int index, AbstractSpaceT element) {
+    if (index != size()) {
+      throw new UnsupportedOperationException("Only appending elements is supported");
+    }
+    elements = elements.push(element);
+    modCount++;
+  }
+
+  @Override
+  public AbstractSpaceT remove(int index) {
+    if (index != size() - 1) {
+      throw new UnsupportedOperationException("Only removing the last element is supported");
+    }
+    AbstractSpaceT previous = elements.last();
+    elements = elements.pop();
+    modCount++;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    elements = PersistentVector.empty();
+    modCount++;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof PersistentListAbstractState) {
+      return elements.contentEquals(((PersistentListAbstractState<?>) o).elements);
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  /**
+   * Returns the abstract state at {@code index}, if present, returns the {@code defaultState}
+   * otherwise.
+   */
+  public AbstractSpaceT getOrDefault(int index, AbstractSpaceT defaultState) {
+    return index < size() ? get(index) : defaultState;
+  }
+
+  /**
+   * Sets an element at {@code index} to {@code elem}. Extends its length and pads with {@code
+   * defaultState}, if necessary.
+   */
+  public AbstractSpaceT set(int index, AbstractSpaceT element, AbstractSpaceT defaultState) {
+    while (index >= size()) {
+      add(defaultState);
+    }
+    return set(index, element);
+  }
+
+  // Utility methods shared with the PersistentStackAbstractState.
+
+  /**
+   * Returns {@code longer} with its elements at positions {@code offset} to {@code offset +
+   * shorter.size()} joined with the elements of {@code shorter}. Chunks which both vectors share
+   * are skipped, since the join is idempotent.
+   */
+  static <AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+      PersistentVector<AbstractSpaceT> joinElements(
+          PersistentVector<AbstractSpaceT> shorter,
+          PersistentVector<AbstractSpaceT> longer,
+          int offset) {
+    PersistentVector<AbstractSpaceT> result = longer;
+    for (int chunkStart = 0;
+        chunkStart < shorter.size();
+        chunkStart += PersistentVector.CHUNK_SIZE) {
+      if (offset == 0 && shorter.chunkFor(chunkStart) == longer.chunkFor(chunkStart)) {
+        continue;
+      }
+      int chunkEnd = Math.min(chunkStart + PersistentVector.CHUNK_SIZE, shorter.size());
+      for (int index = chunkStart; index < chunkEnd; index++) {
+        AbstractSpaceT shorterElement = shorter.get(index);
+        AbstractSpaceT longerElement = longer.get(index + offset);
+        AbstractSpaceT joinedElement = shorterElement.join(longerElement);
+        if (joinedElement != longerElement && !joinedElement.equals(longerElement)) {
+          result = result.set(index + offset, joinedElement);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether the elements of {@code smaller} are less or equal to the elements of {@code
+   * greater} at positions {@code offset} to {@code offset + smaller.size()}.
+   */
+  static <AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>> boolean isLessOrEqual(
+      PersistentVector<AbstractSpaceT> smaller,
+      PersistentVector<AbstractSpaceT> greater,
+      int offset) {
+    for (int chunkStart = 0;
+        chunkStart < smaller.size();
+        chunkStart += PersistentVector.CHUNK_SIZE) {
+      if (offset == 0 && smaller.chunkFor(chunkStart) == greater.chunkFor(chunkStart)) {
+        continue;
+      }
+      int chunkEnd = Math.min(chunkStart + PersistentVector.CHUNK_SIZE, smaller.size());
+      for (int index = chunkStart; index < chunkEnd; index++) {
+        if (!smaller.get(index).isLessOrEqual(greater.get(index + offset))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.AbstractList;
+import java.util.EmptyStackException;
+import java.util.List;
+
+/**
+ * This {@link PersistentStackAbstractState} represents a stack of {@link LatticeAbstractState}s
+ * with the semilattice operators lifted to the stack, like the {@link StackAbstractState}. The
+ * elements are stored bottom to top in a {@link PersistentVector}, so {@link #copy()} takes
+ * constant time and the copies share their structure until they are modified. The join skips the
+ * chunks both stacks share.
+ *
+ * <p>Only pushing and popping are supported as structural modifications.
+ */
+public class PersistentStackAbstractState<
+        AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+    extends AbstractList<AbstractSpaceT>
+    implements LatticeAbstractState<PersistentStackAbstractState<AbstractSpaceT>> {
+
+  private PersistentVector<AbstractSpaceT> elements;
+
+  /** Create an empty stack abstract state. */
+  public PersistentStackAbstractState() {
+    this(PersistentVector.empty());
+  }
+
+  /**
+   * Create a stack abstract state with the given elements, the last one being the top.
+   *
+   * @param elements the initial elements
+   */
+  public PersistentStackAbstractState(List<? extends AbstractSpaceT> elements) {
+    this();
+    addAll(elements);
+  }
+
+  private PersistentStackAbstractState(PersistentVector<AbstractSpaceT> elements) {
+    this.elements = elements;
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public PersistentStackAbstractState<AbstractSpaceT> join(
+      PersistentStackAbstractState<AbstractSpaceT> abstractState) {
+    if (this == abstractState || elements == abstractState.elements) {
+      return this;
+    }
+    PersistentStackAbstractState<AbstractSpaceT> shorterState;
+    PersistentStackAbstractState<AbstractSpaceT> longerState;
+    if (size() > abstractState.size()) {
+      shorterState = abstractState;
+      longerState = this;
+    } else {
+      shorterState = this;
+      longerState = abstractState;
+    }
+    // The stacks are aligned at their tops.
+    PersistentVector<AbstractSpaceT> joinResult =
+        PersistentListAbstractState.joinElements(
+            shorterState.elements,
+            longerState.elements,
+            longerState.size() - shorterState.size());
+    return joinResult == longerState.elements
+        ? longerState
+        : new PersistentStackAbstractState<>(joinResult);
+  }
+
+  @Override
+  public boolean isLessOrEqual(PersistentStackAbstractState<AbstractSpaceT> abstractState) {
+    int sizeDifference = abstractState.size() - size();
+    return sizeDifference >= 0
+        && PersistentListAbstractState.isLessOrEqual(
+            elements, abstractState.elements, sizeDifference);
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public PersistentStackAbstractState<AbstractSpaceT> copy() {
+    return new PersistentStackAbstractState<>(elements);
+  }
+
+  // implementations for List
+
+  @Override
+  public AbstractSpaceT get(int index) {
+    return elements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  @Override
+  public AbstractSpaceT set(int index, AbstractSpaceT element) {
+    AbstractSpaceT previous = elements.get(index);
+    elements = elements.set(index, element);
+    return previous;
+  }
+
+  @Override
+  public void add(int index, AbstractSpaceT element) {
+    if (index != size()) {
+      throw new UnsupportedOperationException("Only pushing elements is supported");
+    }
+    push(element);
+  }
+
+  @Override
+  public AbstractSpaceT remove(int index) {
+    if (index != size() - 1) {
+      throw new UnsupportedOperationException("Only popping elements is supported");
+    }
+    return pop();
+  }
+
+  @Override
+  public void clear() {
+    elements = PersistentVector.empty();
+    modCount++;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof PersistentStackAbstractState) {
+      return elements.contentEquals(((PersistentStackAbstractState<?>) o).elements);
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  /** Inserts {@code state} to the top of the stack and returns it. */
+  public AbstractSpaceT push(AbstractSpaceT state) {
+    elements = elements.push(state);
+    modCount++;
+    return state;
+  }
+
+  /** Removes the top of the stack and returns it. */
+  public AbstractSpaceT pop() {
+    if (elements.isEmpty()) {
+      throw new EmptyStackException();
+    }
+    AbstractSpaceT top = elements.last();
+    elements = elements.pop();
+    modCount++;
+    return top;
+  }
+
+  /**
+   * Removes the top of the stack and returns it. If the stack is empty, it returns the {@code
+   * defaultState}.
+   */
+  public AbstractSpaceT popOrDefault(AbstractSpaceT defaultState) {
+    return isEmpty() ? defaultState : pop();
+  }
+
+  /**
+   * Returns the {@code index}th element from the top of the stack. If the stack does not have
+   * enough elements, it throws an exception.
+   */
+  public AbstractSpaceT peek(int index) {
+    int elementIndex = size() - 1 - index;
+    if (elementIndex < 0) {
+      throw new IllegalArgumentException("Operand stack index is out of bound (" + index + ")");
+    } else {
+      return get(elementIndex);
+    }
+  }
+
+  /**
+   * Returns the {@code index}th element from the top of the stack. If the stack does not have
+   * enough elements, it returns the {@code defaultState}.
+   */
+  public AbstractSpaceT peekOrDefault(int index, AbstractSpaceT defaultState) {
+    int elementIndex = size() - 1 - index;
+    return elementIndex < 0 ? defaultState : get(elementIndex);
+  }
+}
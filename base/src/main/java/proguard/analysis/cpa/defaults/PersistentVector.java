@@ -0,0 +1,264 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable vector with structural sharing. The elements are stored in chunks of {@link
+ * #CHUNK_SIZE} in a trie with a branching factor of {@link #CHUNK_SIZE}, plus a separate tail
+ * chunk. Updates copy only the path from the root to the modified chunk, all other chunks are
+ * shared with the original vector. Appending and removing the last element take amortized constant
+ * time.
+ *
+ * <p>Chunks are never modified after construction. Hence, if two vectors share the same chunk at a
+ * given index, they have identical elements in the range of that chunk, which {@link
+ * PersistentListAbstractState} and {@link PersistentStackAbstractState} use for skipping shared
+ * parts when computing joins.
+ *
+ * @param <E> the element type
+ */
+public final class PersistentVector<E> {
+
+  /** The number of elements in a chunk. */
+  public static final int CHUNK_SIZE = 32;
+
+  private static final int SHIFT = 5;
+  private static final int MASK = CHUNK_SIZE - 1;
+  private static final Object[] EMPTY_NODE = new Object[CHUNK_SIZE];
+  private static final PersistentVector<?> EMPTY =
+      new PersistentVector<>(0, SHIFT, EMPTY_NODE, new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  /** Returns the empty vector. */
+  public static <E> PersistentVector<E> empty() {
+    return (PersistentVector<E>) EMPTY;
+  }
+
+  /** Returns the number of elements. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns whether the vector has no elements. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the element at the given index. */
+  public E get(int index) {
+    checkIndex(index);
+    return (E) chunkFor(index)[index & MASK];
+  }
+
+  /** Returns the last element. */
+  public E last() {
+    if (size == 0) {
+      throw new NoSuchElementException("The vector is empty");
+    }
+    return (E) tail[tail.length - 1];
+  }
+
+  /** Returns a vector with the element at the given index replaced by {@code element}. */
+  public PersistentVector<E> set(int index, E element) {
+    checkIndex(index);
+    if (index >= tailOffset()) {
+      if (tail[index & MASK] == element) {
+        return this;
+      }
+      Object[] newTail = tail.clone();
+      newTail[index & MASK] = element;
+      return new PersistentVector<>(size, shift, root, newTail);
+    }
+    if (chunkFor(index)[index & MASK] == element) {
+      return this;
+    }
+    return new PersistentVector<>(size, shift, set(shift, root, index, element), tail);
+  }
+
+  /** Returns a vector with {@code element} appended. */
+  public PersistentVector<E> push(E element) {
+    if (size - tailOffset() < CHUNK_SIZE) {
+      Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = element;
+      return new PersistentVector<>(size + 1, shift, root, newTail);
+    }
+
+    // The tail is full, move it into the trie.
+    Object[] newRoot;
+    int newShift = shift;
+    if ((size >>> SHIFT) > (1 << shift)) {
+      // The trie is full, add a level.
+      newRoot = new Object[CHUNK_SIZE];
+      newRoot[0] = root;
+      newRoot[1] = newPath(shift, tail);
+      newShift += SHIFT;
+    } else {
+      newRoot = pushTail(shift, root, tail);
+    }
+    return new PersistentVector<>(size + 1, newShift, newRoot, new Object[] {element});
+  }
+
+  /** Returns a vector without the last element. */
+  public PersistentVector<E> pop() {
+    if (size == 0) {
+      throw new IllegalStateException("Cannot pop from an empty vector");
+    }
+    if (size == 1) {
+      return empty();
+    }
+    if (size - tailOffset() > 1) {
+      return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+    }
+
+    // The tail becomes empty, take the last chunk of the trie as the new tail.
+    Object[] newTail = chunkFor(size - 2);
+    Object[] newRoot = popTail(shift, root);
+    int newShift = shift;
+    if (newRoot == null) {
+      newRoot = EMPTY_NODE;
+    }
+    if (shift > SHIFT && newRoot[1] == null) {
+      newRoot = (Object[]) newRoot[0];
+      newShift -= SHIFT;
+    }
+    return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+  }
+
+  /**
+   * Returns the chunk containing the element at the given index. The element is at position {@code
+   * index % CHUNK_SIZE} of the chunk. The returned array must not be modified.
+   */
+  Object[] chunkFor(int index) {
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= SHIFT) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  /** Returns whether both vectors have the same elements in the same order. */
+  public boolean contentEquals(PersistentVector<?> other) {
+    if (this == other) {
+      return true;
+    }
+    if (size != other.size) {
+      return false;
+    }
+    for (int chunkStart = 0; chunkStart < size; chunkStart += CHUNK_SIZE) {
+      Object[] chunk = chunkFor(chunkStart);
+      Object[] otherChunk = other.chunkFor(chunkStart);
+      if (chunk == otherChunk) {
+        continue;
+      }
+      int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, size);
+      for (int index = chunkStart; index < chunkEnd; index++) {
+        Object element = chunk[index & MASK];
+        Object otherElement = otherChunk[index & MASK];
+        if (element == null ? otherElement != null : !element.equals(otherElement)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Private utility methods.
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private int tailOffset() {
+    return size < CHUNK_SIZE ? 0 : ((size - 1) >>> SHIFT) << SHIFT;
+  }
+
+  private static Object[] set(int level, Object[] node, int index, Object element) {
+    Object[] result = node.clone();
+    if (level == 0) {
+      result[index & MASK] = element;
+    } else {
+      int subIndex = (index >>> level) & MASK;
+      result[subIndex] = set(level - SHIFT, (Object[]) node[subIndex], index, element);
+    }
+    return result;
+  }
+
+  private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+    int subIndex = ((size - 1) >>> level) & MASK;
+    Object[] result = parent.clone();
+    Object[] nodeToInsert;
+    if (level == SHIFT) {
+      nodeToInsert = tailNode;
+    } else {
+      Object[] child = (Object[]) parent[subIndex];
+      nodeToInsert =
+          child != null
+              ? pushTail(level - SHIFT, child, tailNode)
+              : newPath(level - SHIFT, tailNode);
+    }
+    result[subIndex] = nodeToInsert;
+    return result;
+  }
+
+  private static Object[] newPath(int level, Object[] node) {
+    if (level == 0) {
+      return node;
+    }
+    Object[] result = new Object[CHUNK_SIZE];
+    result[0] = newPath(level - SHIFT, node);
+    return result;
+  }
+
+  private Object[] popTail(int level, Object[] node) {
+    int subIndex = ((size - 2) >>> level) & MASK;
+    if (level > SHIFT) {
+      Object[] newChild = popTail(level - SHIFT, (Object[]) node[subIndex]);
+      if (newChild == null && subIndex == 0) {
+        return null;
+      }
+      Object[] result = node.clone();
+      result[subIndex] = newChild;
+      return result;
+    }
+    if (subIndex == 0) {
+      return null;
+    }
+    Object[] result = node.clone();
+    result[subIndex] = null;
+    return result;
+  }
+}
@@ -18,17 +18,23 @@
 
 package proguard.analysis.cpa.defaults;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import proguard.analysis.cpa.interfaces.AbstractState;
 import proguard.analysis.cpa.interfaces.CfaEdge;
 import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.MergeOperator;
+import proguard.analysis.cpa.interfaces.Precision;
 import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
 import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.StopOperator;
+import proguard.analysis.cpa.interfaces.Waitlist;
 import proguard.classfile.Signature;
 
 /**
@@ -104,6 +110,49 @@ public final class ProgramLocationDependentReachedSet<
     return getReached(((AbstractStateT) abstractState).getProgramLocation());
   }
 
+  @Override
+  public boolean mergeAndStop(
+      AbstractState abstractState,
+      MergeOperator mergeOperator,
+      StopOperator stopOperator,
+      Waitlist waitlist) {
+    AbstractStateT state = (AbstractStateT) abstractState;
+    Precision precision = state.getPrecision();
+    CfaNodeT location = state.getProgramLocation();
+    Set<AbstractStateT> reachedStates = locationToStates.get(location);
+    if (reachedStates != null) {
+      List<AbstractState> gen = null;
+      List<AbstractState> kill = null;
+      for (AbstractStateT reachedState : reachedStates) {
+        AbstractState mergedState = mergeOperator.merge(state, reachedState, precision);
+        if (!mergedState.equals(reachedState)) {
+          if (gen == null) {
+            gen = new ArrayList<>();
+            kill = new ArrayList<>();
+          }
+          gen.add(mergedState);
+          kill.add(reachedState);
+        }
+      }
+      if (gen != null) {
+        addAll(gen);
+        removeAll(kill);
+        waitlist.addAll(gen);
+        waitlist.removeAll(kill);
+      }
+    }
+    if (stopOperator.stop(state, getReached(location), precision)) {
+      return false;
+    }
+    waitlist.add(state);
+    if (reachedStates == null) {
+      reachedStates = new LinkedHashSet<>();
+      locationToStates.put(location, reachedStates);
+    }
+    reachedStates.add(state);
+    return true;
+  }
+
   /** Returns a collection of abstract states belonging to the given {@code location}. */
   public Collection<? extends AbstractState> getReached(CfaNodeT location) {
     return locationToStates.getOrDefault(location, Collections.emptySet());
@@ -50,7 +50,11 @@ public final class StopSepOperator implements StopOperator {
       AbstractState abstractState,
       Collection<? extends AbstractState> reachedAbstractStates,
       Precision precision) {
-    return reachedAbstractStates.stream()
-        .anyMatch(reachedState -> abstractDomain.isLessOrEqual(abstractState, reachedState));
+    for (AbstractState reachedState : reachedAbstractStates) {
+      if (abstractDomain.isLessOrEqual(abstractState, reachedState)) {
+        return true;
+      }
+    }
+    return false;
   }
 }
@@ -18,7 +18,9 @@
 
 package proguard.analysis.cpa.interfaces;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * The {@link ReachedSet} stores reached {@code State}s discovered by the {@link Algorithm}.
@@ -44,4 +46,53 @@ public interface ReachedSet {
 
   /** Returns a collection of abstract states mergeable with the {@code abstractState}. */
   Collection<? extends AbstractState> getReached(AbstractState abstractState);
+
+  /**
+   * Merges {@code abstractState} into the reached set. Each abstract state mergeable with {@code
+   * abstractState} which is changed by the {@code mergeOperator} is replaced by the merge result,
+   * both in the reached set and in the {@code waitlist}. Then, unless the {@code stopOperator}
+   * decides that {@code abstractState} is covered by the reached abstract states, {@code
+   * abstractState} is added to the reached set and to the {@code waitlist}.
+   *
+   * <p>This is the merge and stop step of the {@link
+   * proguard.analysis.cpa.algorithms.CpaAlgorithm}. It does not allocate any intermediate
+   * collections unless a merge changes a reached abstract state.
+   *
+   * @return whether {@code abstractState} has been added
+   */
+  default boolean mergeAndStop(
+      AbstractState abstractState,
+      MergeOperator mergeOperator,
+      StopOperator stopOperator,
+      Waitlist waitlist) {
+    Precision precision = abstractState.getPrecision();
+    Collection<? extends AbstractState> reachedStates = getReached(abstractState);
+    // Abstract states to be added to and removed from the waitlist and the reached set.
+    List<AbstractState> gen = null;
+    List<AbstractState> kill = null;
+    for (AbstractState reachedState : reachedStates) {
+      AbstractState mergedState = mergeOperator.merge(abstractState, reachedState, precision);
+      if (!mergedState.equals(reachedState)) {
+        if (gen == null) {
+          gen = new ArrayList<>();
+          kill = new ArrayList<>();
+        }
+        gen.add(mergedState);
+        kill.add(reachedState);
+      }
+    }
+    if (gen != null) {
+      addAll(gen);
+      removeAll(kill);
+      waitlist.addAll(gen);
+      waitlist.removeAll(kill);
+      reachedStates = getReached(abstractState);
+    }
+    if (stopOperator.stop(abstractState, reachedStates, precision)) {
+      return false;
+    }
+    waitlist.add(abstractState);
+    add(abstractState);
+    return true;
+  }
 }
@@ -0,0 +1,675 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.cfa;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeCaseCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeDefaultCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeExceptionCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmInstructionCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCatchCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode;
+import proguard.analysis.cpa.jvm.cfa.visitors.JvmIntraproceduralCfaFillerAllInstructionVisitor;
+import proguard.analysis.datastructure.callgraph.Call;
+import proguard.analysis.datastructure.callgraph.ConcreteCall;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.Signature;
+import proguard.classfile.attribute.CodeAttribute;
+
+/**
+ * A {@link JvmCfa} which stores the graph of each method in primitive arrays instead of separate
+ * node and edge objects. The nodes of a method are numbered by offset and the edges are stored in
+ * compressed sparse row form, i.e., the edges leaving, resp. entering, a node are a consecutive
+ * range of the edge arrays. An edge is represented by its kind, its source and target node
+ * numbers, and the assumed case or catch type. Its instruction is the one at the offset of its
+ * source node.
+ *
+ * <p>The nodes of a method are created when they are first looked up and then kept, so they can be
+ * compared by identity as in the {@link JvmCfa}. Their edge lists are read-only views on the
+ * arrays, which create the intraprocedural {@link JvmCfaEdge}s when they are accessed. Hence, the
+ * same edge can be returned as different instances. The call edges are created when they are
+ * added.
+ *
+ * <p>Methods are added with {@link #addMethod(Clazz, Method, CodeAttribute)}, after which their
+ * graphs only change by adding call edges. Nodes added to the method afterwards through the {@link
+ * JvmCfa} methods, e.g., a missing exit node, are regular nodes. The edges to the {@link
+ * JvmUnknownCfaNode} are not registered as its entering edges.
+ */
+public class CompactJvmCfa extends JvmCfa {
+
+  private static final byte INSTRUCTION = 0;
+  private static final byte ASSUME_SATISFIED = 1;
+  private static final byte ASSUME_NOT_SATISFIED = 2;
+  private static final byte ASSUME_CASE = 3;
+  private static final byte ASSUME_DEFAULT = 4;
+  private static final byte EXCEPTION_CAUGHT = 5;
+  private static final byte EXCEPTION_NOT_CAUGHT = 6;
+
+  private static final int UNKNOWN_TARGET = -1;
+
+  private final Map<MethodSignature, MethodGraph> methodGraphs = new HashMap<>();
+
+  /**
+   * Adds the graph of the given method, as built by the {@link
+   * JvmIntraproceduralCfaFillerAllInstructionVisitor}.
+   *
+   * @param clazz the class of the method
+   * @param method the method
+   * @param codeAttribute the code of the method
+   */
+  public void addMethod(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+    MethodSignature signature = MethodSignature.computeIfAbsent(clazz, method);
+    if (methodGraphs.containsKey(signature)) {
+      throw new IllegalArgumentException("The method " + signature + " is already in the CFA");
+    }
+
+    // Build the method with the regular nodes and edges, then compact it.
+    JvmCfa methodCfa = new JvmCfa();
+    List<JvmCfaEdge> unknownEnteringEdges = JvmUnknownCfaNode.INSTANCE.getEnteringEdges();
+    int unknownEnteringEdgeCount = unknownEnteringEdges.size();
+    new JvmIntraproceduralCfaFillerAllInstructionVisitor(methodCfa)
+        .visitCodeAttribute(clazz, method, codeAttribute);
+    unknownEnteringEdges.subList(unknownEnteringEdgeCount, unknownEnteringEdges.size()).clear();
+
+    methodGraphs.put(signature, new MethodGraph(methodCfa, signature, clazz, codeAttribute));
+  }
+
+  // implementations for Cfa
+
+  @Override
+  public boolean isEmpty() {
+    return methodGraphs.isEmpty() && super.isEmpty();
+  }
+
+  @Override
+  public Stream<JvmCfaNode> getAllNodes() {
+    return Stream.concat(
+        methodGraphs.values().stream()
+            .flatMap(
+                graph -> IntStream.range(0, graph.nodeOffsets.length).mapToObj(graph::getNode)),
+        super.getAllNodes());
+  }
+
+  @Override
+  public Collection<JvmCfaNode> getFunctionEntryNodes() {
+    Set<JvmCfaNode> entryNodes = new HashSet<>(super.getFunctionEntryNodes());
+    for (MethodGraph graph : methodGraphs.values()) {
+      JvmCfaNode entryNode = graph.getEntryNode();
+      if (entryNode != null) {
+        entryNodes.add(entryNode);
+      }
+    }
+    return entryNodes;
+  }
+
+  @Override
+  public JvmCfaNode getFunctionEntryNode(MethodSignature signature) {
+    return getFunctionNode(signature, 0);
+  }
+
+  @Override
+  public Collection<JvmCfaNode> getFunctionNodes(MethodSignature signature) {
+    MethodGraph graph = methodGraphs.get(signature);
+    Collection<JvmCfaNode> addedNodes = super.getFunctionNodes(signature);
+    if (graph == null) {
+      return addedNodes;
+    }
+    List<JvmCfaNode> nodes = graph.getNodes(0, graph.nodeCount);
+    if (addedNodes.isEmpty()) {
+      return nodes;
+    }
+    List<JvmCfaNode> allNodes = new ArrayList<>(nodes);
+    allNodes.addAll(addedNodes);
+    return allNodes;
+  }
+
+  @Override
+  public JvmCfaNode getFunctionNode(MethodSignature signature, int offset) {
+    MethodGraph graph = methodGraphs.get(signature);
+    int index = graph == null ? -1 : graph.getNodeIndex(offset);
+    return index >= 0 ? graph.getNode(index) : super.getFunctionNode(signature, offset);
+  }
+
+  @Override
+  public JvmCfaNode getFunctionNode(Clazz clazz, Method method, int offset) {
+    return getFunctionNode((MethodSignature) Signature.of(clazz, method), offset);
+  }
+
+  // implementations for JvmCfa
+
+  @Override
+  public Collection<JvmCatchCfaNode> getFunctionCatchNodes(MethodSignature signature) {
+    MethodGraph graph = methodGraphs.get(signature);
+    Collection<JvmCatchCfaNode> addedNodes = super.getFunctionCatchNodes(signature);
+    if (graph == null) {
+      return addedNodes;
+    }
+    List<JvmCatchCfaNode> allNodes = new ArrayList<>(addedNodes);
+    for (JvmCfaNode node : graph.getNodes(graph.nodeCount, graph.nodeOffsets.length)) {
+      allNodes.add((JvmCatchCfaNode) node);
+    }
+    return allNodes;
+  }
+
+  @Override
+  public JvmCatchCfaNode getFunctionCatchNode(MethodSignature signature, int offset) {
+    MethodGraph graph = methodGraphs.get(signature);
+    int index = graph == null ? -1 : graph.getCatchNodeIndex(offset);
+    return index >= 0
+        ? (JvmCatchCfaNode) graph.getNode(index)
+        : super.getFunctionCatchNode(signature, offset);
+  }
+
+  @Override
+  public boolean containsFunctionCatchNode(MethodSignature signature, int offset) {
+    return getFunctionCatchNode(signature, offset) != null;
+  }
+
+  @Override
+  public void addInterproceduralEdge(Call call) {
+    addCallEdge(
+        call,
+        call.getTarget(),
+        call instanceof ConcreteCall ? ((ConcreteCall) call).getTargetClass() : null);
+  }
+
+  @Override
+  public void addUnknownTargetInterproceduralEdge(Call call) {
+    addCallEdge(call, null, null);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    methodGraphs.clear();
+  }
+
+  // Private utility methods.
+
+  /**
+   * Adds a call edge to the entry node of the target method or, if the target signature is null,
+   * to the unknown node.
+   */
+  private void addCallEdge(Call call, MethodSignature targetSignature, Clazz targetClass) {
+    MethodSignature callerSignature = (MethodSignature) call.caller.signature;
+    MethodGraph callerGraph = methodGraphs.get(callerSignature);
+    int callIndex = callerGraph == null ? -1 : callerGraph.getNodeIndex(call.caller.offset);
+    JvmCfaNode callNode =
+        callIndex >= 0
+            ? callerGraph.getNode(callIndex)
+            : addNodeIfAbsent(callerSignature, call.caller.offset, call.caller.clazz);
+
+    MethodGraph calleeGraph = targetSignature == null ? null : methodGraphs.get(targetSignature);
+    int calledIndex = calleeGraph == null ? -1 : calleeGraph.getNodeIndex(0);
+    JvmCfaNode calledNode =
+        targetSignature == null
+            ? JvmUnknownCfaNode.INSTANCE
+            : calledIndex >= 0
+                ? calleeGraph.getNode(calledIndex)
+                : addNodeIfAbsent(targetSignature, 0, targetClass);
+
+    JvmCallCfaEdge edge = new CompactCallEdge(callNode, calledNode, call);
+    if (callIndex >= 0) {
+      callerGraph.addLeavingCallEdge(callIndex, edge);
+    } else {
+      callNode.addLeavingEdge(edge);
+    }
+    if (calledIndex >= 0) {
+      calleeGraph.addEnteringCallEdge(edge);
+    } else if (calledNode != JvmUnknownCfaNode.INSTANCE) {
+      calledNode.addEnteringEdge(edge);
+    }
+  }
+
+  /** The nodes and edges of a method. */
+  private static final class MethodGraph {
+
+    private final MethodSignature signature;
+    private final Clazz clazz;
+    private final CodeAttribute codeAttribute;
+
+    // The offsets of the nodes, sorted, followed by the offsets of the catch nodes, sorted.
+    private final int[] nodeOffsets;
+    private final int nodeCount;
+    private final int[] catchTypes;
+
+    // The edges, ordered by source node.
+    private final int[] leavingEdgeStarts;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final byte[] edgeKinds;
+    private final int[] edgeArguments;
+
+    // The edge numbers, ordered by target node.
+    private final int[] enteringEdgeStarts;
+    private final int[] enteringEdges;
+
+    private Map<Integer, List<JvmCfaEdge>> leavingCallEdges;
+    private List<JvmCfaEdge> enteringCallEdges;
+
+    private volatile AtomicReferenceArray<JvmCfaNode> nodes;
+
+    private MethodGraph(
+        JvmCfa methodCfa, MethodSignature signature, Clazz clazz, CodeAttribute codeAttribute) {
+      this.signature = signature;
+      this.clazz = clazz;
+      this.codeAttribute = codeAttribute;
+
+      List<JvmCfaNode> sourceNodes = new ArrayList<>(methodCfa.getFunctionNodes(signature));
+      sourceNodes.sort(Comparator.comparingInt(JvmCfaNode::getOffset));
+      nodeCount = sourceNodes.size();
+      List<JvmCatchCfaNode> catchNodes =
+          new ArrayList<>(methodCfa.getFunctionCatchNodes(signature));
+      catchNodes.sort(Comparator.comparingInt(JvmCfaNode::getOffset));
+      sourceNodes.addAll(catchNodes);
+
+      nodeOffsets = new int[sourceNodes.size()];
+      catchTypes = new int[catchNodes.size()];
+      Map<JvmCfaNode, Integer> nodeIndices = new IdentityHashMap<>();
+      int edgeCount = 0;
+      int enteringEdgeCount = 0;
+      for (int index = 0; index < sourceNodes.size(); index++) {
+        JvmCfaNode node = sourceNodes.get(index);
+        nodeIndices.put(node, index);
+        nodeOffsets[index] = node.getOffset();
+        if (index >= nodeCount) {
+          catchTypes[index - nodeCount] = ((JvmCatchCfaNode) node).getCatchType();
+        }
+        edgeCount += node.getLeavingEdges().size();
+        enteringEdgeCount += node.getEnteringEdges().size();
+      }
+
+      leavingEdgeStarts = new int[nodeOffsets.length + 1];
+      edgeSources = new int[edgeCount];
+      edgeTargets = new int[edgeCount];
+      edgeKinds = new byte[edgeCount];
+      edgeArguments = new int[edgeCount];
+      Map<JvmCfaEdge, Integer> edgeIndices = new IdentityHashMap<>();
+      int edgeIndex = 0;
+      for (int index = 0; index < sourceNodes.size(); index++) {
+        leavingEdgeStarts[index] = edgeIndex;
+        for (JvmCfaEdge edge : sourceNodes.get(index).getLeavingEdges()) {
+          edgeIndices.put(edge, edgeIndex);
+          edgeSources[edgeIndex] = index;
+          edgeTargets[edgeIndex] =
+              edge.getTarget() == JvmUnknownCfaNode.INSTANCE
+                  ? UNKNOWN_TARGET
+                  : Objects.requireNonNull(
+                      nodeIndices.get(edge.getTarget()), "Edge target outside of " + signature);
+          encodeEdge(edge, edgeIndex);
+          edgeIndex++;
+        }
+      }
+      leavingEdgeStarts[sourceNodes.size()] = edgeIndex;
+
+      enteringEdgeStarts = new int[nodeOffsets.length + 1];
+      enteringEdges = new int[enteringEdgeCount];
+      int enteringIndex = 0;
+      for (int index = 0; index < sourceNodes.size(); index++) {
+        enteringEdgeStarts[index] = enteringIndex;
+        for (JvmCfaEdge edge : sourceNodes.get(index).getEnteringEdges()) {
+          enteringEdges[enteringIndex++] =
+              Objects.requireNonNull(edgeIndices.get(edge), "Edge source outside of " + signature);
+        }
+      }
+      enteringEdgeStarts[sourceNodes.size()] = enteringIndex;
+    }
+
+    /** Returns the number of the node at the given offset, or a negative number. */
+    private int getNodeIndex(int offset) {
+      return Arrays.binarySearch(nodeOffsets, 0, nodeCount, offset);
+    }
+
+    /** Returns the number of the catch node at the given offset, or a negative number. */
+    private int getCatchNodeIndex(int offset) {
+      return Arrays.binarySearch(nodeOffsets, nodeCount, nodeOffsets.length, offset);
+    }
+
+    private JvmCfaNode getEntryNode() {
+      int index = getNodeIndex(0);
+      return index >= 0 ? getNode(index) : null;
+    }
+
+    /** Returns the node with the given number, creating it the first time. */
+    private JvmCfaNode getNode(int index) {
+      AtomicReferenceArray<JvmCfaNode> nodes = this.nodes;
+      if (nodes == null) {
+        synchronized (this) {
+          if (this.nodes == null) {
+            this.nodes = new AtomicReferenceArray<>(nodeOffsets.length);
+          }
+          nodes = this.nodes;
+        }
+      }
+      JvmCfaNode node = nodes.get(index);
+      if (node == null) {
+        List<JvmCfaEdge> leavingEdges = new LeavingEdgeList(index);
+        List<JvmCfaEdge> enteringEdges = new EnteringEdgeList(index);
+        node =
+            index < nodeCount
+                ? new JvmCfaNode(leavingEdges, enteringEdges, signature, nodeOffsets[index], clazz)
+                : new JvmCatchCfaNode(
+                    leavingEdges,
+                    enteringEdges,
+                    signature,
+                    nodeOffsets[index],
+                    catchTypes[index - nodeCount],
+                    clazz);
+        // Another thread may have been first.
+        if (!nodes.compareAndSet(index, null, node)) {
+          node = nodes.get(index);
+        }
+      }
+      return node;
+    }
+
+    private List<JvmCfaNode> getNodes(int start, int end) {
+      List<JvmCfaNode> result = new ArrayList<>(end - start);
+      for (int index = start; index < end; index++) {
+        result.add(getNode(index));
+      }
+      return Collections.unmodifiableList(result);
+    }
+
+    private void addLeavingCallEdge(int index, JvmCfaEdge edge) {
+      if (leavingCallEdges == null) {
+        leavingCallEdges = new HashMap<>();
+      }
+      leavingCallEdges.computeIfAbsent(index, key -> new ArrayList<>(1)).add(edge);
+    }
+
+    private void addEnteringCallEdge(JvmCfaEdge edge) {
+      if (enteringCallEdges == null) {
+        enteringCallEdges = new ArrayList<>();
+      }
+      enteringCallEdges.add(edge);
+    }
+
+    private void encodeEdge(JvmCfaEdge edge, int index) {
+      if (edge instanceof JvmAssumeCfaEdge) {
+        edgeKinds[index] =
+            ((JvmAssumeCfaEdge) edge).isSatisfied() ? ASSUME_SATISFIED : ASSUME_NOT_SATISFIED;
+      } else if (edge instanceof JvmAssumeCaseCfaEdge) {
+        edgeKinds[index] = ASSUME_CASE;
+        edgeArguments[index] = ((JvmAssumeCaseCfaEdge) edge).getAssumedCase();
+      } else if (edge instanceof JvmAssumeDefaultCfaEdge) {
+        edgeKinds[index] = ASSUME_DEFAULT;
+      } else if (edge instanceof JvmInstructionCfaEdge) {
+        edgeKinds[index] = INSTRUCTION;
+      } else if (edge instanceof JvmAssumeExceptionCfaEdge) {
+        JvmAssumeExceptionCfaEdge exceptionEdge = (JvmAssumeExceptionCfaEdge) edge;
+        edgeKinds[index] = exceptionEdge.isCaught() ? EXCEPTION_CAUGHT : EXCEPTION_NOT_CAUGHT;
+        edgeArguments[index] = exceptionEdge.getCatchType();
+      } else {
+        throw new IllegalArgumentException(
+            "Unsupported edge type " + edge.getClass().getName() + " in " + signature);
+      }
+    }
+
+    /** Creates a view of the edge with the given number. */
+    private JvmCfaEdge createEdge(int index) {
+      int offset = nodeOffsets[edgeSources[index]];
+      switch (edgeKinds[index]) {
+        case INSTRUCTION:
+          return new InstructionEdge(this, index, codeAttribute, offset);
+        case ASSUME_SATISFIED:
+        case ASSUME_NOT_SATISFIED:
+          return new AssumeEdge(
+              this, index, codeAttribute, offset, edgeKinds[index] == ASSUME_SATISFIED);
+        case ASSUME_CASE:
+          return new AssumeCaseEdge(this, index, codeAttribute, offset, edgeArguments[index]);
+        case ASSUME_DEFAULT:
+          return new AssumeDefaultEdge(this, index, codeAttribute, offset);
+        case EXCEPTION_CAUGHT:
+        case EXCEPTION_NOT_CAUGHT:
+          return new AssumeExceptionEdge(
+              this, index, edgeKinds[index] == EXCEPTION_CAUGHT, edgeArguments[index]);
+        default:
+          throw new IllegalStateException("Unknown edge kind " + edgeKinds[index]);
+      }
+    }
+
+    private JvmCfaNode getSource(int edge) {
+      return getNode(edgeSources[edge]);
+    }
+
+    private JvmCfaNode getTarget(int edge) {
+      int target = edgeTargets[edge];
+      return target == UNKNOWN_TARGET ? JvmUnknownCfaNode.INSTANCE : getNode(target);
+    }
+
+    /** The intraprocedural edges leaving a node, followed by its call edges. */
+    private final class LeavingEdgeList extends AbstractList<JvmCfaEdge> implements RandomAccess {
+
+      private final int node;
+
+      private LeavingEdgeList(int node) {
+        this.node = node;
+      }
+
+      @Override
+      public JvmCfaEdge get(int index) {
+        int start = leavingEdgeStarts[node];
+        int edgeCount = leavingEdgeStarts[node + 1] - start;
+        return index >= 0 && index < edgeCount
+            ? createEdge(start + index)
+            : getCallEdges().get(index - edgeCount);
+      }
+
+      @Override
+      public int size() {
+        return leavingEdgeStarts[node + 1] - leavingEdgeStarts[node] + getCallEdges().size();
+      }
+
+      private List<JvmCfaEdge> getCallEdges() {
+        return leavingCallEdges == null
+            ? Collections.emptyList()
+            : leavingCallEdges.getOrDefault(node, Collections.emptyList());
+      }
+    }
+
+    /** The intraprocedural edges entering a node, followed by its call edges. */
+    private final class EnteringEdgeList extends AbstractList<JvmCfaEdge> implements RandomAccess {
+
+      private final int node;
+
+      private EnteringEdgeList(int node) {
+        this.node = node;
+      }
+
+      @Override
+      public JvmCfaEdge get(int index) {
+        int start = enteringEdgeStarts[node];
+        int edgeCount = enteringEdgeStarts[node + 1] - start;
+        return index >= 0 && index < edgeCount
+            ? createEdge(enteringEdges[start + index])
+            : getCallEdges().get(index - edgeCount);
+      }
+
+      @Override
+      public int size() {
+        return enteringEdgeStarts[node + 1] - enteringEdgeStarts[node] + getCallEdges().size();
+      }
+
+      private List<JvmCfaEdge> getCallEdges() {
+        return enteringCallEdges == null || node >= nodeCount || nodeOffsets[node] != 0
+            ? Collections.emptyList()
+            : enteringCallEdges;
+      }
+    }
+  }
+
+  // The edge views. They return the nodes of the graph without being registered with them.
+
+  private static final class InstructionEdge extends JvmInstructionCfaEdge {
+
+    private final MethodGraph graph;
+    private final int edge;
+
+    private InstructionEdge(MethodGraph graph, int edge, CodeAttribute methodCode, int offset) {
+      super(methodCode, offset);
+      this.graph = graph;
+      this.edge = edge;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return graph.getSource(edge);
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return graph.getTarget(edge);
+    }
+  }
+
+  private static final class AssumeEdge extends JvmAssumeCfaEdge {
+
+    private final MethodGraph graph;
+    private final int edge;
+
+    private AssumeEdge(
+        MethodGraph graph, int edge, CodeAttribute methodCode, int offset, boolean isSatisfied) {
+      super(methodCode, offset, isSatisfied);
+      this.graph = graph;
+      this.edge = edge;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return graph.getSource(edge);
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return graph.getTarget(edge);
+    }
+  }
+
+  private static final class AssumeCaseEdge extends JvmAssumeCaseCfaEdge {
+
+    private final MethodGraph graph;
+    private final int edge;
+
+    private AssumeCaseEdge(
+        MethodGraph graph, int edge, CodeAttribute methodCode, int offset, int assumedCase) {
+      super(methodCode, offset, assumedCase);
+      this.graph = graph;
+      this.edge = edge;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return graph.getSource(edge);
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return graph.getTarget(edge);
+    }
+  }
+
+  private static final class AssumeDefaultEdge extends JvmAssumeDefaultCfaEdge {
+
+    private final MethodGraph graph;
+    private final int edge;
+
+    private AssumeDefaultEdge(MethodGraph graph, int edge, CodeAttribute methodCode, int offset) {
+      super(methodCode, offset);
+      this.graph = graph;
+      this.edge = edge;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return graph.getSource(edge);
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return graph.getTarget(edge);
+    }
+  }
+
+  private static final class AssumeExceptionEdge extends JvmAssumeExceptionCfaEdge {
+
+    private final MethodGraph graph;
+    private final int edge;
+
+    private AssumeExceptionEdge(MethodGraph graph, int edge, boolean isCaught, int catchType) {
+      super(isCaught, catchType);
+      this.graph = graph;
+      this.edge = edge;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return graph.getSource(edge);
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return graph.getTarget(edge);
+    }
+  }
+
+  private static final class CompactCallEdge extends JvmCallCfaEdge {
+
+    private final JvmCfaNode source;
+    private final JvmCfaNode target;
+
+    private CompactCallEdge(JvmCfaNode source, JvmCfaNode target, Call call) {
+      super(call);
+      this.source = source;
+      this.target = target;
+    }
+
+    @Override
+    public JvmCfaNode getSource() {
+      return source;
+    }
+
+    @Override
+    public JvmCfaNode getTarget() {
+      return target;
+    }
+  }
+}
@@ -56,7 +56,7 @@ import proguard.classfile.MethodSignature;
  */
 public class JvmCfa extends Cfa<JvmCfaNode, JvmCfaEdge, MethodSignature> {
 
-  private final Map<MethodSignature, Map<Integer, JvmCatchCfaNode>> functionCatchNodes =
+  protected final Map<MethodSignature, Map<Integer, JvmCatchCfaNode>> functionCatchNodes =
       new HashMap<>();
 
   @Override
@@ -0,0 +1,493 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.cfa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCatchCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.cfa.visitors.JvmIntraproceduralCfaFillerAllInstructionVisitor;
+import proguard.analysis.datastructure.callgraph.Call;
+import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.analysis.datastructure.callgraph.ConcreteCall;
+import proguard.analysis.datastructure.callgraph.SymbolicCall;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.LibraryClass;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.ProgramMethod;
+import proguard.classfile.Signature;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.visitor.AllMethodVisitor;
+
+/**
+ * A {@link JvmCfa} which builds the nodes and edges of a method only when they are first needed,
+ * i.e., when the nodes of the method are looked up or the edges leaving its entry node are
+ * traversed. Analyses which only reach a small part of the program hence only pay for the CFAs of
+ * the methods they reach.
+ *
+ * <p>The entry node of a method is created up front, without edges, e.g., when a call to the
+ * method is added. Its leaving edges trigger building the method. If a {@link CallGraph} is given,
+ * the interprocedural edges of a method are added when the method is built. Hence, the entering
+ * edges of an entry node trigger building all callers of its method in the call graph as well, so
+ * backward traversals see all entering call edges.
+ *
+ * <p>The number of built methods can be bounded, in which case the least recently used methods are
+ * evicted: all their nodes except the entry node are dropped and rebuilt when they are needed
+ * again. Methods can also be evicted explicitly with {@link #evict(MethodSignature)}, e.g., once
+ * the analysis is done with them. The dropped nodes stay intact for the abstract states still
+ * referring to them, but the rebuilt nodes are different instances. Hence, the bound should be
+ * larger than the number of methods the analysis works on at the same time, e.g., the depth of the
+ * analyzed call stack, otherwise states at the dropped and the rebuilt nodes of the same location
+ * are not merged.
+ *
+ * <p>Building and evicting methods is synchronized, so the CFA can be shared by threads. The edges
+ * of the nodes of a built method don't change, and the edges of entry nodes, which change when
+ * other methods are built or evicted, are returned as snapshots. The entering edges of the shared
+ * {@link proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode} however are modified without
+ * synchronization, so threads must not read them while other threads build methods.
+ */
+public class LazyJvmCfa extends JvmCfa {
+
+  private final ClassPool programClassPool;
+  private final CallGraph callGraph;
+  private final int maxBuiltMethods;
+  // The built methods, the least recently used one first.
+  private final Map<MethodSignature, Boolean> builtMethods = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<MethodSignature> methodsWithoutCode = new HashSet<>();
+  private boolean allEntryNodesCreated;
+  private boolean building;
+  private int buildCount;
+  private int evictionCount;
+
+  /**
+   * Create an intraprocedural lazy CFA.
+   *
+   * @param programClassPool the classes of the methods
+   */
+  public LazyJvmCfa(ClassPool programClassPool) {
+    this(programClassPool, null);
+  }
+
+  /**
+   * Create a lazy CFA without a bound on the number of built methods.
+   *
+   * @param programClassPool the classes of the methods
+   * @param callGraph the call graph for the interprocedural edges, or null for an intraprocedural
+   *     CFA
+   */
+  public LazyJvmCfa(ClassPool programClassPool, CallGraph callGraph) {
+    this(programClassPool, callGraph, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a lazy CFA.
+   *
+   * @param programClassPool the classes of the methods
+   * @param callGraph the call graph for the interprocedural edges, or null for an intraprocedural
+   *     CFA
+   * @param maxBuiltMethods the maximum number of methods kept built, the least recently used ones
+   *     are evicted beyond it
+   */
+  public LazyJvmCfa(ClassPool programClassPool, CallGraph callGraph, int maxBuiltMethods) {
+    if (maxBuiltMethods < 1) {
+      throw new IllegalArgumentException(
+          "The maximum number of built methods must be positive (" + maxBuiltMethods + ")");
+    }
+    this.programClassPool = programClassPool;
+    this.callGraph = callGraph;
+    this.maxBuiltMethods = maxBuiltMethods;
+  }
+
+  // implementations for Cfa
+
+  @Override
+  public boolean isEmpty() {
+    return getFunctionEntryNodes().isEmpty();
+  }
+
+  /** Returns the nodes of the methods built so far and the entry nodes created so far. */
+  @Override
+  public synchronized Stream<JvmCfaNode> getAllNodes() {
+    return super.getAllNodes().collect(Collectors.toList()).stream();
+  }
+
+  /** Returns the entry nodes of all methods with code, without building the methods. */
+  @Override
+  public synchronized Collection<JvmCfaNode> getFunctionEntryNodes() {
+    if (!allEntryNodesCreated) {
+      programClassPool.classesAccept(
+          new AllMethodVisitor(new AllAttributeVisitor(new EntryNodeCreator())));
+      allEntryNodesCreated = true;
+    }
+    return super.getFunctionEntryNodes();
+  }
+
+  /** Returns the entry node of the method, without building the method. */
+  @Override
+  public synchronized JvmCfaNode getFunctionEntryNode(MethodSignature signature) {
+    JvmCfaNode entryNode = super.getFunctionEntryNode(signature);
+    if (entryNode == null && !building) {
+      Clazz clazz = programClassPool.getClass(signature.getClassName());
+      if (findMethodWithCode(clazz, signature) != null) {
+        entryNode = addEntryNodeIfAbsent(signature, clazz);
+      }
+    }
+    return entryNode;
+  }
+
+  @Override
+  public synchronized Collection<JvmCfaNode> getFunctionNodes(MethodSignature signature) {
+    ensureBuilt(signature);
+    return new ArrayList<>(super.getFunctionNodes(signature));
+  }
+
+  @Override
+  public synchronized JvmCfaNode getFunctionNode(MethodSignature signature, int offset) {
+    ensureBuilt(signature);
+    return super.getFunctionNode(signature, offset);
+  }
+
+  @Override
+  public JvmCfaNode getFunctionNode(Clazz clazz, Method method, int offset) {
+    return getFunctionNode((MethodSignature) Signature.of(clazz, method), offset);
+  }
+
+  // implementations for JvmCfa
+
+  @Override
+  public synchronized Collection<JvmCatchCfaNode> getFunctionCatchNodes(
+      MethodSignature signature) {
+    ensureBuilt(signature);
+    return new ArrayList<>(super.getFunctionCatchNodes(signature));
+  }
+
+  @Override
+  public synchronized JvmCatchCfaNode getFunctionCatchNode(MethodSignature signature, int offset) {
+    ensureBuilt(signature);
+    return super.getFunctionCatchNode(signature, offset);
+  }
+
+  @Override
+  public synchronized boolean containsFunctionCatchNode(MethodSignature signature, int offset) {
+    ensureBuilt(signature);
+    return super.containsFunctionCatchNode(signature, offset);
+  }
+
+  @Override
+  public synchronized JvmCfaNode getFunctionReturnExitNode(
+      MethodSignature signature, Clazz clazz) {
+    ensureBuilt(signature);
+    return super.getFunctionReturnExitNode(signature, clazz);
+  }
+
+  @Override
+  public synchronized JvmCfaNode getFunctionExceptionExitNode(
+      MethodSignature signature, Clazz clazz) {
+    ensureBuilt(signature);
+    return super.getFunctionExceptionExitNode(signature, clazz);
+  }
+
+  @Override
+  public synchronized JvmCfaNode addNodeIfAbsent(
+      MethodSignature signature, int offset, Clazz clazz) {
+    return offset == 0
+        ? addEntryNodeIfAbsent(signature, clazz)
+        : super.addNodeIfAbsent(signature, offset, clazz);
+  }
+
+  @Override
+  public synchronized void clear() {
+    building = true;
+    try {
+      super.clear();
+    } finally {
+      building = false;
+    }
+    builtMethods.clear();
+    methodsWithoutCode.clear();
+    allEntryNodesCreated = false;
+  }
+
+  /**
+   * Drops all nodes of the method except its entry node, together with the edges leaving them. The
+   * method is rebuilt when it is needed again.
+   */
+  public synchronized void evict(MethodSignature signature) {
+    if (builtMethods.remove(signature) == null) {
+      return;
+    }
+    evictionCount++;
+
+    List<JvmCfaNode> nodes = new ArrayList<>(super.getFunctionNodes(signature));
+    nodes.addAll(super.getFunctionCatchNodes(signature));
+    JvmCfaNode entryNode = super.getFunctionEntryNode(signature);
+    Set<JvmCfaNode> evictedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    evictedNodes.addAll(nodes);
+    evictedNodes.remove(entryNode);
+
+    // Detach the evicted nodes from the nodes which are kept, i.e., the entry nodes and the unknown
+    // node. The evicted nodes themselves stay intact for the states still referring to them.
+    Set<JvmCfaEdge> evictedEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<JvmCfaNode> keptTargets = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (JvmCfaNode node : nodes) {
+      for (JvmCfaEdge edge : getRawLeavingEdges(node)) {
+        evictedEdges.add(edge);
+        if (!evictedNodes.contains(edge.getTarget())) {
+          keptTargets.add(edge.getTarget());
+        }
+      }
+    }
+    for (JvmCfaNode target : keptTargets) {
+      getRawEnteringEdges(target).removeIf(evictedEdges::contains);
+    }
+
+    functionCatchNodes.remove(signature);
+    functionNodes.remove(signature);
+    if (entryNode != null) {
+      getRawLeavingEdges(entryNode).clear();
+      addFunctionEntryNode(signature, entryNode);
+    }
+  }
+
+  /** Returns the number of currently built methods. */
+  public synchronized int getBuiltMethodCount() {
+    return builtMethods.size();
+  }
+
+  /** Returns how many times methods were built, including rebuilds after evictions. */
+  public synchronized int getBuildCount() {
+    return buildCount;
+  }
+
+  /** Returns how many times methods were evicted. */
+  public synchronized int getEvictionCount() {
+    return evictionCount;
+  }
+
+  // Private utility methods.
+
+  private synchronized void ensureBuilt(MethodSignature signature) {
+    if (building || builtMethods.get(signature) != null || methodsWithoutCode.contains(signature)) {
+      return;
+    }
+    Clazz clazz = programClassPool.getClass(signature.getClassName());
+    Method method = findMethodWithCode(clazz, signature);
+    if (method == null) {
+      methodsWithoutCode.add(signature);
+      return;
+    }
+
+    building = true;
+    try {
+      method.accept(
+          clazz,
+          new AllAttributeVisitor(new JvmIntraproceduralCfaFillerAllInstructionVisitor(this)));
+      addInterproceduralEdges(signature);
+    } finally {
+      building = false;
+    }
+    builtMethods.put(signature, Boolean.TRUE);
+    buildCount++;
+
+    while (builtMethods.size() > maxBuiltMethods) {
+      evict(builtMethods.keySet().iterator().next());
+    }
+  }
+
+  /** Builds the method and all its callers, so its entry node has all its entering edges. */
+  private synchronized void ensureCallersBuilt(MethodSignature signature) {
+    ensureBuilt(signature);
+    if (callGraph == null || building) {
+      return;
+    }
+    for (Call call : callGraph.incoming.getOrDefault(signature, Collections.emptySet())) {
+      ensureBuilt((MethodSignature) call.caller.signature);
+    }
+  }
+
+  private void addInterproceduralEdges(MethodSignature signature) {
+    if (callGraph == null) {
+      return;
+    }
+    for (Call call : callGraph.outgoing.getOrDefault(signature, Collections.emptySet())) {
+      if (call.hasIncompleteTarget()
+          || super.getFunctionNode(signature, call.caller.offset) == null) {
+        continue;
+      }
+      if (call instanceof SymbolicCall
+          || ((ConcreteCall) call).getTargetClass() instanceof LibraryClass
+          || findMethodWithCode(
+                  programClassPool.getClass(call.getTarget().getClassName()), call.getTarget())
+              == null) {
+        addUnknownTargetInterproceduralEdge(call);
+      } else {
+        addInterproceduralEdge(call);
+      }
+    }
+  }
+
+  private JvmCfaNode addEntryNodeIfAbsent(MethodSignature signature, Clazz clazz) {
+    JvmCfaNode entryNode = super.getFunctionEntryNode(signature);
+    if (entryNode == null) {
+      entryNode = new LazyEntryNode(signature, clazz);
+      addFunctionEntryNode(signature, entryNode);
+    }
+    return entryNode;
+  }
+
+  private static Method findMethodWithCode(Clazz clazz, MethodSignature signature) {
+    if (clazz == null || signature.descriptor == null) {
+      return null;
+    }
+    Method method = clazz.findMethod(signature.method, signature.descriptor.toString());
+    if (method instanceof ProgramMethod) {
+      ProgramMethod programMethod = (ProgramMethod) method;
+      for (int index = 0; index < programMethod.u2attributesCount; index++) {
+        if (programMethod.attributes[index] instanceof CodeAttribute) {
+          return method;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static List<JvmCfaEdge> getRawLeavingEdges(JvmCfaNode node) {
+    return node instanceof LazyEntryNode
+        ? ((LazyEntryNode) node).getRawLeavingEdges()
+        : node.getLeavingEdges();
+  }
+
+  private static List<JvmCfaEdge> getRawEnteringEdges(JvmCfaNode node) {
+    return node instanceof LazyEntryNode
+        ? ((LazyEntryNode) node).getRawEnteringEdges()
+        : node.getEnteringEdges();
+  }
+
+  /**
+   * An entry node which builds its method when its edges are accessed. Since building and evicting
+   * other methods changes its edges, it returns snapshots of them, taken under the lock of the CFA.
+   */
+  private class LazyEntryNode extends JvmCfaNode {
+
+    private LazyEntryNode(MethodSignature signature, Clazz clazz) {
+      super(signature, 0, clazz);
+    }
+
+    @Override
+    public List<JvmCfaEdge> getLeavingEdges() {
+      synchronized (LazyJvmCfa.this) {
+        ensureBuilt(getSignature());
+        return new ArrayList<>(super.getLeavingEdges());
+      }
+    }
+
+    @Override
+    public List<JvmCfaEdge> getEnteringEdges() {
+      synchronized (LazyJvmCfa.this) {
+        ensureCallersBuilt(getSignature());
+        return new ArrayList<>(super.getEnteringEdges());
+      }
+    }
+
+    @Override
+    public Optional<JvmCfaEdge> getEnteringInvokeEdge() {
+      synchronized (LazyJvmCfa.this) {
+        ensureCallersBuilt(getSignature());
+        return super.getEnteringInvokeEdge();
+      }
+    }
+
+    @Override
+    public Optional<JvmCfaEdge> getLeavingInvokeEdge() {
+      synchronized (LazyJvmCfa.this) {
+        ensureBuilt(getSignature());
+        return super.getLeavingInvokeEdge();
+      }
+    }
+
+    @Override
+    public Collection<JvmCfaEdge> getEnteringIntraproceduralEdges() {
+      synchronized (LazyJvmCfa.this) {
+        ensureBuilt(getSignature());
+        return super.getEnteringIntraproceduralEdges();
+      }
+    }
+
+    @Override
+    public Collection<JvmCfaEdge> getLeavingIntraproceduralEdges() {
+      synchronized (LazyJvmCfa.this) {
+        ensureBuilt(getSignature());
+        return super.getLeavingIntraproceduralEdges();
+      }
+    }
+
+    @Override
+    public Collection<JvmCallCfaEdge> getLeavingInterproceduralEdges() {
+      synchronized (LazyJvmCfa.this) {
+        ensureBuilt(getSignature());
+        return super.getLeavingInterproceduralEdges();
+      }
+    }
+
+    // The same hash as a regular entry node, so the lazy CFA iterates hash-based collections of
+    // nodes and states in the same order as the eager one.
+    @Override
+    public int hashCode() {
+      return Objects.hash(getSignature(), getOffset(), JvmCfaNode.class);
+    }
+
+    private List<JvmCfaEdge> getRawLeavingEdges() {
+      return super.getLeavingEdges();
+    }
+
+    private List<JvmCfaEdge> getRawEnteringEdges() {
+      return super.getEnteringEdges();
+    }
+  }
+
+  /** Creates the entry nodes of the visited methods with code. */
+  private class EntryNodeCreator implements AttributeVisitor {
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      addEntryNodeIfAbsent(MethodSignature.computeIfAbsent(clazz, method), clazz);
+    }
+  }
+}
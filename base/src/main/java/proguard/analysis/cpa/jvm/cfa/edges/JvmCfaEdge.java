@@ -76,6 +76,6 @@ public abstract class JvmCfaEdge implements CfaEdge<JvmCfaNode> {
    * target method of the call.
    */
   public MethodSignature targetSignature() {
-    return target.getSignature();
+    return getTarget().getSignature();
   }
 }
@@ -19,7 +19,7 @@
 package proguard.analysis.cpa.jvm.domain.memory;
 
 import proguard.analysis.cpa.defaults.BamCpaRun;
-import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
@@ -102,7 +102,7 @@ public abstract class JvmMemoryLocationBamCpaRun<
 
   @Override
   protected Waitlist createWaitlist() {
-    return new BreadthFirstWaitlist();
+    return new IndexedBreadthFirstWaitlist();
   }
 
   // implementations for TraceExtractor
@@ -62,7 +62,7 @@ public class JvmReferenceAbstractState extends JvmAbstractState<SetAbstractState
   @Override
   public SetAbstractState<Reference> getVariableOrDefault(
       int index, SetAbstractState<Reference> defaultState) {
-    if (index < frame.getLocalVariables().size()) {
+    if (index < frame.getLocalVariablesView().size()) {
       return super.getVariableOrDefault(index, defaultState);
     }
     return new SetAbstractState<>(
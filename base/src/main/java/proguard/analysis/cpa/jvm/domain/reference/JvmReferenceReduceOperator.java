@@ -62,7 +62,7 @@ public class JvmReferenceReduceOperator
       JvmFrameAbstractState<SetAbstractState<Reference>> reducedFrame,
       MapAbstractState<String, SetAbstractState<Reference>> reducedStaticFields) {
     Set<Object> roots = ((JvmTreeHeapPrincipalAbstractState) heap).getStaticCreationReferences();
-    reducedFrame.getLocalVariables().forEach(roots::addAll);
+    reducedFrame.getLocalVariablesView().forEach(roots::addAll);
     reducedStaticFields.values().forEach(roots::addAll);
 
     heap.reduce(roots);
@@ -18,14 +18,26 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCache;
+import proguard.analysis.cpa.bam.BamSummaryStore;
 import proguard.analysis.cpa.bam.ExpandOperator;
+import proguard.analysis.cpa.bam.PersistentBamCache;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
+import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.MergeJoinOperator;
 import proguard.analysis.cpa.defaults.SetAbstractState;
 import proguard.analysis.cpa.defaults.SimpleCpa;
@@ -34,6 +46,7 @@ import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractDomain;
 import proguard.analysis.cpa.interfaces.AbstractState;
 import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
 import proguard.analysis.cpa.jvm.domain.reference.CompositeHeapJvmAbstractState;
@@ -47,13 +60,16 @@ import proguard.analysis.cpa.jvm.domain.reference.JvmReferenceTransferRelation;
 import proguard.analysis.cpa.jvm.domain.reference.Reference;
 import proguard.analysis.cpa.jvm.state.JvmAbstractState;
 import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmPersistentFrameAbstractState;
 import proguard.analysis.cpa.jvm.state.heap.HeapModel;
 import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
 import proguard.analysis.cpa.jvm.state.heap.tree.HeapNode;
 import proguard.analysis.cpa.jvm.state.heap.tree.JvmTreeHeapPrincipalAbstractState;
 import proguard.analysis.cpa.jvm.util.JvmBamCpaRun;
+import proguard.analysis.cpa.jvm.util.JvmCfaContentHasher;
 import proguard.analysis.cpa.state.HashMapAbstractStateFactory;
 import proguard.analysis.cpa.state.MapAbstractStateFactory;
+import proguard.analysis.cpa.state.PersistentHashMapAbstractStateFactory;
 import proguard.classfile.MethodSignature;
 
 /**
@@ -64,6 +80,8 @@ import proguard.classfile.MethodSignature;
 public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     extends JvmBamCpaRun<SimpleCpa, SetAbstractState<JvmTaintSource>, OuterAbstractStateT> {
 
+  private static final Logger log = LogManager.getLogger(JvmTaintBamCpaRun.class);
+
   private final Set<? extends JvmTaintSource> taintSources;
   private final MethodSignature mainMethodSignature;
   private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
@@ -77,6 +95,8 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
   private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
       followerHeapNodeMapAbstractStateFactory;
   private final Map<MethodSignature, JvmTaintTransformer> taintTransformers;
+  private final Path bamSummaryStorePath;
+  private final boolean persistentFrames;
 
   /**
    * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap
@@ -121,6 +141,73 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
       MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
           followerHeapNodeMapAbstractStateFactory,
       Map<MethodSignature, JvmTaintTransformer> taintTransformers) {
+    this(
+        cfa,
+        taintSources,
+        mainMethodSignature,
+        maxCallStackDepth,
+        heapModel,
+        abortOperator,
+        reduceHeap,
+        staticFieldMapAbstractStateFactory,
+        principalHeapMapAbstractStateFactory,
+        principalHeapNodeMapAbstractStateFactory,
+        followerHeapMapAbstractStateFactory,
+        followerHeapNodeMapAbstractStateFactory,
+        taintTransformers,
+        null,
+        false);
+  }
+
+  /**
+   * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap
+   * states at call/return sites (this parameter is irrelevant for FORGETFUL heap model).
+   *
+   * @param cfa a CFA
+   * @param taintSources a set of taint sources
+   * @param mainMethodSignature the signature of the main method
+   * @param maxCallStackDepth the maximum depth of the call stack analyzed interprocedurally 0 means
+   *     intraprocedural analysis < 0 means no maximum depth
+   * @param heapModel a heap model to be used
+   * @param abortOperator an abort operator
+   * @param reduceHeap whether reduction/expansion of the heap state is performed at call/return
+   *     sites
+   * @param principalHeapMapAbstractStateFactory a map abstract state factory used for constructing
+   *     the mapping from references to objects in the principal heap model
+   * @param principalHeapNodeMapAbstractStateFactory a map abstract state factory used for
+   *     constructing the mapping from fields to values in the principal heap model
+   * @param followerHeapMapAbstractStateFactory a map abstract state factory used for constructing
+   *     the mapping from references to objects in the follower heap model
+   * @param followerHeapNodeMapAbstractStateFactory a map abstract state factory used for
+   *     constructing the mapping from fields to values in the follower heap model
+   * @param taintTransformers a mapping from method signature to a transformer object applied to the
+   *     taint state when that method is invoked
+   * @param bamSummaryStorePath the file of the store with the block abstractions of earlier runs,
+   *     or null if they should not be reused
+   * @param persistentFrames whether the frames of the states are {@link
+   *     JvmPersistentFrameAbstractState}s, which share their structure with their copies
+   */
+  protected JvmTaintBamCpaRun(
+      JvmCfa cfa,
+      Set<? extends JvmTaintSource> taintSources,
+      MethodSignature mainMethodSignature,
+      int maxCallStackDepth,
+      HeapModel heapModel,
+      AbortOperator abortOperator,
+      boolean reduceHeap,
+      MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
+          staticFieldMapAbstractStateFactory,
+      MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>>
+          principalHeapMapAbstractStateFactory,
+      MapAbstractStateFactory<String, SetAbstractState<Reference>>
+          principalHeapNodeMapAbstractStateFactory,
+      MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>>
+          followerHeapMapAbstractStateFactory,
+      MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
+          followerHeapNodeMapAbstractStateFactory,
+      Map<MethodSignature, JvmTaintTransformer> taintTransformers,
+      Path bamSummaryStorePath,
+      boolean persistentFrames) {
     super(cfa, maxCallStackDepth, heapModel, abortOperator, reduceHeap);
     this.taintSources = taintSources;
     this.mainMethodSignature = mainMethodSignature;
@@ -130,6 +217,8 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     this.followerHeapMapAbstractStateFactory = followerHeapMapAbstractStateFactory;
     this.followerHeapNodeMapAbstractStateFactory = followerHeapNodeMapAbstractStateFactory;
     this.taintTransformers = taintTransformers;
+    this.bamSummaryStorePath = bamSummaryStorePath;
+    this.persistentFrames = persistentFrames;
   }
 
   // implementations for JvmBamCpaRun
@@ -189,6 +278,34 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     }
   }
 
+  /**
+   * Returns a {@link PersistentBamCache} reusing the block abstractions of earlier runs, if a BAM
+   * summary store file is set and the heap model is {@link HeapModel#FORGETFUL}, or a fresh BAM
+   * cache otherwise.
+   */
+  @Override
+  public BamCache<MethodSignature> createCache() {
+    if (bamSummaryStorePath == null || heapModel != HeapModel.FORGETFUL) {
+      return super.createCache();
+    }
+    JvmTaintBamSummaryCodec codec =
+        new JvmTaintBamSummaryCodec(
+            cfa, taintSources, taintTransformers, staticFieldMapAbstractStateFactory);
+    // The summaries also depend on how deep and with which heap reduction calls are analyzed.
+    long fingerprint = codec.getFingerprint();
+    fingerprint = 31 * fingerprint + getMaxCallStackDepth();
+    fingerprint = 31 * fingerprint + (reduceHeap ? 1 : 0);
+    BamSummaryStore store;
+    try {
+      store = BamSummaryStore.open(bamSummaryStorePath, fingerprint);
+    } catch (IOException e) {
+      log.warn("Cannot open the BAM summary store {}: {}", bamSummaryStorePath, e.getMessage());
+      store = BamSummaryStore.empty(fingerprint);
+    }
+    return new PersistentBamCache<>(
+        super.createCache(), store, codec, new JvmCfaContentHasher(cfa));
+  }
+
   @Override
   public MethodSignature getMainSignature() {
     return mainMethodSignature;
@@ -202,7 +319,7 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
             (OuterAbstractStateT)
                 new JvmAbstractState<>(
                     cfa.getFunctionEntryNode(mainMethodSignature),
-                    new JvmFrameAbstractState<>(),
+                    createFrame(),
                     new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom),
                     staticFieldMapAbstractStateFactory.createMapAbstractState()));
       case TREE:
@@ -210,7 +327,7 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
         JvmReferenceAbstractState principalState =
             new JvmReferenceAbstractState(
                 cfa.getFunctionEntryNode(mainMethodSignature),
-                new JvmFrameAbstractState<>(),
+                createFrame(),
                 new JvmTreeHeapPrincipalAbstractState(
                     principalHeapMapAbstractStateFactory, principalHeapNodeMapAbstractStateFactory),
                 principalHeapNodeMapAbstractStateFactory.createMapAbstractState());
@@ -221,7 +338,7 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
                         principalState,
                         new JvmTaintAbstractState(
                             cfa.getFunctionEntryNode(mainMethodSignature),
-                            new JvmFrameAbstractState<>(),
+                            createFrame(),
                             heapModel == HeapModel.TAINT_TREE
                                 ? new JvmTaintTreeHeapFollowerAbstractState(
                                     principalState,
@@ -241,6 +358,80 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     }
   }
 
+  /**
+   * Writes the block abstractions computed by the analysis to the BAM summary store file, so later
+   * runs can reuse them.
+   *
+   * @throws IllegalStateException if no BAM summary store file is set or the heap model is not
+   *     {@link HeapModel#FORGETFUL}
+   * @throws IOException if the store cannot be written
+   */
+  public void saveBamSummaries() throws IOException {
+    BamCache<MethodSignature> cache = getCpa().getCache();
+    if (!(cache instanceof PersistentBamCache)) {
+      throw new IllegalStateException("The run does not use a BAM summary store");
+    }
+    ((PersistentBamCache<MethodSignature>) cache).save(bamSummaryStorePath);
+  }
+
+  /**
+   * Summarizes the methods reachable from the main method in parallel, bottom-up along the
+   * strongly connected components of the call graph, before the analysis is executed. Each method
+   * is summarized for the contexts of its call sites in which neither the arguments nor the static
+   * fields are tainted, and the main method for its initial states. The subsequent {@link
+   * #execute()} reuses these block abstractions and only computes the ones for tainted contexts.
+   *
+   * @param parallelism the number of worker threads
+   * @throws IllegalStateException if the heap model is not {@link HeapModel#FORGETFUL}
+   */
+  public void summarizeInParallel(int parallelism) {
+    if (heapModel != HeapModel.FORGETFUL) {
+      throw new IllegalStateException(
+          "Parallel summarization is not supported for the heap model " + heapModel.name());
+    }
+    Map<MethodSignature, Set<AbstractState>> entryStates = new LinkedHashMap<>();
+    entryStates.put(mainMethodSignature, new LinkedHashSet<>(getInitialStates()));
+    ReduceOperator<JvmCfaNode, JvmCfaEdge, MethodSignature> reduceOperator =
+        createReduceOperator();
+    Deque<MethodSignature> worklist = new ArrayDeque<>(entryStates.keySet());
+    while (!worklist.isEmpty()) {
+      MethodSignature method = worklist.pop();
+      for (JvmCfaNode node : cfa.getFunctionNodes(method)) {
+        for (JvmCallCfaEdge callEdge : node.getKnownMethodCallEdges()) {
+          JvmCfaNode entryNode = callEdge.getTarget();
+          JvmAbstractState<SetAbstractState<JvmTaintSource>> callerState =
+              new JvmAbstractState<>(
+                  node,
+                  createFrame(),
+                  new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom),
+                  staticFieldMapAbstractStateFactory.createMapAbstractState());
+          for (int i = 0; i < callEdge.getCall().getJvmArgumentSize(); i++) {
+            callerState.push(SetAbstractState.bottom);
+          }
+          MethodSignature callee = entryNode.getSignature();
+          if (!entryStates.containsKey(callee)) {
+            entryStates.put(callee, new LinkedHashSet<>());
+            worklist.push(callee);
+          }
+          entryStates
+              .get(callee)
+              .add(reduceOperator.reduce(callerState, entryNode, callEdge.getCall()));
+        }
+      }
+    }
+    summarizeInParallel(
+        entryStates.keySet(),
+        method -> entryStates.getOrDefault(method, Collections.emptySet()),
+        parallelism);
+  }
+
+  private <StateT extends LatticeAbstractState<StateT>>
+      JvmFrameAbstractState<StateT> createFrame() {
+    return persistentFrames
+        ? new JvmPersistentFrameAbstractState<>()
+        : new JvmFrameAbstractState<>();
+  }
+
   /**
    * A builder for {@link JvmTaintBamCpaRun}. It assumes either the best performing parameters or
    * the most basic one, if there is no absolute benefit.
@@ -252,17 +443,19 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     protected MethodSignature mainSignature;
     protected Set<? extends JvmTaintSource> taintSources = Collections.emptySet();
     protected MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
-        staticFieldMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
+        staticFieldMapAbstractStateFactory;
     protected MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>>
-        principalHeapMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
+        principalHeapMapAbstractStateFactory;
     protected MapAbstractStateFactory<String, SetAbstractState<Reference>>
-        principalHeapNodeMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
+        principalHeapNodeMapAbstractStateFactory;
     protected MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>>
-        followerHeapMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
+        followerHeapMapAbstractStateFactory;
     protected MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
-        followerHeapNodeMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
+        followerHeapNodeMapAbstractStateFactory;
 
     protected Map<MethodSignature, JvmTaintTransformer> taintTransformers = Collections.emptyMap();
+    protected Path bamSummaryStorePath;
+    protected boolean persistentFrames;
 
     // implementations for JvmBamCpaRun.Builder
 
@@ -280,12 +473,14 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
           heapModel,
           abortOperator,
           reduceHeap,
-          staticFieldMapAbstractStateFactory,
-          principalHeapMapAbstractStateFactory,
-          principalHeapNodeMapAbstractStateFactory,
-          followerHeapMapAbstractStateFactory,
-          followerHeapNodeMapAbstractStateFactory,
-          taintTransformers);
+          orDefault(staticFieldMapAbstractStateFactory),
+          orDefault(principalHeapMapAbstractStateFactory),
+          orDefault(principalHeapNodeMapAbstractStateFactory),
+          orDefault(followerHeapMapAbstractStateFactory),
+          orDefault(followerHeapNodeMapAbstractStateFactory),
+          taintTransformers,
+          bamSummaryStorePath,
+          persistentFrames);
     }
 
     @Override
@@ -386,5 +581,42 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
       this.taintTransformers = taintTransformers;
       return this;
     }
+
+    /**
+     * Sets the file of the store with the block abstractions of earlier runs. If set, the analysis
+     * with the {@link HeapModel#FORGETFUL} heap model reuses the stored block abstractions of
+     * unchanged methods and {@link JvmTaintBamCpaRun#saveBamSummaries()} updates the store.
+     */
+    public Builder setBamSummaryStorePath(Path bamSummaryStorePath) {
+      this.bamSummaryStorePath = bamSummaryStorePath;
+      return this;
+    }
+
+    /**
+     * Sets whether the analysis uses persistent states, which share their structure with their
+     * copies, so copying a state takes constant time. If set, the frames are {@link
+     * JvmPersistentFrameAbstractState}s and the map abstract states without an explicitly set
+     * factory are created by the {@link PersistentHashMapAbstractStateFactory}, otherwise by the
+     * {@link HashMapAbstractStateFactory}.
+     */
+    public Builder setPersistentStates(boolean persistentStates) {
+      this.persistentFrames = persistentStates;
+      return this;
+    }
+
+    /**
+     * Returns the given map abstract state factory or, if it hasn't been set, the default one for
+     * the selected kind of states.
+     */
+    private <KeyT, StateT extends LatticeAbstractState<StateT>>
+        MapAbstractStateFactory<KeyT, StateT> orDefault(
+            MapAbstractStateFactory<KeyT, StateT> mapAbstractStateFactory) {
+      if (mapAbstractStateFactory != null) {
+        return mapAbstractStateFactory;
+      }
+      return persistentFrames
+          ? PersistentHashMapAbstractStateFactory.getInstance()
+          : HashMapAbstractStateFactory.getInstance();
+    }
   }
 }
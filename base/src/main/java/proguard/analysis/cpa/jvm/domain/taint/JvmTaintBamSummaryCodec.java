@@ -0,0 +1,322 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.domain.taint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.analysis.cpa.bam.BamSummaryCodec;
+import proguard.analysis.cpa.defaults.ListAbstractState;
+import proguard.analysis.cpa.defaults.MapAbstractState;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.defaults.StackAbstractState;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCatchCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.analysis.cpa.state.HashMapAbstractStateFactory;
+import proguard.analysis.cpa.state.MapAbstractStateFactory;
+import proguard.classfile.MethodSignature;
+
+/**
+ * This {@link BamSummaryCodec} serializes the abstract states of the taint analysis with the
+ * forgetful heap model, i.e., {@link JvmAbstractState}s and {@link JvmTaintAbstractState}s with a
+ * {@link JvmForgetfulHeapAbstractState} of {@link SetAbstractState#bottom}. Program locations are
+ * encoded by their method signature and offset and are resolved in the given {@link JvmCfa} when
+ * decoding, taint sources are encoded by their index among the configured taint sources.
+ *
+ * <p>The fingerprint covers the taint sources and the signatures of the methods with taint
+ * transformers. Since the behavior of the transformers themselves is opaque, changing it requires
+ * discarding the stored summaries.
+ */
+public class JvmTaintBamSummaryCodec implements BamSummaryCodec {
+
+  private static final byte JVM_STATE = 0;
+  private static final byte TAINT_STATE = 1;
+
+  private static final byte NODE = 0;
+  private static final byte CATCH_NODE = 1;
+  private static final byte UNKNOWN_NODE = 2;
+
+  private final JvmCfa cfa;
+  private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
+      staticFieldMapAbstractStateFactory;
+  private final List<JvmTaintSource> taintSources = new ArrayList<>();
+  private final Map<JvmTaintSource, Integer> taintSourceIndices = new HashMap<>();
+  private final Map<String, MethodSignature> signatures = new ConcurrentHashMap<>();
+  private final long fingerprint;
+
+  /**
+   * Create a codec for a taint analysis without taint transformers.
+   *
+   * @param cfa the CFA of the analyzed program
+   * @param taintSources the taint sources of the analysis
+   */
+  public JvmTaintBamSummaryCodec(JvmCfa cfa, Set<? extends JvmTaintSource> taintSources) {
+    this(cfa, taintSources, Collections.emptyMap(), HashMapAbstractStateFactory.getInstance());
+  }
+
+  /**
+   * Create a codec for a taint analysis.
+   *
+   * @param cfa the CFA of the analyzed program
+   * @param taintSources the taint sources of the analysis
+   * @param taintTransformers the taint transformers of the analysis
+   * @param staticFieldMapAbstractStateFactory the factory of the static field maps of decoded
+   *     states
+   */
+  public JvmTaintBamSummaryCodec(
+      JvmCfa cfa,
+      Set<? extends JvmTaintSource> taintSources,
+      Map<MethodSignature, JvmTaintTransformer> taintTransformers,
+      MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
+          staticFieldMapAbstractStateFactory) {
+    this.cfa = cfa;
+    this.staticFieldMapAbstractStateFactory = staticFieldMapAbstractStateFactory;
+
+    // Number the sources in a stable order. Sources which can't be told apart across runs, e.g.,
+    // because they only differ in their call matchers, are not numbered.
+    List<String> sourceKeys = new ArrayList<>();
+    Map<String, JvmTaintSource> sourcesByKey = new HashMap<>();
+    for (JvmTaintSource taintSource : taintSources) {
+      String key = sourceKey(taintSource);
+      if (sourcesByKey.containsKey(key)) {
+        sourcesByKey.put(key, null);
+      } else {
+        sourcesByKey.put(key, taintSource);
+        sourceKeys.add(key);
+      }
+    }
+    Collections.sort(sourceKeys);
+    long fingerprint = 0xcbf29ce484222325L;
+    for (String key : sourceKeys) {
+      JvmTaintSource taintSource = sourcesByKey.get(key);
+      if (taintSource != null) {
+        taintSourceIndices.put(taintSource, this.taintSources.size());
+      }
+      this.taintSources.add(taintSource);
+      fingerprint = hash(fingerprint, key);
+    }
+    List<MethodSignature> transformedMethods = new ArrayList<>(taintTransformers.keySet());
+    transformedMethods.sort(Comparator.comparing(MethodSignature::getFqn));
+    for (MethodSignature transformedMethod : transformedMethods) {
+      fingerprint = hash(fingerprint, transformedMethod.getFqn());
+    }
+    this.fingerprint = fingerprint;
+  }
+
+  // implementations for BamSummaryCodec
+
+  @Override
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
+  @Override
+  public void writeState(AbstractState abstractState, DataOutput output) throws IOException {
+    byte stateType;
+    if (abstractState.getClass() == JvmTaintAbstractState.class) {
+      stateType = TAINT_STATE;
+    } else if (abstractState.getClass() == JvmAbstractState.class) {
+      stateType = JVM_STATE;
+    } else {
+      throw new IllegalArgumentException(
+          "States of type " + abstractState.getClass().getName() + " are not supported");
+    }
+    JvmAbstractState<SetAbstractState<JvmTaintSource>> jvmState =
+        (JvmAbstractState<SetAbstractState<JvmTaintSource>>) abstractState;
+    if (!(jvmState.getHeap() instanceof JvmForgetfulHeapAbstractState)) {
+      throw new IllegalArgumentException(
+          "Heaps of type " + jvmState.getHeap().getClass().getName() + " are not supported");
+    }
+
+    output.writeByte(stateType);
+    writeLocation(jvmState.getProgramLocation(), output);
+    writeElements(jvmState.getFrame().getLocalVariablesView(), output);
+    writeElements(jvmState.getFrame().getOperandStackView(), output);
+
+    MapAbstractState<String, SetAbstractState<JvmTaintSource>> staticFields =
+        jvmState.getStaticFields();
+    List<String> fieldNames = new ArrayList<>(staticFields.keySet());
+    Collections.sort(fieldNames);
+    output.writeInt(fieldNames.size());
+    for (String fieldName : fieldNames) {
+      output.writeUTF(fieldName);
+      writeTaint(staticFields.get(fieldName), output);
+    }
+  }
+
+  @Override
+  public AbstractState readState(DataInput input) throws IOException {
+    byte stateType = input.readByte();
+    JvmCfaNode programLocation = readLocation(input);
+
+    ListAbstractState<SetAbstractState<JvmTaintSource>> localVariables = new ListAbstractState<>();
+    for (int count = input.readInt(); count > 0; count--) {
+      localVariables.add(readTaint(input));
+    }
+    StackAbstractState<SetAbstractState<JvmTaintSource>> operandStack = new StackAbstractState<>();
+    for (int count = input.readInt(); count > 0; count--) {
+      operandStack.add(readTaint(input));
+    }
+    MapAbstractState<String, SetAbstractState<JvmTaintSource>> staticFields =
+        staticFieldMapAbstractStateFactory.createMapAbstractState();
+    for (int count = input.readInt(); count > 0; count--) {
+      String fieldName = input.readUTF();
+      staticFields.put(fieldName, readTaint(input));
+    }
+
+    JvmFrameAbstractState<SetAbstractState<JvmTaintSource>> frame =
+        new JvmFrameAbstractState<>(localVariables, operandStack);
+    JvmForgetfulHeapAbstractState<SetAbstractState<JvmTaintSource>> heap =
+        new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom);
+    switch (stateType) {
+      case TAINT_STATE:
+        return new JvmTaintAbstractState(programLocation, frame, heap, staticFields);
+      case JVM_STATE:
+        return new JvmAbstractState<>(programLocation, frame, heap, staticFields);
+      default:
+        throw new IOException("Invalid state type " + stateType);
+    }
+  }
+
+  // Private utility methods.
+
+  private void writeLocation(JvmCfaNode location, DataOutput output) throws IOException {
+    if (location.isUnknownNode()) {
+      output.writeByte(UNKNOWN_NODE);
+      return;
+    }
+    MethodSignature signature = location.getSignature();
+    if (signature == null || signature.method == null || signature.descriptor == null) {
+      throw new IllegalArgumentException("Location " + location + " is not supported");
+    }
+    output.writeByte(location instanceof JvmCatchCfaNode ? CATCH_NODE : NODE);
+    output.writeUTF(signature.getClassName());
+    output.writeUTF(signature.method);
+    output.writeUTF(signature.descriptor.toString());
+    output.writeInt(location.getOffset());
+  }
+
+  private JvmCfaNode readLocation(DataInput input) throws IOException {
+    byte locationType = input.readByte();
+    if (locationType == UNKNOWN_NODE) {
+      return JvmUnknownCfaNode.INSTANCE;
+    }
+    String className = input.readUTF();
+    String methodName = input.readUTF();
+    String descriptor = input.readUTF();
+    int offset = input.readInt();
+    MethodSignature signature =
+        signatures.computeIfAbsent(
+            className + '.' + methodName + descriptor,
+            key -> new MethodSignature(className, methodName, descriptor));
+    JvmCfaNode location =
+        locationType == CATCH_NODE
+            ? cfa.getFunctionCatchNode(signature, offset)
+            : cfa.getFunctionNode(signature, offset);
+    if (location == null) {
+      throw new IOException("No CFA node for " + signature + " at offset " + offset);
+    }
+    return location;
+  }
+
+  private void writeElements(List<SetAbstractState<JvmTaintSource>> elements, DataOutput output)
+      throws IOException {
+    output.writeInt(elements.size());
+    for (SetAbstractState<JvmTaintSource> element : elements) {
+      writeTaint(element, output);
+    }
+  }
+
+  private void writeTaint(SetAbstractState<JvmTaintSource> taint, DataOutput output)
+      throws IOException {
+    if (taint == null) {
+      output.writeInt(-1);
+      return;
+    }
+    int[] indices = new int[taint.size()];
+    int index = 0;
+    for (JvmTaintSource taintSource : taint) {
+      Integer sourceIndex = taintSourceIndices.get(taintSource);
+      if (sourceIndex == null) {
+        throw new IllegalArgumentException("Taint source " + taintSource + " is not supported");
+      }
+      indices[index++] = sourceIndex;
+    }
+    Arrays.sort(indices);
+    output.writeInt(indices.length);
+    for (int sourceIndex : indices) {
+      output.writeInt(sourceIndex);
+    }
+  }
+
+  private SetAbstractState<JvmTaintSource> readTaint(DataInput input) throws IOException {
+    int size = input.readInt();
+    if (size < 0) {
+      return null;
+    }
+    SetAbstractState<JvmTaintSource> taint = new SetAbstractState<>();
+    for (int count = size; count > 0; count--) {
+      int sourceIndex = input.readInt();
+      if (sourceIndex < 0
+          || sourceIndex >= taintSources.size()
+          || taintSources.get(sourceIndex) == null) {
+        throw new IOException("Invalid taint source index " + sourceIndex);
+      }
+      taint.add(taintSources.get(sourceIndex));
+    }
+    return taint;
+  }
+
+  /** Returns a description of the taint source which is stable across runs. */
+  private static String sourceKey(JvmTaintSource taintSource) {
+    // The description of call matchers isn't stable, so only whether there is one is included.
+    String key =
+        new JvmTaintSource(
+                taintSource.signature,
+                taintSource.taintsThis,
+                taintSource.taintsReturn,
+                taintSource.taintsArgs,
+                taintSource.taintsGlobals)
+            .toString();
+    return taintSource.callMatcher.isPresent() ? key + " filtered" : key;
+  }
+
+  /** Returns the 64-bit FNV-1a hash of the string, continuing from the given hash. */
+  private static long hash(long hash, String string) {
+    for (int index = 0; index < string.length(); index++) {
+      hash = (hash ^ string.charAt(index)) * 0x100000001b3L;
+    }
+    return (hash ^ 0xff) * 0x100000001b3L;
+  }
+}
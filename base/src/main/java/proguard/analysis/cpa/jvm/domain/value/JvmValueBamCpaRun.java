@@ -7,8 +7,8 @@ import java.util.Collection;
 import proguard.analysis.cpa.bam.ExpandOperator;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
-import proguard.analysis.cpa.defaults.DepthFirstWaitlist;
 import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.IndexedDepthFirstWaitlist;
 import proguard.analysis.cpa.defaults.MapAbstractState;
 import proguard.analysis.cpa.defaults.MergeJoinOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
@@ -93,7 +93,7 @@ public class JvmValueBamCpaRun
   }
 
   protected Waitlist createWaitlist() {
-    return new DepthFirstWaitlist();
+    return new IndexedDepthFirstWaitlist();
   }
 
   @Override
@@ -38,7 +38,7 @@ public class JvmValueReduceOperator extends JvmDefaultReduceOperator<ValueAbstra
       JvmFrameAbstractState<ValueAbstractState> frame,
       MapAbstractState<String, ValueAbstractState> staticFields) {
     heap.reduce(
-        Stream.of(frame.getLocalVariables(), staticFields.values())
+        Stream.of(frame.getLocalVariablesView(), staticFields.values())
             .flatMap(it -> it.stream().map(ValueAbstractState::getValue))
             // Only IdentifiedReferenceValue point to something on the heap.
             .filter(it -> it instanceof IdentifiedReferenceValue)
@@ -33,6 +33,7 @@ import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
 import proguard.analysis.cpa.jvm.state.JvmAbstractState;
 import proguard.analysis.cpa.jvm.state.JvmAbstractStateFactory;
 import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmPersistentFrameAbstractState;
 import proguard.analysis.cpa.jvm.state.heap.JvmHeapAbstractState;
 import proguard.analysis.cpa.jvm.util.InstructionClassifier;
 import proguard.analysis.datastructure.callgraph.Call;
@@ -165,17 +166,33 @@ public class JvmDefaultExpandOperator<StateT extends LatticeAbstractState<StateT
       CallerExceptionHandlerFinder finder = new CallerExceptionHandlerFinder(call, cfa);
       call.caller.member.accept(call.caller.clazz, new AllAttributeVisitor(finder));
 
-      JvmHeapAbstractState<StateT> heap = ((JvmAbstractState<StateT>) reducedExitState).getHeap();
+      // copy the heap before expanding it, the exit state belongs to a cached block abstraction
+      JvmHeapAbstractState<StateT> heap =
+          ((JvmAbstractState<StateT>) reducedExitState).getHeap().copy();
       if (expandHeap) {
         expandHeap(heap, ((JvmAbstractState<StateT>) expandedInitialState).getHeap());
       }
 
+      JvmFrameAbstractState<StateT> callerFrame =
+          ((JvmAbstractState<StateT>) expandedInitialState).getFrame();
+      JvmFrameAbstractState<StateT> exitFrame =
+          ((JvmAbstractState<StateT>) reducedExitState).getFrame();
+      JvmFrameAbstractState<StateT> frame;
+      if (callerFrame instanceof JvmPersistentFrameAbstractState) {
+        // Keep the frame persistent, with the operand stack of the exit state.
+        frame = callerFrame.copy();
+        frame.clearOperandStack();
+        frame.pushAll(exitFrame.getOperandStackView());
+      } else {
+        frame =
+            new JvmFrameAbstractState<>(
+                callerFrame.getLocalVariables(), exitFrame.getOperandStack());
+      }
+
       JvmAbstractState<StateT> returnState =
           createJvmAbstractState(
               finder.nextNode,
-              new JvmFrameAbstractState<>(
-                  ((JvmAbstractState<StateT>) expandedInitialState).getFrame().getLocalVariables(),
-                  ((JvmAbstractState<StateT>) reducedExitState).getFrame().getOperandStack()),
+              frame,
               heap,
               ((JvmAbstractState<StateT>) reducedExitState).getStaticFields());
 
@@ -21,15 +21,14 @@ package proguard.analysis.cpa.jvm.operators;
 import java.util.ListIterator;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
-import proguard.analysis.cpa.defaults.ListAbstractState;
 import proguard.analysis.cpa.defaults.MapAbstractState;
-import proguard.analysis.cpa.defaults.StackAbstractState;
 import proguard.analysis.cpa.interfaces.AbstractState;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
 import proguard.analysis.cpa.jvm.state.JvmAbstractState;
 import proguard.analysis.cpa.jvm.state.JvmAbstractStateFactory;
 import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmPersistentFrameAbstractState;
 import proguard.analysis.cpa.jvm.state.heap.JvmHeapAbstractState;
 import proguard.analysis.datastructure.callgraph.Call;
 import proguard.classfile.MethodSignature;
@@ -79,9 +78,11 @@ public class JvmDefaultReduceOperator<StateT extends LatticeAbstractState<StateT
         (JvmAbstractState<StateT>) expandedInitialState.copy();
     initialJvmState.setProgramLocation(blockEntryNode);
 
-    ListAbstractState<StateT> localVariables = new ListAbstractState<>();
-    StackAbstractState<StateT> callStack = new StackAbstractState<>();
-    JvmFrameAbstractState<StateT> frame = new JvmFrameAbstractState<>(localVariables, callStack);
+    // Keep the kind of the frame, so persistent frames stay persistent across calls.
+    JvmFrameAbstractState<StateT> frame =
+        initialJvmState.getFrame() instanceof JvmPersistentFrameAbstractState
+            ? new JvmPersistentFrameAbstractState<>()
+            : new JvmFrameAbstractState<>();
 
     int i = 0;
     if (call.getTarget().descriptor.argumentTypes != null) {
@@ -100,12 +101,12 @@ public class JvmDefaultReduceOperator<StateT extends LatticeAbstractState<StateT
 
         StateT state = initialJvmState.peek(i++);
 
-        localVariables.set(argSize - size, state, null);
+        frame.setVariable(argSize - size, state, null);
 
         if (size == 2) {
           state = initialJvmState.peek(i++);
 
-          localVariables.set(argSize - size + 1, state, null);
+          frame.setVariable(argSize - size + 1, state, null);
         }
 
         argSize -= size;
@@ -118,7 +119,7 @@ public class JvmDefaultReduceOperator<StateT extends LatticeAbstractState<StateT
     if (!call.isStatic()) {
       StateT state = initialJvmState.peek(i++);
 
-      localVariables.set(0, state, null);
+      frame.setVariable(0, state, null);
     }
 
     JvmHeapAbstractState<StateT> heap = initialJvmState.getHeap();
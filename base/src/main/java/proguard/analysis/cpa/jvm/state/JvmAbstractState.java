@@ -182,7 +182,7 @@ public class JvmAbstractState<StateT extends LatticeAbstractState<StateT>>
 
   /** Empties the operand stack. */
   public void clearOperandStack() {
-    frame.getOperandStack().clear();
+    frame.clearOperandStack();
   }
 
   /**
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
@@ -61,15 +62,15 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
   public JvmFrameAbstractState<StateT> join(JvmFrameAbstractState<StateT> abstractState) {
     JvmFrameAbstractState<StateT> answer =
         new JvmFrameAbstractState<>(
-            localVariables.join(abstractState.localVariables),
-            operandStack.join(abstractState.operandStack));
+            localVariables.join(abstractState.readLocalVariables()),
+            operandStack.join(abstractState.readOperandStack()));
     return equals(answer) ? this : answer;
   }
 
   @Override
   public boolean isLessOrEqual(JvmFrameAbstractState<StateT> abstractState) {
-    return localVariables.isLessOrEqual(abstractState.localVariables)
-        && operandStack.isLessOrEqual(abstractState.operandStack);
+    return localVariables.isLessOrEqual(abstractState.readLocalVariables())
+        && operandStack.isLessOrEqual(abstractState.readOperandStack());
   }
 
   // implementations for AbstractState
@@ -87,7 +88,8 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
       return false;
     }
     JvmFrameAbstractState<StateT> other = (JvmFrameAbstractState) obj;
-    return localVariables.equals(other.localVariables) && operandStack.equals(other.operandStack);
+    return localVariables.equals(other.readLocalVariables())
+        && operandStack.equals(other.readOperandStack());
   }
 
   @Override
@@ -135,6 +137,11 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
     return states;
   }
 
+  /** Removes all elements from the operand stack. */
+  public void clearOperandStack() {
+    operandStack.clear();
+  }
+
   /**
    * Returns an abstract state at the {@code index}th position of the variable array or {@code
    * defaultState} if there is no entry.
@@ -160,4 +167,36 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
   public StackAbstractState<StateT> getOperandStack() {
     return operandStack;
   }
+
+  /**
+   * Returns an unmodifiable view of the variable array. Unlike {@link #getLocalVariables()}, it
+   * never changes the frame, so it can be used on frames that are shared, e.g. cached exit states.
+   */
+  public List<StateT> getLocalVariablesView() {
+    return Collections.unmodifiableList(readLocalVariables());
+  }
+
+  /**
+   * Returns an unmodifiable view of the operand stack. Unlike {@link #getOperandStack()}, it never
+   * changes the frame, so it can be used on frames that are shared, e.g. cached exit states.
+   */
+  public List<StateT> getOperandStackView() {
+    return Collections.unmodifiableList(readOperandStack());
+  }
+
+  /**
+   * Returns the variable array for reading it, without changing the frame. The result must not be
+   * modified.
+   */
+  protected ListAbstractState<StateT> readLocalVariables() {
+    return localVariables;
+  }
+
+  /**
+   * Returns the operand stack for reading it, without changing the frame. The result must not be
+   * modified.
+   */
+  protected StackAbstractState<StateT> readOperandStack() {
+    return operandStack;
+  }
 }
@@ -0,0 +1,292 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.state;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import proguard.analysis.cpa.defaults.LatticeAbstractState;
+import proguard.analysis.cpa.defaults.ListAbstractState;
+import proguard.analysis.cpa.defaults.PersistentListAbstractState;
+import proguard.analysis.cpa.defaults.PersistentStackAbstractState;
+import proguard.analysis.cpa.defaults.StackAbstractState;
+
+/**
+ * The {@link JvmPersistentFrameAbstractState} is a {@link JvmFrameAbstractState} which stores the
+ * local variable array as a {@link PersistentListAbstractState} and the operand stack as a {@link
+ * PersistentStackAbstractState}. Copying the frame takes constant time and joining it with another
+ * persistent frame skips the parts both frames share.
+ *
+ * <p>{@link #getLocalVariables()} and {@link #getOperandStack()} return the live collections of the
+ * frame, like for a plain frame: the first call moves the respective part of the frame into a
+ * plain collection, which the frame then uses instead of the persistent one, so modifications
+ * through the returned collection write through to the frame. Copies of the frame are persistent
+ * again, but copying a frame after such a call takes linear time. Since they change the frame, they
+ * must only be called on frames that the caller owns, e.g. a fresh copy. Shared frames, e.g. cached
+ * exit states that other threads may read concurrently, are read with {@link
+ * #getLocalVariablesView()} and {@link #getOperandStackView()}, which never change the frame. The
+ * lattice operations and {@link #equals(Object)} don't change either frame.
+ */
+public class JvmPersistentFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
+    extends JvmFrameAbstractState<StateT> {
+
+  // Exactly one of the persistent and the plain collection of each part is set.
+  private PersistentListAbstractState<StateT> persistentLocalVariables;
+  private PersistentStackAbstractState<StateT> persistentOperandStack;
+  private ListAbstractState<StateT> plainLocalVariables;
+  private StackAbstractState<StateT> plainOperandStack;
+
+  /** Create an empty frame. */
+  public JvmPersistentFrameAbstractState() {
+    this(new PersistentListAbstractState<>(), new PersistentStackAbstractState<>());
+  }
+
+  /**
+   * Create a frame from a local variable array and an operand stack.
+   *
+   * @param localVariables a local variable array
+   * @param operandStack an operand stack
+   */
+  public JvmPersistentFrameAbstractState(
+      PersistentListAbstractState<StateT> localVariables,
+      PersistentStackAbstractState<StateT> operandStack) {
+    super(null, null);
+    this.persistentLocalVariables = localVariables;
+    this.persistentOperandStack = operandStack;
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public JvmFrameAbstractState<StateT> join(JvmFrameAbstractState<StateT> abstractState) {
+    if (!(abstractState instanceof JvmPersistentFrameAbstractState)) {
+      JvmFrameAbstractState<StateT> answer =
+          new JvmFrameAbstractState<>(
+              localVariablesSnapshot().join(abstractState.readLocalVariables()),
+              operandStackSnapshot().join(abstractState.readOperandStack()));
+      return equals(answer) ? this : answer;
+    }
+    JvmPersistentFrameAbstractState<StateT> other =
+        (JvmPersistentFrameAbstractState<StateT>) abstractState;
+    PersistentListAbstractState<StateT> localVariables = persistentLocalVariables();
+    PersistentStackAbstractState<StateT> operandStack = persistentOperandStack();
+    PersistentListAbstractState<StateT> otherLocalVariables = other.persistentLocalVariables();
+    PersistentStackAbstractState<StateT> otherOperandStack = other.persistentOperandStack();
+    PersistentListAbstractState<StateT> joinedLocalVariables =
+        localVariables.join(otherLocalVariables);
+    PersistentStackAbstractState<StateT> joinedOperandStack = operandStack.join(otherOperandStack);
+    if (joinedLocalVariables == localVariables && joinedOperandStack == operandStack) {
+      return this;
+    }
+    if (joinedLocalVariables == otherLocalVariables && joinedOperandStack == otherOperandStack) {
+      return other;
+    }
+    JvmPersistentFrameAbstractState<StateT> answer =
+        new JvmPersistentFrameAbstractState<>(joinedLocalVariables, joinedOperandStack);
+    return equals(answer) ? this : answer;
+  }
+
+  @Override
+  public boolean isLessOrEqual(JvmFrameAbstractState<StateT> abstractState) {
+    if (!(abstractState instanceof JvmPersistentFrameAbstractState)) {
+      return localVariablesSnapshot().isLessOrEqual(abstractState.readLocalVariables())
+          && operandStackSnapshot().isLessOrEqual(abstractState.readOperandStack());
+    }
+    JvmPersistentFrameAbstractState<StateT> other =
+        (JvmPersistentFrameAbstractState<StateT>) abstractState;
+    return persistentLocalVariables().isLessOrEqual(other.persistentLocalVariables())
+        && persistentOperandStack().isLessOrEqual(other.persistentOperandStack());
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public JvmPersistentFrameAbstractState<StateT> copy() {
+    return new JvmPersistentFrameAbstractState<>(
+        persistentLocalVariables().copy(), persistentOperandStack().copy());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof JvmFrameAbstractState)) {
+      return false;
+    }
+    if (obj instanceof JvmPersistentFrameAbstractState) {
+      JvmPersistentFrameAbstractState<StateT> other = (JvmPersistentFrameAbstractState) obj;
+      return localVariables().equals(other.localVariables())
+          && operandStack().equals(other.operandStack());
+    }
+    JvmFrameAbstractState<StateT> other = (JvmFrameAbstractState) obj;
+    return localVariables().equals(other.readLocalVariables())
+        && operandStack().equals(other.readOperandStack());
+  }
+
+  @Override
+  public int hashCode() {
+    // Lists with equal elements have equal hash codes, so this is consistent with plain frames.
+    return Objects.hash(localVariables(), operandStack());
+  }
+
+  @Override
+  public StateT peekOrDefault(int index, StateT defaultState) {
+    return plainOperandStack != null
+        ? plainOperandStack.peekOrDefault(index, defaultState)
+        : persistentOperandStack.peekOrDefault(index, defaultState);
+  }
+
+  @Override
+  public StateT peek(int index) {
+    return plainOperandStack != null
+        ? plainOperandStack.peek(index)
+        : persistentOperandStack.peek(index);
+  }
+
+  @Override
+  public StateT pop() {
+    return plainOperandStack != null ? plainOperandStack.pop() : persistentOperandStack.pop();
+  }
+
+  @Override
+  public StateT popOrDefault(StateT defaultState) {
+    return plainOperandStack != null
+        ? plainOperandStack.popOrDefault(defaultState)
+        : persistentOperandStack.popOrDefault(defaultState);
+  }
+
+  @Override
+  public StateT push(StateT state) {
+    return plainOperandStack != null
+        ? plainOperandStack.push(state)
+        : persistentOperandStack.push(state);
+  }
+
+  @Override
+  public List<StateT> pushAll(List<StateT> states) {
+    states.forEach(this::push);
+    return states;
+  }
+
+  @Override
+  public void clearOperandStack() {
+    operandStack().clear();
+  }
+
+  @Override
+  public StateT getVariableOrDefault(int index, StateT defaultState) {
+    return plainLocalVariables != null
+        ? plainLocalVariables.getOrDefault(index, defaultState)
+        : persistentLocalVariables.getOrDefault(index, defaultState);
+  }
+
+  @Override
+  public StateT setVariable(int index, StateT state, StateT defaultState) {
+    return plainLocalVariables != null
+        ? plainLocalVariables.set(index, state, defaultState)
+        : persistentLocalVariables.set(index, state, defaultState);
+  }
+
+  /**
+   * Returns the variable array. From now on, the frame stores its variables in the returned list,
+   * so modifications of the list write through to the frame. Only call this on a frame that you
+   * own; use {@link #getLocalVariablesView()} to read a shared frame.
+   */
+  @Override
+  public ListAbstractState<StateT> getLocalVariables() {
+    if (plainLocalVariables == null) {
+      plainLocalVariables = localVariablesSnapshot();
+      persistentLocalVariables = null;
+    }
+    return plainLocalVariables;
+  }
+
+  /**
+   * Returns the operand stack. From now on, the frame stores its operand stack in the returned
+   * stack, so modifications of the stack write through to the frame. Only call this on a frame that
+   * you own; use {@link #getOperandStackView()} to read a shared frame.
+   */
+  @Override
+  public StackAbstractState<StateT> getOperandStack() {
+    if (plainOperandStack == null) {
+      plainOperandStack = operandStackSnapshot();
+      persistentOperandStack = null;
+    }
+    return plainOperandStack;
+  }
+
+  @Override
+  public List<StateT> getLocalVariablesView() {
+    return Collections.unmodifiableList(localVariables());
+  }
+
+  @Override
+  public List<StateT> getOperandStackView() {
+    return Collections.unmodifiableList(operandStack());
+  }
+
+  @Override
+  protected ListAbstractState<StateT> readLocalVariables() {
+    return plainLocalVariables != null ? plainLocalVariables : localVariablesSnapshot();
+  }
+
+  @Override
+  protected StackAbstractState<StateT> readOperandStack() {
+    return plainOperandStack != null ? plainOperandStack : operandStackSnapshot();
+  }
+
+  // Private utility methods.
+
+  /** Returns the variable array in its current representation. */
+  private List<StateT> localVariables() {
+    return plainLocalVariables != null ? plainLocalVariables : persistentLocalVariables;
+  }
+
+  /** Returns the operand stack in its current representation. */
+  private List<StateT> operandStack() {
+    return plainOperandStack != null ? plainOperandStack : persistentOperandStack;
+  }
+
+  /** Returns the variable array as a persistent list, which must not be modified. */
+  private PersistentListAbstractState<StateT> persistentLocalVariables() {
+    return persistentLocalVariables != null
+        ? persistentLocalVariables
+        : new PersistentListAbstractState<>(plainLocalVariables);
+  }
+
+  /** Returns the operand stack as a persistent stack, which must not be modified. */
+  private PersistentStackAbstractState<StateT> persistentOperandStack() {
+    return persistentOperandStack != null
+        ? persistentOperandStack
+        : new PersistentStackAbstractState<>(plainOperandStack);
+  }
+
+  /** Returns a plain copy of the variable array, without changing the representation. */
+  private ListAbstractState<StateT> localVariablesSnapshot() {
+    List<StateT> localVariables = localVariables();
+    ListAbstractState<StateT> snapshot = new ListAbstractState<>(localVariables.size());
+    snapshot.addAll(localVariables);
+    return snapshot;
+  }
+
+  /** Returns a plain copy of the operand stack, without changing the representation. */
+  private StackAbstractState<StateT> operandStackSnapshot() {
+    StackAbstractState<StateT> snapshot = new StackAbstractState<>();
+    snapshot.addAll(operandStack());
+    return snapshot;
+  }
+}
@@ -23,7 +23,9 @@ import java.util.Collection;
 import java.util.function.Supplier;
 import proguard.analysis.CallResolver;
 import proguard.analysis.cpa.defaults.Cfa;
+import proguard.analysis.cpa.jvm.cfa.CompactJvmCfa;
 import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.LazyJvmCfa;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmInstructionCfaEdge;
@@ -39,8 +41,10 @@ import proguard.classfile.LibraryClass;
 import proguard.classfile.Method;
 import proguard.classfile.MethodSignature;
 import proguard.classfile.ProgramMethod;
+import proguard.classfile.attribute.Attribute;
 import proguard.classfile.attribute.CodeAttribute;
 import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
 import proguard.classfile.instruction.Instruction;
 import proguard.classfile.visitor.AllMethodVisitor;
 
@@ -212,6 +216,66 @@ public class CfaUtil {
     return cfa;
   }
 
+  /**
+   * Returns an intraprocedural CFA for the given program class pool which builds the CFA of a
+   * method only when it is first needed.
+   *
+   * @param programClassPool a program class pool
+   */
+  public static LazyJvmCfa createLazyIntraproceduralCfa(ClassPool programClassPool) {
+    return new LazyJvmCfa(programClassPool);
+  }
+
+  /**
+   * Returns an interprocedural CFA for the given program class pool and call graph which builds the
+   * CFA of a method only when it is first needed.
+   *
+   * @param programClassPool a program class pool
+   * @param callGraph a call graph
+   */
+  public static LazyJvmCfa createLazyInterproceduralCfa(
+      ClassPool programClassPool, CallGraph callGraph) {
+    return new LazyJvmCfa(programClassPool, callGraph);
+  }
+
+  /**
+   * Returns an intraprocedural CFA for the given program class pool which stores the graphs of the
+   * methods in arrays and creates the edges only when they are accessed.
+   *
+   * @param programClassPool a program class pool
+   */
+  public static CompactJvmCfa createCompactIntraproceduralCfa(ClassPool programClassPool) {
+    CompactJvmCfa cfa = new CompactJvmCfa();
+    programClassPool.classesAccept(
+        new AllMethodVisitor(
+            new AllAttributeVisitor(
+                new AttributeVisitor() {
+                  @Override
+                  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+                  @Override
+                  public void visitCodeAttribute(
+                      Clazz clazz, Method method, CodeAttribute codeAttribute) {
+                    cfa.addMethod(clazz, method, codeAttribute);
+                  }
+                })));
+    return cfa;
+  }
+
+  /**
+   * Returns an interprocedural CFA for the given program class pool and call graph which stores
+   * the graphs of the methods in arrays and creates the edges only when they are accessed.
+   *
+   * @param programClassPool a program class pool
+   * @param callGraph a call graph
+   */
+  public static CompactJvmCfa createCompactInterproceduralCfa(
+      ClassPool programClassPool, CallGraph callGraph) {
+    CompactJvmCfa cfa = createCompactIntraproceduralCfa(programClassPool);
+    addInterproceduralEdgesToCfa(cfa, callGraph);
+    return cfa;
+  }
+
   /** Produces a DOT graph representation of the given JVM control flow automaton. */
   public static String toDot(JvmCfa cfa) {
     StringBuffer sb = new StringBuffer();
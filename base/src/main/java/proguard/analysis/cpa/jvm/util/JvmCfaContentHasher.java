@@ -0,0 +1,158 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+import proguard.analysis.cpa.bam.PersistentBamCache;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.classfile.Clazz;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.io.ProgramClassWriter;
+
+/**
+ * This function computes content hashes of methods for the {@link PersistentBamCache}. Since the
+ * summary of a method embeds the effects of the methods it calls, the hash of a method covers the
+ * classes of all methods which are transitively reachable from it in the {@link JvmCfa}. Program
+ * classes are hashed by their serialized class files, other classes by their names.
+ *
+ * <p>The hashes of classes and methods are computed once and cached, so the class pool and the CFA
+ * must not change while the hasher is used.
+ */
+public class JvmCfaContentHasher implements ToLongFunction<MethodSignature> {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final JvmCfa cfa;
+  private final Map<Clazz, Long> classHashes = new ConcurrentHashMap<>();
+  private final Map<MethodSignature, Set<MethodSignature>> callees = new ConcurrentHashMap<>();
+  private final Map<MethodSignature, Long> methodHashes = new ConcurrentHashMap<>();
+
+  /**
+   * Create a content hasher for the methods of the given CFA.
+   *
+   * @param cfa an interprocedural CFA
+   */
+  public JvmCfaContentHasher(JvmCfa cfa) {
+    this.cfa = cfa;
+  }
+
+  // implementations for ToLongFunction
+
+  @Override
+  public long applyAsLong(MethodSignature signature) {
+    return methodHashes.computeIfAbsent(signature, this::computeMethodHash);
+  }
+
+  // Private utility methods.
+
+  private long computeMethodHash(MethodSignature signature) {
+    // Collect the classes of all reachable methods, sorted by name for a stable result.
+    Map<String, Long> reachableClassHashes = new TreeMap<>();
+    Set<MethodSignature> visited = new HashSet<>();
+    Deque<MethodSignature> worklist = new ArrayDeque<>();
+    visited.add(signature);
+    worklist.push(signature);
+    while (!worklist.isEmpty()) {
+      MethodSignature method = worklist.pop();
+      JvmCfaNode entryNode = cfa.getFunctionEntryNode(method);
+      Clazz clazz = entryNode == null ? null : entryNode.getClazz();
+      if (clazz != null) {
+        reachableClassHashes.put(clazz.getName(), classHashes.computeIfAbsent(clazz, this::hash));
+      } else if (method.getClassName() != null) {
+        reachableClassHashes.putIfAbsent(method.getClassName(), hash(method.getClassName()));
+      }
+      for (MethodSignature callee : callees.computeIfAbsent(method, this::findCallees)) {
+        if (visited.add(callee)) {
+          worklist.push(callee);
+        }
+      }
+    }
+
+    long hash = FNV_OFFSET_BASIS;
+    for (Map.Entry<String, Long> entry : reachableClassHashes.entrySet()) {
+      hash = (hash ^ entry.getValue()) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private Set<MethodSignature> findCallees(MethodSignature signature) {
+    Set<MethodSignature> result = new LinkedHashSet<>();
+    for (JvmCfaNode node : cfa.getFunctionNodes(signature)) {
+      for (JvmCallCfaEdge edge : node.getKnownMethodCallEdges()) {
+        result.add(edge.targetSignature());
+      }
+    }
+    return result;
+  }
+
+  private long hash(Clazz clazz) {
+    if (!(clazz instanceof ProgramClass)) {
+      return hash(clazz.getName());
+    }
+    HashingOutputStream hashingOutputStream = new HashingOutputStream();
+    try (DataOutputStream dataOutputStream = new DataOutputStream(hashingOutputStream)) {
+      clazz.accept(new ProgramClassWriter(dataOutputStream));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return hashingOutputStream.hash;
+  }
+
+  private static long hash(String string) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int index = 0; index < string.length(); index++) {
+      hash = (hash ^ string.charAt(index)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** An output stream which computes the 64-bit FNV-1a hash of the written bytes. */
+  private static class HashingOutputStream extends OutputStream {
+
+    private long hash = FNV_OFFSET_BASIS;
+
+    @Override
+    public void write(int b) {
+      hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+      for (int index = offset; index < offset + length; index++) {
+        hash = (hash ^ (bytes[index] & 0xff)) * FNV_PRIME;
+      }
+    }
+  }
+}
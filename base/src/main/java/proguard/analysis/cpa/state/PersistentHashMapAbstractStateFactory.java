@@ -0,0 +1,49 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.state;
+
+import proguard.analysis.cpa.defaults.LatticeAbstractState;
+import proguard.analysis.cpa.defaults.MapAbstractState;
+import proguard.analysis.cpa.defaults.PersistentHashMapAbstractState;
+
+/**
+ * This interface contains a method creating a fresh instance of {@link
+ * PersistentHashMapAbstractState}.
+ */
+public class PersistentHashMapAbstractStateFactory<
+        KeyT, StateT extends LatticeAbstractState<StateT>>
+    implements MapAbstractStateFactory<KeyT, StateT> {
+
+  private static final PersistentHashMapAbstractStateFactory<?, ?> INSTANCE =
+      new PersistentHashMapAbstractStateFactory<>();
+
+  private PersistentHashMapAbstractStateFactory() {}
+
+  public static <K, V extends LatticeAbstractState<V>>
+      PersistentHashMapAbstractStateFactory<K, V> getInstance() {
+    return (PersistentHashMapAbstractStateFactory<K, V>) INSTANCE;
+  }
+
+  // implementations for MapAbstractStateFactory
+
+  @Override
+  public MapAbstractState<KeyT, StateT> createMapAbstractState() {
+    return new PersistentHashMapAbstractState<>();
+  }
+}
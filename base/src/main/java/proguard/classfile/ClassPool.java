@@ -35,6 +35,9 @@ public class ClassPool {
   // Keep a separate set of the classes to speed up `contains(Clazz)`.
   private final Set<Clazz> clazzSet = new HashSet<>();
 
+  // Count the structural modifications, so derived data can detect that it is outdated.
+  private int modificationCount;
+
   /** Creates a new empty ClassPool. */
   public ClassPool() {}
 
@@ -73,6 +76,7 @@ public class ClassPool {
   public void clear() {
     classes.clear();
     clazzSet.clear();
+    modificationCount++;
   }
 
   /** Adds the given Clazz to the class pool. */
@@ -84,6 +88,7 @@ public class ClassPool {
   public void addClass(String name, Clazz clazz) {
     classes.put(name, clazz);
     clazzSet.add(clazz);
+    modificationCount++;
   }
 
   /** Removes the given Clazz from the class pool. */
@@ -95,6 +100,7 @@ public class ClassPool {
   public Clazz removeClass(String className) {
     Clazz removed = classes.remove(className);
     clazzSet.remove(removed);
+    modificationCount++;
     return removed;
   }
 
@@ -118,13 +124,13 @@ public class ClassPool {
   // Note: for consistency, use visitors whenever possible.
   /** Returns an Iterator of all class names in the class pool. */
   public Iterator<String> classNames() {
-    return classes.keySet().iterator();
+    return sortedClasses().keySet().iterator();
   }
 
   // Note: for consistency, use visitors whenever possible.
   /** Returns an Iterable of all classes in the class pool. */
   public Iterable<Clazz> classes() {
-    return classes.values();
+    return sortedClasses().values();
   }
 
   /** Returns the number of classes in the class pool. */
@@ -132,6 +138,15 @@ public class ClassPool {
     return classes.size();
   }
 
+  /**
+   * Returns the number of times classes have been added to or removed from the class pool. Derived
+   * data, like a {@link proguard.classfile.util.ClassHierarchyIndex}, can compare it to detect that
+   * the class pool has changed.
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
   /**
    * Returns a ClassPool with the same classes, but with the keys that correspond to the names of
    * the class instances. This can be useful to create a class pool with obfuscated names.
@@ -154,7 +169,7 @@ public class ClassPool {
       // Find the class.
       Map.Entry<String, T> entry = entries.next();
       String className = entry.getKey();
-      Clazz clazz = classes.get(className);
+      Clazz clazz = getClass(className);
       if (clazz != null) {
         // Add the mapped entry.
         refreshedMap.put(clazz.getName(), entry.getValue());
@@ -178,7 +193,7 @@ public class ClassPool {
       // Find the class.
       Map.Entry<T, String> entry = entries.next();
       String className = entry.getValue();
-      Clazz clazz = classes.get(className);
+      Clazz clazz = getClass(className);
       if (clazz != null) {
         // Add the mapped entry.
         refreshedMap.put(entry.getKey(), clazz.getName());
@@ -194,12 +209,11 @@ public class ClassPool {
    * applied.
    */
   public Map<Clazz, String> reverseMapping() {
-    Map<Clazz, String> reversedMap = new HashMap<Clazz, String>(classes.size());
+    Map<Clazz, String> reversedMap = new HashMap<Clazz, String>(size());
 
     // Reverse each entry.
-    for (String originalClassName : classes.keySet()) {
-      Clazz processedClazz = classes.get(originalClassName);
-      reversedMap.put(processedClazz, originalClassName);
+    for (Map.Entry<String, Clazz> entry : sortedClasses().entrySet()) {
+      reversedMap.put(entry.getValue(), entry.getKey());
     }
 
     return reversedMap;
@@ -212,7 +226,7 @@ public class ClassPool {
 
   /** Applies the given ClassVisitor to all classes in the class pool, in random order. */
   public void classesAccept(ClassVisitor classVisitor) {
-    Iterator iterator = classes.values().iterator();
+    Iterator iterator = sortedClasses().values().iterator();
     while (iterator.hasNext()) {
       Clazz clazz = (Clazz) iterator.next();
       clazz.accept(classVisitor);
@@ -225,7 +239,7 @@ public class ClassPool {
     // TreeMap sortedClasses = new TreeMap(classes);
     // Iterator iterator = sortedClasses.values().iterator();
 
-    Iterator iterator = classes.values().iterator();
+    Iterator iterator = sortedClasses().values().iterator();
     while (iterator.hasNext()) {
       Clazz clazz = (Clazz) iterator.next();
       clazz.accept(classVisitor);
@@ -244,6 +258,7 @@ public class ClassPool {
 
   /** Applies the given ClassVisitor to all matching classes in the class pool. */
   public void classesAccept(StringMatcher classNameFilter, ClassVisitor classVisitor) {
+    NavigableMap<String, Clazz> classes = sortedClasses();
     String prefix = classNameFilter.prefix();
     if ("".equals(prefix)) {
       // It is more efficient to avoid using higherEntry when we're traversing over the complete
@@ -270,6 +285,14 @@ public class ClassPool {
     }
   }
 
+  /**
+   * Returns the classes of the class pool, sorted by name, for iterating over them. Subclasses that
+   * don't keep the classes sorted can return a sorted snapshot.
+   */
+  protected NavigableMap<String, Clazz> sortedClasses() {
+    return classes;
+  }
+
   /**
    * Applies the given ClassVisitor to the class with the given name, if it is present in the class
    * pool.
@@ -0,0 +1,181 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This {@link ClassPool} can be accessed and modified by multiple threads concurrently, for example
+ * to collect the classes from parallel readers with a {@link
+ * proguard.classfile.visitor.ClassPoolFiller}.
+ *
+ * <p>The classes are stored in hash maps, so adding, removing, and retrieving classes take constant
+ * time and don't block each other. Iterating over the classes, e.g. with {@link
+ * #classesAccept(proguard.classfile.visitor.ClassVisitor)}, visits them sorted by name, like in a
+ * plain class pool. The sorted classes come from a snapshot, which is created when iterating for
+ * the first time after the class pool has changed. Classes that are added or removed while
+ * iterating don't affect the ongoing iteration.
+ */
+public class ConcurrentClassPool extends ClassPool {
+  private final ConcurrentHashMap<String, Clazz> classes = new ConcurrentHashMap<>();
+  private final Set<Clazz> clazzSet = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger modificationCount = new AtomicInteger();
+
+  private volatile Snapshot snapshot;
+
+  /** Creates a new empty ConcurrentClassPool. */
+  public ConcurrentClassPool() {}
+
+  /**
+   * Creates a new ConcurrentClassPool with the given classes.
+   *
+   * @param classes the classes to be added.
+   */
+  public ConcurrentClassPool(Clazz... classes) {
+    for (Clazz clazz : classes) {
+      addClass(clazz);
+    }
+  }
+
+  /**
+   * Creates a new ConcurrentClassPool with the given classes.
+   *
+   * @param classes the classes to be added.
+   */
+  public ConcurrentClassPool(Iterable<? extends Clazz> classes) {
+    for (Clazz clazz : classes) {
+      addClass(clazz);
+    }
+  }
+
+  /**
+   * Creates a new ConcurrentClassPool with the given classes. The keys are taken from the Clazz
+   * instances.
+   *
+   * @param classPool the classes to be added.
+   */
+  public ConcurrentClassPool(ClassPool classPool) {
+    this(classPool.classes());
+  }
+
+  /**
+   * Adds the given classes to the class pool, using multiple threads for large collections.
+   *
+   * @param classes the classes to be added.
+   */
+  public void addClasses(Collection<? extends Clazz> classes) {
+    classes.parallelStream().forEach(this::addClass);
+  }
+
+  // Implementations for ClassPool.
+
+  @Override
+  public void clear() {
+    classes.clear();
+    clazzSet.clear();
+    modificationCount.incrementAndGet();
+  }
+
+  @Override
+  public void addClass(String name, Clazz clazz) {
+    // Update the set of classes atomically with the entry, in case of
+    // concurrent updates with the same name.
+    classes.compute(
+        name,
+        (key, previous) -> {
+          if (previous != null) {
+            clazzSet.remove(previous);
+          }
+          clazzSet.add(clazz);
+          return clazz;
+        });
+    modificationCount.incrementAndGet();
+  }
+
+  @Override
+  public Clazz removeClass(String className) {
+    Clazz[] removed = new Clazz[1];
+    classes.computeIfPresent(
+        className,
+        (key, previous) -> {
+          clazzSet.remove(previous);
+          removed[0] = previous;
+          return null;
+        });
+    modificationCount.incrementAndGet();
+    return removed[0];
+  }
+
+  @Override
+  public Clazz getClass(String className) {
+    return classes.get(className);
+  }
+
+  @Override
+  public boolean contains(Clazz clazz) {
+    return clazzSet.contains(clazz);
+  }
+
+  @Override
+  public int size() {
+    return classes.size();
+  }
+
+  @Override
+  public int getModificationCount() {
+    return modificationCount.get();
+  }
+
+  @Override
+  public ClassPool refreshedCopy() {
+    return new ConcurrentClassPool(this);
+  }
+
+  @Override
+  protected NavigableMap<String, Clazz> sortedClasses() {
+    Snapshot current = snapshot;
+    int currentModificationCount = modificationCount.get();
+    if (current == null || current.modificationCount != currentModificationCount) {
+      // Concurrent modifications may end up in the snapshot or not, but they
+      // change the modification count, so the snapshot is recreated next time.
+      current = new Snapshot(currentModificationCount, new TreeMap<>(classes));
+      snapshot = current;
+    }
+    return current.classes;
+  }
+
+  // Small utility classes.
+
+  /** An immutable sorted copy of the classes. */
+  private static class Snapshot {
+    private final int modificationCount;
+    private final NavigableMap<String, Clazz> classes;
+
+    private Snapshot(int modificationCount, NavigableMap<String, Clazz> classes) {
+      this.modificationCount = modificationCount;
+      this.classes = Collections.unmodifiableNavigableMap(classes);
+    }
+  }
+}
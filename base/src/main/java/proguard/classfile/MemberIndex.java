@@ -0,0 +1,115 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lookup table of the fields or the methods of a {@link ProgramClass}, keyed by name, which
+ * {@link ProgramClass#findField(String, String)} and {@link ProgramClass#findMethod(String,
+ * String)} build lazily when {@link ProgramClass#ENABLE_MEMBER_INDEX} is set. Members with the same
+ * name are kept in the order of the class, so lookups return the same member as a linear search.
+ *
+ * <p>An index notices when the member array or count of its class changes. Renaming members or
+ * changing their descriptors isn't noticed, so the editors that do so call {@link
+ * #invalidate(Clazz)}, which also signals caches of member lookups over the class hierarchy, like
+ * the one of {@link proguard.classfile.util.MemberFinder}, that they are outdated.
+ */
+public final class MemberIndex {
+  /** Classes with fewer members than this are searched linearly. */
+  static final int MIN_MEMBER_COUNT = 8;
+
+  /** The result of {@link #find(Clazz, String, String)} for an outdated index. */
+  static final Member OUTDATED = new LibraryField();
+
+  private static final AtomicInteger modificationCount = new AtomicInteger();
+
+  private final Member[] members;
+  private final int memberCount;
+  private final Map<String, Member[]> membersByName;
+
+  /** Creates a new index of the given first members of the given class. */
+  MemberIndex(Clazz clazz, Member[] members, int memberCount) {
+    this.members = members;
+    this.memberCount = memberCount;
+    this.membersByName = new HashMap<>(memberCount * 2);
+
+    for (int index = 0; index < memberCount; index++) {
+      Member member = members[index];
+      String name = member.getName(clazz);
+      Member[] namedMembers = membersByName.get(name);
+      if (namedMembers == null) {
+        namedMembers = new Member[] {member};
+      } else {
+        Member[] newNamedMembers = new Member[namedMembers.length + 1];
+        System.arraycopy(namedMembers, 0, newNamedMembers, 0, namedMembers.length);
+        newNamedMembers[namedMembers.length] = member;
+        namedMembers = newNamedMembers;
+      }
+      membersByName.put(name, namedMembers);
+    }
+  }
+
+  /** Returns whether this index still represents the given members. */
+  boolean isValid(Member[] members, int memberCount) {
+    return this.members == members && this.memberCount == memberCount;
+  }
+
+  /**
+   * Returns the first member with the given name and the given descriptor, if not null, or null if
+   * there is none. Returns {@link #OUTDATED} if a member turns out to have been renamed.
+   */
+  Member find(Clazz clazz, String name, String descriptor) {
+    Member[] namedMembers = membersByName.get(name);
+    if (namedMembers == null) {
+      return null;
+    }
+
+    for (Member member : namedMembers) {
+      if (!member.getName(clazz).equals(name)) {
+        return OUTDATED;
+      }
+      if (descriptor == null || member.getDescriptor(clazz).equals(descriptor)) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Invalidates the member indices of the given class, after members have been added to it,
+   * removed from it, reordered, or renamed, or after their descriptors have changed.
+   */
+  public static void invalidate(Clazz clazz) {
+    if (clazz instanceof ProgramClass) {
+      ((ProgramClass) clazz).invalidateMemberIndices();
+    }
+    modificationCount.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of times that the members of any class have been invalidated, which caches
+   * can compare to detect that they are outdated.
+   */
+  public static int getModificationCount() {
+    return modificationCount.get();
+  }
+}
@@ -35,6 +35,15 @@ import proguard.util.*;
  * @author Eric Lafortune
  */
 public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz {
+  /**
+   * Whether {@link #findField(String, String)} and {@link #findMethod(String, String)} look up
+   * members in lazily built {@link MemberIndex} tables, instead of searching them linearly. Code
+   * that renames members without the editors of this library must then call {@link
+   * MemberIndex#invalidate(Clazz)}.
+   */
+  public static boolean ENABLE_MEMBER_INDEX =
+      System.getProperty("proguard.classfile.memberindex") != null;
+
   private static final Clazz[] EMPTY_CLASSES = new Clazz[0];
   private static final int[] EMPTY_INTERFACES = new int[0];
   private static final ProgramField[] EMPTY_FIELDS = new ProgramField[0];
@@ -66,6 +75,10 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
 
   public int subClassCount;
 
+  // The lazily built lookup tables of the fields and methods, if enabled.
+  private volatile MemberIndex fieldIndex;
+  private volatile MemberIndex methodIndex;
+
   /** Creates an uninitialized ProgramClass. */
   public ProgramClass() {}
 
@@ -208,6 +221,12 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
     return constantPool[constantIndex];
   }
 
+  /** Discards the lookup tables of the fields and methods, so they are rebuilt when necessary. */
+  void invalidateMemberIndices() {
+    fieldIndex = null;
+    methodIndex = null;
+  }
+
   // Implementations for Clazz.
 
   public int getAccessFlags() {
@@ -464,6 +483,19 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Field findField(String name, String descriptor) {
+    if (ENABLE_MEMBER_INDEX && name != null && u2fieldsCount >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex index = fieldIndex;
+      if (index == null || !index.isValid(fields, u2fieldsCount)) {
+        index = new MemberIndex(this, fields, u2fieldsCount);
+        fieldIndex = index;
+      }
+      Member field = index.find(this, name, descriptor);
+      if (field != MemberIndex.OUTDATED) {
+        return (Field) field;
+      }
+      fieldIndex = null;
+    }
+
     for (int index = 0; index < u2fieldsCount; index++) {
       Field field = fields[index];
       if ((name == null || field.getName(this).equals(name))
@@ -476,6 +508,19 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Method findMethod(String name, String descriptor) {
+    if (ENABLE_MEMBER_INDEX && name != null && u2methodsCount >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex index = methodIndex;
+      if (index == null || !index.isValid(methods, u2methodsCount)) {
+        index = new MemberIndex(this, methods, u2methodsCount);
+        methodIndex = index;
+      }
+      Member method = index.find(this, name, descriptor);
+      if (method != MemberIndex.OUTDATED) {
+        return (Method) method;
+      }
+      methodIndex = null;
+    }
+
     for (int index = 0; index < u2methodsCount; index++) {
       Method method = methods[index];
       if ((name == null || method.getName(this).equals(name))
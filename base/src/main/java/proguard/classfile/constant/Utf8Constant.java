@@ -17,6 +17,7 @@
  */
 package proguard.classfile.constant;
 
+import java.nio.ByteBuffer;
 import proguard.classfile.Clazz;
 import proguard.classfile.constant.visitor.ConstantVisitor;
 import proguard.util.StringUtil;
@@ -31,12 +32,19 @@ public class Utf8Constant extends Constant {
   // Initially, we're storing the UTF-8 bytes in a byte array.
   // When the corresponding String is requested, we ditch the array and just
   // store the String.
+  // Alternatively, the UTF-8 bytes can be a region of a shared buffer, e.g.
+  // the buffer from which the class file was read. They are then only
+  // copied or decoded when they are requested.
 
   // private int u2length;
   private byte[] bytes;
 
   private String string;
 
+  private ByteBuffer buffer;
+  private int bufferOffset;
+  private int bufferLength;
+
   /** Creates an uninitialized Utf8Constant. */
   public Utf8Constant() {}
 
@@ -50,6 +58,24 @@ public class Utf8Constant extends Constant {
   public void setBytes(byte[] bytes) {
     this.bytes = bytes;
     this.string = null;
+    this.buffer = null;
+  }
+
+  /**
+   * Initializes the UTF-8 data with a region of the given buffer, without copying it. The bytes are
+   * only copied or decoded when they are first requested, so the contents of the buffer in the
+   * given region must not change until then.
+   *
+   * @param buffer the buffer, e.g. containing an entire class file.
+   * @param offset the absolute offset of the UTF-8 data in the buffer.
+   * @param length the length of the UTF-8 data, in bytes.
+   */
+  public void setBytes(ByteBuffer buffer, int offset, int length) {
+    this.bytes = null;
+    this.string = null;
+    this.buffer = buffer;
+    this.bufferOffset = offset;
+    this.bufferLength = length;
   }
 
   /** Returns the UTF-8 data as an array of bytes. */
@@ -63,6 +89,7 @@ public class Utf8Constant extends Constant {
   public void setString(String utf8String) {
     this.bytes = null;
     this.string = utf8String;
+    this.buffer = null;
   }
 
   /** Returns the UTF-8 data as a String. */
@@ -94,14 +121,35 @@ public class Utf8Constant extends Constant {
   /** Switches to a byte array representation of the UTF-8 data. */
   private void switchToByteArrayRepresentation() {
     if (bytes == null) {
-      bytes = StringUtil.getModifiedUtf8Bytes(string);
-      string = null;
+      ByteBuffer buffer = this.buffer;
+      if (buffer != null) {
+        byte[] bytes = new byte[bufferLength];
+        ByteBuffer region = buffer.duplicate();
+        region.position(bufferOffset);
+        region.get(bytes);
+        this.bytes = bytes;
+        this.buffer = null;
+      } else {
+        bytes = StringUtil.getModifiedUtf8Bytes(string);
+        string = null;
+      }
     }
   }
 
   /** Switches to a String representation of the UTF-8 data. */
   private void switchToStringRepresentation() {
     if (string == null) {
+      ByteBuffer buffer = this.buffer;
+      if (buffer != null) {
+        // Decode heap buffers in place, copy the region out of other buffers.
+        if (buffer.hasArray()) {
+          int start = buffer.arrayOffset() + bufferOffset;
+          string = StringUtil.getString(buffer.array(), start, start + bufferLength);
+          this.buffer = null;
+          return;
+        }
+        switchToByteArrayRepresentation();
+      }
       string = StringUtil.getString(bytes);
       bytes = null;
     }
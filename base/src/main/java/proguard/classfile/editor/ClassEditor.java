@@ -94,6 +94,7 @@ public class ClassEditor {
 
     targetClass.fields =
         (ProgramField[]) ArrayUtil.add(targetClass.fields, targetClass.u2fieldsCount++, field);
+    MemberIndex.invalidate(targetClass);
   }
 
   /**
@@ -112,6 +113,7 @@ public class ClassEditor {
     }
 
     ArrayUtil.remove(targetClass.fields, targetClass.u2fieldsCount--, findFieldIndex(field));
+    MemberIndex.invalidate(targetClass);
   }
 
   /** Finds the index of the given field in the target class. */
@@ -141,6 +143,7 @@ public class ClassEditor {
 
     targetClass.methods =
         (ProgramMethod[]) ArrayUtil.add(targetClass.methods, targetClass.u2methodsCount++, method);
+    MemberIndex.invalidate(targetClass);
   }
 
   /**
@@ -158,6 +161,7 @@ public class ClassEditor {
     }
 
     ArrayUtil.remove(targetClass.methods, targetClass.u2methodsCount--, findMethodIndex(method));
+    MemberIndex.invalidate(targetClass);
   }
 
   /** Finds the index of the given method in the target class. */
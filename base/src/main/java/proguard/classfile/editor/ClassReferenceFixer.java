@@ -33,6 +33,7 @@ import proguard.classfile.LibraryClass;
 import proguard.classfile.LibraryField;
 import proguard.classfile.LibraryMethod;
 import proguard.classfile.Member;
+import proguard.classfile.MemberIndex;
 import proguard.classfile.Method;
 import proguard.classfile.MethodSignature;
 import proguard.classfile.ProgramClass;
@@ -235,6 +236,8 @@ public class ClassReferenceFixer
         String newName = newNameStrategy.getNewName(programClass, programMember, name, descriptor);
         programMember.u2nameIndex = constantPoolEditor.addUtf8Constant(newName);
       }
+
+      MemberIndex.invalidate(programClass);
     }
 
     // Fix the attributes.
@@ -248,6 +251,10 @@ public class ClassReferenceFixer
 
     // Update the descriptor.
     libraryField.descriptor = newDescriptor;
+
+    if (!descriptor.equals(newDescriptor)) {
+      MemberIndex.invalidate(libraryClass);
+    }
   }
 
   public void visitLibraryMethod(LibraryClass libraryClass, LibraryMethod libraryMethod) {
@@ -258,6 +265,7 @@ public class ClassReferenceFixer
     if (!descriptor.equals(newDescriptor)) {
       // Update the descriptor.
       libraryMethod.descriptor = newDescriptor;
+      MemberIndex.invalidate(libraryClass);
     }
   }
 
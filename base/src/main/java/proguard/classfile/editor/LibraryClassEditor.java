@@ -111,6 +111,7 @@ public class LibraryClassEditor {
 
     targetClass.fields =
         (LibraryField[]) ArrayUtil.add(targetClass.fields, targetClass.fields.length, field);
+    MemberIndex.invalidate(targetClass);
   }
 
   /**
@@ -129,6 +130,7 @@ public class LibraryClassEditor {
     }
 
     ArrayUtil.remove(targetClass.fields, targetClass.fields.length, findFieldIndex(field));
+    MemberIndex.invalidate(targetClass);
   }
 
   /** Finds the index of the given field in the target class. */
@@ -158,6 +160,7 @@ public class LibraryClassEditor {
 
     targetClass.methods =
         (LibraryMethod[]) ArrayUtil.add(targetClass.methods, targetClass.methods.length, method);
+    MemberIndex.invalidate(targetClass);
   }
 
   /**
@@ -175,6 +178,7 @@ public class LibraryClassEditor {
     }
 
     ArrayUtil.remove(targetClass.methods, targetClass.methods.length, findMethodIndex(method));
+    MemberIndex.invalidate(targetClass);
   }
 
   /** Finds the index of the given method in the target class. */
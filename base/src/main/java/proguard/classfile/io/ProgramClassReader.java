@@ -18,6 +18,8 @@
 package proguard.classfile.io;
 
 import java.io.DataInput;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
 import proguard.classfile.*;
 import proguard.classfile.attribute.*;
 import proguard.classfile.attribute.annotation.*;
@@ -33,12 +35,18 @@ import proguard.classfile.constant.*;
 import proguard.classfile.constant.visitor.ConstantVisitor;
 import proguard.classfile.util.*;
 import proguard.classfile.visitor.*;
+import proguard.io.ByteBufferDataInput;
 import proguard.io.RuntimeDataInput;
 
 /**
  * This {@link ClassVisitor} fills out the {@link ProgramClass} instances that it visits with data
  * from the given {@link DataInput} object.
  *
+ * <p>When reading from a {@link ByteBuffer}, e.g. a complete class file in memory or a
+ * memory-mapped file, the reader doesn't copy the UTF-8 constants. They refer to their regions of
+ * the buffer until their bytes or strings are requested, so the contents of the buffer must not
+ * change while the classes are in use.
+ *
  * @author Eric Lafortune
  */
 public class ProgramClassReader
@@ -67,6 +75,7 @@ public class ProgramClassReader
         LocalVariableTargetElementVisitor,
         ElementValueVisitor {
   private final RuntimeDataInput dataInput;
+  private final ByteBufferDataInput byteBufferInput;
   private final boolean ignoreStackMapAttributes;
 
   /** Creates a new ProgramClassReader for reading from the given DataInput. */
@@ -80,9 +89,28 @@ public class ProgramClassReader
    */
   public ProgramClassReader(DataInput dataInput, boolean ignoreStackMapAttributes) {
     this.dataInput = new RuntimeDataInput(dataInput);
+    this.byteBufferInput =
+        dataInput instanceof ByteBufferDataInput ? (ByteBufferDataInput) dataInput : null;
     this.ignoreStackMapAttributes = ignoreStackMapAttributes;
   }
 
+  /**
+   * Creates a new ProgramClassReader for reading from the given buffer, starting at position 0.
+   * The UTF-8 constants refer to the buffer until they are first requested.
+   */
+  public ProgramClassReader(ByteBuffer buffer) {
+    this(buffer, false);
+  }
+
+  /**
+   * Creates a new ProgramClassReader for reading from the given buffer, starting at position 0,
+   * optionally treating stack map attributes as unknown attributes. The UTF-8 constants refer to
+   * the buffer until they are first requested.
+   */
+  public ProgramClassReader(ByteBuffer buffer, boolean ignoreStackMapAttributes) {
+    this(new ByteBufferDataInput(buffer), ignoreStackMapAttributes);
+  }
+
   // Implementations for ClassVisitor.
 
   @Override
@@ -317,6 +345,18 @@ public class ProgramClassReader
   public void visitUtf8Constant(Clazz clazz, Utf8Constant utf8Constant) {
     int u2length = dataInput.readUnsignedShort();
 
+    // Just remember the region of the UTF-8 bytes, if we have a buffer.
+    if (byteBufferInput != null) {
+      if (byteBufferInput.remaining() < u2length) {
+        EOFException ex = new EOFException("Unexpected end of UTF-8 constant");
+        throw new RuntimeException(ex.getMessage(), ex);
+      }
+
+      utf8Constant.setBytes(byteBufferInput.getBuffer(), byteBufferInput.position(), u2length);
+      dataInput.skipBytes(u2length);
+      return;
+    }
+
     // Read the UTF-8 bytes.
     byte[] bytes = new byte[u2length];
     dataInput.readFully(bytes);
@@ -0,0 +1,452 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.LibraryClass;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.visitor.ClassVisitor;
+
+/**
+ * This class answers subtype and common superclass queries on the classes of a set of class pools
+ * in constant time, instead of walking the class hierarchy like {@link Clazz#extends_(Clazz)} and
+ * {@link Clazz#extendsOrImplements(Clazz)}.
+ *
+ * <p>The classes are numbered in pre-order in the tree of superclasses, so the subclasses of a
+ * class form an interval of numbers. Common superclasses are found as lowest common ancestors with
+ * a sparse table over an Euler tour of the tree. Each class also has a bit set of all classes that
+ * it reaches through at least one interface; classes that do not add interfaces share the bit set
+ * of their superclass.
+ *
+ * <p>The index is based on the superclasses and interfaces referenced by the classes, so their
+ * hierarchies must be initialized, e.g. with the {@link ClassSuperHierarchyInitializer}. The index
+ * is rebuilt lazily when classes are added to or removed from the class pools. Changes to the
+ * hierarchy of classes that remain in the class pools are not detected; call {@link #invalidate()}
+ * after them. Queries on classes that are not in the index fall back to walking the hierarchy.
+ *
+ * <p>Queries are thread-safe, as long as the class pools are not modified concurrently.
+ */
+public class ClassHierarchyIndex {
+  private final ClassPool[] classPools;
+
+  private volatile Index index;
+
+  /**
+   * Creates a new ClassHierarchyIndex for the given class pools, for example the program class
+   * pool and the library class pool.
+   */
+  public ClassHierarchyIndex(ClassPool... classPools) {
+    this.classPools = classPools.clone();
+  }
+
+  /**
+   * Returns whether the given subclass is the given superclass or extends it, like {@link
+   * Clazz#extends_(Clazz)}.
+   */
+  public boolean extends_(Clazz subClass, Clazz superClass) {
+    Index index = currentIndex();
+    int subClassId = index.idOf(subClass);
+    int superClassId = index.idOf(superClass);
+    return subClassId < 0 || superClassId < 0
+        ? subClass.extends_(superClass)
+        : index.extends_(subClassId, superClassId);
+  }
+
+  /**
+   * Returns whether the given subclass is the given superclass, extends it, or implements it, like
+   * {@link Clazz#extendsOrImplements(Clazz)}.
+   */
+  public boolean extendsOrImplements(Clazz subClass, Clazz superClass) {
+    Index index = currentIndex();
+    int subClassId = index.idOf(subClass);
+    int superClassId = index.idOf(superClass);
+    return subClassId < 0 || superClassId < 0
+        ? subClass.extendsOrImplements(superClass)
+        : index.extendsOrImplements(subClassId, superClassId);
+  }
+
+  /**
+   * Returns the most specific class that both given classes are or extend, or null if they don't
+   * have a common superclass, e.g. because their hierarchies are incomplete. Interfaces are not
+   * taken into account, so the common superclass of interfaces is typically java.lang.Object.
+   */
+  public Clazz findCommonSuperClass(Clazz clazz1, Clazz clazz2) {
+    Index index = currentIndex();
+    int id1 = index.idOf(clazz1);
+    int id2 = index.idOf(clazz2);
+    return id1 < 0 || id2 < 0
+        ? walkCommonSuperClass(clazz1, clazz2)
+        : index.commonSuperClass(id1, id2);
+  }
+
+  /**
+   * Discards the index, so it is rebuilt at the next query. This is necessary after changing the
+   * superclasses or interfaces of classes in the class pools.
+   */
+  public void invalidate() {
+    index = null;
+  }
+
+  // Private utility methods.
+
+  /** Returns the index, rebuilding it if the class pools have changed. */
+  private Index currentIndex() {
+    Index current = index;
+    if (current == null || !current.isUpToDate(classPools)) {
+      synchronized (this) {
+        current = index;
+        if (current == null || !current.isUpToDate(classPools)) {
+          current = new Index(classPools);
+          index = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /** Returns the common superclass of the given classes by walking their hierarchies. */
+  private static Clazz walkCommonSuperClass(Clazz clazz1, Clazz clazz2) {
+    for (Clazz superClass = clazz1; superClass != null; superClass = superClass.getSuperClass()) {
+      if (clazz2.extends_(superClass)) {
+        return superClass;
+      }
+    }
+    return null;
+  }
+
+  /** An immutable index of the hierarchy of the classes in a set of class pools. */
+  private static class Index {
+    private final int[] modificationCounts;
+
+    private final Map<Clazz, Integer> ids = new HashMap<>();
+    private final List<Clazz> classes = new ArrayList<>();
+
+    // The superclass tree, indexed by class id.
+    private final int[] superClassIds;
+    private final int[] preOrderNumbers;
+    private final int[] lastDescendantNumbers;
+    private final int[] depths;
+
+    // The Euler tour of the superclass tree, with a sparse table of the shallowest class in each
+    // range of 2^level consecutive entries.
+    private final int[] firstEulerIndices;
+    private final int[][] shallowestClassIds;
+
+    // The classes reached through interfaces, as bit sets of interface ids, indexed by class id.
+    private final int[] interfaceIds;
+    private final BitSet[] reachedInterfaceIds;
+    private int interfaceIdCount;
+
+    public Index(ClassPool[] classPools) {
+      modificationCounts = new int[classPools.length];
+      for (int index = 0; index < classPools.length; index++) {
+        modificationCounts[index] = classPools[index].getModificationCount();
+      }
+
+      // Collect the classes of the class pools and the classes that they reference in their
+      // hierarchies.
+      DirectSuperTypeCollector collector = new DirectSuperTypeCollector();
+      for (ClassPool classPool : classPools) {
+        for (Clazz clazz : classPool.classes()) {
+          addClass(clazz);
+        }
+      }
+      List<int[]> directInterfaceIds = new ArrayList<>();
+      List<Integer> superClassIdList = new ArrayList<>();
+      for (int id = 0; id < classes.size(); id++) {
+        collector.collect(classes.get(id));
+        superClassIdList.add(collector.superClass == null ? -1 : addClass(collector.superClass));
+        int[] interfaceClassIds = new int[collector.interfaces.size()];
+        for (int index = 0; index < interfaceClassIds.length; index++) {
+          interfaceClassIds[index] = addClass(collector.interfaces.get(index));
+        }
+        directInterfaceIds.add(interfaceClassIds);
+      }
+
+      int classCount = classes.size();
+      superClassIds = new int[classCount];
+      for (int id = 0; id < classCount; id++) {
+        superClassIds[id] = superClassIdList.get(id);
+      }
+
+      preOrderNumbers = new int[classCount];
+      lastDescendantNumbers = new int[classCount];
+      depths = new int[classCount];
+      firstEulerIndices = new int[classCount];
+      int[] eulerTour = numberSuperClassTree();
+      shallowestClassIds = createSparseTable(eulerTour);
+
+      interfaceIds = new int[classCount];
+      Arrays.fill(interfaceIds, -1);
+      reachedInterfaceIds = new BitSet[classCount];
+      byte[] states = new byte[classCount];
+      for (int id = 0; id < classCount; id++) {
+        computeReachedInterfaces(id, directInterfaceIds, states);
+      }
+    }
+
+    /** Returns whether the class pools have not changed since this index was created. */
+    public boolean isUpToDate(ClassPool[] classPools) {
+      for (int index = 0; index < classPools.length; index++) {
+        if (classPools[index].getModificationCount() != modificationCounts[index]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Returns the id of the given class, or -1 if it is not in the superclass tree. */
+    public int idOf(Clazz clazz) {
+      Integer id = ids.get(clazz);
+      return id == null || preOrderNumbers[id] < 0 ? -1 : id;
+    }
+
+    public boolean extends_(int subClassId, int superClassId) {
+      int number = preOrderNumbers[subClassId];
+      return preOrderNumbers[superClassId] <= number
+          && number <= lastDescendantNumbers[superClassId];
+    }
+
+    public boolean extendsOrImplements(int subClassId, int superClassId) {
+      if (extends_(subClassId, superClassId)) {
+        return true;
+      }
+      int interfaceId = interfaceIds[superClassId];
+      BitSet reached = reachedInterfaceIds[subClassId];
+      return interfaceId >= 0 && reached != null && reached.get(interfaceId);
+    }
+
+    public Clazz commonSuperClass(int id1, int id2) {
+      int start = firstEulerIndices[id1];
+      int end = firstEulerIndices[id2];
+      if (start > end) {
+        int swap = start;
+        start = end;
+        end = swap;
+      }
+      // Find the shallowest class on the tour between both classes, in two overlapping ranges.
+      int level = 31 - Integer.numberOfLeadingZeros(end - start + 1);
+      int candidate1 = shallowestClassIds[level][start];
+      int candidate2 = shallowestClassIds[level][end - (1 << level) + 1];
+      int commonId = depthOf(candidate1) <= depthOf(candidate2) ? candidate1 : candidate2;
+
+      // Classes in different trees have a virtual root at depth -1 in common.
+      return commonId < 0 ? null : classes.get(commonId);
+    }
+
+    // Small utility methods.
+
+    /** Adds the given class if necessary and returns its id. */
+    private int addClass(Clazz clazz) {
+      Integer id = ids.get(clazz);
+      if (id == null) {
+        id = classes.size();
+        ids.put(clazz, id);
+        classes.add(clazz);
+      }
+      return id;
+    }
+
+    /**
+     * Numbers the classes in pre-order in the superclass tree, in a single tour over all trees, and
+     * returns the tour. Classes in superclass cycles are not reached and get the number -1.
+     */
+    private int[] numberSuperClassTree() {
+      int classCount = superClassIds.length;
+
+      // Collect the subclasses of each class, in compressed rows.
+      int[] subClassStarts = new int[classCount + 1];
+      for (int id = 0; id < classCount; id++) {
+        if (superClassIds[id] >= 0) {
+          subClassStarts[superClassIds[id] + 1]++;
+        }
+      }
+      for (int id = 0; id < classCount; id++) {
+        subClassStarts[id + 1] += subClassStarts[id];
+      }
+      int[] subClassIds = new int[subClassStarts[classCount]];
+      int[] fillIndices = Arrays.copyOf(subClassStarts, classCount);
+      for (int id = 0; id < classCount; id++) {
+        if (superClassIds[id] >= 0) {
+          subClassIds[fillIndices[superClassIds[id]]++] = id;
+        }
+      }
+
+      // Walk the trees depth-first, returning to the virtual root (-1) between the trees.
+      Arrays.fill(preOrderNumbers, -1);
+      int[] eulerTour = new int[2 * classCount + 1];
+      int eulerSize = 0;
+      int number = 0;
+      int[] stack = new int[classCount];
+      int[] nextSubClassIndices = new int[classCount];
+      for (int rootId = 0; rootId < classCount; rootId++) {
+        if (superClassIds[rootId] >= 0) {
+          continue;
+        }
+        eulerTour[eulerSize++] = -1;
+        int stackSize = 0;
+        stack[stackSize++] = rootId;
+        depths[rootId] = 0;
+        preOrderNumbers[rootId] = number++;
+        firstEulerIndices[rootId] = eulerSize;
+        eulerTour[eulerSize++] = rootId;
+        nextSubClassIndices[rootId] = subClassStarts[rootId];
+        while (stackSize > 0) {
+          int id = stack[stackSize - 1];
+          if (nextSubClassIndices[id] < subClassStarts[id + 1]) {
+            int subClassId = subClassIds[nextSubClassIndices[id]++];
+            stack[stackSize++] = subClassId;
+            depths[subClassId] = depths[id] + 1;
+            preOrderNumbers[subClassId] = number++;
+            firstEulerIndices[subClassId] = eulerSize;
+            eulerTour[eulerSize++] = subClassId;
+            nextSubClassIndices[subClassId] = subClassStarts[subClassId];
+          } else {
+            stackSize--;
+            lastDescendantNumbers[id] = number - 1;
+            if (stackSize > 0) {
+              eulerTour[eulerSize++] = stack[stackSize - 1];
+            }
+          }
+        }
+      }
+      eulerTour[eulerSize++] = -1;
+      return Arrays.copyOf(eulerTour, eulerSize);
+    }
+
+    /**
+     * Returns a sparse table with the shallowest class of each range of 2^level entries of the
+     * given tour, for each level.
+     */
+    private int[][] createSparseTable(int[] eulerTour) {
+      int levelCount = 32 - Integer.numberOfLeadingZeros(eulerTour.length);
+      int[][] table = new int[levelCount][];
+      table[0] = eulerTour;
+      for (int level = 1; level < levelCount; level++) {
+        int[] previous = table[level - 1];
+        int[] current = new int[eulerTour.length - (1 << level) + 1];
+        int half = 1 << (level - 1);
+        for (int index = 0; index < current.length; index++) {
+          int id1 = previous[index];
+          int id2 = previous[index + half];
+          current[index] = depthOf(id1) <= depthOf(id2) ? id1 : id2;
+        }
+        table[level] = current;
+      }
+      return table;
+    }
+
+    private int depthOf(int id) {
+      return id < 0 ? -1 : depths[id];
+    }
+
+    /**
+     * Computes the bit set of the classes that the given class reaches through at least one
+     * interface, after those of its superclass and interfaces.
+     */
+    private void computeReachedInterfaces(int id, List<int[]> directInterfaceIds, byte[] states) {
+      if (states[id] != 0) {
+        // The class is done, or we're in a cycle.
+        return;
+      }
+      states[id] = 1;
+
+      int superClassId = superClassIds[id];
+      BitSet reached = null;
+      if (superClassId >= 0) {
+        computeReachedInterfaces(superClassId, directInterfaceIds, states);
+        reached = reachedInterfaceIds[superClassId];
+      }
+
+      int[] interfaceClassIds = directInterfaceIds.get(id);
+      if (interfaceClassIds.length > 0) {
+        reached = reached == null ? new BitSet() : (BitSet) reached.clone();
+        for (int interfaceClassId : interfaceClassIds) {
+          computeReachedInterfaces(interfaceClassId, directInterfaceIds, states);
+
+          // The interface reaches its superclasses, and whatever it reaches through interfaces.
+          for (int superId = interfaceClassId;
+              superId >= 0 && preOrderNumbers[superId] >= 0;
+              superId = superClassIds[superId]) {
+            reached.set(interfaceIdOf(superId));
+          }
+          BitSet reachedByInterface = reachedInterfaceIds[interfaceClassId];
+          if (reachedByInterface != null) {
+            reached.or(reachedByInterface);
+          }
+        }
+      }
+
+      reachedInterfaceIds[id] = reached;
+      states[id] = 2;
+    }
+
+    /** Returns the interface id of the given class, assigning one if necessary. */
+    private int interfaceIdOf(int id) {
+      if (interfaceIds[id] < 0) {
+        interfaceIds[id] = interfaceIdCount++;
+      }
+      return interfaceIds[id];
+    }
+  }
+
+  /** This ClassVisitor collects the known direct superclass and interfaces of a class. */
+  private static class DirectSuperTypeCollector implements ClassVisitor {
+    private Clazz superClass;
+    private final List<Clazz> interfaces = new ArrayList<>();
+
+    public void collect(Clazz clazz) {
+      superClass = null;
+      interfaces.clear();
+      clazz.accept(this);
+    }
+
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {
+      throw new UnsupportedOperationException(
+          this.getClass().getName() + " does not support " + clazz.getClass().getName());
+    }
+
+    @Override
+    public void visitProgramClass(ProgramClass programClass) {
+      superClass = programClass.getSuperClass();
+      for (int index = 0; index < programClass.getInterfaceCount(); index++) {
+        Clazz interfaceClass = programClass.getInterface(index);
+        if (interfaceClass != null) {
+          interfaces.add(interfaceClass);
+        }
+      }
+    }
+
+    @Override
+    public void visitLibraryClass(LibraryClass libraryClass) {
+      superClass = libraryClass.getSuperClass();
+      libraryClass.interfacesAccept(interfaces::add);
+    }
+  }
+}
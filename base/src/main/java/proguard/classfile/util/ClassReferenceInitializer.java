@@ -153,7 +153,9 @@ public class ClassReferenceInitializer
   private final ClassPool libraryClassPool;
   private final boolean checkAccessRules;
   private final InvalidReferenceVisitor invalidReferenceVisitor;
-  private final MemberFinder memberFinder = new MemberFinder();
+  // With member indices, also cache the members found in the class hierarchy.
+  private final MemberFinder memberFinder =
+      new MemberFinder(true, ProgramClass.ENABLE_MEMBER_INDEX);
   private final MemberFinder strictMemberFinder = new MemberFinder(false);
 
   private final KotlinReferenceInitializer kotlinReferenceInitializer;
@@ -17,6 +17,9 @@
  */
 package proguard.classfile.util;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import proguard.classfile.*;
 import proguard.classfile.visitor.*;
 
@@ -31,6 +34,8 @@ public class MemberFinder implements MemberVisitor {
   private static final MemberFoundException MEMBER_FOUND = new MemberFoundException();
 
   private final boolean searchHierarchy;
+  private final Map<MemberKey, FoundMember> cache;
+  private int cacheModificationCount;
 
   private Clazz clazz;
   private Member member;
@@ -42,7 +47,25 @@ public class MemberFinder implements MemberVisitor {
 
   /** Creates a new MemberFinder that looks in the class hierarchy if specified. */
   public MemberFinder(boolean searchHierarchy) {
+    this(searchHierarchy, false);
+  }
+
+  /**
+   * Creates a new MemberFinder that looks in the class hierarchy if specified, and that caches the
+   * members that it finds if specified. The cache is cleared when {@link
+   * MemberIndex#invalidate(Clazz)} signals that members have changed. Other changes to the classes
+   * require {@link #clearCache()}.
+   */
+  public MemberFinder(boolean searchHierarchy, boolean cacheResults) {
     this.searchHierarchy = searchHierarchy;
+    this.cache = cacheResults ? new HashMap<>() : null;
+  }
+
+  /** Clears the cache of found members, if any. */
+  public void clearCache() {
+    if (cache != null) {
+      cache.clear();
+    }
   }
 
   /**
@@ -91,12 +114,54 @@ public class MemberFinder implements MemberVisitor {
    */
   public Member findMember(
       Clazz referencingClass, Clazz clazz, String name, String descriptor, boolean isField) {
-    try {
-      boolean containsWildcards =
-          (name != null && (name.indexOf('*') >= 0 || name.indexOf('?') >= 0))
-              || (descriptor != null
-                  && (descriptor.indexOf('*') >= 0 || descriptor.indexOf('?') >= 0));
+    boolean containsWildcards =
+        (name != null && (name.indexOf('*') >= 0 || name.indexOf('?') >= 0))
+            || (descriptor != null
+                && (descriptor.indexOf('*') >= 0 || descriptor.indexOf('?') >= 0));
 
+    if (cache != null && !containsWildcards) {
+      int modificationCount = MemberIndex.getModificationCount();
+      if (cacheModificationCount != modificationCount) {
+        cache.clear();
+        cacheModificationCount = modificationCount;
+      }
+
+      // Look up or find the member regardless of its accessibility.
+      MemberKey key = new MemberKey(clazz, name, descriptor, isField);
+      FoundMember foundMember = cache.get(key);
+      if (foundMember == null) {
+        findMember(null, clazz, name, descriptor, isField, false);
+        foundMember = new FoundMember(this.clazz, this.member);
+        cache.put(key, foundMember);
+      }
+
+      // A missing member or a public member is the answer for any referencing class.
+      // Otherwise, we still have to search for an accessible member.
+      if (foundMember.member == null
+          || referencingClass == null
+          || referencingClass.getName() == null
+          || AccessUtil.accessLevel(foundMember.member.getAccessFlags()) >= AccessUtil.PUBLIC) {
+        this.clazz = foundMember.clazz;
+        this.member = foundMember.member;
+        return member;
+      }
+    }
+
+    return findMember(referencingClass, clazz, name, descriptor, isField, containsWildcards);
+  }
+
+  /**
+   * Finds the class member with the given name and descriptor in the given class or its hierarchy,
+   * referenced from the optional given class, without using the cache.
+   */
+  private Member findMember(
+      Clazz referencingClass,
+      Clazz clazz,
+      String name,
+      String descriptor,
+      boolean isField,
+      boolean containsWildcards) {
+    try {
       this.clazz = null;
       this.member = null;
 
@@ -213,4 +278,52 @@ public class MemberFinder implements MemberVisitor {
 
     throw MEMBER_FOUND;
   }
+
+  // Small utility classes.
+
+  /** The key of a member lookup in the cache. */
+  private static class MemberKey {
+    private final Clazz clazz;
+    private final String name;
+    private final String descriptor;
+    private final boolean isField;
+
+    public MemberKey(Clazz clazz, String name, String descriptor, boolean isField) {
+      this.clazz = clazz;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.isField = isField;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof MemberKey)) {
+        return false;
+      }
+      MemberKey other = (MemberKey) o;
+      return clazz == other.clazz
+          && isField == other.isField
+          && Objects.equals(name, other.name)
+          && Objects.equals(descriptor, other.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(clazz), name, descriptor, isField);
+    }
+  }
+
+  /** A cached member, possibly null, with the class in which it was found. */
+  private static class FoundMember {
+    private final Clazz clazz;
+    private final Member member;
+
+    public FoundMember(Clazz clazz, Member member) {
+      this.clazz = clazz;
+      this.member = member;
+    }
+  }
 }
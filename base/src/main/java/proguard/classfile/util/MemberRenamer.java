@@ -23,6 +23,7 @@ import proguard.classfile.Clazz;
 import proguard.classfile.LibraryClass;
 import proguard.classfile.LibraryMember;
 import proguard.classfile.Member;
+import proguard.classfile.MemberIndex;
 import proguard.classfile.ProgramClass;
 import proguard.classfile.ProgramMember;
 import proguard.classfile.editor.ConstantPoolEditor;
@@ -56,6 +57,7 @@ public class MemberRenamer implements MemberVisitor {
     String newName = memberNameFunction.apply(programClass, programMember);
     if (newName != null && !newName.equals(name)) {
       programMember.u2nameIndex = new ConstantPoolEditor(programClass).addUtf8Constant(newName);
+      MemberIndex.invalidate(programClass);
 
       if (extraMemberVisitor != null) {
         programMember.accept(programClass, extraMemberVisitor);
@@ -69,6 +71,7 @@ public class MemberRenamer implements MemberVisitor {
     String newName = memberNameFunction.apply(libraryClass, libraryMember);
     if (newName != null && !newName.equals(name)) {
       libraryMember.name = newName;
+      MemberIndex.invalidate(libraryClass);
 
       if (extraMemberVisitor != null) {
         libraryMember.accept(libraryClass, extraMemberVisitor);
@@ -20,7 +20,8 @@ package proguard.classfile.visitor;
 import proguard.classfile.*;
 
 /**
- * This {@link ClassVisitor} collects all the classes it visits in a given class pool.
+ * This {@link ClassVisitor} collects all the classes it visits in a given class pool. It can be
+ * used from multiple threads concurrently if the class pool is a {@link ConcurrentClassPool}.
  *
  * @author Eric Lafortune
  */
@@ -32,6 +33,11 @@ public class ClassPoolFiller implements ClassVisitor {
     this.classPool = classPool;
   }
 
+  /** Returns whether this ClassPoolFiller can be used from multiple threads concurrently. */
+  public boolean isThreadSafe() {
+    return classPool instanceof ConcurrentClassPool;
+  }
+
   // Implementations for ClassVisitor.
 
   public void visitAnyClass(Clazz clazz) {
@@ -108,14 +108,28 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
   /** Data structure for mapping method signatures onto responsible executors. */
   private final ExecutorLookup executorLookup;
 
+  /** The results of previous calls with the same arguments, or null if they are not cached. */
+  @Nullable private final MethodResultCache methodResultCache;
+
   /** Creates an {@link ExecutingInvocationUnit}. */
   protected ExecutingInvocationUnit(
       ValueFactory valueFactory,
       boolean enableSameInstanceIdApproximation,
       List<Executor> registeredExecutors) {
+    this(valueFactory, enableSameInstanceIdApproximation, registeredExecutors, 0);
+  }
+
+  /** Creates an {@link ExecutingInvocationUnit} that caches up to the given number of results. */
+  protected ExecutingInvocationUnit(
+      ValueFactory valueFactory,
+      boolean enableSameInstanceIdApproximation,
+      List<Executor> registeredExecutors,
+      int methodResultCacheSize) {
     super(valueFactory);
     this.enableSameInstanceIdApproximation = enableSameInstanceIdApproximation;
     this.executorLookup = new ExecutorLookup(registeredExecutors);
+    this.methodResultCache =
+        methodResultCacheSize > 0 ? new MethodResultCache(methodResultCacheSize) : null;
   }
 
   /** Builds an {@link ExecutingInvocationUnit}. */
@@ -123,6 +137,7 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
     protected boolean enableSameInstanceIdApproximation = false;
     protected boolean useDefaultStringReflectionExecutor = true;
     protected List<Executor.Builder<?>> registeredExecutorBuilders = new ArrayList<>();
+    protected int methodResultCacheSize = 0;
 
     /**
      * For methods that are not supported by any executor, decide, whether a method with matching
@@ -182,6 +197,27 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
       return this;
     }
 
+    /**
+     * Sets the maximum number of method results that the {@link ExecutingInvocationUnit} caches.
+     * Calls of the same method with the same particular arguments then reuse the result of the
+     * previous call, instead of executing the method again, as long as they are among the most
+     * recently used ones. This only applies to calls of which all arguments are primitives,
+     * strings, boxed primitives or null, and of which the results have no side effects. By default,
+     * no results are cached.
+     *
+     * <p>The executors should compute the results of such calls from their arguments only.
+     *
+     * @param methodResultCacheSize the maximum number of cached results, or 0 to disable caching.
+     */
+    public Builder setMethodResultCacheSize(int methodResultCacheSize) {
+      if (methodResultCacheSize < 0) {
+        throw new IllegalArgumentException(
+            "The method result cache size must not be negative, got " + methodResultCacheSize);
+      }
+      this.methodResultCacheSize = methodResultCacheSize;
+      return this;
+    }
+
     /**
      * Build the {@link ExecutingInvocationUnit} defined by this builder instance.
      *
@@ -208,7 +244,10 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
           .forEach(registeredExecutors::add);
 
       return new ExecutingInvocationUnit(
-          valueFactory, enableSameInstanceIdApproximation, registeredExecutors);
+          valueFactory,
+          enableSameInstanceIdApproximation,
+          registeredExecutors,
+          methodResultCacheSize);
     }
 
     /**
@@ -227,7 +266,10 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
           .forEach(registeredExecutors::add);
 
       return new ExecutingInvocationUnit(
-          valueFactory, enableSameInstanceIdApproximation, registeredExecutors);
+          valueFactory,
+          enableSameInstanceIdApproximation,
+          registeredExecutors,
+          methodResultCacheSize);
     }
   }
 
@@ -280,9 +322,8 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
     MethodExecutionInfo methodInfo =
         new MethodExecutionInfo(
             anyMethodrefConstant, null, parameters == null ? new Value[0] : parameters);
-    Executor executor = executorLookup.lookupExecutor(methodInfo);
 
-    MethodResult result = executeMethod(executor, methodInfo);
+    MethodResult result = getMethodResult(methodInfo);
 
     // If side effects happened on any identified value, update stack and variables with them
     applySideEffects(result);
@@ -372,9 +413,7 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
    * @return The method result value.
    */
   public MethodResult executeMethod(ConcreteCall call, Value... parameters) {
-    MethodExecutionInfo methodInfo = new MethodExecutionInfo(call, parameters);
-    Executor executor = executorLookup.lookupExecutor(methodInfo);
-    return executeMethod(executor, methodInfo);
+    return getMethodResult(new MethodExecutionInfo(call, parameters));
   }
 
   /**
@@ -387,23 +426,54 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
    * @return The method result value.
    */
   public MethodResult executeMethod(Executor executor, MethodExecutionInfo methodInfo) {
+    return executeMethod(executor, methodInfo, createValueCalculator(methodInfo));
+  }
+
+  /** Returns the number of method results that were taken from the cache. */
+  public long getMethodResultCacheHitCount() {
+    return methodResultCache == null ? 0L : methodResultCache.getHitCount();
+  }
+
+  /**
+   * Returns the number of method calls that could have been taken from the cache, but were not
+   * found in it.
+   */
+  public long getMethodResultCacheMissCount() {
+    return methodResultCache == null ? 0L : methodResultCache.getMissCount();
+  }
+
+  /**
+   * Returns the result of the given method call, from the cache if possible, or by executing the
+   * method with the responsible {@link Executor} otherwise.
+   */
+  private MethodResult getMethodResult(MethodExecutionInfo methodInfo) {
+    List<Object> cacheKey =
+        methodResultCache == null ? null : methodResultCache.createKey(methodInfo);
+    if (cacheKey == null) {
+      return executeMethod(executorLookup.lookupExecutor(methodInfo), methodInfo);
+    }
+
+    ValueCalculator valueCalculator = createValueCalculator(methodInfo);
+    MethodResult result = methodResultCache.getResult(cacheKey, valueCalculator);
+    if (result == null) {
+      MethodResultCache.RecordingValueCalculator recordingValueCalculator =
+          new MethodResultCache.RecordingValueCalculator(valueCalculator);
+      result =
+          executeMethod(
+              executorLookup.lookupExecutor(methodInfo), methodInfo, recordingValueCalculator);
+      methodResultCache.putResult(cacheKey, result, recordingValueCalculator);
+    }
+    return result;
+  }
+
+  private MethodResult executeMethod(
+      Executor executor, MethodExecutionInfo methodInfo, ValueCalculator valueCalculator) {
 
     if (executor == null) {
       return createFallbackResult(methodInfo);
     }
 
-    MethodResult result =
-        executor.getMethodResult(
-            methodInfo,
-            (type, referencedClazz, isParticular, concreteValue, valueMayBeExtension, valueId) ->
-                createValue(
-                    type,
-                    referencedClazz,
-                    isParticular,
-                    concreteValue,
-                    valueMayBeExtension,
-                    valueId,
-                    methodInfo.getCaller()));
+    MethodResult result = executor.getMethodResult(methodInfo, valueCalculator);
 
     if (result.isResultValid()) {
       return result;
@@ -412,6 +482,19 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
     return createFallbackResult(methodInfo);
   }
 
+  /** Returns a {@link ValueCalculator} that creates the result values of the given call. */
+  private ValueCalculator createValueCalculator(MethodExecutionInfo methodInfo) {
+    return (type, referencedClazz, isParticular, concreteValue, valueMayBeExtension, valueId) ->
+        createValue(
+            type,
+            referencedClazz,
+            isParticular,
+            concreteValue,
+            valueMayBeExtension,
+            valueId,
+            methodInfo.getCaller());
+  }
+
   /**
    * Provides a result with as much information as possible if an executor is not able to provide
    * it.
@@ -0,0 +1,279 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+import proguard.classfile.Clazz;
+import proguard.evaluation.executor.MethodExecutionInfo;
+import proguard.evaluation.value.ReferenceValue;
+import proguard.evaluation.value.Value;
+import proguard.evaluation.value.object.AnalyzedObject;
+
+/**
+ * A bounded cache of the {@link MethodResult}s of the method calls executed by an {@link
+ * ExecutingInvocationUnit}, keyed by the method signatures and the particular values of the
+ * arguments. When the cache is full, the least recently used result is evicted.
+ *
+ * <p>Only calls of which all arguments, including the calling instance, are particular and
+ * immutable (primitives, strings, boxed primitives or null) are cached, and only if their results
+ * have no side effects and a return value that doesn't share the identity of any argument. The
+ * cache doesn't store the returned {@link Value}s themselves, but the information to recreate them,
+ * so each call still gets its own value, as without the cache. This assumes that the executors
+ * compute the results of such calls from their arguments only.
+ */
+class MethodResultCache {
+
+  private final Map<List<Object>, CachedResult> results;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Creates a new MethodResultCache.
+   *
+   * @param maxSize the maximum number of cached results
+   */
+  MethodResultCache(int maxSize) {
+    this.results =
+        new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the key of the given call, or null if its result can't be cached because not all of its
+   * arguments are known immutable values.
+   */
+  @Nullable
+  List<Object> createKey(MethodExecutionInfo methodInfo) {
+    List<Object> key = new ArrayList<>(methodInfo.getParameters().size() + 2);
+    key.add(methodInfo.getSignature());
+
+    ReferenceValue instance = methodInfo.getInstanceOrNullIfStatic();
+    if (instance != null) {
+      // The executors only accept identified instances.
+      if (!instance.isSpecific() || !addArgument(key, instance)) {
+        return null;
+      }
+    }
+    for (Value parameter : methodInfo.getParameters()) {
+      if (!addArgument(key, parameter)) {
+        return null;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Returns the cached result for the given key, recreating its return value with the given value
+   * calculator, or null if there is no cached result.
+   */
+  @Nullable
+  MethodResult getResult(List<Object> key, ValueCalculator valueCalculator) {
+    CachedResult cachedResult = results.get(key);
+    if (cachedResult == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return cachedResult.createResult(valueCalculator);
+  }
+
+  /**
+   * Caches the given result for the given key, if it has no side effects and its return value, if
+   * any, was created by the given recording value calculator from an immutable value.
+   */
+  void putResult(List<Object> key, MethodResult result, RecordingValueCalculator valueCalculator) {
+    if (!result.isResultValid() || result.isInstanceUpdated() || result.isAnyParameterUpdated()) {
+      return;
+    }
+    if (!result.isReturnValuePresent()) {
+      if (valueCalculator.valueCount == 0) {
+        results.put(key, new CachedResult(null));
+      }
+    } else if (valueCalculator.valueCount == 1
+        && valueCalculator.lastValue == result.getReturnValue()
+        && valueCalculator.lastValueId == null
+        && (!valueCalculator.lastIsParticular
+            || isImmutable(valueCalculator.lastConcreteValue))) {
+      results.put(
+          key,
+          new CachedResult(
+              new ValueRecipe(
+                  valueCalculator.lastType,
+                  valueCalculator.lastReferencedClass,
+                  valueCalculator.lastIsParticular,
+                  valueCalculator.lastIsParticular ? valueCalculator.lastConcreteValue : null,
+                  valueCalculator.lastValueMayBeExtension)));
+    }
+  }
+
+  /** Returns the number of calls of which the result was found in the cache. */
+  long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of cacheable calls of which the result was not found in the cache. */
+  long getMissCount() {
+    return missCount;
+  }
+
+  // Small utility methods.
+
+  /** Adds the concrete value of the given argument to the key, if it is known and immutable. */
+  private static boolean addArgument(List<Object> key, Value argument) {
+    if (argument == null || !argument.isParticular()) {
+      return false;
+    }
+    // Box the primitive values, which distinguishes e.g. 0.0 and -0.0.
+    switch (argument.computationalType()) {
+      case Value.TYPE_INTEGER:
+        key.add(argument.integerValue().value());
+        return true;
+      case Value.TYPE_LONG:
+        key.add(argument.longValue().value());
+        return true;
+      case Value.TYPE_FLOAT:
+        key.add(argument.floatValue().value());
+        return true;
+      case Value.TYPE_DOUBLE:
+        key.add(argument.doubleValue().value());
+        return true;
+      case Value.TYPE_REFERENCE:
+        AnalyzedObject object = argument.referenceValue().getValue();
+        if (!object.isPrecise() || !isImmutable(object.getPreciseValue())) {
+          return false;
+        }
+        key.add(object.getPreciseValue());
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /** Returns whether the given concrete value can be shared between calls. */
+  private static boolean isImmutable(@Nullable Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Integer
+        || value instanceof Long
+        || value instanceof Float
+        || value instanceof Double
+        || value instanceof Short
+        || value instanceof Byte
+        || value instanceof Character
+        || value instanceof Boolean;
+  }
+
+  /**
+   * A {@link ValueCalculator} which delegates to another one and records the arguments and result
+   * of its last invocation.
+   */
+  static class RecordingValueCalculator implements ValueCalculator {
+
+    private final ValueCalculator valueCalculator;
+    private int valueCount;
+    private String lastType;
+    private Clazz lastReferencedClass;
+    private boolean lastIsParticular;
+    private Object lastConcreteValue;
+    private boolean lastValueMayBeExtension;
+    private Object lastValueId;
+    private Value lastValue;
+
+    RecordingValueCalculator(ValueCalculator valueCalculator) {
+      this.valueCalculator = valueCalculator;
+    }
+
+    @Override
+    public Value apply(
+        String type,
+        Clazz referencedClass,
+        boolean isParticular,
+        Object concreteValue,
+        boolean valueMayBeExtension,
+        Object valueId) {
+      valueCount++;
+      lastType = type;
+      lastReferencedClass = referencedClass;
+      lastIsParticular = isParticular;
+      lastConcreteValue = concreteValue;
+      lastValueMayBeExtension = valueMayBeExtension;
+      lastValueId = valueId;
+      lastValue =
+          valueCalculator.apply(
+              type, referencedClass, isParticular, concreteValue, valueMayBeExtension, valueId);
+      return lastValue;
+    }
+  }
+
+  /** The arguments to recreate a return value with a {@link ValueCalculator}. */
+  private static class ValueRecipe {
+
+    private final String type;
+    private final Clazz referencedClass;
+    private final boolean isParticular;
+    private final Object concreteValue;
+    private final boolean valueMayBeExtension;
+
+    private ValueRecipe(
+        String type,
+        Clazz referencedClass,
+        boolean isParticular,
+        Object concreteValue,
+        boolean valueMayBeExtension) {
+      this.type = type;
+      this.referencedClass = referencedClass;
+      this.isParticular = isParticular;
+      this.concreteValue = concreteValue;
+      this.valueMayBeExtension = valueMayBeExtension;
+    }
+  }
+
+  /** A cached result, with an optional return value. */
+  private static class CachedResult {
+
+    @Nullable private final ValueRecipe returnValue;
+
+    private CachedResult(@Nullable ValueRecipe returnValue) {
+      this.returnValue = returnValue;
+    }
+
+    private MethodResult createResult(ValueCalculator valueCalculator) {
+      MethodResult.Builder builder = new MethodResult.Builder();
+      if (returnValue != null) {
+        builder.setReturnValue(
+            valueCalculator.apply(
+                returnValue.type,
+                returnValue.referencedClass,
+                returnValue.isParticular,
+                returnValue.concreteValue,
+                returnValue.valueMayBeExtension,
+                null));
+      }
+      return builder.build();
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.visitor.AllMethodVisitor;
+import proguard.classfile.visitor.ClassPoolVisitor;
+
+/**
+ * This {@link ClassPoolVisitor} evaluates the code of all methods of the program classes in a class
+ * pool with {@link PartialEvaluator}s, with several threads. Each thread creates its own {@link
+ * PartialEvaluator}, with its own {@link proguard.evaluation.value.ValueFactory} and {@link
+ * InvocationUnit}, and reuses it for all methods that it evaluates.
+ *
+ * <p>After evaluating a method, a thread passes its partial evaluator, which then contains the
+ * results for the method, to an {@link EvaluatedMethodVisitor}. The visitor is called from the
+ * worker threads, so it needs to be thread-safe, and it must not keep references to the partial
+ * evaluator, since the thread reuses it for its next method.
+ *
+ * <p>The methods are evaluated in order of decreasing code length, so a few large methods are not
+ * left to run on a single thread while the other threads are idle.
+ */
+public class ParallelPartialEvaluator implements ClassPoolVisitor {
+
+  private final PartialEvaluatorFactory partialEvaluatorFactory;
+  private final EvaluatedMethodVisitor evaluatedMethodVisitor;
+  private final int threadCount;
+
+  /**
+   * Creates a new ParallelPartialEvaluator.
+   *
+   * @param partialEvaluatorFactory the factory of the partial evaluators of the threads
+   * @param evaluatedMethodVisitor the visitor of the evaluation results of each method
+   * @param threadCount the number of threads
+   */
+  public ParallelPartialEvaluator(
+      PartialEvaluatorFactory partialEvaluatorFactory,
+      EvaluatedMethodVisitor evaluatedMethodVisitor,
+      int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("The thread count must be positive, got " + threadCount);
+    }
+    this.partialEvaluatorFactory = partialEvaluatorFactory;
+    this.evaluatedMethodVisitor = evaluatedMethodVisitor;
+    this.threadCount = threadCount;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    List<MethodTask> tasks = new ArrayList<>();
+    classPool.classesAccept(
+        new AllMethodVisitor(new AllAttributeVisitor(new TaskCollector(tasks))));
+
+    // The sort is stable, so methods of the same length keep the order of the class pool.
+    tasks.sort(
+        Comparator.comparingInt((MethodTask task) -> task.codeAttribute.u4codeLength).reversed());
+
+    AtomicInteger nextTaskIndex = new AtomicInteger();
+    if (threadCount == 1) {
+      new Worker(tasks, nextTaskIndex).call();
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<>(threadCount);
+      for (int index = 0; index < threadCount; index++) {
+        futures.add(executor.submit(new Worker(tasks, nextTaskIndex)));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while evaluating methods", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** A factory of the {@link PartialEvaluator}s of the threads. */
+  public interface PartialEvaluatorFactory {
+
+    /**
+     * Creates a new {@link PartialEvaluator}, with its own value factory and invocation unit. This
+     * method is called once per thread.
+     */
+    PartialEvaluator createPartialEvaluator();
+  }
+
+  /** A visitor of the evaluation results of the methods. */
+  public interface EvaluatedMethodVisitor {
+
+    /**
+     * Visits the given method, right after the given partial evaluator has evaluated its code.
+     * This method is called from the worker threads.
+     */
+    void visitEvaluatedMethod(
+        Clazz clazz, Method method, CodeAttribute codeAttribute, PartialEvaluator partialEvaluator);
+  }
+
+  /** A method to evaluate. */
+  private static class MethodTask {
+
+    private final Clazz clazz;
+    private final Method method;
+    private final CodeAttribute codeAttribute;
+
+    private MethodTask(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      this.clazz = clazz;
+      this.method = method;
+      this.codeAttribute = codeAttribute;
+    }
+  }
+
+  /** Collects the code attributes that it visits as {@link MethodTask}s. */
+  private static class TaskCollector implements AttributeVisitor {
+
+    private final List<MethodTask> tasks;
+
+    private TaskCollector(List<MethodTask> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      tasks.add(new MethodTask(clazz, method, codeAttribute));
+    }
+  }
+
+  /** Evaluates the next methods of the shared list with its own partial evaluator. */
+  private class Worker implements Callable<Void> {
+
+    private final List<MethodTask> tasks;
+    private final AtomicInteger nextTaskIndex;
+
+    private Worker(List<MethodTask> tasks, AtomicInteger nextTaskIndex) {
+      this.tasks = tasks;
+      this.nextTaskIndex = nextTaskIndex;
+    }
+
+    @Override
+    public Void call() {
+      PartialEvaluator partialEvaluator = partialEvaluatorFactory.createPartialEvaluator();
+      try {
+        for (int index = nextTaskIndex.getAndIncrement();
+            index < tasks.size();
+            index = nextTaskIndex.getAndIncrement()) {
+          MethodTask task = tasks.get(index);
+          partialEvaluator.visitCodeAttribute(task.clazz, task.method, task.codeAttribute);
+          evaluatedMethodVisitor.visitEvaluatedMethod(
+              task.clazz, task.method, task.codeAttribute, partialEvaluator);
+        }
+      } catch (RuntimeException | Error e) {
+        // Let the other threads stop after their current methods.
+        nextTaskIndex.set(tasks.size());
+        throw e;
+      }
+      return null;
+    }
+  }
+}
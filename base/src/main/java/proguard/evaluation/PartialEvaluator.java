@@ -20,6 +20,7 @@ package proguard.evaluation;
 import java.util.Arrays;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.Metrics;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
 import proguard.classfile.attribute.Attribute;
@@ -57,6 +58,14 @@ import proguard.util.CircularIntBuffer;
 /**
  * This {@link AttributeVisitor} performs partial evaluation on the code attributes that it visits.
  *
+ * <p>By default, it keeps separate copies of the variables and the stack before and after each
+ * instruction. With {@link Builder#setCompactFrames(boolean)}, it only keeps separate variables
+ * where they may differ: at branch targets, at exception handlers, and after instructions that
+ * modify them. Instructions in between share the variables of their predecessors, and the frames
+ * after instructions that just continue with the next instruction are the frames before that next
+ * instruction. The results are the same, but huge methods with many variables need far less
+ * memory.
+ *
  * @author Eric Lafortune
  */
 public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor {
@@ -90,6 +99,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private final boolean evaluateAllCode;
   private final int prettyInstructionBuffered;
   private final InstructionVisitor extraInstructionVisitor;
+  private final boolean compactFrames;
 
   private InstructionOffsetValue[] branchOriginValues =
       new InstructionOffsetValue[ClassEstimates.TYPICAL_CODE_LENGTH];
@@ -104,6 +114,13 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private boolean[] generalizedContexts = new boolean[ClassEstimates.TYPICAL_CODE_LENGTH];
   private int[] evaluationCounts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
   private boolean evaluateExceptions;
+
+  // Scratch data for the compact frames: the contents of the shared
+  // variables before they are generalized, and the current variables
+  // before an instruction is executed.
+  private TracedVariables unmergedVariables;
+  private Value[] variableValues = new Value[0];
+  private Value[] variableProducerValues = new Value[0];
   private int codeLength;
   private PartialEvaluatorStateTracker stateTracker;
 
@@ -193,6 +210,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // To always support pretty printing, set this default value larger than 0.
     this.prettyInstructionBuffered = 7;
     this.extraInstructionVisitor = extraInstructionVisitor;
+    this.compactFrames = false;
     this.branchUnit = branchUnit;
     this.branchTargetFinder = branchTargetFinder;
     this.callingInstructionBlockStack =
@@ -215,6 +233,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     this.evaluateAllCode = builder.evaluateAllCode;
     this.prettyInstructionBuffered = builder.prettyInstructionBuffered;
     this.extraInstructionVisitor = builder.extraInstructionVisitor;
+    this.compactFrames = builder.compactFrames;
     this.branchUnit =
         builder.branchUnit == null
             ? (evaluateAllCode ? new BasicBranchUnit() : new TracedBranchUnit())
@@ -240,6 +259,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // To always support pretty printing, set this default value larger than 0.
     private int prettyInstructionBuffered = 7;
     private InstructionVisitor extraInstructionVisitor;
+    private boolean compactFrames;
     private BasicBranchUnit branchUnit;
     private BranchTargetFinder branchTargetFinder;
     private java.util.Stack<InstructionBlock> callingInstructionBlockStack;
@@ -302,6 +322,19 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       return this;
     }
 
+    /**
+     * Specifies whether instructions should share their variables and stacks with neighboring
+     * instructions, where they are guaranteed to be the same, instead of keeping separate copies.
+     * This reduces the memory footprint for methods with a lot of code and many variables. The
+     * frames are then only separate at branch targets, at exception handlers, and after
+     * instructions that modify them. Shared frames are returned as the same objects, e.g. by {@link
+     * #getVariablesAfter(int)} and {@link #getVariablesBefore(int)} of the next instruction.
+     */
+    public Builder setCompactFrames(boolean compactFrames) {
+      this.compactFrames = compactFrames;
+      return this;
+    }
+
     /** The branch unit that will handle all branches. */
     public Builder setBranchUnit(BasicBranchUnit branchUnit) {
       this.branchUnit = branchUnit;
@@ -340,6 +373,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     //            clazz.getName().equals("abc/Def") &&
     //            method.getName(clazz).equals("abc");
 
+    Metrics.Timer timer = Metrics.getTimer(Metrics.TimerType.PARTIAL_EVALUATION);
+    long startTime = timer.start();
+
     // TODO: Remove this when the partial evaluator has stabilized.
     // Catch any unexpected exceptions from the actual visiting method.
     try {
@@ -367,6 +403,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       }
 
       throw proguardCoreException;
+    } finally {
+      timer.recordSince(startTime);
     }
   }
 
@@ -531,7 +569,17 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
   /** Returns the variables after execution of the instruction at the given offset. */
   public TracedVariables getVariablesAfter(int instructionOffset) {
-    return variablesAfter[instructionOffset];
+    TracedVariables variables = variablesAfter[instructionOffset];
+    if (variables == null) {
+      // With compact frames, they may be the variables before the
+      // next instruction.
+      int successorOffset = fallThroughSuccessor(instructionOffset);
+      if (successorOffset != NONE) {
+        return variablesBefore[successorOffset];
+      }
+    }
+
+    return variables;
   }
 
   /** Returns the stack before execution of the instruction at the given offset. */
@@ -541,7 +589,17 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
   /** Returns the stack after execution of the instruction at the given offset. */
   public TracedStack getStackAfter(int instructionOffset) {
-    return stacksAfter[instructionOffset];
+    TracedStack stack = stacksAfter[instructionOffset];
+    if (stack == null) {
+      // With compact frames, it may be the stack before the next
+      // instruction.
+      int successorOffset = fallThroughSuccessor(instructionOffset);
+      if (successorOffset != NONE) {
+        return stacksBefore[successorOffset];
+      }
+    }
+
+    return stack;
   }
 
   /** Returns the instruction offsets that branch to the given instruction offset. */
@@ -662,6 +720,16 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
     int maxOffset = startOffset;
 
+    // With compact frames, remember the previous instruction if the
+    // evaluation just continued with the current instruction: its
+    // offset, its original and current variables, whether they have
+    // changed, and whether it has modified the current variables.
+    int fallThroughOffset = NONE;
+    TracedVariables fallThroughOriginalVariables = null;
+    TracedVariables fallThroughVariables = null;
+    boolean fallThroughVariablesChanged = false;
+    boolean fallThroughVariablesModified = false;
+
     // Evaluate the subsequent instructions.
     while (true) {
       try {
@@ -680,9 +748,19 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
         // Maintain a generalized local variable frame and stack at this
         // instruction offset, before execution.
         int evaluationCount = evaluationCounts[instructionOffset];
+        TracedVariables originalVariables = variablesBefore[instructionOffset];
+        boolean variablesChanged = false;
+        boolean variablesGeneralized = false;
         if (evaluationCount == 0) {
           // First time we're passing by this instruction.
-          if (variablesBefore[instructionOffset] == null) {
+          if (fallThroughOffset != NONE
+              && evaluationCounts[fallThroughOffset] == 1
+              && !fallThroughVariablesModified) {
+            // Share the unmodified variables of the previous instruction,
+            // which has only been evaluated in the current context.
+            variablesBefore[instructionOffset] = fallThroughVariables;
+            stacksBefore[instructionOffset] = new TracedStack(stack);
+          } else if (variablesBefore[instructionOffset] == null) {
             // There's not even a context at this index yet.
             variablesBefore[instructionOffset] = new TracedVariables(variables);
             stacksBefore[instructionOffset] = new TracedStack(stack);
@@ -697,14 +775,26 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
           generalizedContexts[instructionOffset] = true;
         } else {
           // Merge in the current context.
-          boolean variablesChanged;
           boolean stackChanged;
-          try {
-            variablesChanged = variablesBefore[instructionOffset].generalize(variables, true);
-            ;
-          } catch (IllegalArgumentException ex) {
-            throw new VariablesGeneralizationException(
-                ex, variablesBefore[instructionOffset], variables);
+          if (fallThroughOffset != NONE
+              && (originalVariables == fallThroughOriginalVariables
+                  || originalVariables == fallThroughVariables)) {
+            if (!fallThroughVariablesModified) {
+              // The previous instruction has already merged in the
+              // current context in the variables that we share.
+              variablesBefore[instructionOffset] = fallThroughVariables;
+              variablesChanged = fallThroughVariablesChanged;
+            } else {
+              // Stop sharing the variables, since they may differ now.
+              unshareVariablesBefore(instructionOffset, originalVariables);
+              variablesChanged = generalizeVariablesBefore(instructionOffset, variables);
+            }
+          } else {
+            if (compactFrames) {
+              saveUnmergedVariables(instructionOffset);
+            }
+
+            variablesChanged = generalizeVariablesBefore(instructionOffset, variables);
           }
           try {
             stackChanged = stacksBefore[instructionOffset].generalize(stack);
@@ -728,6 +818,12 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
                   stacksBefore[instructionOffset],
                   evaluationCount);
 
+            // The next instruction won't see the generalization, even if
+            // it only replaced values by equal ones.
+            if (compactFrames) {
+              unshareVariablesAfterBailOut(instructionOffset);
+            }
+
             break;
           }
 
@@ -750,6 +846,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
             // instruction.
             variables.generalize(variablesBefore[instructionOffset], false);
             stack.generalize(stacksBefore[instructionOffset]);
+            variablesGeneralized = true;
 
             // We'll execute in the generalized context.
             generalizedContexts[instructionOffset] = true;
@@ -759,6 +856,13 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
           }
         }
 
+        // With compact frames, remember the current variables if the
+        // next instruction may share them.
+        int successorOffset = fallThroughSuccessor(instructionOffset);
+        if (successorOffset != NONE) {
+          saveVariableValues(variables);
+        }
+
         // We'll evaluate this instruction.
         evaluationCounts[instructionOffset]++;
 
@@ -833,8 +937,17 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
               branchTargets(instructionOffset));
 
         // Maintain a generalized local variable frame and stack at this
-        // instruction offset, after execution.
-        if (evaluationCount == 0) {
+        // instruction offset, after execution. With compact frames, they
+        // may just be the ones before the next instruction.
+        if (successorOffset != NONE) {
+          fallThroughOffset = instructionOffset;
+          fallThroughOriginalVariables = originalVariables;
+          fallThroughVariables = variablesBefore[instructionOffset];
+          fallThroughVariablesChanged = variablesChanged;
+          fallThroughVariablesModified = variablesGeneralized || !hasVariableValues(variables);
+        } else if (evaluationCount == 0) {
+          fallThroughOffset = NONE;
+
           // First time we're passing by this instruction.
           if (variablesAfter[instructionOffset] == null) {
             // There's not even a context at this index yet.
@@ -846,6 +959,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
             stacksAfter[instructionOffset].copy(stack);
           }
         } else {
+          fallThroughOffset = NONE;
+
           // Merge in the current context.
           variablesAfter[instructionOffset].generalize(variables, true);
           stacksAfter[instructionOffset].generalize(stack);
@@ -995,6 +1110,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
         .setInvocationUnit(invocationUnit)
         .setEvaluateAllCode(evaluateAllCode)
         .setExtraInstructionVisitor(extraInstructionVisitor)
+        .setCompactFrames(compactFrames)
         .setBranchUnit(branchUnit)
         .setBranchTargetFinder(branchTargetFinder)
         .setCallingInstructionBlockStack(instructionBlockStack)
@@ -1008,6 +1124,11 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
    * evaluator, over a given range of instructions.
    */
   private void generalize(PartialEvaluator other, int codeStart, int codeEnd) {
+    if (compactFrames) {
+      unshareVariables(other, codeStart, codeEnd);
+    }
+
+    TracedVariables previousVariables = null;
     for (int offset = codeStart; offset < codeEnd; offset++) {
       if (other.branchOriginValues[offset] != null) {
         branchOriginValues[offset] =
@@ -1032,13 +1153,48 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
           generalizedContexts[offset] = other.generalizedContexts[offset];
           evaluationCounts[offset] = other.evaluationCounts[offset];
         } else {
-          variablesBefore[offset].generalize(other.variablesBefore[offset], false);
+          // Shared variables only need to be generalized once.
+          if (variablesBefore[offset] != previousVariables) {
+            variablesBefore[offset].generalize(other.variablesBefore[offset], false);
+          }
           stacksBefore[offset].generalize(other.stacksBefore[offset]);
-          variablesAfter[offset].generalize(other.variablesAfter[offset], false);
-          stacksAfter[offset].generalize(other.stacksAfter[offset]);
+          if (variablesAfter[offset] != null) {
+            variablesAfter[offset].generalize(other.variablesAfter[offset], false);
+            stacksAfter[offset].generalize(other.stacksAfter[offset]);
+          }
           // generalizedContexts[offset]
           evaluationCounts[offset] += other.evaluationCounts[offset];
         }
+
+        previousVariables = variablesBefore[offset];
+      }
+    }
+  }
+
+  /**
+   * Stops sharing the variables of subsequent instructions, over a given range of instructions,
+   * where they are not shared in the given other partial evaluator, so they can be generalized
+   * separately.
+   */
+  private void unshareVariables(PartialEvaluator other, int codeStart, int codeEnd) {
+    TracedVariables previousOriginalVariables = null;
+    TracedVariables previousVariables = null;
+    TracedVariables previousOtherVariables = null;
+    for (int offset = codeStart; offset < codeEnd; offset++) {
+      if (isTraced(offset)) {
+        TracedVariables originalVariables = variablesBefore[offset];
+        TracedVariables otherVariables =
+            other.isTraced(offset) ? other.variablesBefore[offset] : null;
+        if (originalVariables == previousOriginalVariables && otherVariables != null) {
+          variablesBefore[offset] =
+              otherVariables == previousOtherVariables
+                  ? previousVariables
+                  : new TracedVariables(originalVariables);
+        }
+
+        previousOriginalVariables = originalVariables;
+        previousVariables = variablesBefore[offset];
+        previousOtherVariables = otherVariables;
       }
     }
   }
@@ -1144,6 +1300,17 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       stacksAfter = new TracedStack[newCodeLength];
       generalizedContexts = new boolean[newCodeLength];
       evaluationCounts = new int[newCodeLength];
+    } else if (compactFrames) {
+      // Clear the old arrays, since their frames may be shared.
+      int maxCodeLength = Math.max(codeLength, newCodeLength);
+      Arrays.fill(branchOriginValues, 0, codeLength, null);
+      Arrays.fill(branchTargetValues, 0, codeLength, null);
+      Arrays.fill(variablesBefore, 0, maxCodeLength, null);
+      Arrays.fill(stacksBefore, 0, maxCodeLength, null);
+      Arrays.fill(variablesAfter, 0, maxCodeLength, null);
+      Arrays.fill(stacksAfter, 0, maxCodeLength, null);
+      Arrays.fill(generalizedContexts, 0, codeLength, false);
+      Arrays.fill(evaluationCounts, 0, codeLength, 0);
     } else {
       // Reset the old arrays.
       Arrays.fill(branchOriginValues, 0, codeLength, null);
@@ -1189,6 +1356,15 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     }
 
     codeLength = newCodeLength;
+
+    if (compactFrames) {
+      int maxLocals = codeAttribute.u2maxLocals;
+      unmergedVariables = new TracedVariables(maxLocals);
+      if (variableValues.length < maxLocals) {
+        variableValues = new Value[maxLocals];
+        variableProducerValues = new Value[maxLocals];
+      }
+    }
   }
 
   /** Initializes the data structures for the variables, stack, etc. */
@@ -1271,7 +1447,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // Generalize the variables after the last instruction in the block,
     // if required.
     if (includeAfterLastInstruction && lastIndex >= 0) {
-      TracedVariables tracedVariables = variablesAfter[lastIndex];
+      TracedVariables tracedVariables = getVariablesAfter(lastIndex);
 
       if (first) {
         // Initialize the variables with the local variable frame.
@@ -1289,6 +1465,107 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     }
   }
 
+  /**
+   * Generalizes the variables before the instruction at the given offset with the given variables,
+   * returning whether they have changed.
+   */
+  private boolean generalizeVariablesBefore(int instructionOffset, TracedVariables variables) {
+    try {
+      return variablesBefore[instructionOffset].generalize(variables, true);
+    } catch (IllegalArgumentException ex) {
+      throw new VariablesGeneralizationException(
+          ex, variablesBefore[instructionOffset], variables);
+    }
+  }
+
+  /**
+   * Returns the offset of the next instruction, if it may share the variables of the instruction
+   * at the given offset, and its frames before execution are the frames after execution of this
+   * instruction. This is the case with compact frames, if this instruction always continues with
+   * the next one, and the next one can't be reached in any other way. Returns {@link #NONE}
+   * otherwise.
+   */
+  private int fallThroughSuccessor(int instructionOffset) {
+    if (!compactFrames
+        || !branchTargetFinder.isInstruction(instructionOffset)
+        || branchTargetFinder.isBranchOrigin(instructionOffset)) {
+      return NONE;
+    }
+
+    int successorOffset = instructionOffset + 1;
+    while (successorOffset < codeLength && !branchTargetFinder.isInstruction(successorOffset)) {
+      successorOffset++;
+    }
+
+    return successorOffset < codeLength
+            && !branchTargetFinder.isBranchTarget(successorOffset)
+            && !branchTargetFinder.isExceptionHandler(successorOffset)
+        ? successorOffset
+        : NONE;
+  }
+
+  /**
+   * Remembers the contents of the variables before the instruction at the given offset, if the
+   * next instruction shares them, so it can stop sharing them later on.
+   */
+  private void saveUnmergedVariables(int instructionOffset) {
+    int successorOffset = fallThroughSuccessor(instructionOffset);
+    if (successorOffset != NONE
+        && variablesBefore[successorOffset] == variablesBefore[instructionOffset]) {
+      unmergedVariables.initialize(variablesBefore[instructionOffset]);
+    }
+  }
+
+  /**
+   * Replaces the given shared variables, before the instruction at the given offset and before
+   * the subsequent instructions that share them, by a copy of the remembered contents.
+   */
+  private void unshareVariablesBefore(int instructionOffset, TracedVariables sharedVariables) {
+    TracedVariables variables = new TracedVariables(unmergedVariables);
+    for (int offset = instructionOffset;
+        offset != NONE && variablesBefore[offset] == sharedVariables;
+        offset = fallThroughSuccessor(offset)) {
+      variablesBefore[offset] = variables;
+    }
+  }
+
+  /**
+   * Stops sharing the variables before the instruction at the given offset with the subsequent
+   * instructions, if the generalization has replaced any of their values.
+   */
+  private void unshareVariablesAfterBailOut(int instructionOffset) {
+    int successorOffset = fallThroughSuccessor(instructionOffset);
+    if (successorOffset != NONE) {
+      TracedVariables sharedVariables = variablesBefore[instructionOffset];
+      if (variablesBefore[successorOffset] == sharedVariables) {
+        saveVariableValues(unmergedVariables);
+        if (!hasVariableValues(sharedVariables)) {
+          unshareVariablesBefore(successorOffset, sharedVariables);
+        }
+      }
+    }
+  }
+
+  /** Remembers the values and producer values of the given variables. */
+  private void saveVariableValues(TracedVariables variables) {
+    for (int index = 0; index < variables.size(); index++) {
+      variableValues[index] = variables.getValue(index);
+      variableProducerValues[index] = variables.getProducerValue(index);
+    }
+  }
+
+  /** Returns whether the given variables still have the remembered values and producer values. */
+  private boolean hasVariableValues(TracedVariables variables) {
+    for (int index = 0; index < variables.size(); index++) {
+      if (variables.getValue(index) != variableValues[index]
+          || variables.getProducerValue(index) != variableProducerValues[index]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   /**
    * It the analysis visits an instruction this many times (this can happen e.g. for big switches),
    * the analysis of this method is forcibly stopped and a ExcessiveComplexityException is thrown.
@@ -20,13 +20,19 @@ package proguard.evaluation.executor;
 
 import static proguard.classfile.TypeConstants.VOID;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
 import proguard.classfile.JavaConstants;
 import proguard.classfile.JavaTypeConstants;
-import proguard.classfile.MethodDescriptor;
+import proguard.classfile.MethodSignature;
 import proguard.classfile.TypeConstants;
 import proguard.classfile.util.ClassUtil;
 import proguard.evaluation.MethodResult;
@@ -41,9 +47,17 @@ import proguard.evaluation.value.object.AnalyzedObject;
  * This {@link Executor} provides an implementation for {@link Executor#getMethodResult} which tries
  * to resolve the method at runtime and execute it using Java's reflection API {@link
  * java.lang.reflect}.
+ *
+ * <p>Each method or constructor is resolved only once, to a {@link MethodHandle}, which is reused
+ * for all subsequent calls with the same signature. Methods that can't be resolved are remembered
+ * as well.
  */
 public abstract class ReflectionExecutor implements Executor {
 
+  /** The resolved methods and constructors, by signature. */
+  private final Map<MethodSignature, ReflectionTarget> reflectionTargets =
+      new ConcurrentHashMap<>();
+
   @Override
   public MethodResult getMethodResult(
       MethodExecutionInfo methodExecutionInfo, ValueCalculator valueCalculator) {
@@ -56,14 +70,16 @@ public abstract class ReflectionExecutor implements Executor {
       return fallbackResultOptional.get();
     }
 
-    ReflectionParameters reflectionParameters =
-        new ReflectionParameters(
-            methodExecutionInfo.getSignature().descriptor, methodExecutionInfo.getParameters());
+    ReflectionTarget reflectionTarget =
+        reflectionTargets.computeIfAbsent(
+            methodExecutionInfo.getSignature(),
+            signature -> ReflectionTarget.resolve(signature, methodExecutionInfo.isConstructor()));
+    Object[] arguments = reflectionTarget.createArguments(methodExecutionInfo.getParameters());
 
     if (methodExecutionInfo.isConstructor()) {
-      return executeConstructor(methodExecutionInfo, valueCalculator, reflectionParameters);
+      return executeConstructor(methodExecutionInfo, valueCalculator, reflectionTarget, arguments);
     } else {
-      return executeMethod(methodExecutionInfo, valueCalculator, reflectionParameters);
+      return executeMethod(methodExecutionInfo, valueCalculator, reflectionTarget, arguments);
     }
   }
 
@@ -96,8 +112,7 @@ public abstract class ReflectionExecutor implements Executor {
     if ((methodExecutionInfo.isInstanceMethod()
             && (!instance.isParticular() // NOSONAR instance can't be null for instance methods
                 || isNonPreciseParticularValue(instance)))
-        || methodExecutionInfo.getParameters().stream()
-            .anyMatch(value -> !value.isParticular() || isNonPreciseParticularValue(value))) {
+        || !areParticularAndPrecise(methodExecutionInfo.getParameters())) {
       // All parameters must be particular and real objects to use reflection. Detailed arrays can
       // be converted to a real object if they are particular.
       if (methodExecutionInfo.isConstructor()) {
@@ -110,6 +125,17 @@ public abstract class ReflectionExecutor implements Executor {
     return Optional.empty();
   }
 
+  /** Returns whether all given values are particular and precise. */
+  private static boolean areParticularAndPrecise(List<Value> values) {
+    for (int index = 0; index < values.size(); index++) {
+      Value value = values.get(index);
+      if (!value.isParticular() || isNonPreciseParticularValue(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Particular primitive types are always precise. For now this has a workaround for {@link
    * DetailedArrayReferenceValue} since the {@link AnalyzedObject} they wrap is not returning true
@@ -127,103 +153,91 @@ public abstract class ReflectionExecutor implements Executor {
   private MethodResult executeMethod(
       MethodExecutionInfo methodExecutionInfo,
       ValueCalculator valueCalculator,
-      ReflectionParameters reflectionParameters) {
-    Object newReferenceId;
-    try {
-      Class<?> baseClass =
-          Class.forName(
-              ClassUtil.externalClassName(methodExecutionInfo.getSignature().getClassName()));
-
-      Object callingInstance = null;
-      boolean isCallingInstanceMutable = false;
-
-      if (!methodExecutionInfo.isStatic()) {
-        Optional<InstanceCopyResult> objectInstanceResultOptional =
-            getInstanceOrCopyIfMutable(methodExecutionInfo.getSpecificInstance());
-        if (!objectInstanceResultOptional.isPresent()) {
-          return MethodResult.invalidResult();
-        }
-        callingInstance = objectInstanceResultOptional.get().getInstance().getPreciseValue();
-        isCallingInstanceMutable = objectInstanceResultOptional.get().isMutable();
-      }
-
-      MethodResult.Builder resultBuilder = new MethodResult.Builder();
-
-      // Try to resolve the method via reflection and invoke the method.
-      Object returnResult =
-          baseClass
-              .getMethod(methodExecutionInfo.getSignature().method, reflectionParameters.classes)
-              .invoke(callingInstance, reflectionParameters.objects);
+      ReflectionTarget reflectionTarget,
+      Object[] arguments) {
+    if (reflectionTarget.invoker == null) {
+      return MethodResult.invalidResult();
+    }
 
-      // The new reference id is the instance one if the method returned the instance
-      newReferenceId = null;
-      if (!methodExecutionInfo.isStatic() && returnResult == callingInstance) {
-        newReferenceId = methodExecutionInfo.getSpecificInstance().id; // NOSONAR can't throw a NPE
-      }
+    Object callingInstance = null;
+    boolean isCallingInstanceMutable = false;
 
-      if (methodExecutionInfo.getReturnType().charAt(0) != VOID) {
-        Value returnValue =
-            valueCalculator.apply(
-                methodExecutionInfo.getReturnType(),
-                methodExecutionInfo.getReturnClass(),
-                true,
-                returnResult,
-                ClassUtil.isExtendable(methodExecutionInfo.getReturnClass()),
-                newReferenceId);
-        resultBuilder.setReturnValue(returnValue);
-        if (isCallingInstanceMutable && newReferenceId != null) {
-          resultBuilder.setUpdatedInstance(returnValue.referenceValue());
-        }
+    if (!methodExecutionInfo.isStatic()) {
+      Optional<InstanceCopyResult> objectInstanceResultOptional =
+          getInstanceOrCopyIfMutable(methodExecutionInfo.getSpecificInstance());
+      if (!objectInstanceResultOptional.isPresent()) {
+        return MethodResult.invalidResult();
       }
+      callingInstance = objectInstanceResultOptional.get().getInstance().getPreciseValue();
+      isCallingInstanceMutable = objectInstanceResultOptional.get().isMutable();
+    }
+    if (reflectionTarget.hasInstance) {
+      arguments[0] = callingInstance;
+    }
 
-      return resultBuilder.build();
+    MethodResult.Builder resultBuilder = new MethodResult.Builder();
 
-    } catch (ClassNotFoundException
-        | NoSuchMethodException
-        | SecurityException
-        | IllegalAccessException
-        | IllegalArgumentException
-        | InvocationTargetException e) {
+    // Invoke the resolved method.
+    Object returnResult;
+    try {
+      returnResult = reflectionTarget.invoke(arguments);
+    } catch (Throwable e) {
       return MethodResult.invalidResult();
     }
+
+    // The new reference id is the instance one if the method returned the instance
+    Object newReferenceId = null;
+    if (!methodExecutionInfo.isStatic() && returnResult == callingInstance) {
+      newReferenceId = methodExecutionInfo.getSpecificInstance().id; // NOSONAR can't throw a NPE
+    }
+
+    if (methodExecutionInfo.getReturnType().charAt(0) != VOID) {
+      Value returnValue =
+          valueCalculator.apply(
+              methodExecutionInfo.getReturnType(),
+              methodExecutionInfo.getReturnClass(),
+              true,
+              returnResult,
+              ClassUtil.isExtendable(methodExecutionInfo.getReturnClass()),
+              newReferenceId);
+      resultBuilder.setReturnValue(returnValue);
+      if (isCallingInstanceMutable && newReferenceId != null) {
+        resultBuilder.setUpdatedInstance(returnValue.referenceValue());
+      }
+    }
+
+    return resultBuilder.build();
   }
 
   private MethodResult executeConstructor(
       MethodExecutionInfo methodExecutionInfo,
       ValueCalculator valueCalculator,
-      ReflectionParameters reflectionParameters) {
+      ReflectionTarget reflectionTarget,
+      Object[] arguments) {
+    if (reflectionTarget.invoker == null) {
+      return MethodResult.invalidResult();
+    }
+
+    // Create a new instance with the resolved constructor.
+    Object newInstance;
     try {
-      Class<?> baseClass =
-          Class.forName(
-              ClassUtil.externalClassName(methodExecutionInfo.getSignature().getClassName()));
-
-      Object newInstance =
-          baseClass
-              .getConstructor(reflectionParameters.classes)
-              .newInstance(reflectionParameters.objects);
-
-      // Try to resolve the constructor reflectively and create a new instance.
-      return new MethodResult.Builder()
-          .setUpdatedInstance(
-              valueCalculator
-                  .apply(
-                      methodExecutionInfo.getTargetType(),
-                      methodExecutionInfo.getTargetClass(),
-                      true,
-                      newInstance,
-                      false,
-                      methodExecutionInfo.getSpecificInstance().id)
-                  .referenceValue())
-          .build();
-    } catch (ClassNotFoundException
-        | NoSuchMethodException
-        | SecurityException
-        | InstantiationException
-        | IllegalAccessException
-        | IllegalArgumentException
-        | InvocationTargetException e) {
+      newInstance = reflectionTarget.invoke(arguments);
+    } catch (Throwable e) {
       return MethodResult.invalidResult();
     }
+
+    return new MethodResult.Builder()
+        .setUpdatedInstance(
+            valueCalculator
+                .apply(
+                    methodExecutionInfo.getTargetType(),
+                    methodExecutionInfo.getTargetClass(),
+                    true,
+                    newInstance,
+                    false,
+                    methodExecutionInfo.getSpecificInstance().id)
+                .referenceValue())
+        .build();
   }
 
   private MethodResult createFallbackResultMethod(
@@ -322,67 +336,137 @@ public abstract class ReflectionExecutor implements Executor {
   }
 
   /**
-   * This class represents the parameters needed for invoking a method using Java's reflection API.
-   * It is capable of parsing these parameters arrays of {@link Value}s.
+   * This class represents a method or constructor resolved with Java's reflection API, with the
+   * classes of its parameters. It is capable of converting the parameters of a call from {@link
+   * Value}s to objects, and of invoking the method or constructor with them.
    */
-  private static class ReflectionParameters {
-    private final Object[] objects;
-    private final Class<?>[] classes;
+  private static class ReflectionTarget {
+    @Nullable private final String parameterError;
+    private final Class<?>[] parameterClasses;
+    /** Invokes the method or constructor with an array of the instance, if any, and parameters. */
+    @Nullable private final MethodHandle invoker;
+
+    private final boolean hasInstance;
+
+    private ReflectionTarget(
+        @Nullable String parameterError,
+        Class<?>[] parameterClasses,
+        @Nullable MethodHandle invoker,
+        boolean hasInstance) {
+      this.parameterError = parameterError;
+      this.parameterClasses = parameterClasses;
+      this.invoker = invoker;
+      this.hasInstance = hasInstance;
+    }
+
+    /**
+     * Resolves the method or constructor with the given signature. If a parameter type or the
+     * method can't be resolved, the invoker of the result is null.
+     */
+    private static ReflectionTarget resolve(MethodSignature signature, boolean isConstructor) {
+      List<String> argumentTypes = signature.descriptor.getArgumentTypes();
+      Class<?>[] parameterClasses = new Class<?>[argumentTypes.size()];
+      for (int index = 0; index < parameterClasses.length; index++) {
+        try {
+          parameterClasses[index] = getParameterClass(argumentTypes.get(index));
+        } catch (IllegalArgumentException e) {
+          return new ReflectionTarget(e.getMessage(), parameterClasses, null, false);
+        }
+      }
+
+      try {
+        Class<?> baseClass = Class.forName(ClassUtil.externalClassName(signature.getClassName()));
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        if (isConstructor) {
+          return new ReflectionTarget(
+              null,
+              parameterClasses,
+              spreadInvoker(
+                  lookup.unreflectConstructor(baseClass.getConstructor(parameterClasses))),
+              false);
+        }
+        Method method = baseClass.getMethod(signature.method, parameterClasses);
+        return new ReflectionTarget(
+            null,
+            parameterClasses,
+            spreadInvoker(lookup.unreflect(method)),
+            !Modifier.isStatic(method.getModifiers()));
+      } catch (ClassNotFoundException
+          | NoSuchMethodException
+          | SecurityException
+          | IllegalAccessException e) {
+        return new ReflectionTarget(null, parameterClasses, null, false);
+      }
+    }
 
     /**
-     * Parse information on a method call into the parameters needed for calling the method via
-     * reflection.
+     * Converts the given non instance parameters of a call to the arguments of the invoker,
+     * leaving room for the instance, if any.
      *
-     * @param descriptor The descriptor of the method.
-     * @param nonInstanceParameters An array of the non instance parameters of the method.
+     * @param nonInstanceParameters The non instance parameters of the call.
      */
-    public ReflectionParameters(MethodDescriptor descriptor, List<Value> nonInstanceParameters)
+    private Object[] createArguments(List<Value> nonInstanceParameters)
         throws IllegalArgumentException {
+      if (parameterError != null) {
+        throw new IllegalArgumentException(parameterError);
+      }
       int len = nonInstanceParameters.size();
-      if (descriptor.getArgumentTypes().size() != len) {
+      if (parameterClasses.length != len) {
         throw new IllegalArgumentException("Parameter count does not match the method descriptor.");
       }
 
-      objects = new Object[len];
-      classes = new Class<?>[len];
+      int offset = hasInstance ? 1 : 0;
+      Object[] arguments = new Object[offset + len];
       for (int index = 0; index < len; index++) {
-        String internalType = descriptor.getArgumentTypes().get(index);
+        Class<?> cls = parameterClasses[index];
         Value parameter = nonInstanceParameters.get(index);
+        arguments[offset + index] =
+            cls.isArray()
+                ? getArrayObject(
+                    cls.getComponentType(), (Value[]) parameter.referenceValue().value())
+                : getSingleObject(cls, parameter);
+      }
+      return arguments;
+    }
 
-        if (!ClassUtil.isInternalArrayType(internalType)) {
-          Class<?> cls;
-          try {
-            cls = getSingleClass(internalType);
-          } catch (ClassNotFoundException e) {
-            throw new IllegalArgumentException("Descriptor type refers to an unknown class.");
-          }
-
-          classes[index] = cls;
-          objects[index] = getSingleObject(cls, parameter);
-        } else {
-          String innerType = ClassUtil.internalTypeFromArrayType(internalType);
-          if (ClassUtil.isInternalArrayType(innerType)) {
-            // unreachable because of DetailedArrayValues not supporting >1D, therefore not being
-            // particular
-            throw new IllegalArgumentException("Only 1D arrays are supported.");
-          }
+    /** Invokes the resolved method or constructor with the given arguments. */
+    private Object invoke(Object[] arguments) throws Throwable {
+      return (Object) invoker.invokeExact(arguments);
+    }
 
-          Value[] valuesArray = (Value[]) parameter.referenceValue().value();
-          Class<?> innerClass;
-          try {
-            innerClass = getSingleClass(innerType);
-          } catch (ClassNotFoundException e) {
-            throw new IllegalArgumentException("Descriptor type refers to an unknown class.");
-          }
+    /**
+     * Returns a method handle that invokes the given one with an array of boxed arguments and
+     * returns its boxed result.
+     */
+    private static MethodHandle spreadInvoker(MethodHandle methodHandle) {
+      // Pass varargs arrays as they are.
+      MethodHandle fixedArityHandle = methodHandle.asFixedArity();
+      return fixedArityHandle
+          .asType(fixedArityHandle.type().generic())
+          .asSpreader(Object[].class, fixedArityHandle.type().parameterCount());
+    }
 
-          Object arrayObject = getArrayObject(innerClass, valuesArray);
-          classes[index] =
-              arrayObject == null
-                  ? Array.newInstance(innerClass, 0).getClass()
-                  : arrayObject.getClass();
-          objects[index] = arrayObject;
+    private static Class<?> getParameterClass(String internalType) {
+      if (!ClassUtil.isInternalArrayType(internalType)) {
+        try {
+          return getSingleClass(internalType);
+        } catch (ClassNotFoundException e) {
+          throw new IllegalArgumentException("Descriptor type refers to an unknown class.");
         }
       }
+
+      String innerType = ClassUtil.internalTypeFromArrayType(internalType);
+      if (ClassUtil.isInternalArrayType(innerType)) {
+        // unreachable because of DetailedArrayValues not supporting >1D, therefore not being
+        // particular
+        throw new IllegalArgumentException("Only 1D arrays are supported.");
+      }
+
+      try {
+        return Array.newInstance(getSingleClass(innerType), 0).getClass();
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("Descriptor type refers to an unknown class.");
+      }
     }
 
     private static Class<?> getSingleClass(String type) throws ClassNotFoundException {
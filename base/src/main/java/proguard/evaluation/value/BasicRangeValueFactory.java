@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2020 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -53,6 +53,6 @@ public class BasicRangeValueFactory extends ParticularValueFactory implements Va
   // Implementations for ValueFactory.
 
   public IntegerValue createIntegerValue(int min, int max) {
-    return min == max ? new ParticularIntegerValue(min) : new RangeIntegerValue(min, max);
+    return min == max ? ParticularIntegerValue.valueOf(min) : new RangeIntegerValue(min, max);
   }
 }
@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2021 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,7 +43,7 @@ public final class ParticularFloatValue extends SpecificFloatValue {
   }
 
   public IntegerValue convertToInteger() {
-    return new ParticularIntegerValue((int) value);
+    return ParticularIntegerValue.valueOf((int) value);
   }
 
   public LongValue convertToLong() {
@@ -162,9 +162,10 @@ public final class ParticularFloatValue extends SpecificFloatValue {
 
   public boolean equals(Object object) {
     // Also handle NaN and Infinity.
-    return super.equals(object)
-        && Float.floatToIntBits(this.value)
-            == Float.floatToIntBits(((ParticularFloatValue) object).value);
+    return this == object
+        || super.equals(object)
+            && Float.floatToIntBits(this.value)
+                == Float.floatToIntBits(((ParticularFloatValue) object).value);
   }
 
   public int hashCode() {
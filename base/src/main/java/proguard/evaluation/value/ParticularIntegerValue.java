@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2021 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,6 +30,19 @@ package proguard.evaluation.value;
  * @author Eric Lafortune
  */
 public final class ParticularIntegerValue extends SpecificIntegerValue {
+  // Shared instances of small values, which are the most common ones, e.g. as array indices,
+  // counters, lengths, and characters.
+  static final int CACHE_LOW = -128;
+  static final int CACHE_HIGH = 1023;
+  private static final ParticularIntegerValue[] CACHE =
+      new ParticularIntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int index = 0; index < CACHE.length; index++) {
+      CACHE[index] = new ParticularIntegerValue(CACHE_LOW + index);
+    }
+  }
+
   private final int value;
 
   /** Creates a new particular integer value. */
@@ -37,6 +50,16 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
     this.value = value;
   }
 
+  /**
+   * Returns a particular integer value with the given value. Values between -128 and 1023 are
+   * shared instances, so prefer this method over the constructor.
+   */
+  public static ParticularIntegerValue valueOf(int value) {
+    return value >= CACHE_LOW && value <= CACHE_HIGH
+        ? CACHE[value - CACHE_LOW]
+        : new ParticularIntegerValue(value);
+  }
+
   // Implementations for IntegerValue.
 
   public int value() {
@@ -46,25 +69,25 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   // Implementations of unary methods of IntegerValue.
 
   public IntegerValue negate() {
-    return new ParticularIntegerValue(-value);
+    return valueOf(-value);
   }
 
   public IntegerValue convertToByte() {
     int byteValue = (byte) value;
 
-    return byteValue == value ? this : new ParticularIntegerValue(byteValue);
+    return byteValue == value ? this : valueOf(byteValue);
   }
 
   public IntegerValue convertToCharacter() {
     int charValue = (char) value;
 
-    return charValue == value ? this : new ParticularIntegerValue(charValue);
+    return charValue == value ? this : valueOf(charValue);
   }
 
   public IntegerValue convertToShort() {
     int shortValue = (short) value;
 
-    return shortValue == value ? this : new ParticularIntegerValue(shortValue);
+    return shortValue == value ? this : valueOf(shortValue);
   }
 
   public LongValue convertToLong() {
@@ -185,59 +208,59 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   }
 
   public IntegerValue add(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value + other.value);
+    return valueOf(this.value + other.value);
   }
 
   public IntegerValue subtract(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value - other.value);
+    return valueOf(this.value - other.value);
   }
 
   public IntegerValue subtractFrom(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value - this.value);
+    return valueOf(other.value - this.value);
   }
 
   public IntegerValue multiply(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value * other.value);
+    return valueOf(this.value * other.value);
   }
 
   public IntegerValue divide(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(this.value / other.value);
+    return valueOf(this.value / other.value);
   }
 
   public IntegerValue divideOf(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(other.value / this.value);
+    return valueOf(other.value / this.value);
   }
 
   public IntegerValue remainder(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(this.value % other.value);
+    return valueOf(this.value % other.value);
   }
 
   public IntegerValue remainderOf(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(other.value % this.value);
+    return valueOf(other.value % this.value);
   }
 
   public IntegerValue shiftLeft(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value << other.value);
+    return valueOf(this.value << other.value);
   }
 
   public IntegerValue shiftRight(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value >> other.value);
+    return valueOf(this.value >> other.value);
   }
 
   public IntegerValue unsignedShiftRight(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value >>> other.value);
+    return valueOf(this.value >>> other.value);
   }
 
   public IntegerValue shiftLeftOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value << this.value);
+    return valueOf(other.value << this.value);
   }
 
   public IntegerValue shiftRightOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value >> this.value);
+    return valueOf(other.value >> this.value);
   }
 
   public IntegerValue unsignedShiftRightOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value >>> this.value);
+    return valueOf(other.value >>> this.value);
   }
 
   public LongValue shiftLeftOf(ParticularLongValue other) {
@@ -253,15 +276,15 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   }
 
   public IntegerValue and(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value & other.value);
+    return valueOf(this.value & other.value);
   }
 
   public IntegerValue or(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value | other.value);
+    return valueOf(this.value | other.value);
   }
 
   public IntegerValue xor(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value ^ other.value);
+    return valueOf(this.value ^ other.value);
   }
 
   public int equal(ParticularIntegerValue other) {
@@ -371,7 +394,8 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   // Implementations for Object.
 
   public boolean equals(Object object) {
-    return super.equals(object) && this.value == ((ParticularIntegerValue) object).value;
+    return this == object
+        || super.equals(object) && this.value == ((ParticularIntegerValue) object).value;
   }
 
   public int hashCode() {
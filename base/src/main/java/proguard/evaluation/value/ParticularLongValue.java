@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2021 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,7 +43,7 @@ public final class ParticularLongValue extends SpecificLongValue {
   }
 
   public IntegerValue convertToInteger() {
-    return new ParticularIntegerValue((int) value);
+    return ParticularIntegerValue.valueOf((int) value);
   }
 
   public FloatValue convertToFloat() {
@@ -192,7 +192,8 @@ public final class ParticularLongValue extends SpecificLongValue {
   // Implementations for Object.
 
   public boolean equals(Object object) {
-    return super.equals(object) && this.value == ((ParticularLongValue) object).value;
+    return this == object
+        || super.equals(object) && this.value == ((ParticularLongValue) object).value;
   }
 
   public int hashCode() {
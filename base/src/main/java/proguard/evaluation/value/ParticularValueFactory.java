@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2023 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,14 +28,24 @@ import proguard.evaluation.value.object.AnalyzedObject;
  * whenever they are known.
  */
 public class ParticularValueFactory extends BasicValueFactory implements ValueFactory {
+  /**
+   * Enables the canonicalization of created values: factories that are created while this is set
+   * return recently created instances again for equal particular values and typed references,
+   * instead of creating new ones. This reduces the number of value objects in large analyses, for
+   * instance in the frames of the {@link proguard.evaluation.PartialEvaluator}, at the cost of a
+   * lookup per created value. See also {@link TypedReferenceValueFactory}.
+   */
+  public static boolean ENABLE_VALUE_CANONICALIZATION =
+      System.getProperty("proguard.value.canonicalize") != null;
+
   // Shared copies of Value objects, to avoid creating a lot of objects.
-  static final IntegerValue INTEGER_VALUE_M1 = new ParticularIntegerValue(-1);
-  static final IntegerValue INTEGER_VALUE_0 = new ParticularIntegerValue(0);
-  static final IntegerValue INTEGER_VALUE_1 = new ParticularIntegerValue(1);
-  static final IntegerValue INTEGER_VALUE_2 = new ParticularIntegerValue(2);
-  static final IntegerValue INTEGER_VALUE_3 = new ParticularIntegerValue(3);
-  static final IntegerValue INTEGER_VALUE_4 = new ParticularIntegerValue(4);
-  static final IntegerValue INTEGER_VALUE_5 = new ParticularIntegerValue(5);
+  static final IntegerValue INTEGER_VALUE_M1 = ParticularIntegerValue.valueOf(-1);
+  static final IntegerValue INTEGER_VALUE_0 = ParticularIntegerValue.valueOf(0);
+  static final IntegerValue INTEGER_VALUE_1 = ParticularIntegerValue.valueOf(1);
+  static final IntegerValue INTEGER_VALUE_2 = ParticularIntegerValue.valueOf(2);
+  static final IntegerValue INTEGER_VALUE_3 = ParticularIntegerValue.valueOf(3);
+  static final IntegerValue INTEGER_VALUE_4 = ParticularIntegerValue.valueOf(4);
+  static final IntegerValue INTEGER_VALUE_5 = ParticularIntegerValue.valueOf(5);
   static final LongValue LONG_VALUE_0 = new ParticularLongValue(0);
   static final LongValue LONG_VALUE_1 = new ParticularLongValue(1);
   static final FloatValue FLOAT_VALUE_0 = new ParticularFloatValue(0.0f);
@@ -47,6 +57,18 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
   private static final int POS_ZERO_FLOAT_BITS = Float.floatToIntBits(0.0f);
   private static final long POS_ZERO_DOUBLE_BITS = Double.doubleToLongBits(0.0);
 
+  // The number of slots of the direct-mapped tables of canonical values.
+  static final int CANONICAL_VALUE_TABLE_SIZE = 1024;
+
+  // Recently created values, indexed by their hash, if canonicalization is enabled. A slot only
+  // ever holds a single value and is overwritten on a collision, so the tables stay small. They
+  // are accessed without synchronization: the values are immutable, so a thread may at worst
+  // miss a value that another thread has just created.
+  private final ParticularIntegerValue[] integerValues;
+  private final ParticularLongValue[] longValues;
+  private final ParticularFloatValue[] floatValues;
+  private final ParticularDoubleValue[] doubleValues;
+
   private final ValueFactory arrayReferenceValueFactory;
   // if set to true, a ParticularReferenceValue will be created for each reference. Otherwise, this
   // will be delegated to the referenceValueFactory.
@@ -75,53 +97,109 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
       ValueFactory arrayReferenceValueFactory, ValueFactory referenceValueFactory) {
     this.arrayReferenceValueFactory = arrayReferenceValueFactory;
     this.referenceValueFactory = referenceValueFactory;
+
+    if (ENABLE_VALUE_CANONICALIZATION) {
+      integerValues = new ParticularIntegerValue[CANONICAL_VALUE_TABLE_SIZE];
+      longValues = new ParticularLongValue[CANONICAL_VALUE_TABLE_SIZE];
+      floatValues = new ParticularFloatValue[CANONICAL_VALUE_TABLE_SIZE];
+      doubleValues = new ParticularDoubleValue[CANONICAL_VALUE_TABLE_SIZE];
+    } else {
+      integerValues = null;
+      longValues = null;
+      floatValues = null;
+      doubleValues = null;
+    }
   }
 
   // Implementations for ValueFactory.
 
   @Override
   public IntegerValue createIntegerValue(int value) {
-    switch (value) {
-      case -1:
-        return INTEGER_VALUE_M1;
-      case 0:
-        return INTEGER_VALUE_0;
-      case 1:
-        return INTEGER_VALUE_1;
-      case 2:
-        return INTEGER_VALUE_2;
-      case 3:
-        return INTEGER_VALUE_3;
-      case 4:
-        return INTEGER_VALUE_4;
-      case 5:
-        return INTEGER_VALUE_5;
-      default:
-        return new ParticularIntegerValue(value);
+    if (integerValues == null
+        || value >= ParticularIntegerValue.CACHE_LOW
+            && value <= ParticularIntegerValue.CACHE_HIGH) {
+      return ParticularIntegerValue.valueOf(value);
     }
+
+    int index = tableIndex(value);
+    ParticularIntegerValue canonicalValue = integerValues[index];
+    if (canonicalValue == null || canonicalValue.value() != value) {
+      canonicalValue = new ParticularIntegerValue(value);
+      integerValues[index] = canonicalValue;
+    }
+    return canonicalValue;
   }
 
   @Override
   public LongValue createLongValue(long value) {
-    return value == 0L ? LONG_VALUE_0 : value == 1L ? LONG_VALUE_1 : new ParticularLongValue(value);
+    if (value == 0L) {
+      return LONG_VALUE_0;
+    }
+    if (value == 1L) {
+      return LONG_VALUE_1;
+    }
+    if (longValues == null) {
+      return new ParticularLongValue(value);
+    }
+
+    int index = tableIndex(Long.hashCode(value));
+    ParticularLongValue canonicalValue = longValues[index];
+    if (canonicalValue == null || canonicalValue.value() != value) {
+      canonicalValue = new ParticularLongValue(value);
+      longValues[index] = canonicalValue;
+    }
+    return canonicalValue;
   }
 
   @Override
   public FloatValue createFloatValue(float value) {
     // Make sure to distinguish between +0.0 and -0.0.
-    return value == 0.0f && Float.floatToIntBits(value) == POS_ZERO_FLOAT_BITS
-        ? FLOAT_VALUE_0
-        : value == 1.0f
-            ? FLOAT_VALUE_1
-            : value == 2.0f ? FLOAT_VALUE_2 : new ParticularFloatValue(value);
+    int bits = Float.floatToIntBits(value);
+    if (bits == POS_ZERO_FLOAT_BITS) {
+      return FLOAT_VALUE_0;
+    }
+    if (value == 1.0f) {
+      return FLOAT_VALUE_1;
+    }
+    if (value == 2.0f) {
+      return FLOAT_VALUE_2;
+    }
+    if (floatValues == null) {
+      return new ParticularFloatValue(value);
+    }
+
+    // Compare the bits, to distinguish between +0.0 and -0.0, and to match NaN.
+    int index = tableIndex(bits);
+    ParticularFloatValue canonicalValue = floatValues[index];
+    if (canonicalValue == null || Float.floatToIntBits(canonicalValue.value()) != bits) {
+      canonicalValue = new ParticularFloatValue(value);
+      floatValues[index] = canonicalValue;
+    }
+    return canonicalValue;
   }
 
   @Override
   public DoubleValue createDoubleValue(double value) {
     // Make sure to distinguish between +0.0 and -0.0.
-    return value == 0.0 && Double.doubleToLongBits(value) == POS_ZERO_DOUBLE_BITS
-        ? DOUBLE_VALUE_0
-        : value == 1.0 ? DOUBLE_VALUE_1 : new ParticularDoubleValue(value);
+    long bits = Double.doubleToLongBits(value);
+    if (bits == POS_ZERO_DOUBLE_BITS) {
+      return DOUBLE_VALUE_0;
+    }
+    if (value == 1.0) {
+      return DOUBLE_VALUE_1;
+    }
+    if (doubleValues == null) {
+      return new ParticularDoubleValue(value);
+    }
+
+    // Compare the bits, to distinguish between +0.0 and -0.0, and to match NaN.
+    int index = tableIndex(Long.hashCode(bits));
+    ParticularDoubleValue canonicalValue = doubleValues[index];
+    if (canonicalValue == null || Double.doubleToLongBits(canonicalValue.value()) != bits) {
+      canonicalValue = new ParticularDoubleValue(value);
+      doubleValues[index] = canonicalValue;
+    }
+    return canonicalValue;
   }
 
   @Override
@@ -270,4 +348,11 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
     return arrayReferenceValueFactory.createArrayReferenceValue(
         type, referencedClass, arrayLength, elementValues);
   }
+
+  // Small utility methods.
+
+  /** Returns the slot for a value with the given hash in a table of canonical values. */
+  static int tableIndex(int hash) {
+    return (hash ^ (hash >>> 16)) & (CANONICAL_VALUE_TABLE_SIZE - 1);
+  }
 }
@@ -1,7 +1,7 @@
 /*
  * ProGuardCORE -- library to process Java bytecode.
  *
- * Copyright (c) 2002-2020 Guardsquare NV
+ * Copyright (c) 2002-2024 Guardsquare NV
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,13 @@ public class TypedReferenceValueFactory extends BasicValueFactory {
   static final ReferenceValue REFERENCE_VALUE_JAVA_LANG_OBJECT_NOT_NULL =
       new TypedReferenceValue(ClassConstants.TYPE_JAVA_LANG_OBJECT, null, true, false);
 
+  // Recently created reference values, indexed by their hash, if canonicalization is enabled
+  // with ParticularValueFactory#ENABLE_VALUE_CANONICALIZATION.
+  private final TypedReferenceValue[] referenceValues =
+      ParticularValueFactory.ENABLE_VALUE_CANONICALIZATION
+          ? new TypedReferenceValue[ParticularValueFactory.CANONICAL_VALUE_TABLE_SIZE]
+          : null;
+
   // Implementations for BasicValueFactory.
 
   public ReferenceValue createReferenceValueNull() {
@@ -44,7 +51,7 @@ public class TypedReferenceValueFactory extends BasicValueFactory {
     return type == null
         ? REFERENCE_VALUE_NULL
         : !type.equals(ClassConstants.TYPE_JAVA_LANG_OBJECT) || !mayBeExtension
-            ? new TypedReferenceValue(type, referencedClass, mayBeExtension, mayBeNull)
+            ? createTypedReferenceValue(type, referencedClass, mayBeExtension, mayBeNull)
             : mayBeNull
                 ? REFERENCE_VALUE_JAVA_LANG_OBJECT_MAYBE_NULL
                 : REFERENCE_VALUE_JAVA_LANG_OBJECT_NOT_NULL;
@@ -62,4 +69,31 @@ public class TypedReferenceValueFactory extends BasicValueFactory {
       String type, Clazz referencedClass, IntegerValue arrayLength, Object elementValues) {
     return createReferenceValue(TypeConstants.ARRAY + type, referencedClass, false, false);
   }
+
+  // Small utility methods.
+
+  /**
+   * Returns a typed reference value with the given properties, reusing a recently created one if
+   * canonicalization is enabled.
+   */
+  private TypedReferenceValue createTypedReferenceValue(
+      String type, Clazz referencedClass, boolean mayBeExtension, boolean mayBeNull) {
+    if (referenceValues == null) {
+      return new TypedReferenceValue(type, referencedClass, mayBeExtension, mayBeNull);
+    }
+
+    int index =
+        ParticularValueFactory.tableIndex(
+            type.hashCode() ^ (mayBeExtension ? 0 : 1) ^ (mayBeNull ? 0 : 2));
+    TypedReferenceValue canonicalValue = referenceValues[index];
+    if (canonicalValue == null
+        || canonicalValue.referencedClass != referencedClass
+        || canonicalValue.mayBeExtension != mayBeExtension
+        || canonicalValue.mayBeNull != mayBeNull
+        || !canonicalValue.type.equals(type)) {
+      canonicalValue = new TypedReferenceValue(type, referencedClass, mayBeExtension, mayBeNull);
+      referenceValues[index] = canonicalValue;
+    }
+    return canonicalValue;
+  }
 }
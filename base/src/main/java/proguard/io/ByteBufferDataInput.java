@@ -0,0 +1,189 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This {@link DataInput} reads its data from a {@link ByteBuffer}, e.g. a heap buffer with a
+ * complete class file or a memory-mapped file. Unlike a {@link DataInputStream}, it doesn't go
+ * through a stream for every value and it copies byte arrays in bulk.
+ *
+ * <p>The input reads from position 0 up to the limit of a duplicate of the given buffer, in big
+ * endian order, so the position, limit, and byte order of the given buffer are not affected.
+ */
+public class ByteBufferDataInput implements DataInput {
+  private final ByteBuffer buffer;
+
+  /**
+   * Creates a new ByteBufferDataInput that reads the given buffer from position 0 up to its limit.
+   */
+  public ByteBufferDataInput(ByteBuffer buffer) {
+    this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    this.buffer.position(0);
+  }
+
+  /**
+   * Returns the buffer from which this input reads. The returned buffer shares its content with the
+   * given buffer, and its position is the current position of this input.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** Returns the current position of this input in the buffer. */
+  public int position() {
+    return buffer.position();
+  }
+
+  /** Returns the number of bytes that remain to be read. */
+  public int remaining() {
+    return buffer.remaining();
+  }
+
+  // Implementations for DataInput.
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    checkRemaining(len);
+    buffer.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    checkRemaining(1);
+    return buffer.get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    checkRemaining(2);
+    return buffer.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    checkRemaining(2);
+    return buffer.getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    checkRemaining(4);
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    checkRemaining(8);
+    return buffer.getLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    checkRemaining(4);
+    return buffer.getFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    checkRemaining(8);
+    return buffer.getDouble();
+  }
+
+  /**
+   * Reads a line like {@link DataInputStream#readLine()}: every byte is converted to a character
+   * and the line is terminated by a line feed, a carriage return, or a carriage return followed by
+   * a line feed, or by the end of the buffer.
+   *
+   * @return the line without its terminator, or null if the end of the buffer has been reached.
+   */
+  @Override
+  public String readLine() {
+    if (!buffer.hasRemaining()) {
+      return null;
+    }
+    StringBuilder line = new StringBuilder();
+    while (buffer.hasRemaining()) {
+      char c = (char) (buffer.get() & 0xff);
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+          buffer.get();
+        }
+        break;
+      }
+      line.append(c);
+    }
+    return line.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+
+  // Small utility methods.
+
+  /**
+   * Throws an {@link EOFException} if fewer than the given number of bytes remain, like a {@link
+   * DataInputStream} at the end of its stream, instead of a {@link BufferUnderflowException}.
+   */
+  private void checkRemaining(int length) throws EOFException {
+    if (buffer.remaining() < length) {
+      throw new EOFException(
+          "Unexpected end of buffer at position "
+              + buffer.position()
+              + " (expecting "
+              + length
+              + " more bytes)");
+    }
+  }
+}
@@ -18,6 +18,9 @@
 package proguard.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import proguard.analysis.Metrics;
 import proguard.classfile.*;
 import proguard.classfile.io.*;
 import proguard.classfile.util.*;
@@ -34,11 +37,25 @@ import proguard.classfile.visitor.*;
  * <p>In case of libraries, only public classes are considered, if the <code>
  * skipNonPublicLibraryClasses</code> flag is set.
  *
+ * <p>If {@link #ENABLE_BUFFERED_READING} is set, each class file is first read into a buffer in a
+ * single pass. Program classes then keep their UTF-8 constants as regions of this buffer until the
+ * strings are requested.
+ *
  * @author Eric Lafortune
  */
 public class ClassReader implements DataEntryReader {
   private static final String MODULE_INFO_CLASS = "module-info.class";
 
+  /**
+   * Specifies whether to read class files from buffers instead of from their streams. This saves
+   * copying and decoding the UTF-8 constants of program classes that are never requested, at the
+   * cost of keeping the buffers in memory while such constants refer to them.
+   */
+  public static boolean ENABLE_BUFFERED_READING =
+      System.getProperty("proguard.io.bufferedclassreading") != null;
+
+  private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
   private final boolean isLibrary;
   private final boolean skipNonPublicLibraryClasses;
   private final boolean skipNonPublicLibraryClassMembers;
@@ -94,34 +111,44 @@ public class ClassReader implements DataEntryReader {
       // Get the input stream.
       InputStream inputStream = dataEntry.getInputStream();
 
-      // Wrap it into a data input stream.
-      DataInputStream dataInputStream = new DataInputStream(inputStream);
+      // Wrap it into a data input stream, or read it into a buffer.
+      DataInput dataInput =
+          ENABLE_BUFFERED_READING
+              ? new ByteBufferDataInput(readBuffer(inputStream, dataEntry.getSize()))
+              : new DataInputStream(inputStream);
+
+      Metrics.Timer timer = Metrics.getTimer(Metrics.TimerType.CLASS_READING);
+      long startTime = timer.start();
 
-      // Create a Clazz representation.
+      // Create a Clazz representation, timing the parsing even if it fails.
       Clazz clazz;
-      if (isLibrary) {
-        clazz = new LibraryClass();
-        ClassVisitor libraryClassReader =
-            new LibraryClassReader(
-                dataInputStream,
-                skipNonPublicLibraryClasses,
-                skipNonPublicLibraryClassMembers,
-                kmInitializer != null
-                    ? (k, mv, d1, d2, xi, xs, pn) ->
-                        kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn)
-                    : null);
-
-        clazz.accept(libraryClassReader);
-      } else {
-        clazz = new ProgramClass();
-        ClassVisitor programClassReader =
-            new ProgramClassReader(dataInputStream, ignoreStackMapAttributes);
-
-        if (kmInitializer != null) {
-          programClassReader = new MultiClassVisitor(programClassReader, kmInitializer);
+      try {
+        if (isLibrary) {
+          clazz = new LibraryClass();
+          ClassVisitor libraryClassReader =
+              new LibraryClassReader(
+                  dataInput,
+                  skipNonPublicLibraryClasses,
+                  skipNonPublicLibraryClassMembers,
+                  kmInitializer != null
+                      ? (k, mv, d1, d2, xi, xs, pn) ->
+                          kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn)
+                      : null);
+
+          clazz.accept(libraryClassReader);
+        } else {
+          clazz = new ProgramClass();
+          ClassVisitor programClassReader =
+              new ProgramClassReader(dataInput, ignoreStackMapAttributes);
+
+          if (kmInitializer != null) {
+            programClassReader = new MultiClassVisitor(programClassReader, kmInitializer);
+          }
+
+          clazz.accept(programClassReader);
         }
-
-        clazz.accept(programClassReader);
+      } finally {
+        timer.recordSince(startTime);
       }
 
       // Apply the visitor, if we have a real class.
@@ -154,6 +181,44 @@ public class ClassReader implements DataEntryReader {
     }
   }
 
+  // Small utility methods.
+
+  /**
+   * Reads the given input stream into a heap buffer, starting with the given expected size, if it
+   * is known.
+   */
+  private static ByteBuffer readBuffer(InputStream inputStream, long expectedSize)
+      throws IOException {
+    int initialSize =
+        expectedSize > 0 && expectedSize < Integer.MAX_VALUE
+            ? (int) expectedSize
+            : DEFAULT_BUFFER_SIZE;
+    byte[] bytes = new byte[initialSize];
+
+    int length = 0;
+    while (true) {
+      int count = inputStream.read(bytes, length, bytes.length - length);
+      if (count < 0) {
+        break;
+      }
+
+      length += count;
+
+      // Only grow a full buffer if the stream has more data.
+      if (length == bytes.length) {
+        int next = inputStream.read();
+        if (next < 0) {
+          break;
+        }
+
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        bytes[length++] = (byte) next;
+      }
+    }
+
+    return ByteBuffer.wrap(bytes, 0, length);
+  }
+
   /**
    * This main method illustrates the use of this class.
    *
@@ -18,6 +18,7 @@
 package proguard.io;
 
 import java.io.*;
+import java.util.zip.ZipEntry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import proguard.util.ExtensionMatcher;
@@ -26,6 +27,10 @@ import proguard.util.ExtensionMatcher;
  * This {@link DataEntryReader} writes the ZIP entries and files that it reads to a given {@link
  * DataEntryWriter}.
  *
+ * <p>Optionally, it copies the raw data of zip entries that it reads from zip files, if the output
+ * streams accept them as {@link RawZipEntryOutput} instances, e.g. from a {@link ZipWriter}. The
+ * data are then transferred without inflating and deflating them again.
+ *
  * @author Eric Lafortune
  */
 public class DataEntryCopier implements DataEntryReader {
@@ -36,11 +41,25 @@ public class DataEntryCopier implements DataEntryReader {
   private static final Logger logger = LogManager.getLogger(DataEntryCopier.class);
 
   private final DataEntryWriter dataEntryWriter;
+  private final boolean useRawData;
   private final byte[] buffer = new byte[BUFFER_SIZE];
 
   /** Creates a new DataEntryCopier. */
   public DataEntryCopier(DataEntryWriter dataEntryWriter) {
+    this(dataEntryWriter, false);
+  }
+
+  /**
+   * Creates a new DataEntryCopier.
+   *
+   * @param dataEntryWriter the writer for the copied entries.
+   * @param useRawData specifies whether the raw data of zip entries should be copied, when
+   *     possible. Subclasses that modify the data in {@link #copyData(InputStream, OutputStream)}
+   *     should not enable this.
+   */
+  public DataEntryCopier(DataEntryWriter dataEntryWriter, boolean useRawData) {
     this.dataEntryWriter = dataEntryWriter;
+    this.useRawData = useRawData;
   }
 
   // Implementations for DataEntryReader.
@@ -55,17 +74,20 @@ public class DataEntryCopier implements DataEntryReader {
         OutputStream outputStream = dataEntryWriter.createOutputStream(dataEntry);
         if (outputStream != null) {
           try {
-            InputStream inputStream = dataEntry.getInputStream();
-
-            try {
-              // Copy the data from the input entry to the output entry.
-              copyData(inputStream, outputStream);
-
-              // Flush the output stream, just to be sure.
-              outputStream.flush();
-            } finally {
-              // Close the input stream.
-              dataEntry.closeInputStream();
+            // Can we copy the raw data of the input entry?
+            if (!copyRawData(dataEntry, outputStream)) {
+              InputStream inputStream = dataEntry.getInputStream();
+
+              try {
+                // Copy the data from the input entry to the output entry.
+                copyData(inputStream, outputStream);
+
+                // Flush the output stream, just to be sure.
+                outputStream.flush();
+              } finally {
+                // Close the input stream.
+                dataEntry.closeInputStream();
+              }
             }
           } finally {
             // Close the output stream.
@@ -97,6 +119,39 @@ public class DataEntryCopier implements DataEntryReader {
     }
   }
 
+  // Small utility methods.
+
+  /**
+   * Copies the raw data of the given input entry to the given output stream, if possible, returning
+   * whether it did.
+   */
+  private boolean copyRawData(DataEntry dataEntry, OutputStream outputStream) throws IOException {
+    if (!useRawData
+        || !(dataEntry instanceof ZipFileDataEntry)
+        || !(outputStream instanceof RawZipEntryOutput)) {
+      return false;
+    }
+
+    ZipFileDataEntry zipFileDataEntry = (ZipFileDataEntry) dataEntry;
+    InputStream rawInputStream = zipFileDataEntry.getRawInputStream();
+    if (rawInputStream == null) {
+      return false;
+    }
+
+    try {
+      ZipEntry zipEntry = zipFileDataEntry.getZipEntry();
+
+      return ((RawZipEntryOutput) outputStream)
+          .writeRawData(
+              zipEntry.getMethod() == ZipEntry.DEFLATED,
+              (int) zipEntry.getCrc(),
+              zipEntry.getSize(),
+              rawInputStream);
+    } finally {
+      rawInputStream.close();
+    }
+  }
+
   /** A main method for testing file/archive/directory copying. */
   public static void main(String[] args) {
     try {
@@ -207,7 +262,7 @@ public class DataEntryCopier implements DataEntryReader {
       }
 
       // Create the copying DataEntryReader.
-      DataEntryReader reader = new DataEntryCopier(writer);
+      DataEntryReader reader = new DataEntryCopier(writer, true);
 
       boolean inputIsApk = input.endsWith(".apk") || input.endsWith(".ap_");
       boolean inputIsJar = input.endsWith(".jar");
@@ -23,6 +23,9 @@ import java.io.*;
  * This DataEntrySource can read a given file or directory, recursively, passing its files as {@link
  * DataEntry} instances to {@link DataEntryReader} instances.
  *
+ * <p>If the given reader is {@link Flushable}, like a {@link ParallelDataEntryReader}, it is
+ * flushed after the last file.
+ *
  * @author Eric Lafortune
  */
 public class DirectorySource implements DataEntrySource {
@@ -42,6 +45,10 @@ public class DirectorySource implements DataEntrySource {
     }
 
     readFiles(directory, dataEntryReader);
+
+    if (dataEntryReader instanceof Flushable) {
+      ((Flushable) dataEntryReader).flush();
+    }
   }
 
   // Small utility methods.
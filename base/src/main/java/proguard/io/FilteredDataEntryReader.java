@@ -17,15 +17,17 @@
  */
 package proguard.io;
 
+import java.io.Flushable;
 import java.io.IOException;
 
 /**
  * This {@link DataEntryReader} delegates to one of two other {@link DataEntryReader} instances,
- * depending on whether the data entry passes through a given data entry filter or not.
+ * depending on whether the data entry passes through a given data entry filter or not. It passes on
+ * flushes to the readers that are {@link Flushable}.
  *
  * @author Eric Lafortune
  */
-public class FilteredDataEntryReader implements DataEntryReader {
+public class FilteredDataEntryReader implements DataEntryReader, Flushable {
   private final DataEntryFilter dataEntryFilter;
   private final DataEntryReader acceptedDataEntryReader;
   private final DataEntryReader rejectedDataEntryReader;
@@ -71,4 +73,18 @@ public class FilteredDataEntryReader implements DataEntryReader {
       dataEntryReader.read(dataEntry);
     }
   }
+
+  // Implementations for Flushable.
+
+  @Override
+  public void flush() throws IOException {
+    if (acceptedDataEntryReader instanceof Flushable) {
+      ((Flushable) acceptedDataEntryReader).flush();
+    }
+
+    if (rejectedDataEntryReader instanceof Flushable
+        && rejectedDataEntryReader != acceptedDataEntryReader) {
+      ((Flushable) rejectedDataEntryReader).flush();
+    }
+  }
 }
@@ -17,6 +17,7 @@
  */
 package proguard.io;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.nio.charset.*;
 import java.util.Enumeration;
@@ -26,6 +27,9 @@ import java.util.zip.*;
  * This {@link DataEntryReader} lets a given {@link DataEntryReader} read all data entries of the
  * read archive data entries.
  *
+ * <p>If the given reader is {@link Flushable}, like a {@link ParallelDataEntryReader}, it is
+ * flushed after the last entry of each archive, before the archive is closed.
+ *
  * @author Eric Lafortune
  */
 public class JarReader implements DataEntryReader {
@@ -63,6 +67,9 @@ public class JarReader implements DataEntryReader {
 
       ZipFile zipFile = new ZipFile(fileDataEntry.getFile(), StandardCharsets.UTF_8);
 
+      // Also provide the raw data of the entries, for copying them as is.
+      RawZipFile rawZipFile = new RawZipFile(fileDataEntry.getFile());
+
       try {
         Enumeration entries = zipFile.entries();
 
@@ -71,10 +78,14 @@ public class JarReader implements DataEntryReader {
           ZipEntry zipEntry = (ZipEntry) entries.nextElement();
 
           // Delegate the actual reading to the data entry reader.
-          dataEntryReader.read(new ZipFileDataEntry(dataEntry, zipEntry, zipFile));
+          dataEntryReader.read(new ZipFileDataEntry(dataEntry, zipEntry, zipFile, rawZipFile));
         }
+
+        // Make sure the entries are read before we close the zip file.
+        flush();
       } finally {
         zipFile.close();
+        rawZipFile.close();
       }
     } else {
       if (jmod) {
@@ -98,9 +109,20 @@ public class JarReader implements DataEntryReader {
           // Delegate the actual reading to the data entry reader.
           dataEntryReader.read(new ZipDataEntry(dataEntry, zipEntry, zipInputStream));
         }
+
+        flush();
       } finally {
         dataEntry.closeInputStream();
       }
     }
   }
+
+  // Small utility methods.
+
+  /** Flushes the data entry reader, if it is flushable. */
+  private void flush() throws IOException {
+    if (dataEntryReader instanceof Flushable) {
+      ((Flushable) dataEntryReader).flush();
+    }
+  }
 }
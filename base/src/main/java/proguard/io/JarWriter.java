@@ -20,6 +20,7 @@ package proguard.io;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.util.zip.*;
 import proguard.util.*;
 
 /**
@@ -263,9 +264,11 @@ public class JarWriter implements DataEntryWriter {
 
   /**
    * This FilterOutputStream automatically appends a file digest entry to a given manifest writer,
-   * when the stream is closed.
+   * when the stream is closed. If the underlying stream accepts raw zip data, it passes them on,
+   * inflating them only to compute the digests.
    */
-  protected static class MyMultiDigestOutputStream extends FilterOutputStream {
+  protected static class MyMultiDigestOutputStream extends FilterOutputStream
+      implements RawZipEntryOutput {
     private final String entryName;
     private final MessageDigest[] manifestDigests;
     private final PrintWriter manifestWriter;
@@ -312,6 +315,69 @@ public class JarWriter implements DataEntryWriter {
       appendDigests(entryName);
     }
 
+    // Implementations for RawZipEntryOutput.
+
+    @Override
+    public boolean writeRawData(
+        boolean compressed, int crc, long uncompressedSize, InputStream rawInputStream)
+        throws IOException {
+      if (!(out instanceof RawZipEntryOutput)) {
+        return false;
+      }
+
+      // Keep the raw data, so we can still digest them once they have
+      // been accepted.
+      ByteArrayOutputStream rawOutputStream = new ByteArrayOutputStream(16 * 1024);
+      copy(rawInputStream, rawOutputStream);
+      byte[] rawData = rawOutputStream.toByteArray();
+
+      if (!((RawZipEntryOutput) out)
+          .writeRawData(compressed, crc, uncompressedSize, new ByteArrayInputStream(rawData))) {
+        return false;
+      }
+
+      // Update the digests with the uncompressed data.
+      InputStream inputStream = new ByteArrayInputStream(rawData);
+      Inflater inflater = null;
+      if (compressed) {
+        inflater = new Inflater(true);
+        inputStream = new InflaterInputStream(inputStream, inflater);
+      }
+
+      try {
+        byte[] buffer = new byte[16 * 1024];
+        while (true) {
+          int count = inputStream.read(buffer);
+          if (count < 0) {
+            break;
+          }
+          for (int index = 0; index < manifestDigests.length; index++) {
+            manifestDigests[index].update(buffer, 0, count);
+          }
+        }
+      } finally {
+        if (inflater != null) {
+          // Make sure the memory is freed. [JDK-4797189]
+          inflater.end();
+        }
+      }
+
+      return true;
+    }
+
+    /** Copies all data from the given input stream to the given output stream. */
+    private static void copy(InputStream inputStream, OutputStream outputStream)
+        throws IOException {
+      byte[] buffer = new byte[16 * 1024];
+      while (true) {
+        int count = inputStream.read(buffer);
+        if (count < 0) {
+          break;
+        }
+        outputStream.write(buffer, 0, count);
+      }
+    }
+
     /** Appends the collected digests and signatures to the proper writer. */
     private void appendDigests(String entryName) {
       manifestWriter.println("Name: " + entryName);
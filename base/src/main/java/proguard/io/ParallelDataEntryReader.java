@@ -0,0 +1,285 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import proguard.classfile.Clazz;
+import proguard.classfile.visitor.ClassVisitor;
+
+/**
+ * This {@link DataEntryReader} reads data entries on a pool of worker threads, e.g. to inflate and
+ * parse the class files of a jar in parallel. Each worker thread has its own {@link
+ * DataEntryReader}, created by a {@link ReaderFactory}, which passes the classes that it reads to
+ * a collecting {@link ClassVisitor}. The collected classes are then passed to the given {@link
+ * ClassVisitor}, e.g. a {@link proguard.classfile.visitor.ClassPoolFiller}, on the calling thread
+ * and in the order in which the data entries were read, as in a sequential run.
+ *
+ * <p>At most <code>maxPendingEntries</code> entries are being read or waiting for their classes to
+ * be visited. When this limit is reached, reading a data entry first waits for the oldest entry,
+ * so the memory use stays bounded.
+ *
+ * <p>File entries and entries of zip files are read by the worker threads themselves. The entries
+ * of zip streams can only be read in order, so they are first copied into memory on the calling
+ * thread. A {@link JarReader} flushes a parallel reader that it is given directly before it closes
+ * its zip file, so the reader should be passed directly to the jar reader, with any filters in the
+ * readers of the worker threads, e.g.:
+ *
+ * <pre>
+ *     try (ParallelDataEntryReader parallelReader =
+ *         new ParallelDataEntryReader(
+ *             classVisitor -&gt;
+ *                 new NameFilteredDataEntryReader(
+ *                     "**.class",
+ *                     new ClassReader(false, false, false, false, null, classVisitor)),
+ *             new ClassPoolFiller(programClassPool),
+ *             threadCount,
+ *             1000)) {
+ *         new DirectorySource(directory).pumpDataEntries(
+ *             new FilteredDataEntryReader(
+ *                 new DataEntryNameFilter(new ExtensionMatcher(".jar")),
+ *                 new JarReader(parallelReader),
+ *                 parallelReader));
+ *     }
+ * </pre>
+ *
+ * <p>The classes of all data entries are only guaranteed to be visited after {@link #flush()} or
+ * {@link #close()}. The {@link JarReader} and the {@link DirectorySource} also flush a parallel
+ * reader that they are given directly, when they are done. The worker threads apply their readers
+ * concurrently, so warnings may be printed in a different order than in a sequential run. This
+ * reader itself is not thread-safe: its data entries must be read from a single thread.
+ */
+public class ParallelDataEntryReader implements DataEntryReader, Flushable, Closeable {
+  /** A factory for the {@link DataEntryReader}s of the worker threads. */
+  public interface ReaderFactory {
+    /**
+     * Creates a DataEntryReader that passes the classes that it reads to the given ClassVisitor.
+     */
+    DataEntryReader createDataEntryReader(ClassVisitor classVisitor);
+  }
+
+  private final ReaderFactory readerFactory;
+  private final ClassVisitor classVisitor;
+  private final int maxPendingEntries;
+
+  private final ExecutorService executor;
+  private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+  private final Deque<Future<List<Clazz>>> pendingEntries = new ArrayDeque<>();
+
+  private DataEntryReader sequentialReader;
+
+  /**
+   * Creates a new ParallelDataEntryReader.
+   *
+   * @param readerFactory the factory for the data entry readers of the worker threads.
+   * @param classVisitor the class visitor that visits the read classes on the calling thread.
+   * @param threadCount the number of worker threads. With a single thread, the data entries are
+   *     read directly on the calling thread instead.
+   * @param maxPendingEntries the maximum number of data entries that are being read or waiting for
+   *     their classes to be visited.
+   */
+  public ParallelDataEntryReader(
+      ReaderFactory readerFactory,
+      ClassVisitor classVisitor,
+      int threadCount,
+      int maxPendingEntries) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("The thread count must be positive, got " + threadCount);
+    }
+    if (maxPendingEntries < 1) {
+      throw new IllegalArgumentException(
+          "The maximum number of pending entries must be positive, got " + maxPendingEntries);
+    }
+
+    this.readerFactory = readerFactory;
+    this.classVisitor = classVisitor;
+    this.maxPendingEntries = maxPendingEntries;
+    this.executor =
+        threadCount > 1
+            ? Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory())
+            : null;
+  }
+
+  // Implementations for DataEntryReader.
+
+  @Override
+  public void read(DataEntry dataEntry) throws IOException {
+    if (executor == null) {
+      if (sequentialReader == null) {
+        sequentialReader = readerFactory.createDataEntryReader(classVisitor);
+      }
+      sequentialReader.read(dataEntry);
+      return;
+    }
+
+    // Make room for the data entry, if necessary.
+    while (pendingEntries.size() >= maxPendingEntries) {
+      completeOldestEntry();
+    }
+
+    DataEntry independentEntry = canReadConcurrently(dataEntry) ? dataEntry : copy(dataEntry);
+
+    pendingEntries.addLast(executor.submit(() -> workers.get().read(independentEntry)));
+
+    // Visit the classes of entries that are already complete.
+    while (!pendingEntries.isEmpty() && pendingEntries.peekFirst().isDone()) {
+      completeOldestEntry();
+    }
+  }
+
+  // Implementations for Flushable.
+
+  /** Waits until all pending data entries are read and visits their classes. */
+  @Override
+  public void flush() throws IOException {
+    while (!pendingEntries.isEmpty()) {
+      completeOldestEntry();
+    }
+  }
+
+  // Implementations for Closeable.
+
+  /** Flushes the pending data entries and stops the worker threads. */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  // Small utility methods.
+
+  /**
+   * Returns whether the given data entry can be read on another thread, independently of the
+   * subsequent entries.
+   */
+  private static boolean canReadConcurrently(DataEntry dataEntry) {
+    return dataEntry.isDirectory()
+        || dataEntry instanceof FileDataEntry
+        || dataEntry instanceof ZipFileDataEntry;
+  }
+
+  /** Reads the contents of the given data entry into an entry in memory. */
+  private static DataEntry copy(DataEntry dataEntry) throws IOException {
+    ByteArrayOutputStream outputStream =
+        new ByteArrayOutputStream((int) Math.max(dataEntry.getSize(), 1024L));
+
+    InputStream inputStream = dataEntry.getInputStream();
+    byte[] buffer = new byte[8 * 1024];
+    int count;
+    while ((count = inputStream.read(buffer)) >= 0) {
+      outputStream.write(buffer, 0, count);
+    }
+    dataEntry.closeInputStream();
+
+    return new MemoryDataEntry(dataEntry, outputStream.toByteArray());
+  }
+
+  /** Waits for the oldest pending data entry and visits its classes. */
+  private void completeOldestEntry() throws IOException {
+    Future<List<Clazz>> future = pendingEntries.removeFirst();
+    try {
+      for (Clazz clazz : future.get()) {
+        clazz.accept(classVisitor);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException)
+          new InterruptedIOException("Interrupted while reading data entries").initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /** The data entry reader of a worker thread, with the class visitor collecting its classes. */
+  private class Worker implements ClassVisitor {
+    private final DataEntryReader dataEntryReader = readerFactory.createDataEntryReader(this);
+
+    private List<Clazz> classes;
+
+    private List<Clazz> read(DataEntry dataEntry) throws IOException {
+      classes = new ArrayList<>(1);
+      dataEntryReader.read(dataEntry);
+      return classes;
+    }
+
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {
+      classes.add(clazz);
+    }
+  }
+
+  /** Creates daemon threads, so a reader that isn't closed doesn't keep the JVM alive. */
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private int threadCounter = 0;
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "Parallel Data Entry Reader " + ++threadCounter);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /** A data entry with its contents in memory. */
+  private static class MemoryDataEntry extends WrappedDataEntry {
+    private final byte[] bytes;
+    private InputStream inputStream;
+
+    private MemoryDataEntry(DataEntry dataEntry, byte[] bytes) {
+      super(dataEntry);
+      this.bytes = bytes;
+    }
+
+    @Override
+    public long getSize() {
+      return bytes.length;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      if (inputStream == null) {
+        inputStream = new ByteArrayInputStream(bytes);
+      }
+
+      return inputStream;
+    }
+
+    @Override
+    public void closeInputStream() {
+      inputStream = null;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This interface is implemented by output streams of zip entries that can also accept the raw data
+ * of an entry of another zip file, i.e. its compressed data if it is compressed. The data can then
+ * be copied without inflating and deflating them again.
+ */
+public interface RawZipEntryOutput {
+  /**
+   * Writes the given raw data of a zip entry, instead of its uncompressed data, if the output entry
+   * is compressed in the same way. This method must be called before any other data are written.
+   * If it succeeds, the stream should be closed without writing any other data.
+   *
+   * @param compressed specifies whether the raw data are compressed, with the deflate method.
+   * @param crc the CRC-32 of the uncompressed data.
+   * @param uncompressedSize the size of the uncompressed data.
+   * @param rawInputStream the input stream with the raw data. It is read completely if the data
+   *     are accepted, and not at all otherwise.
+   * @return whether the raw data have been accepted. If not, the caller should write the
+   *     uncompressed data instead.
+   */
+  boolean writeRawData(
+      boolean compressed, int crc, long uncompressedSize, InputStream rawInputStream)
+      throws IOException;
+}
@@ -0,0 +1,304 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class provides the raw data of the entries of a zip file, i.e. their compressed data if they
+ * are compressed. Together with the CRC and sizes of the entries, these data can be copied to
+ * another zip file without inflating and deflating them again.
+ *
+ * <p>The central directory of the zip file is only parsed when the raw data of an entry are first
+ * requested. The class is thread-safe.
+ *
+ * @see ZipFileDataEntry#getRawInputStream()
+ * @see RawZipEntryOutput
+ */
+public class RawZipFile implements Closeable {
+  private static final int MAGIC_LOCAL_FILE_HEADER = 0x04034b50;
+  private static final int MAGIC_CENTRAL_DIRECTORY_FILE_HEADER = 0x02014b50;
+  private static final int MAGIC_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+  private static final int MAGIC_ZIP64_EXTENDED_EXTRA_INFORMATION_FIELD = 0x0001;
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int CENTRAL_DIRECTORY_FILE_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int FLAG_ENCRYPTED = 0x0001;
+  private static final long ZIP64_FIELD_TOO_SMALL_32BIT = 0xffffffffL;
+
+  private final File file;
+
+  private RandomAccessFile randomAccessFile;
+  private Map<String, Long> localFileHeaderOffsets;
+
+  /**
+   * Creates a new RawZipFile.
+   *
+   * @param file the zip file.
+   */
+  public RawZipFile(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns an input stream with the raw data of the specified zip entry, or null if they are not
+   * available, e.g. if the entry is encrypted or if the zip file can't be parsed.
+   *
+   * @param name the name of the zip entry, as in the zip file.
+   * @param compressedSize the size of the raw data of the zip entry.
+   */
+  public synchronized InputStream getRawInputStream(String name, long compressedSize)
+      throws IOException {
+    long dataOffset = rawDataOffset(name, compressedSize);
+    if (dataOffset < 0L) {
+      return null;
+    }
+
+    byte[] data = new byte[(int) compressedSize];
+    randomAccessFile.seek(dataOffset);
+    randomAccessFile.readFully(data);
+
+    return new ByteArrayInputStream(data);
+  }
+
+  /**
+   * Returns a read-only, memory-mapped buffer with the raw data of the specified zip entry, or null
+   * if they are not available. For an uncompressed entry, these are its actual data. The buffer
+   * stays valid after this zip file has been closed.
+   *
+   * @param name the name of the zip entry, as in the zip file.
+   * @param compressedSize the size of the raw data of the zip entry.
+   */
+  public synchronized ByteBuffer mapRawData(String name, long compressedSize) throws IOException {
+    long dataOffset = rawDataOffset(name, compressedSize);
+
+    return dataOffset < 0L
+        ? null
+        : randomAccessFile
+            .getChannel()
+            .map(FileChannel.MapMode.READ_ONLY, dataOffset, compressedSize);
+  }
+
+  // Implementations for Closeable.
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (randomAccessFile != null) {
+      randomAccessFile.close();
+      randomAccessFile = null;
+    }
+    localFileHeaderOffsets = null;
+  }
+
+  // Small utility methods.
+
+  /**
+   * Returns the offset of the raw data of the specified zip entry in the zip file, or -1 if they
+   * are not available.
+   */
+  private long rawDataOffset(String name, long compressedSize) throws IOException {
+    if (localFileHeaderOffsets == null) {
+      randomAccessFile = new RandomAccessFile(file, "r");
+      localFileHeaderOffsets = readLocalFileHeaderOffsets();
+    }
+
+    Long offset = localFileHeaderOffsets.get(name);
+    if (offset == null || compressedSize < 0L || compressedSize > Integer.MAX_VALUE) {
+      return -1L;
+    }
+
+    // Read the local file header, to skip its variable-length fields.
+    byte[] header = new byte[LOCAL_FILE_HEADER_SIZE];
+    randomAccessFile.seek(offset);
+    randomAccessFile.readFully(header);
+    if (readInt(header, 0) != MAGIC_LOCAL_FILE_HEADER) {
+      return -1L;
+    }
+
+    int nameLength = readShort(header, 26);
+    int extraFieldLength = readShort(header, 28);
+
+    return offset + LOCAL_FILE_HEADER_SIZE + nameLength + extraFieldLength;
+  }
+
+  /**
+   * Returns the offsets of the local file headers of the unencrypted entries, parsed from the
+   * central directory, or an empty map if the zip file can't be parsed.
+   */
+  private Map<String, Long> readLocalFileHeaderOffsets() throws IOException {
+    Map<String, Long> offsets = new HashMap<>();
+
+    // Find the end of central directory record, which is followed by a
+    // comment of at most 64K.
+    long fileLength = randomAccessFile.length();
+    int tailLength = (int) Math.min(fileLength, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    byte[] tail = new byte[tailLength];
+    randomAccessFile.seek(fileLength - tailLength);
+    randomAccessFile.readFully(tail);
+
+    int endIndex = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE;
+    while (endIndex >= 0 && readInt(tail, endIndex) != MAGIC_END_OF_CENTRAL_DIRECTORY) {
+      endIndex--;
+    }
+    if (endIndex < 0) {
+      return offsets;
+    }
+
+    long endOffset = fileLength - tailLength + endIndex;
+    long entryCount = readShort(tail, endIndex + 10);
+    long directorySize = readUnsignedInt(tail, endIndex + 12);
+    long directoryOffset = readUnsignedInt(tail, endIndex + 16);
+
+    // Use the zip64 end of central directory record instead, if any.
+    if (endIndex >= ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE
+        && readInt(tail, endIndex - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE)
+            == MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+      long zip64EndOffset =
+          readLong(tail, endIndex - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE + 8);
+      if (zip64EndOffset < 0L || zip64EndOffset + ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE > endOffset) {
+        return offsets;
+      }
+
+      byte[] zip64End = new byte[ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE];
+      randomAccessFile.seek(zip64EndOffset);
+      randomAccessFile.readFully(zip64End);
+      if (readInt(zip64End, 0) != MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY) {
+        return offsets;
+      }
+
+      endOffset = zip64EndOffset;
+      entryCount = readLong(zip64End, 32);
+      directorySize = readLong(zip64End, 40);
+      directoryOffset = readLong(zip64End, 48);
+    }
+
+    // Any data preceding the zip data, like the header of a jmod file,
+    // shift all offsets.
+    long directoryStart = endOffset - directorySize;
+    long prefixSize = directoryStart - directoryOffset;
+    if (directorySize < 0L || directorySize > Integer.MAX_VALUE || prefixSize < 0L) {
+      return offsets;
+    }
+
+    byte[] directory = new byte[(int) directorySize];
+    randomAccessFile.seek(directoryStart);
+    randomAccessFile.readFully(directory);
+
+    int index = 0;
+    for (long counter = 0L; counter < entryCount; counter++) {
+      if (index + CENTRAL_DIRECTORY_FILE_HEADER_SIZE > directory.length
+          || readInt(directory, index) != MAGIC_CENTRAL_DIRECTORY_FILE_HEADER) {
+        return new HashMap<>();
+      }
+
+      int flags = readShort(directory, index + 8);
+      long compressedSize = readUnsignedInt(directory, index + 20);
+      long uncompressedSize = readUnsignedInt(directory, index + 24);
+      int nameLength = readShort(directory, index + 28);
+      int extraFieldLength = readShort(directory, index + 30);
+      int commentLength = readShort(directory, index + 32);
+      long offset = readUnsignedInt(directory, index + 42);
+
+      int nameIndex = index + CENTRAL_DIRECTORY_FILE_HEADER_SIZE;
+      int extraFieldIndex = nameIndex + nameLength;
+      int nextIndex = extraFieldIndex + extraFieldLength + commentLength;
+      if (nextIndex > directory.length) {
+        return new HashMap<>();
+      }
+
+      if (offset == ZIP64_FIELD_TOO_SMALL_32BIT) {
+        offset =
+            zip64Offset(
+                directory,
+                extraFieldIndex,
+                extraFieldIndex + extraFieldLength,
+                uncompressedSize == ZIP64_FIELD_TOO_SMALL_32BIT,
+                compressedSize == ZIP64_FIELD_TOO_SMALL_32BIT);
+      }
+
+      if ((flags & FLAG_ENCRYPTED) == 0 && offset >= 0L) {
+        String name = new String(directory, nameIndex, nameLength, StandardCharsets.UTF_8);
+        offsets.put(name, prefixSize + offset);
+      }
+
+      index = nextIndex;
+    }
+
+    return offsets;
+  }
+
+  /**
+   * Returns the local file header offset from the zip64 extended information field in the given
+   * extra field, or -1 if it isn't present.
+   */
+  private static long zip64Offset(
+      byte[] directory,
+      int extraFieldIndex,
+      int extraFieldEnd,
+      boolean hasUncompressedSize,
+      boolean hasCompressedSize) {
+    int index = extraFieldIndex;
+    while (index + 4 <= extraFieldEnd) {
+      int id = readShort(directory, index);
+      int size = readShort(directory, index + 2);
+      if (id == MAGIC_ZIP64_EXTENDED_EXTRA_INFORMATION_FIELD) {
+        // The field contains the values that don't fit, in a fixed order.
+        int offsetIndex = index + 4 + (hasUncompressedSize ? 8 : 0) + (hasCompressedSize ? 8 : 0);
+        return offsetIndex + 8 <= Math.min(index + 4 + size, extraFieldEnd)
+            ? readLong(directory, offsetIndex)
+            : -1L;
+      }
+      index += 4 + size;
+    }
+
+    return -1L;
+  }
+
+  /** Returns the little-endian short at the given index, as an unsigned value. */
+  private static int readShort(byte[] bytes, int index) {
+    return (bytes[index] & 0xff) | (bytes[index + 1] & 0xff) << 8;
+  }
+
+  /** Returns the little-endian int at the given index. */
+  private static int readInt(byte[] bytes, int index) {
+    return readShort(bytes, index) | readShort(bytes, index + 2) << 16;
+  }
+
+  /** Returns the little-endian int at the given index, as an unsigned value. */
+  private static long readUnsignedInt(byte[] bytes, int index) {
+    return readInt(bytes, index) & 0xffffffffL;
+  }
+
+  /** Returns the little-endian long at the given index. */
+  private static long readLong(byte[] bytes, int index) {
+    return readUnsignedInt(bytes, index) | (long) readInt(bytes, index + 4) << 32;
+  }
+}
@@ -18,25 +18,74 @@
 package proguard.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.zip.*;
 import proguard.classfile.TypeConstants;
 
 /**
- * This {@link DataEntry} represents a ZIP entry.
+ * This {@link DataEntry} represents a ZIP entry. If it has a {@link RawZipFile}, it can also
+ * provide the raw data of the entry, so they can be copied without inflating and deflating them.
  *
  * @author Eric Lafortune
  */
 public class ZipFileDataEntry implements DataEntry {
   private final DataEntry parent;
   private final ZipEntry zipEntry;
+  private final RawZipFile rawZipFile;
   private ZipFile zipFile;
   private InputStream zipInputStream;
   private InputStream bufferedInputStream;
 
   public ZipFileDataEntry(DataEntry parent, ZipEntry zipEntry, ZipFile zipFile) {
+    this(parent, zipEntry, zipFile, null);
+  }
+
+  /**
+   * Creates a new ZipFileDataEntry.
+   *
+   * @param parent the parent data entry, i.e. the zip file.
+   * @param zipEntry the zip entry.
+   * @param zipFile the zip file that contains the entry.
+   * @param rawZipFile the optional raw view of the same zip file, to provide the raw data of the
+   *     entry.
+   */
+  public ZipFileDataEntry(
+      DataEntry parent, ZipEntry zipEntry, ZipFile zipFile, RawZipFile rawZipFile) {
     this.parent = parent;
     this.zipEntry = zipEntry;
     this.zipFile = zipFile;
+    this.rawZipFile = rawZipFile;
+  }
+
+  /** Returns the zip entry, with its compression method, CRC, and sizes. */
+  public ZipEntry getZipEntry() {
+    return zipEntry;
+  }
+
+  /**
+   * Returns an input stream with the raw data of the zip entry, i.e. its deflated data if it is
+   * compressed, or null if they are not available. The CRC and sizes of the data are those of
+   * {@link #getZipEntry()}. It is the caller's responsibility to close the stream.
+   */
+  public InputStream getRawInputStream() throws IOException {
+    int method = zipEntry.getMethod();
+
+    return rawZipFile == null
+            || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+            || zipEntry.getCrc() < 0L
+            || zipEntry.getSize() < 0L
+        ? null
+        : rawZipFile.getRawInputStream(zipEntry.getName(), zipEntry.getCompressedSize());
+  }
+
+  /**
+   * Returns a read-only, memory-mapped buffer with the raw data of the zip entry, or null if they
+   * are not available. If the entry is stored uncompressed, these are its actual data.
+   */
+  public ByteBuffer mapRawData() throws IOException {
+    return rawZipFile == null
+        ? null
+        : rawZipFile.mapRawData(zipEntry.getName(), zipEntry.getCompressedSize());
   }
 
   // Implementations for DataEntry.
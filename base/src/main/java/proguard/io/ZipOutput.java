@@ -19,6 +19,7 @@ package proguard.io;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 import proguard.util.*;
 
@@ -32,7 +33,14 @@ import proguard.util.*;
  * written when their output streams are closed.
  *
  * <p>The code automatically computes the CRC and lengths of the data, for compressed and
- * uncompressed data.
+ * uncompressed data. Alternatively, the data of an entry can be copied as is, e.g. compressed data
+ * from another zip file, with a given CRC and uncompressed length. The output streams of the
+ * entries also accept such raw data, as {@link RawZipEntryOutput} instances.
+ *
+ * <p>If the zip output has an executor, the compressed entries are deflated on its threads. The
+ * data are still written in the order in which the output streams are closed, so the zip file is
+ * the same as without an executor. At most {@link #MAX_PENDING_BYTES} uncompressed bytes are kept
+ * while waiting for their entries to be deflated.
  *
  * @author Eric Lafortune
  */
@@ -55,6 +63,12 @@ public class ZipOutput {
   private static final int ZIP64_EXTENDED_LARGE_EXTRA_INFORMATION_FIELD_SIZE = 24;
   private static final long ZIP64_FIELD_TOO_SMALL_32BIT = 0xFFFFFFFF;
 
+  /** The compression level of compressed entries, unless specified otherwise. */
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+
+  /** The maximum number of bytes of entries that are waiting to be deflated by an executor. */
+  public static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+
   private static final boolean DEBUG = false;
 
   protected LargeDataOutputStream outputStream;
@@ -62,10 +76,16 @@ public class ZipOutput {
 
   private final String comment;
   private final boolean useZip64;
+  private final ExecutorService executor;
 
   private List<ZipEntry> zipEntries = new ArrayList<>();
   private Set<String> zipEntryNames = new HashSet<>();
 
+  // The entries whose data are being deflated, in the order in which they
+  // have to be written.
+  private final Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+  private long pendingBytes;
+
   // Regular constructors.
 
   /**
@@ -122,6 +142,7 @@ public class ZipOutput {
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.executor = null;
   }
 
   // These constructors write out a header immediately.
@@ -156,10 +177,34 @@ public class ZipOutput {
       boolean useZip64,
       String comment)
       throws IOException {
+    this(outputStream, header, uncompressedAlignment, useZip64, comment, null);
+  }
+
+  /**
+   * Creates a new ZipOutput that aligns uncompressed entries, contains a comment, and optionally
+   * deflates its compressed entries on the threads of the given executor.
+   *
+   * @param outputStream the output stream to which the zip data will be written.
+   * @param header an optional header for the zip file.
+   * @param uncompressedAlignment the requested alignment of uncompressed data.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param comment optional comment for the entire zip file.
+   * @param executor an optional executor for deflating the compressed entries. The zip output
+   *     doesn't shut it down.
+   */
+  public ZipOutput(
+      OutputStream outputStream,
+      byte[] header,
+      int uncompressedAlignment,
+      boolean useZip64,
+      String comment,
+      ExecutorService executor)
+      throws IOException {
     this.outputStream = new LargeDataOutputStream(outputStream);
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.executor = executor;
     if (header != null) {
       outputStream.write(header);
     }
@@ -217,18 +262,80 @@ public class ZipOutput {
       byte[] extraField,
       String comment)
       throws IOException {
-    // Check if the name hasn't been used yet.
-    if (!zipEntryNames.add(name)) {
-      throw new IOException("Duplicate jar entry [" + name + "]");
-    }
+    return createOutputStream(
+        name,
+        compress,
+        DEFAULT_COMPRESSION_LEVEL,
+        uncompressedAlignment,
+        modificationTime,
+        extraField,
+        comment);
+  }
 
+  /**
+   * Creates a new zip entry, returning an output stream to write its data. It is the caller's
+   * responsibility to close the output stream.
+   *
+   * @param name the name of the zip entry.
+   * @param compress specifies whether the entry should be compressed.
+   * @param compressionLevel the compression level of a compressed entry, between 0 and 9.
+   * @param uncompressedAlignment the requested alignment of uncompressed data.
+   * @param modificationTime the modification date and time of the zip entry, in DOS format.
+   * @param extraField optional extra field data. These should contain chunks, each with a short ID,
+   *     a short length (little endian), and their corresponding data. The IDs 0-31 are reserved for
+   *     Pkware. Java's jar tool just specifies an ID 0xcafe on its first entry.
+   * @param comment an optional comment.
+   * @return an output stream for writing the data of the zip entry.
+   */
+  public OutputStream createOutputStream(
+      String name,
+      boolean compress,
+      int compressionLevel,
+      int uncompressedAlignment,
+      int modificationTime,
+      byte[] extraField,
+      String comment)
+      throws IOException {
     ZipEntry entry =
-        new ZipEntry(name, compress, uncompressedAlignment, modificationTime, extraField, comment);
+        addEntry(name, compress, uncompressedAlignment, modificationTime, extraField, comment);
 
-    // Add the entry to the list that will be put in the central directory.
-    zipEntries.add(entry);
+    return compress
+        ? executor != null
+            ? entry.new ParallelCompressedZipEntryOutputStream(compressionLevel)
+            : entry.new CompressedZipEntryOutputStream(compressionLevel)
+        : entry.new UncompressedZipEntryOutputStream();
+  }
 
-    return entry.createOutputStream();
+  /**
+   * Creates a new zip entry, returning an output stream to write its data as is, without
+   * compressing it or computing its CRC. This way, the compressed data of an entry of another zip
+   * file can be copied without inflating and deflating them. It is the caller's responsibility to
+   * close the output stream.
+   *
+   * @param name the name of the zip entry.
+   * @param compressed specifies whether the data are compressed, with the deflate method.
+   * @param crc the CRC-32 of the uncompressed data.
+   * @param uncompressedSize the size of the uncompressed data.
+   * @param uncompressedAlignment the requested alignment of uncompressed data.
+   * @param modificationTime the modification date and time of the zip entry, in DOS format.
+   * @param extraField optional extra field data.
+   * @param comment an optional comment.
+   * @return an output stream for writing the data of the zip entry.
+   */
+  public OutputStream createRawOutputStream(
+      String name,
+      boolean compressed,
+      int crc,
+      long uncompressedSize,
+      int uncompressedAlignment,
+      int modificationTime,
+      byte[] extraField,
+      String comment)
+      throws IOException {
+    ZipEntry entry =
+        addEntry(name, compressed, uncompressedAlignment, modificationTime, extraField, comment);
+
+    return entry.new RawZipEntryOutputStream(crc, uncompressedSize);
   }
 
   /**
@@ -236,6 +343,9 @@ public class ZipOutput {
    * stream.
    */
   public void close() throws IOException {
+    // Write the data of all entries that are still being deflated.
+    writePendingEntries(-1L);
+
     long centralDirectoryOffset = writeStartOfCentralDirectory();
 
     close(centralDirectoryOffset);
@@ -272,6 +382,103 @@ public class ZipOutput {
     return outputStream.getLongSize();
   }
 
+  /**
+   * Adds a new zip entry to the list that will be put in the central directory, checking that its
+   * name hasn't been used yet.
+   */
+  private ZipEntry addEntry(
+      String name,
+      boolean compressed,
+      int uncompressedAlignment,
+      int modificationTime,
+      byte[] extraField,
+      String comment)
+      throws IOException {
+    // Check if the name hasn't been used yet.
+    if (!zipEntryNames.add(name)) {
+      throw new IOException("Duplicate jar entry [" + name + "]");
+    }
+
+    ZipEntry entry =
+        new ZipEntry(
+            name, compressed, uncompressedAlignment, modificationTime, extraField, comment);
+
+    // Add the entry to the list that will be put in the central directory.
+    zipEntries.add(entry);
+
+    return entry;
+  }
+
+  /**
+   * Writes the local file header and the given data of the given entry, after the data of any
+   * entries that are still being deflated.
+   *
+   * @param entry the zip entry.
+   * @param data the future data of the zip entry.
+   * @param size the number of bytes that are kept while waiting for the data.
+   */
+  private synchronized void writeEntry(ZipEntry entry, Future<byte[]> data, long size)
+      throws IOException {
+    if (pendingEntries.isEmpty() && data.isDone()) {
+      entry.writeData(getData(data));
+      return;
+    }
+
+    pendingEntries.addLast(new PendingEntry(entry, data, size));
+    pendingBytes += size;
+
+    writePendingEntries(MAX_PENDING_BYTES);
+  }
+
+  /**
+   * Writes the data of the oldest pending entries that are ready, and waits for the oldest pending
+   * entries while they keep more than the given number of bytes.
+   */
+  private synchronized void writePendingEntries(long maxPendingBytes) throws IOException {
+    while (!pendingEntries.isEmpty()
+        && (pendingEntries.peekFirst().data.isDone() || pendingBytes > maxPendingBytes)) {
+      PendingEntry pendingEntry = pendingEntries.removeFirst();
+      pendingBytes -= pendingEntry.size;
+      pendingEntry.entry.writeData(getData(pendingEntry.data));
+    }
+  }
+
+  /** Returns the data of the given future, waiting for them if necessary. */
+  private static byte[] getData(Future<byte[]> data) throws IOException {
+    try {
+      return data.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException)
+          new InterruptedIOException("Interrupted while compressing zip entry").initCause(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException
+          ? (IOException) e.getCause()
+          : new IOException("Can't compress zip entry (" + e.getCause() + ")", e.getCause());
+    }
+  }
+
+  /** Returns the given data, deflated without a zlib header, at the given compression level. */
+  private static byte[] deflate(byte[] data, int length, int compressionLevel) {
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(length / 2, 64));
+      byte[] buffer = new byte[16 * 1024];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        outputStream.write(buffer, 0, count);
+      }
+
+      return outputStream.toByteArray();
+    } finally {
+      // Make sure the memory is freed. [JDK-4797189]
+      deflater.end();
+    }
+  }
+
   /**
    * Starts the central directory.
    *
@@ -400,6 +607,7 @@ public class ZipOutput {
     private String name;
     private byte[] extraField;
     private String comment;
+    private byte[] rawData;
 
     /**
      * Creates a new zip entry, returning output stream to write its data. It is the caller's
@@ -430,10 +638,80 @@ public class ZipOutput {
       this.comment = comment;
     }
 
-    public OutputStream createOutputStream() throws IOException {
-      return compressed
-          ? new CompressedZipEntryOutputStream()
-          : new UncompressedZipEntryOutputStream();
+    /**
+     * Accepts the given raw data, if they are compressed in the same way as this entry. The output
+     * stream then writes them instead of the data written to it.
+     *
+     * @param empty specifies whether no data have been written to the output stream yet.
+     */
+    private boolean acceptRawData(
+        boolean compressed,
+        int crc,
+        long uncompressedSize,
+        InputStream rawInputStream,
+        boolean empty)
+        throws IOException {
+      if (!empty || rawData != null) {
+        throw new IllegalStateException(
+            "Data have already been written to zip entry [" + name + "]");
+      }
+
+      if (compressed != this.compressed) {
+        return false;
+      }
+
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(16 * 1024);
+      byte[] buffer = new byte[16 * 1024];
+      while (true) {
+        int count = rawInputStream.read(buffer);
+        if (count < 0) {
+          break;
+        }
+        outputStream.write(buffer, 0, count);
+      }
+
+      byte[] bytes = outputStream.toByteArray();
+      checkUncompressedSize(bytes.length, uncompressedSize);
+
+      this.crc = crc;
+      this.uncompressedSize = uncompressedSize;
+      this.rawData = bytes;
+
+      return true;
+    }
+
+    /** Writes the raw data that this entry has accepted, if any, returning whether it did. */
+    private boolean writeAcceptedRawData() throws IOException {
+      if (rawData == null) {
+        return false;
+      }
+
+      writeEntry(this, CompletableFuture.completedFuture(rawData), rawData.length);
+
+      return true;
+    }
+
+    /** Checks that the given size of raw data is the given uncompressed size, if applicable. */
+    private void checkUncompressedSize(long size, long uncompressedSize) throws IOException {
+      if (!compressed && size != uncompressedSize) {
+        throw new IOException(
+            "Unexpected size of uncompressed zip entry ["
+                + name
+                + "] ("
+                + size
+                + " bytes instead of "
+                + uncompressedSize
+                + ")");
+      }
+    }
+
+    /** Writes the local file header and the given data to the main zip output stream. */
+    private void writeData(byte[] data) throws IOException {
+      offset = outputStream.getLongSize();
+      compressedSize = data.length;
+
+      writeLocalFileHeader();
+      outputStream.write(data);
     }
 
     /** Writes the local file header, which precedes the data, to the main zip output stream. */
@@ -586,7 +864,8 @@ public class ZipOutput {
      * This OutputStream writes its uncompressed zip entry out to its zip output stream when it is
      * closed.
      */
-    private class UncompressedZipEntryOutputStream extends ByteArrayOutputStream {
+    private class UncompressedZipEntryOutputStream extends ByteArrayOutputStream
+        implements RawZipEntryOutput {
       private CRC32 crc32 = new CRC32();
 
       private UncompressedZipEntryOutputStream() {
@@ -619,15 +898,25 @@ public class ZipOutput {
       public void close() throws IOException {
         super.close();
 
+        if (writeAcceptedRawData()) {
+          return;
+        }
+
         byte[] bytes = super.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
-        compressedSize = bytes.length;
         uncompressedSize = bytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(bytes);
+        writeEntry(ZipEntry.this, CompletableFuture.completedFuture(bytes), bytes.length);
+      }
+
+      // Implementations for RawZipEntryOutput.
+
+      @Override
+      public synchronized boolean writeRawData(
+          boolean compressed, int crc, long uncompressedSize, InputStream rawInputStream)
+          throws IOException {
+        return acceptRawData(compressed, crc, uncompressedSize, rawInputStream, count == 0);
       }
     }
 
@@ -635,14 +924,12 @@ public class ZipOutput {
      * This OutputStream writes its compressed zip entry out to its zip output stream when it is
      * closed.
      */
-    private class CompressedZipEntryOutputStream extends DeflaterOutputStream {
+    private class CompressedZipEntryOutputStream extends DeflaterOutputStream
+        implements RawZipEntryOutput {
       private CRC32 crc32 = new CRC32();
 
-      private CompressedZipEntryOutputStream() {
-        super(
-            new ByteArrayOutputStream(16 * 1024),
-            new Deflater(Deflater.BEST_COMPRESSION, true),
-            1024);
+      private CompressedZipEntryOutputStream(int compressionLevel) {
+        super(new ByteArrayOutputStream(16 * 1024), new Deflater(compressionLevel, true), 1024);
       }
 
       // Overridden methods for OutputStream.
@@ -675,18 +962,128 @@ public class ZipOutput {
         super.def.end();
         super.close();
 
+        if (writeAcceptedRawData()) {
+          return;
+        }
+
         ByteArrayOutputStream byteArrayOutputStream = (ByteArrayOutputStream) super.out;
 
         byte[] compressedBytes = byteArrayOutputStream.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
-        compressedSize = compressedBytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(compressedBytes);
+        writeEntry(
+            ZipEntry.this,
+            CompletableFuture.completedFuture(compressedBytes),
+            compressedBytes.length);
+      }
+
+      // Implementations for RawZipEntryOutput.
+
+      @Override
+      public boolean writeRawData(
+          boolean compressed, int crc, long uncompressedSize, InputStream rawInputStream)
+          throws IOException {
+        return acceptRawData(
+            compressed, crc, uncompressedSize, rawInputStream, ZipEntry.this.uncompressedSize == 0);
       }
     }
+
+    /**
+     * This OutputStream collects the uncompressed data of its zip entry and deflates them on a
+     * thread of the executor when it is closed. The zip entry is written out to the zip output
+     * stream once it is deflated and all preceding entries have been written.
+     */
+    private class ParallelCompressedZipEntryOutputStream extends ByteArrayOutputStream
+        implements RawZipEntryOutput {
+      private final int compressionLevel;
+      private final CRC32 crc32 = new CRC32();
+      private boolean closed;
+
+      private ParallelCompressedZipEntryOutputStream(int compressionLevel) {
+        super(16 * 1024);
+        this.compressionLevel = compressionLevel;
+      }
+
+      // Overridden methods for OutputStream.
+
+      @Override
+      public synchronized void write(int b) {
+        super.write(b);
+
+        crc32.update(b);
+      }
+
+      @Override
+      public synchronized void write(byte[] b, int off, int len) {
+        super.write(b, off, len);
+
+        crc32.update(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+
+        if (writeAcceptedRawData()) {
+          return;
+        }
+
+        crc = (int) crc32.getValue();
+        uncompressedSize = count;
+
+        // The deflater reads the internal buffer, which isn't changed anymore.
+        byte[] bytes = buf;
+        int length = count;
+        writeEntry(
+            ZipEntry.this, executor.submit(() -> deflate(bytes, length, compressionLevel)), length);
+      }
+
+      // Implementations for RawZipEntryOutput.
+
+      @Override
+      public synchronized boolean writeRawData(
+          boolean compressed, int crc, long uncompressedSize, InputStream rawInputStream)
+          throws IOException {
+        return acceptRawData(compressed, crc, uncompressedSize, rawInputStream, count == 0);
+      }
+    }
+
+    /**
+     * This OutputStream writes its data as is to its zip entry, with the given CRC and uncompressed
+     * size, when it is closed.
+     */
+    private class RawZipEntryOutputStream extends ByteArrayOutputStream {
+      private RawZipEntryOutputStream(int crc, long uncompressedSize) {
+        super(16 * 1024);
+        ZipEntry.this.crc = crc;
+        ZipEntry.this.uncompressedSize = uncompressedSize;
+      }
+
+      @Override
+      public void close() throws IOException {
+        byte[] bytes = super.toByteArray();
+        checkUncompressedSize(bytes.length, uncompressedSize);
+
+        writeEntry(ZipEntry.this, CompletableFuture.completedFuture(bytes), bytes.length);
+      }
+    }
+  }
+
+  /** A zip entry whose data are still being deflated. */
+  private static class PendingEntry {
+    private final ZipEntry entry;
+    private final Future<byte[]> data;
+    private final long size;
+
+    private PendingEntry(ZipEntry entry, Future<byte[]> data, long size) {
+      this.entry = entry;
+      this.data = data;
+      this.size = size;
+    }
   }
 
   /**
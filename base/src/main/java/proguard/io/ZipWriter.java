@@ -18,12 +18,18 @@
 package proguard.io;
 
 import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import proguard.classfile.TypeConstants;
 import proguard.util.StringMatcher;
 
 /**
  * This {@link DataEntryWriter} sends data entries to the zip files specified by their parents.
  *
+ * <p>The compressed entries can get different compression levels, depending on their names, and
+ * they can be deflated in parallel, on the threads of an executor, without changing the contents
+ * of the zip files.
+ *
  * @author Eric Lafortune
  */
 public class ZipWriter implements DataEntryWriter {
@@ -34,6 +40,8 @@ public class ZipWriter implements DataEntryWriter {
   private final int extraUncompressedAlignment;
   private final int modificationTime;
   private final byte[] header;
+  private final Map<StringMatcher, Integer> compressionLevels;
+  private final ExecutorService executor;
   private final DataEntryWriter dataEntryWriter;
 
   private DataEntry currentParentEntry;
@@ -97,14 +105,15 @@ public class ZipWriter implements DataEntryWriter {
       int extraUncompressedAlignment,
       int modificationTime,
       DataEntryWriter dataEntryWriter) {
-    this.uncompressedFilter = uncompressedFilter;
-    this.uncompressedAlignment = uncompressedAlignment;
-    this.useZip64 = useZip64;
-    this.extraUncompressedAlignmentFilter = extraUncompressedAlignmentFilter;
-    this.extraUncompressedAlignment = extraUncompressedAlignment;
-    this.modificationTime = modificationTime;
-    this.header = null;
-    this.dataEntryWriter = dataEntryWriter;
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        useZip64,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        null,
+        dataEntryWriter);
   }
 
   /**
@@ -156,14 +165,15 @@ public class ZipWriter implements DataEntryWriter {
       int modificationTime,
       byte[] header,
       DataEntryWriter dataEntryWriter) {
-    this.uncompressedFilter = uncompressedFilter;
-    this.uncompressedAlignment = uncompressedAlignment;
-    this.useZip64 = false;
-    this.extraUncompressedAlignmentFilter = extraUncompressedAlignmentFilter;
-    this.extraUncompressedAlignment = extraUncompressedAlignment;
-    this.modificationTime = modificationTime;
-    this.header = header;
-    this.dataEntryWriter = dataEntryWriter;
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        false,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        header,
+        dataEntryWriter);
   }
 
   /**
@@ -189,6 +199,50 @@ public class ZipWriter implements DataEntryWriter {
       int modificationTime,
       byte[] header,
       DataEntryWriter dataEntryWriter) {
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        useZip64,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        header,
+        null,
+        null,
+        dataEntryWriter);
+  }
+
+  /**
+   * Creates a new ZipWriter.
+   *
+   * @param uncompressedFilter an optional filter for files that should not be compressed.
+   * @param uncompressedAlignment the desired alignment for the data of uncompressed entries.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param extraUncompressedAlignmentFilter an optional filter for files that should not be
+   *     compressed and use a different alignment.
+   * @param extraUncompressedAlignment the desired alignment for the data of entries matching
+   *     extraAlignmentFilter.
+   * @param modificationTime the modification date and time of the zip entries, in DOS format.
+   * @param header an optional header for the zip files.
+   * @param compressionLevels optional compression levels, between 0 and 9, for the compressed
+   *     entries whose names match the filters, in the iteration order of the map. Other entries
+   *     get {@link ZipOutput#DEFAULT_COMPRESSION_LEVEL}.
+   * @param executor an optional executor for deflating the compressed entries in parallel. The
+   *     writer doesn't shut it down.
+   * @param dataEntryWriter the data entry writer that can provide output streams for the zip
+   *     archives.
+   */
+  public ZipWriter(
+      StringMatcher uncompressedFilter,
+      int uncompressedAlignment,
+      boolean useZip64,
+      StringMatcher extraUncompressedAlignmentFilter,
+      int extraUncompressedAlignment,
+      int modificationTime,
+      byte[] header,
+      Map<StringMatcher, Integer> compressionLevels,
+      ExecutorService executor,
+      DataEntryWriter dataEntryWriter) {
     this.uncompressedFilter = uncompressedFilter;
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
@@ -196,6 +250,8 @@ public class ZipWriter implements DataEntryWriter {
     this.extraUncompressedAlignment = extraUncompressedAlignment;
     this.modificationTime = modificationTime;
     this.header = header;
+    this.compressionLevels = compressionLevels;
+    this.executor = executor;
     this.dataEntryWriter = dataEntryWriter;
   }
 
@@ -257,7 +313,13 @@ public class ZipWriter implements DataEntryWriter {
             : this.extraUncompressedAlignment;
 
     return currentZipOutput.createOutputStream(
-        name, compress1 && compress2, uncompressedAlignment, modificationTime);
+        name,
+        compress1 && compress2,
+        compressionLevel(originalName),
+        uncompressedAlignment,
+        modificationTime,
+        null,
+        null);
   }
 
   @Override
@@ -309,7 +371,20 @@ public class ZipWriter implements DataEntryWriter {
       boolean useZip64,
       String comment)
       throws IOException {
-    return new ZipOutput(outputStream, header, uncompressedAlignment, useZip64, comment);
+    return new ZipOutput(outputStream, header, uncompressedAlignment, useZip64, comment, executor);
+  }
+
+  /** Returns the compression level for the entry with the given name. */
+  private int compressionLevel(String name) {
+    if (compressionLevels != null) {
+      for (Map.Entry<StringMatcher, Integer> compressionLevel : compressionLevels.entrySet()) {
+        if (compressionLevel.getKey().matches(name)) {
+          return compressionLevel.getValue();
+        }
+      }
+    }
+
+    return ZipOutput.DEFAULT_COMPRESSION_LEVEL;
   }
 
   private void finishIfNecessary(DataEntry dataEntry) throws IOException {
@@ -19,7 +19,7 @@
 package proguard.analysis
 
 import io.kotest.core.spec.style.FunSpec
-import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.longs.shouldBeGreaterThan
 import io.kotest.matchers.string.shouldNotContain
 import proguard.analysis.Metrics.MetricType.PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY
 import proguard.analysis.datastructure.callgraph.CallGraph
@@ -72,7 +72,7 @@ class CallResolverExcessiveComplexityTest : FunSpec({
 
         withTestLogger { outputStream ->
             programClassPool.classesAccept(resolver)
-            (Metrics.counts[PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY] ?: 0) shouldBeGreaterThan 0
+            Metrics.getCount(PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY) shouldBeGreaterThan 0L
             outputStream.toString() shouldNotContain ExcessiveComplexityException::class.java.name
         }
     }
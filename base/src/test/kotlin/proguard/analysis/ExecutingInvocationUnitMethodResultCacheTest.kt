@@ -0,0 +1,102 @@
+package proguard.analysis
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.evaluation.ExecutingInvocationUnit
+import proguard.evaluation.PartialEvaluator
+import proguard.evaluation.ParticularReferenceValueFactory
+import proguard.evaluation.value.ArrayReferenceValueFactory
+import proguard.evaluation.value.IdentifiedReferenceValue
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.evaluation.value.ValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.PartialEvaluatorUtil
+
+class ExecutingInvocationUnitMethodResultCacheTest : FreeSpec({
+
+    val code = JavaSource(
+        "Test.java",
+        """
+        public class Test {
+
+            public void test() {
+                String a = String.valueOf(42);
+                String b = String.valueOf(42);
+                String c = "abc".concat("def");
+                String d = "abc".concat("def");
+                StringBuilder builder = new StringBuilder("x");
+                String e = builder.append(a).toString();
+                String f = builder.append(a).toString();
+            }
+        }
+        """,
+    )
+
+    val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(code, javacArguments = listOf("-g", "-source", "1.8", "-target", "1.8"))
+
+    fun evaluate(methodResultCacheSize: Int): Pair<ExecutingInvocationUnit, Map<String, IdentifiedReferenceValue>> {
+        val valueFactory: ValueFactory = ParticularValueFactory(ArrayReferenceValueFactory(), ParticularReferenceValueFactory())
+        val invocationUnit = ExecutingInvocationUnit.Builder()
+            .setMethodResultCacheSize(methodResultCacheSize)
+            .build(valueFactory, libraryClassPool)
+        val partialEvaluator = PartialEvaluator(valueFactory, invocationUnit, false)
+
+        val (instructions, variableTable) = PartialEvaluatorUtil.evaluate(
+            "Test",
+            "test",
+            "()V",
+            programClassPool,
+            partialEvaluator,
+        )
+
+        val (instruction, _) = instructions.last()
+        val variables = partialEvaluator.getVariablesBefore(instruction)
+        val values = listOf("a", "b", "c", "d", "e", "f").associateWith { name ->
+            variables.getValue(variableTable[name]!!).shouldBeInstanceOf<IdentifiedReferenceValue>()
+        }
+        return Pair(invocationUnit, values)
+    }
+
+    "Repeated calls with the same arguments reuse the cached results" {
+        val (invocationUnit, values) = evaluate(16)
+
+        values.mapValues { it.value.value.preciseValue } shouldBe mapOf(
+            "a" to "42",
+            "b" to "42",
+            "c" to "abcdef",
+            "d" to "abcdef",
+            "e" to "x42",
+            "f" to "x4242",
+        )
+
+        // The calls on the mutable string builder are not cached.
+        invocationUnit.methodResultCacheHitCount shouldBe 2
+        invocationUnit.methodResultCacheMissCount shouldBe 2
+    }
+
+    "Cached results still get their own reference identifiers" {
+        val (_, values) = evaluate(16)
+
+        values["a"]!!.id shouldNotBe values["b"]!!.id
+        values["c"]!!.id shouldNotBe values["d"]!!.id
+    }
+
+    "The results are the same as without the cache" {
+        val (_, cachedValues) = evaluate(1)
+        val (invocationUnit, values) = evaluate(0)
+
+        cachedValues.mapValues { it.value.value.preciseValue } shouldBe values.mapValues { it.value.value.preciseValue }
+        invocationUnit.methodResultCacheHitCount shouldBe 0
+        invocationUnit.methodResultCacheMissCount shouldBe 0
+    }
+
+    "The cache size must not be negative" {
+        shouldThrow<IllegalArgumentException> {
+            ExecutingInvocationUnit.Builder().setMethodResultCacheSize(-1)
+        }
+    }
+})
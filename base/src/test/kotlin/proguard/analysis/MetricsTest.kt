@@ -0,0 +1,64 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import proguard.analysis.Metrics.MetricType.DEX2PRO_INVALID_INNER_CLASS
+import proguard.analysis.Metrics.TimerType.CPA_RUN
+import kotlin.concurrent.thread
+
+class MetricsTest : FreeSpec({
+
+    "Concurrent increments are all counted" {
+        Metrics.flush()
+        (1..8)
+            .map {
+                thread { repeat(10_000) { Metrics.increaseCount(DEX2PRO_INVALID_INNER_CLASS) } }
+            }
+            .forEach { it.join() }
+
+        Metrics.getCount(DEX2PRO_INVALID_INNER_CLASS) shouldBe 80_000L
+        Metrics.snapshot()["DEX2PRO_INVALID_INNER_CLASS"] shouldBe 80_000L
+        Metrics.flush() shouldContain "DEX2PRO_INVALID_INNER_CLASS: 80000"
+        Metrics.getCount(DEX2PRO_INVALID_INNER_CLASS) shouldBe 0L
+    }
+
+    "Histograms approximate percentiles by powers of two" {
+        val histogram = Metrics.Histogram()
+        histogram.getPercentile(50.0) shouldBe 0L
+        (1L..100L).forEach { histogram.record(it) }
+
+        histogram.count shouldBe 100L
+        histogram.sum shouldBe 5050L
+        histogram.max shouldBe 100L
+        histogram.getPercentile(50.0) shouldBe 63L
+        histogram.getPercentile(100.0) shouldBe 100L
+    }
+
+    "Timers are exported" {
+        val timer = Metrics.getTimer(CPA_RUN)
+        timer.recordSince(timer.start())
+
+        val snapshot = Metrics.snapshot()
+        (snapshot["CPA_RUN.count"]!! >= 1L) shouldBe true
+        snapshot.containsKey("CPA_RUN.p99") shouldBe true
+    }
+})
@@ -0,0 +1,101 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.datastructure.callgraph.Call
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.Collections
+
+class ParallelCallResolverTest : FreeSpec({
+
+    val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+        *(0 until 8).map { index ->
+            JavaSource(
+                "C$index.java",
+                """
+                public class C$index
+                {
+                    public static void main(String[] args)
+                    {
+                        Runnable r = args.length > $index ? new Task$index() : null;
+                        run(r);
+                        System.out.println(String.valueOf(args.length + $index));
+                    }
+
+                    static void run(Runnable r)
+                    {
+                        r.run();
+                        C${(index + 1) % 8}.run(null);
+                    }
+
+                    static class Task$index implements Runnable
+                    {
+                        public void run()
+                        {
+                            new StringBuilder().append($index).toString();
+                        }
+                    }
+                }
+                """.trimIndent(),
+            )
+        }.toTypedArray(),
+        javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+    )
+
+    fun describe(callGraph: CallGraph): List<String> =
+        callGraph.outgoing.flatMap { (caller, calls) ->
+            calls.map { "$caller ${it.caller.offset} $it" }
+        } + callGraph.incoming.map { (target, calls) -> "$target <- ${calls.size}" }
+
+    fun resolve(threadCount: Int, visitor: CallVisitor = CallVisitor { }): CallGraph {
+        val callGraph = CallGraph()
+        val builder = CallResolver.Builder(programClassPool, libraryClassPool, callGraph, visitor)
+            .setEvaluateAllCode(true)
+        if (threadCount == 0) {
+            programClassPool.classesAccept(builder.build())
+        } else {
+            programClassPool.accept(builder.buildParallel(threadCount))
+        }
+        return callGraph
+    }
+
+    "The call graph is the same as with a single call resolver" {
+        val expected = describe(resolve(0))
+        for (threadCount in listOf(1, 2, 4, 8)) {
+            describe(resolve(threadCount)) shouldBe expected
+        }
+    }
+
+    "The call visitors see all calls" {
+        val visitedCalls = Collections.synchronizedList(mutableListOf<Call>())
+        val callGraph = resolve(4, CallVisitor { call -> visitedCalls.add(call) })
+        visitedCalls.size shouldBe callGraph.outgoing.values.sumOf { it.size }
+    }
+
+    "The thread count must be positive" {
+        shouldThrow<IllegalArgumentException> {
+            CallResolver.Builder(programClassPool, libraryClassPool, CallGraph()).buildParallel(0)
+        }
+    }
+})
@@ -3,10 +3,15 @@ package proguard.analysis
 import io.kotest.core.spec.style.FreeSpec
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
 import proguard.classfile.AccessConstants
 import proguard.classfile.attribute.Attribute.CODE
+import proguard.classfile.attribute.CodeAttribute
 import proguard.classfile.attribute.visitor.AllAttributeVisitor
 import proguard.classfile.attribute.visitor.AttributeNameFilter
+import proguard.classfile.editor.StackSizeUpdater
+import proguard.classfile.editor.VariableSizeUpdater
 import proguard.classfile.visitor.NamedMethodVisitor
 import proguard.evaluation.BasicInvocationUnit
 import proguard.evaluation.PartialEvaluator
@@ -641,4 +646,80 @@ class PartialEvaluatorTest : FreeSpec({
         val value = variablesAfterAconstNull.getValue(0)
         value shouldBe typedReferenceValueFactory.createReferenceValueNull()
     }
+
+    "Compact frames" - {
+        val programClass = buildClass()
+            .addMethod(AccessConstants.PUBLIC or AccessConstants.STATIC, "test", "(I)I", 100) {
+                val loopLabel = it.createLabel()
+                val endLabel = it.createLabel()
+                val subroutineLabel = it.createLabel()
+                it
+                    .iconst_0()
+                    .istore_1()
+                    .label(loopLabel)
+                    .iload_0()
+                    .ifeq(endLabel)
+                    .jsr(subroutineLabel)
+                    .iinc(0, -1)
+                    .iload_1()
+                    .iconst_2()
+                    .iadd()
+                    .istore_1()
+                    .goto_(loopLabel)
+                    .label(endLabel)
+                    .jsr(subroutineLabel)
+                    .iload_1()
+                    .ireturn()
+                    .label(subroutineLabel)
+                    .astore_2()
+                    .iload_1()
+                    .iconst_1()
+                    .iadd()
+                    .istore_1()
+                    .iinc(1, 1)
+                    .ret(2)
+            }
+            .programClass
+        programClass.methodsAccept(AllAttributeVisitor(VariableSizeUpdater()))
+        programClass.methodsAccept(AllAttributeVisitor(StackSizeUpdater()))
+        val codeLength = (programClass.findMethod("test").attributes[0] as CodeAttribute).u4codeLength
+
+        fun evaluate(compactFrames: Boolean): PartialEvaluator {
+            val valueFactory = ParticularValueFactory(ParticularReferenceValueFactory())
+            val pe = PartialEvaluator.Builder.create()
+                .setValueFactory(valueFactory)
+                .setInvocationUnit(BasicInvocationUnit(valueFactory))
+                .setCompactFrames(compactFrames)
+                .build()
+            evaluateProgramClass(programClass, pe, "test", "(I)I")
+            return pe
+        }
+
+        val defaultEvaluator = evaluate(false)
+        val compactEvaluator = evaluate(true)
+
+        "Should compute the same frames" {
+            for (offset in 0 until codeLength) {
+                compactEvaluator.isTraced(offset) shouldBe defaultEvaluator.isTraced(offset)
+                if (defaultEvaluator.isTraced(offset)) {
+                    compactEvaluator.getVariablesBefore(offset) shouldBe defaultEvaluator.getVariablesBefore(offset)
+                    compactEvaluator.getStackBefore(offset) shouldBe defaultEvaluator.getStackBefore(offset)
+                    compactEvaluator.getVariablesAfter(offset) shouldBe defaultEvaluator.getVariablesAfter(offset)
+                    compactEvaluator.getStackAfter(offset) shouldBe defaultEvaluator.getStackAfter(offset)
+                }
+            }
+        }
+
+        "Should share the frames of subsequent instructions" {
+            // iadd at offset 14 just continues with istore_1 at offset 15.
+            compactEvaluator.getVariablesAfter(14) shouldBeSameInstanceAs compactEvaluator.getVariablesBefore(15)
+            compactEvaluator.getStackAfter(14) shouldBeSameInstanceAs compactEvaluator.getStackBefore(15)
+
+            // iconst_0 at offset 0 doesn't modify the variables.
+            compactEvaluator.getVariablesBefore(0) shouldBeSameInstanceAs compactEvaluator.getVariablesBefore(1)
+
+            // istore_1 at offset 1 does.
+            compactEvaluator.getVariablesBefore(1) shouldNotBeSameInstanceAs compactEvaluator.getVariablesAfter(1)
+        }
+    }
 })
@@ -0,0 +1,185 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.CallResolver
+import proguard.analysis.cpa.jvm.cfa.JvmCfa
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeCaseCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeDefaultCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmAssumeExceptionCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge
+import proguard.analysis.cpa.jvm.cfa.edges.JvmInstructionCfaEdge
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.classfile.ClassPool
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class CompactJvmCfaTest : FreeSpec({
+
+    val programClassPool = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "A.java",
+            """
+            class A
+            {
+                public static void main(int n)
+                {
+                    sink(select(n, source()));
+                }
+
+                public static String select(int n, String s)
+                {
+                    switch (n)
+                    {
+                        case 1:
+                            return s;
+                        case 100:
+                            s = s + n;
+                            break;
+                        default:
+                            break;
+                    }
+                    try
+                    {
+                        return n > 0 ? s : "a";
+                    }
+                    catch (IllegalStateException e)
+                    {
+                        return "b";
+                    }
+                    catch (RuntimeException e)
+                    {
+                        return null;
+                    }
+                    finally
+                    {
+                        sink(s);
+                    }
+                }
+
+                public static String source()
+                {
+                    return null;
+                }
+
+                public static void sink(String s)
+                {
+                }
+            }
+            """.trimIndent(),
+        ),
+        javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+    ).programClassPool
+    val callGraph = CallGraph()
+    programClassPool.classesAccept(
+        CallResolver.Builder(programClassPool, ClassPool(), callGraph)
+            .setEvaluateAllCode(true)
+            .build(),
+    )
+    val eagerCfa = CfaUtil.createInterproceduralCfa(programClassPool, callGraph)
+    val main = MethodSignature("A", "main", "(I)V")
+
+    fun describe(edge: JvmCfaEdge): String {
+        val kind = when (edge) {
+            is JvmAssumeCfaEdge -> "assume ${edge.isSatisfied}"
+            is JvmAssumeCaseCfaEdge -> "case ${edge.assumedCase}"
+            is JvmAssumeDefaultCfaEdge -> "default"
+            is JvmInstructionCfaEdge -> "instruction"
+            is JvmAssumeExceptionCfaEdge -> "exception ${edge.isCaught} ${edge.catchType}"
+            is JvmCallCfaEdge -> "call ${edge.call}"
+            else -> edge.javaClass.simpleName
+        }
+        val instruction = (edge as? JvmInstructionCfaEdge)?.instruction ?: ""
+        return "$kind $instruction ${edge.source} -> ${edge.target}"
+    }
+
+    fun describe(cfa: JvmCfa, signature: MethodSignature): List<String> =
+        (
+            cfa.getFunctionNodes(signature).sortedBy { it.offset } +
+                cfa.getFunctionCatchNodes(signature).sortedBy { it.offset }
+            )
+            .flatMap { node ->
+                listOf("${node.javaClass.simpleName} $node") +
+                    node.leavingEdges.map { "leaving ${describe(it)}" } +
+                    node.enteringEdges.map { "entering ${describe(it)}" }
+            }
+
+    "The compact CFA has the same structure as the regular CFA" {
+        val unknownEnteringEdgeCount = JvmUnknownCfaNode.INSTANCE.enteringEdges.size
+        val cfa = CfaUtil.createCompactInterproceduralCfa(programClassPool, callGraph)
+        JvmUnknownCfaNode.INSTANCE.enteringEdges.size shouldBe unknownEnteringEdgeCount
+
+        cfa.functionEntryNodes.map { it.signature }.toSet() shouldBe
+            eagerCfa.functionEntryNodes.map { it.signature }.toSet()
+        for (entryNode in eagerCfa.functionEntryNodes) {
+            describe(cfa, entryNode.signature) shouldBe describe(eagerCfa, entryNode.signature)
+        }
+        cfa.allNodes.count() shouldBe eagerCfa.allNodes.count()
+    }
+
+    "Nodes are created once and edges point to them" {
+        val cfa = CfaUtil.createCompactIntraproceduralCfa(programClassPool)
+        for (node in cfa.getFunctionNodes(main) + cfa.getFunctionCatchNodes(main)) {
+            node.hashCode() shouldBe eagerCfa.getFunctionNode(main, node.offset).hashCode()
+            for (edge in node.leavingEdges) {
+                edge.source shouldBeSameInstanceAs node
+            }
+            for (edge in node.enteringEdges) {
+                edge.target shouldBeSameInstanceAs node
+            }
+        }
+        cfa.getFunctionEntryNode(main) shouldBeSameInstanceAs cfa.getFunctionNode(main, 0)
+    }
+
+    "The analysis results are the same" {
+        fun analyze(cfa: JvmCfa): Set<String> {
+            val run = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(cfa)
+                .setMainSignature(main)
+                .setTaintSources(
+                    setOf(
+                        JvmTaintSource(
+                            MethodSignature("A", "source", "()Ljava/lang/String;"),
+                            false,
+                            true,
+                            setOf(),
+                            setOf(),
+                        ),
+                    ),
+                )
+                .build()
+            val reachedStates = run.execute().asCollection()
+            val cachedStates = run.cpa.cache.values().flatMap { it.reachedSet.asCollection() }
+            return (reachedStates + cachedStates).map { it.toString() }.toSet()
+        }
+
+        analyze(CfaUtil.createCompactInterproceduralCfa(programClassPool, callGraph)) shouldBe
+            analyze(eagerCfa)
+    }
+})
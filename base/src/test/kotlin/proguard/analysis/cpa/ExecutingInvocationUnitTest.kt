@@ -128,6 +128,22 @@ class ExecutingInvocationUnitTest : FreeSpec({
             result.internalType() shouldBe TYPE_JAVA_LANG_STRING
             result.value.preciseValue shouldBe "1"
         }
+
+        "Repeated calls of the same method with different arguments" {
+            val executor = StringReflectionExecutor(libraryClassPool)
+            for ((first, second) in listOf("Hello" to " World", "Foo" to "Bar", "Hello" to "")) {
+                val result = invocationUnit.executeMethod(executor, stringConcat(first.toValue(), second.toValue())).returnValue
+                result.shouldBeInstanceOf<ParticularReferenceValue>()
+                result.value.preciseValue shouldBe first + second
+            }
+        }
+
+        "Exception in the executed method" {
+            val charAt = MethodExecutionInfo(javaLangString, javaLangString.findMethod("charAt"), null, "Hello".toValue(), 10.toValue())
+            repeat(2) {
+                invocationUnit.executeMethod(stringExecutor, charAt).returnValue shouldBe UnknownIntegerValue()
+            }
+        }
     }
 
     "StringBuilder tests" - {
@@ -31,6 +31,7 @@ import proguard.analysis.cpa.jvm.state.JvmAbstractState
 import proguard.analysis.cpa.jvm.util.CfaUtil
 import proguard.analysis.cpa.state.DifferentialMapAbstractStateFactory
 import proguard.analysis.cpa.state.HashMapAbstractStateFactory
+import proguard.analysis.cpa.state.PersistentHashMapAbstractStateFactory
 import proguard.classfile.MethodSignature
 import proguard.testutils.ClassPoolBuilder
 import proguard.testutils.JavaSource
@@ -69,10 +70,14 @@ class JvmTaintCpaTest : FreeSpec({
     listOf(
         HashMapAbstractStateFactory.getInstance(),
         DifferentialMapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> { false },
+        PersistentHashMapAbstractStateFactory.getInstance<String, SetAbstractState<JvmTaintSource>>(),
     ).forEach { staticFieldMapAbstractStateFactory ->
 
         val testNameSuffix = " for static fields ${staticFieldMapAbstractStateFactory.javaClass.simpleName}"
-        val jvmTaintBamCpaRunBuilder = JvmTaintBamCpaRun.Builder().setStaticFieldMapAbstractStateFactory(staticFieldMapAbstractStateFactory)
+        // The persistent factory also runs the analysis with persistent frames and heap maps.
+        val jvmTaintBamCpaRunBuilder = JvmTaintBamCpaRun.Builder()
+            .setPersistentStates(staticFieldMapAbstractStateFactory is PersistentHashMapAbstractStateFactory<*, *>)
+            .setStaticFieldMapAbstractStateFactory(staticFieldMapAbstractStateFactory)
 
         "Simple flow is detected$testNameSuffix" {
             val interproceduralCfa = CfaUtil.createInterproceduralCfaFromClassPool(
@@ -0,0 +1,170 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+import proguard.analysis.CallResolver
+import proguard.analysis.cpa.jvm.cfa.JvmCfa
+import proguard.analysis.cpa.jvm.cfa.LazyJvmCfa
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.classfile.ClassPool
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class LazyJvmCfaTest : FreeSpec({
+
+    val programClassPool = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "A.java",
+            """
+            class A
+            {
+                public static void main(int n)
+                {
+                    sink(callee(n, source()));
+                }
+
+                public static String callee(int n, String s)
+                {
+                    try
+                    {
+                        return n > 0 ? s : "a";
+                    }
+                    catch (RuntimeException e)
+                    {
+                        return null;
+                    }
+                }
+
+                public static void unused()
+                {
+                    for (int i = 0; i < 10; i++)
+                    {
+                        sink("b");
+                    }
+                }
+
+                public static String source()
+                {
+                    return null;
+                }
+
+                public static void sink(String s)
+                {
+                }
+            }
+            """.trimIndent(),
+        ),
+        javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+    ).programClassPool
+    val callGraph = CallGraph()
+    programClassPool.classesAccept(
+        CallResolver.Builder(programClassPool, ClassPool(), callGraph)
+            .setEvaluateAllCode(true)
+            .build(),
+    )
+    val eagerCfa = CfaUtil.createInterproceduralCfa(programClassPool, callGraph)
+    val main = MethodSignature("A", "main", "(I)V")
+    val callee = MethodSignature("A", "callee", "(ILjava/lang/String;)Ljava/lang/String;")
+
+    fun describe(cfa: JvmCfa, signature: MethodSignature): Set<String> =
+        (cfa.getFunctionNodes(signature) + cfa.getFunctionCatchNodes(signature))
+            .flatMap { node ->
+                node.leavingEdges.map { "${it.javaClass.simpleName} $node -> ${it.target}" }
+            }
+            .toSet()
+
+    val taintSource = JvmTaintSource(
+        MethodSignature("A", "source", "()Ljava/lang/String;"),
+        false,
+        true,
+        setOf(),
+        setOf(),
+    )
+
+    fun analyze(cfa: JvmCfa): Set<String> {
+        val run = JvmTaintBamCpaRun
+            .Builder()
+            .setCfa(cfa)
+            .setMainSignature(main)
+            .setTaintSources(setOf(taintSource))
+            .build()
+        return run.execute().asCollection().map { it.toString() }.toSet() +
+            run.cpa.cache.values().flatMap { it.reachedSet.asCollection() }.map { it.toString() }
+    }
+
+    "Methods are built when they are needed" {
+        val cfa = LazyJvmCfa(programClassPool, callGraph)
+        cfa.builtMethodCount shouldBe 0
+        cfa.getFunctionEntryNode(main) shouldNotBe null
+        cfa.builtMethodCount shouldBe 0
+
+        describe(cfa, main) shouldBe describe(eagerCfa, main)
+        cfa.builtMethodCount shouldBe 1
+        describe(cfa, callee) shouldBe describe(eagerCfa, callee)
+        cfa.builtMethodCount shouldBe 2
+    }
+
+    "The analysis only builds the reached methods" {
+        val cfa = CfaUtil.createLazyInterproceduralCfa(programClassPool, callGraph)
+        analyze(cfa) shouldBe analyze(eagerCfa)
+        cfa.getFunctionNodes(MethodSignature("A", "unused", "()V")).size shouldBe
+            eagerCfa.getFunctionNodes(MethodSignature("A", "unused", "()V")).size
+        cfa.buildCount shouldBe 5
+    }
+
+    "Evicted methods are rebuilt" {
+        val cfa = LazyJvmCfa(programClassPool, callGraph, 1)
+        val entryNode = cfa.getFunctionEntryNode(callee)
+        val mainEdges = describe(cfa, main)
+        describe(cfa, callee) shouldBe describe(eagerCfa, callee)
+        cfa.builtMethodCount shouldBe 1
+        cfa.evictionCount shouldBe 1
+
+        describe(cfa, main) shouldBe mainEdges
+        cfa.evict(main)
+        cfa.builtMethodCount shouldBe 0
+        entryNode.leavingEdges.size shouldBe 1
+        cfa.getFunctionEntryNode(callee) shouldBeSameInstanceAs entryNode
+        cfa.buildCount shouldBe 4
+
+        // Only the call edge of the rebuilt caller enters the entry node.
+        entryNode.enteringEdges.size shouldBe 1
+        cfa.buildCount shouldBe 5
+    }
+
+    "Entering edges of entry nodes come from all callers" {
+        val cfa = LazyJvmCfa(programClassPool, callGraph)
+        val sink = MethodSignature("A", "sink", "(Ljava/lang/String;)V")
+        val entryNode = cfa.getFunctionEntryNode(sink)
+
+        entryNode.enteringEdges.map { it.source.toString() }.toSet() shouldBe
+            eagerCfa.getFunctionEntryNode(sink).enteringEdges.map { it.source.toString() }.toSet()
+        entryNode.enteringEdges.size shouldBe 2
+        entryNode.enteringEdges shouldNotBeSameInstanceAs entryNode.enteringEdges
+    }
+})
@@ -23,6 +23,7 @@ import io.kotest.matchers.shouldBe
 import proguard.analysis.cpa.defaults.DifferentialMapAbstractState
 import proguard.analysis.cpa.defaults.HashMapAbstractState
 import proguard.analysis.cpa.defaults.LimitedHashMapAbstractState
+import proguard.analysis.cpa.defaults.PersistentHashMapAbstractState
 import proguard.testutils.cpa.IntegerAbstractState
 import java.util.Optional
 
@@ -32,6 +33,7 @@ class MapAbstractStateTest : FreeSpec({
         { HashMapAbstractState<Int, IntegerAbstractState>() },
         { DifferentialMapAbstractState() },
         { LimitedHashMapAbstractState { _, _, _ -> Optional.empty() } },
+        { PersistentHashMapAbstractState() },
     ).forEach { supplier ->
 
         val stateEmpty = supplier.invoke()
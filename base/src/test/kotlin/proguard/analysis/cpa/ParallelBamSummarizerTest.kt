@@ -0,0 +1,224 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.bam.BamCache
+import proguard.analysis.cpa.bam.BamCacheImpl
+import proguard.analysis.cpa.bam.BlockAbstraction
+import proguard.analysis.cpa.bam.CpaWithBamOperators
+import proguard.analysis.cpa.bam.ParallelBamSummarizer
+import proguard.analysis.cpa.bam.ShardedBamCache
+import proguard.analysis.cpa.defaults.NeverAbortOperator
+import proguard.analysis.cpa.interfaces.AbstractState
+import proguard.analysis.cpa.interfaces.Precision
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelBamSummarizerTest : FreeSpec({
+
+    val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+        ClassPoolBuilder.fromSource(
+            JavaSource(
+                "A.java",
+                """
+                class A
+                {
+                    public static void main(int n)
+                    {
+                        sink(even(n, source()));
+                        sink(odd(n, "a"));
+                        sink(id("b"));
+                    }
+
+                    public static String even(int n, String s)
+                    {
+                        return n == 0 ? id(s) : odd(n - 1, s);
+                    }
+
+                    public static String odd(int n, String s)
+                    {
+                        return n == 0 ? "c" : even(n - 1, s);
+                    }
+
+                    public static String id(String s)
+                    {
+                        return s;
+                    }
+
+                    public static String source()
+                    {
+                        return null;
+                    }
+
+                    public static void sink(String s)
+                    {
+                    }
+                }
+                """.trimIndent(),
+            ),
+            javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+        ).programClassPool,
+    )
+    val taintSource = JvmTaintSource(
+        MethodSignature("A", "source", "()Ljava/lang/String;"),
+        false,
+        true,
+        setOf(),
+        setOf(),
+    )
+
+    fun createRun(): JvmTaintBamCpaRun<*> =
+        JvmTaintBamCpaRun
+            .Builder()
+            .setCfa(cfa)
+            .setMainSignature(MethodSignature("A", "main", "(I)V"))
+            .setTaintSources(setOf(taintSource))
+            .build()
+
+    fun cachedStates(run: JvmTaintBamCpaRun<*>): Set<String> =
+        run.cpa.cache.values()
+            .flatMap { it.reachedSet.asCollection() }
+            .map { it.toString() }
+            .toSet()
+
+    "Summarizing in parallel yields the same result as the sequential analysis" {
+        val sequentialRun = createRun()
+        val sequentialResult = sequentialRun.execute().asCollection().map { it.toString() }
+
+        listOf(1, 4).forEach { parallelism ->
+            val parallelRun = createRun()
+            parallelRun.summarizeInParallel(parallelism)
+            val summaryCount = parallelRun.cpa.cache.size()
+            summaryCount shouldBeGreaterThan 0
+
+            val parallelResult = parallelRun.execute().asCollection().map { it.toString() }
+            parallelResult.toSet() shouldBe sequentialResult.toSet()
+            cachedStates(parallelRun) shouldBe cachedStates(sequentialRun)
+            parallelRun.cpa.cache.size() shouldBe summaryCount
+        }
+    }
+
+    "Methods without entry states are not summarized" {
+        val run = createRun()
+        run.summarizeInParallel(
+            cfa.functionEntryNodes.map { it.signature },
+            { emptyList<AbstractState>() },
+            2,
+        )
+        run.cpa.cache.size() shouldBe 0
+    }
+
+    "Only caches which are not thread-safe are locked" {
+        listOf(true, false).forEach { threadSafe ->
+            val run = createRun()
+            val cache = LockCheckingCache(threadSafe)
+            val main = MethodSignature("A", "main", "(I)V")
+            ParallelBamSummarizer<JvmCfaNode, JvmCfaEdge, MethodSignature>(
+                {
+                    CpaWithBamOperators(
+                        run.createIntraproceduralCPA(),
+                        run.createReduceOperator(),
+                        run.createExpandOperator(),
+                        run.createRebuildOperator(),
+                    )
+                },
+                cfa,
+                cache,
+                -1,
+                NeverAbortOperator.INSTANCE,
+                2,
+            ).summarize(
+                listOf(main),
+                { if (it == main) run.initialStates as Collection<AbstractState> else emptyList() },
+            )
+
+            cache.accessCount.get() shouldBeGreaterThan 0
+            cache.lockedAccessCount.get() shouldBe if (threadSafe) 0 else cache.accessCount.get()
+        }
+    }
+
+    "The parallelism must be positive" {
+        shouldThrow<IllegalArgumentException> {
+            ParallelBamSummarizer<JvmCfaNode, JvmCfaEdge, MethodSignature>(
+                { throw IllegalStateException() },
+                cfa,
+                BamCacheImpl(),
+                -1,
+                NeverAbortOperator.INSTANCE,
+                0,
+            )
+        }
+    }
+})
+
+private class LockCheckingCache(private val threadSafe: Boolean) : BamCache<MethodSignature> {
+    private val delegate = ShardedBamCache<MethodSignature>()
+    val accessCount = AtomicInteger()
+    val lockedAccessCount = AtomicInteger()
+
+    private fun countAccess() {
+        accessCount.incrementAndGet()
+        if (Thread.holdsLock(this)) {
+            lockedAccessCount.incrementAndGet()
+        }
+    }
+
+    override fun put(
+        stateKey: AbstractState,
+        precisionKey: Precision?,
+        blockKey: MethodSignature,
+        blockAbstraction: BlockAbstraction,
+    ) {
+        countAccess()
+        delegate.put(stateKey, precisionKey, blockKey, blockAbstraction)
+    }
+
+    override fun get(
+        stateKey: AbstractState,
+        precisionKey: Precision?,
+        blockKey: MethodSignature,
+    ): BlockAbstraction? {
+        countAccess()
+        return delegate.get(stateKey, precisionKey, blockKey)
+    }
+
+    override fun get(blockKey: MethodSignature): Collection<BlockAbstraction> = delegate.get(blockKey)
+
+    override fun get(precision: Precision?, blockKey: MethodSignature): Collection<BlockAbstraction> =
+        delegate.get(precision, blockKey)
+
+    override fun values(): Collection<BlockAbstraction> = delegate.values()
+
+    override fun size() = delegate.size()
+
+    override fun getAllMethods(): Set<MethodSignature> = delegate.allMethods
+
+    override fun isThreadSafe() = threadSafe
+}
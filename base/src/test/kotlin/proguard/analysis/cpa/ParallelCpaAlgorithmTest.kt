@@ -0,0 +1,174 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.algorithms.CpaAlgorithm
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet
+import proguard.analysis.cpa.defaults.ControllableAbortOperator
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.analysis.cpa.defaults.HashMapAbstractState
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet
+import proguard.analysis.cpa.defaults.SetAbstractState
+import proguard.analysis.cpa.interfaces.AbstractState
+import proguard.analysis.cpa.interfaces.Algorithm
+import proguard.analysis.cpa.interfaces.ReachedSet
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintCpa
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.state.JvmAbstractState
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class ParallelCpaAlgorithmTest : FreeSpec({
+
+    val taintSource = JvmTaintSource(
+        MethodSignature("A", "source", "()Ljava/lang/String;"),
+        false,
+        true,
+        setOf(),
+        setOf(),
+    )
+
+    val cfa = CfaUtil.createIntraproceduralCfaFromClassPool(
+        ClassPoolBuilder.fromSource(
+            JavaSource(
+                "A.java",
+                """
+                class A
+                {
+                    public static int loops(int n, String s)
+                    {
+                        int a = 0;
+                        String t = s;
+                        for (int i = 0; i < n; i++)
+                        {
+                            for (int j = 0; j < i; j++)
+                            {
+                                if ((i ^ j) % 3 == 0) t = source(); else a += j;
+                            }
+                            switch (i % 4)
+                            {
+                                case 0: a++; break;
+                                case 1: t = t + a; break;
+                                case 2: sink(t); break;
+                                default: a--;
+                            }
+                        }
+                        try
+                        {
+                            sink(t);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            a = 7;
+                        }
+                        return a;
+                    }
+
+                    public int other(int x)
+                    {
+                        while (x > 0)
+                        {
+                            x = x / 2 + (x % 5);
+                            if (x == 3) break;
+                        }
+                        return x;
+                    }
+
+                    public static void sink(String s)
+                    {
+                    }
+
+                    public static String source()
+                    {
+                        return null;
+                    }
+                }
+                """.trimIndent(),
+            ),
+            javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+        ).programClassPool,
+    )
+
+    fun initialStates(): List<JvmAbstractState<SetAbstractState<JvmTaintSource>>> =
+        cfa.functionEntryNodes.map {
+            JvmAbstractState(
+                it,
+                JvmFrameAbstractState(),
+                JvmForgetfulHeapAbstractState(SetAbstractState.bottom as SetAbstractState<JvmTaintSource>),
+                HashMapAbstractState(),
+            )
+        }
+
+    fun run(algorithm: Algorithm, reachedSet: ReachedSet): Set<AbstractState> {
+        val waitlist = BreadthFirstWaitlist()
+        val initialStates = initialStates()
+        waitlist.addAll(initialStates)
+        reachedSet.addAll(initialStates)
+        algorithm.run(reachedSet, waitlist)
+        return reachedSet.asCollection().toSet()
+    }
+
+    "The parallel algorithm computes the same fixpoint as the sequential one" {
+        val expected = run(
+            CpaAlgorithm(JvmTaintCpa(setOf(taintSource))),
+            ProgramLocationDependentReachedSet<JvmCfaNode, JvmCfaEdge, JvmAbstractState<SetAbstractState<JvmTaintSource>>, MethodSignature>(),
+        )
+
+        listOf(1, 2, 4, 8).forEach { parallelism ->
+            repeat(5) {
+                run(
+                    ParallelCpaAlgorithm(JvmTaintCpa(setOf(taintSource)), parallelism),
+                    ConcurrentProgramLocationDependentReachedSet<JvmCfaNode, JvmCfaEdge, JvmAbstractState<SetAbstractState<JvmTaintSource>>, MethodSignature>(),
+                ) shouldBe expected
+            }
+        }
+    }
+
+    "The parallel algorithm requires a concurrent reached set" {
+        shouldThrow<IllegalArgumentException> {
+            run(ParallelCpaAlgorithm(JvmTaintCpa(setOf(taintSource)), 2), DefaultReachedSet())
+        }
+    }
+
+    "Abort operator terminates the analysis and keeps the unprocessed states" {
+        val waitlist = BreadthFirstWaitlist()
+        val reachedSet = ConcurrentProgramLocationDependentReachedSet<JvmCfaNode, JvmCfaEdge, JvmAbstractState<SetAbstractState<JvmTaintSource>>, MethodSignature>()
+        val initialStates = initialStates()
+        waitlist.addAll(initialStates)
+        reachedSet.addAll(initialStates)
+        val abortOperator = ControllableAbortOperator()
+        abortOperator.abort = true
+
+        ParallelCpaAlgorithm(JvmTaintCpa(setOf(taintSource)), 1).run(reachedSet, waitlist, abortOperator)
+
+        reachedSet.asCollection().toSet() shouldBe initialStates.toSet()
+        waitlist.size() shouldBe initialStates.size - 1
+    }
+})
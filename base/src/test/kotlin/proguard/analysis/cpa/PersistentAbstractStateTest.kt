@@ -0,0 +1,255 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.cpa.defaults.HashMapAbstractState
+import proguard.analysis.cpa.defaults.ListAbstractState
+import proguard.analysis.cpa.defaults.PersistentHashMapAbstractState
+import proguard.analysis.cpa.defaults.PersistentListAbstractState
+import proguard.analysis.cpa.defaults.PersistentStackAbstractState
+import proguard.analysis.cpa.defaults.PersistentVector
+import proguard.analysis.cpa.defaults.StackAbstractState
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState
+import proguard.analysis.cpa.jvm.state.JvmPersistentFrameAbstractState
+import proguard.testutils.cpa.IntegerAbstractState
+import java.util.concurrent.Executors
+
+class PersistentAbstractStateTest : FreeSpec({
+
+    "Persistent vectors" - {
+        "Modifications do not affect previous versions" {
+            var vector = PersistentVector.empty<Int>()
+            (0 until 2000).forEach { vector = vector.push(it) }
+            val original = vector
+            val modified = vector.set(1000, -1).pop().pop()
+
+            original.size() shouldBe 2000
+            original.get(1000) shouldBe 1000
+            original.last() shouldBe 1999
+            modified.size() shouldBe 1998
+            modified.get(1000) shouldBe -1
+            modified.last() shouldBe 1997
+        }
+
+        "Popping all elements yields the empty vector" {
+            var vector = PersistentVector.empty<Int>()
+            (0 until 1100).forEach { vector = vector.push(it) }
+            (1099 downTo 0).forEach {
+                vector.last() shouldBe it
+                vector = vector.pop()
+            }
+            vector.isEmpty shouldBe true
+        }
+    }
+
+    "Persistent lists" - {
+        val state1 = PersistentListAbstractState((0 until 100).map { IntegerAbstractState(it) })
+        val state2 = state1.copy()
+        state2[50] = IntegerAbstractState(1000)
+        state2.add(IntegerAbstractState(-1))
+
+        "Copies are independent" {
+            state1.size shouldBe 100
+            state1[50] shouldBe IntegerAbstractState(50)
+            state2[50] shouldBe IntegerAbstractState(1000)
+        }
+
+        "Join is equal to the join of plain lists" {
+            val plain1 = ListAbstractState<IntegerAbstractState>().apply { addAll(state1) }
+            val plain2 = ListAbstractState<IntegerAbstractState>().apply { addAll(state2) }
+
+            state1.join(state2) shouldBe plain1.join(plain2)
+            state2.join(state1) shouldBe plain2.join(plain1)
+        }
+
+        "Join returns the greater list if it does not change" {
+            state1.join(state2) shouldBeSameInstanceAs state2
+            state2.join(state1) shouldBeSameInstanceAs state2
+        }
+
+        "Comparison is correct" {
+            state1.isLessOrEqual(state2) shouldBe true
+            state2.isLessOrEqual(state1) shouldBe false
+            state1.isLessOrEqual(state1.copy()) shouldBe true
+        }
+    }
+
+    "Persistent stacks" - {
+        val stateShort = PersistentStackAbstractState<IntegerAbstractState>()
+        val stateLong = PersistentStackAbstractState<IntegerAbstractState>()
+        listOf(3, 2, 1).forEach { stateShort.push(IntegerAbstractState(it)) }
+        listOf(5, 4, 5, -2, 1).forEach { stateLong.push(IntegerAbstractState(it)) }
+
+        "Stacks are aligned at the top when joined" {
+            val plainShort = StackAbstractState<IntegerAbstractState>().apply { addAll(stateShort) }
+            val plainLong = StackAbstractState<IntegerAbstractState>().apply { addAll(stateLong) }
+
+            stateShort.join(stateLong) shouldBe plainShort.join(plainLong)
+            stateLong.join(stateShort) shouldBe plainLong.join(plainShort)
+        }
+
+        "Copies are independent" {
+            val copy = stateShort.copy()
+            copy.pop() shouldBe IntegerAbstractState(1)
+            copy.push(IntegerAbstractState(7))
+
+            stateShort.peek(0) shouldBe IntegerAbstractState(1)
+            copy.peek(0) shouldBe IntegerAbstractState(7)
+        }
+    }
+
+    "Persistent hash maps" - {
+        "Join reuses the greater map if it does not change" {
+            val state1 = PersistentHashMapAbstractState<Int, IntegerAbstractState>()
+            (0 until 1000).forEach { state1[it] = IntegerAbstractState(it) }
+            val state2 = state1.copy()
+            state2[500] = IntegerAbstractState(1000)
+            state2[1000] = IntegerAbstractState(0)
+
+            state1.join(state2) shouldBeSameInstanceAs state2
+            state2.join(state1) shouldBeSameInstanceAs state2
+            state1.size shouldBe 1000
+            state1[500] shouldBe IntegerAbstractState(500)
+        }
+
+        "Colliding keys are kept apart" {
+            val state1 = PersistentHashMapAbstractState<CollidingKey, IntegerAbstractState>()
+            (0 until 100).forEach { state1[CollidingKey(it)] = IntegerAbstractState(it) }
+            val state2 = state1.copy()
+            state2[CollidingKey(42)] = IntegerAbstractState(1000)
+            state2[CollidingKey(100)] = IntegerAbstractState(0)
+
+            state1.size shouldBe 100
+            state2.size shouldBe 101
+            (0 until 100).forEach { state1[CollidingKey(it)] shouldBe IntegerAbstractState(it) }
+            state2[CollidingKey(42)] shouldBe IntegerAbstractState(1000)
+            state1.containsKey(CollidingKey(100)) shouldBe false
+
+            val plain1 = HashMapAbstractState<CollidingKey, IntegerAbstractState>().apply { putAll(state1) }
+            val plain2 = HashMapAbstractState<CollidingKey, IntegerAbstractState>().apply { putAll(state2) }
+            state1.join(state2) shouldBe plain1.join(plain2)
+            state2.join(state1) shouldBe plain2.join(plain1)
+            state1.isLessOrEqual(state2) shouldBe true
+            state2.isLessOrEqual(state1) shouldBe false
+        }
+
+        "Removal does not affect copies" {
+            listOf(::CollidingKey, { it: Int -> it }).forEach { key ->
+                val state = PersistentHashMapAbstractState<Any, IntegerAbstractState>()
+                (0 until 1000).forEach { state[key(it)] = IntegerAbstractState(it) }
+                val copy = state.copy()
+
+                (0 until 1000 step 2).forEach { state.remove(key(it)) shouldBe IntegerAbstractState(it) }
+                state.remove(key(1000)) shouldBe null
+
+                state.size shouldBe 500
+                (0 until 1000).forEach { state.containsKey(key(it)) shouldBe (it % 2 == 1) }
+                copy.size shouldBe 1000
+                (0 until 1000).forEach { copy[key(it)] shouldBe IntegerAbstractState(it) }
+
+                (1 until 1000 step 2).forEach { state.remove(key(it)) }
+                state.isEmpty() shouldBe true
+                state shouldBe PersistentHashMapAbstractState<Any, IntegerAbstractState>()
+            }
+        }
+    }
+
+    "Persistent frames" - {
+        val plainFrame = JvmFrameAbstractState<IntegerAbstractState>()
+        val persistentFrame = JvmPersistentFrameAbstractState<IntegerAbstractState>()
+        listOf(plainFrame, persistentFrame).forEach {
+            it.setVariable(2, IntegerAbstractState(2), IntegerAbstractState(0))
+            it.push(IntegerAbstractState(1))
+        }
+
+        "Persistent and plain frames with the same content are equal" {
+            persistentFrame shouldBe plainFrame
+            plainFrame shouldBe persistentFrame
+            persistentFrame.hashCode() shouldBe plainFrame.hashCode()
+        }
+
+        "Persistent and plain frames can be joined" {
+            val copy = persistentFrame.copy()
+            copy.pop()
+            copy.push(IntegerAbstractState(5))
+
+            plainFrame.join(copy) shouldBe copy
+            copy.join(plainFrame) shouldBe copy
+            persistentFrame.join(copy) shouldBe copy
+            persistentFrame.peek(0) shouldBe IntegerAbstractState(1)
+        }
+
+        "Modifications through the accessors write through to the frame" {
+            val frame = persistentFrame.copy()
+            frame.localVariables[2] = IntegerAbstractState(7)
+            frame.operandStack.push(IntegerAbstractState(8))
+            val copy = frame.copy()
+            copy.setVariable(2, IntegerAbstractState(9), IntegerAbstractState(0))
+            copy.pop()
+
+            frame.getVariableOrDefault(2, IntegerAbstractState(0)) shouldBe IntegerAbstractState(7)
+            frame.peek(0) shouldBe IntegerAbstractState(8)
+            copy.getVariableOrDefault(2, IntegerAbstractState(0)) shouldBe IntegerAbstractState(9)
+            copy.peek(0) shouldBe IntegerAbstractState(1)
+            persistentFrame shouldBe plainFrame
+        }
+
+        "Shared frames can be read concurrently" {
+            val executor = Executors.newFixedThreadPool(4)
+            try {
+                repeat(1000) {
+                    // Read a fresh frame from several threads at once, like a cached exit state.
+                    val frame = persistentFrame.copy()
+                    val results = (1..4).map {
+                        executor.submit<Boolean> {
+                            plainFrame.join(frame) == plainFrame &&
+                                plainFrame.isLessOrEqual(frame) &&
+                                plainFrame == frame &&
+                                frame.localVariablesView == plainFrame.localVariables &&
+                                frame.operandStackView == plainFrame.operandStack
+                        }
+                    }
+                    results.all { it.get() } shouldBe true
+                }
+            } finally {
+                executor.shutdown()
+            }
+        }
+
+        "Views of a frame can't be modified" {
+            shouldThrow<UnsupportedOperationException> {
+                persistentFrame.localVariablesView.add(IntegerAbstractState(3))
+            }
+            shouldThrow<UnsupportedOperationException> {
+                persistentFrame.operandStackView.clear()
+            }
+            persistentFrame shouldBe plainFrame
+        }
+    }
+})
+
+private class CollidingKey(val value: Int) {
+    override fun equals(other: Any?) = other is CollidingKey && value == other.value
+
+    override fun hashCode() = value % 3
+}
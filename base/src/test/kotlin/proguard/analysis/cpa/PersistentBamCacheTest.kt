@@ -0,0 +1,258 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.analysis.cpa.bam.BamSummaryStore
+import proguard.analysis.cpa.bam.PersistentBamCache
+import proguard.analysis.cpa.defaults.NeverAbortOperator
+import proguard.analysis.cpa.defaults.SetAbstractState
+import proguard.analysis.cpa.jvm.domain.taint.JvmInvokeTaintSink
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintMemoryLocationBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.nio.file.Files
+import java.nio.file.Path
+
+class PersistentBamCacheTest : FreeSpec({
+
+    "Summary store" - {
+        val directory = Files.createTempDirectory("bam")
+        val path = directory.resolve("summaries.bin")
+        BamSummaryStore.write(
+            path,
+            42L,
+            listOf(
+                BamSummaryStore.Record("a", 1L, byteArrayOf(1, 2), byteArrayOf(3)),
+                BamSummaryStore.Record("a", 2L, byteArrayOf(1, 2), byteArrayOf(4)),
+                BamSummaryStore.Record("b", 1L, byteArrayOf(), byteArrayOf(5, 6)),
+            ),
+        )
+
+        "Records are found by their complete keys" {
+            val store = BamSummaryStore.open(path, 42L)
+            store.size() shouldBe 3
+            store.get("a", 1L, byteArrayOf(1, 2))!!.toList() shouldBe listOf<Byte>(3)
+            store.get("a", 2L, byteArrayOf(1, 2))!!.toList() shouldBe listOf<Byte>(4)
+            store.get("b", 1L, byteArrayOf())!!.toList() shouldBe listOf<Byte>(5, 6)
+            store.get("a", 1L, byteArrayOf(1)) shouldBe null
+            store.get("a", 3L, byteArrayOf(1, 2)) shouldBe null
+            store.get("c", 1L, byteArrayOf()) shouldBe null
+        }
+
+        "A store with a different fingerprint is empty" {
+            BamSummaryStore.open(path, 43L).size() shouldBe 0
+        }
+
+        "A missing store is empty" {
+            BamSummaryStore.open(directory.resolve("missing.bin"), 42L).size() shouldBe 0
+        }
+    }
+
+    "Taint analysis" - {
+        val source =
+            """
+            class A
+            {
+                public static void main()
+                {
+                    sink(callee(source()));
+                }
+
+                public static String callee(String s)
+                {
+                    return %s;
+                }
+
+                public static String source()
+                {
+                    return null;
+                }
+
+                public static void sink(String s)
+                {
+                }
+            }
+            """.trimIndent()
+        val taintSource = JvmTaintSource(
+            MethodSignature("A", "source", "()Ljava/lang/String;"),
+            false,
+            true,
+            setOf(),
+            setOf(),
+        )
+
+        fun run(calleeBody: String, path: Path): JvmTaintBamCpaRun<*> {
+            val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+                ClassPoolBuilder.fromSource(
+                    JavaSource("A.java", source.format(calleeBody)),
+                    javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+                ).programClassPool,
+            )
+            val run = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(cfa)
+                .setMainSignature(MethodSignature("A", "main", "()V"))
+                .setTaintSources(setOf(taintSource))
+                .setBamSummaryStorePath(path)
+                .build()
+            run.execute()
+            return run
+        }
+
+        fun exitStates(run: JvmTaintBamCpaRun<*>): Set<String> =
+            run.cpa.cache.values()
+                .flatMap { it.reachedSet.asCollection() }
+                .map { it.toString() }
+                .toSet()
+
+        "Summaries of unchanged code are reused" {
+            val path = Files.createTempDirectory("bam").resolve("summaries.bin")
+            val firstRun = run("s", path)
+            firstRun.saveBamSummaries()
+            (firstRun.cpa.cache as PersistentBamCache<*>).loadCount shouldBe 0L
+
+            val secondRun = run("s", path)
+            val cache = secondRun.cpa.cache
+            cache.shouldBeInstanceOf<PersistentBamCache<*>>()
+            cache.loadCount shouldBeGreaterThan 0L
+            exitStates(secondRun) shouldBe exitStates(firstRun)
+        }
+
+        "Loaded summaries are saved again if their states have been replaced" {
+            val path = Files.createTempDirectory("bam").resolve("summaries.bin")
+            run("s", path).saveBamSummaries()
+            val savedBytes = Files.readAllBytes(path)
+
+            val secondRun = run("s", path)
+            val cache = secondRun.cpa.cache as PersistentBamCache<*>
+            val unchangedPath = path.resolveSibling("unchanged.bin")
+            cache.save(unchangedPath)
+
+            // Replace a state without changing the number of states, like a merge may do.
+            val reachedSets = cache.values().map { it.reachedSet }
+            val reachedSet = reachedSets[0]
+            val replacement = reachedSets[1].asCollection().first { it !in reachedSet.asCollection() }
+            reachedSet.remove(reachedSet.asCollection().first())
+            reachedSet.add(replacement)
+            val changedPath = path.resolveSibling("changed.bin")
+            cache.save(changedPath)
+
+            Files.readAllBytes(unchangedPath).toList() shouldBe savedBytes.toList()
+            Files.readAllBytes(changedPath).toList() shouldNotBe savedBytes.toList()
+        }
+
+        "Summaries of changed code are recomputed" {
+            val path = Files.createTempDirectory("bam").resolve("summaries.bin")
+            run("s", path).saveBamSummaries()
+
+            val secondRun = run("s.trim()", path)
+            (secondRun.cpa.cache as PersistentBamCache<*>).loadCount shouldBe 0L
+        }
+    }
+
+    "Taint analysis with transitive callees" - {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "B.java",
+                    """
+                    class B
+                    {
+                        public static void main()
+                        {
+                            a(source());
+                        }
+
+                        public static void a(String s)
+                        {
+                            b(s);
+                        }
+
+                        public static void b(String s)
+                        {
+                            sink(s);
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val taintSource = JvmTaintSource(
+            MethodSignature("B", "source", "()Ljava/lang/String;"),
+            false,
+            true,
+            setOf(),
+            setOf(),
+        )
+        val taintSink = JvmInvokeTaintSink(
+            MethodSignature("B", "sink", "(Ljava/lang/String;)V"),
+            false,
+            setOf(1),
+            setOf(),
+        )
+
+        fun endPoints(path: Path): Pair<JvmTaintBamCpaRun<*>, Set<String>> {
+            val run = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(cfa)
+                .setMainSignature(MethodSignature("B", "main", "()V"))
+                .setTaintSources(setOf(taintSource))
+                .setBamSummaryStorePath(path)
+                .build()
+            val memoryLocationRun = object : JvmTaintMemoryLocationBamCpaRun(
+                run,
+                SetAbstractState.bottom as SetAbstractState<JvmTaintSource>,
+                setOf(taintSink),
+                NeverAbortOperator.INSTANCE,
+            ) {}
+            return Pair(run, memoryLocationRun.endPoints.map { it.toString() }.toSet())
+        }
+
+        "End points in callees of loaded summaries are found" {
+            val path = Files.createTempDirectory("bam").resolve("summaries.bin")
+            val (firstRun, coldEndPoints) = endPoints(path)
+            firstRun.saveBamSummaries()
+
+            val (secondRun, warmEndPoints) = endPoints(path)
+            // The summary of main is loaded together with the ones of a, b, source, and sink.
+            (secondRun.cpa.cache as PersistentBamCache<*>).loadCount shouldBe 5L
+            coldEndPoints.size shouldBe 1
+            warmEndPoints shouldBe coldEndPoints
+        }
+    }
+})
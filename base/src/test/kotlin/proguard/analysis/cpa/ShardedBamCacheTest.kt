@@ -0,0 +1,115 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.bam.BlockAbstraction
+import proguard.analysis.cpa.bam.ShardedBamCache
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist
+import proguard.analysis.cpa.interfaces.Precision
+import proguard.classfile.MethodSignature
+import proguard.testutils.cpa.IntegerAbstractState
+
+class ShardedBamCacheTest : FreeSpec({
+
+    val signatureA = MethodSignature("a", "test", "()V")
+    val signatureB = MethodSignature("b", "test", "()V")
+    val precision = object : Precision {}
+
+    fun blockAbstraction() = BlockAbstraction(DefaultReachedSet(), IndexedBreadthFirstWaitlist())
+
+    "Unbounded cache" - {
+        val cache = ShardedBamCache<MethodSignature>()
+        val entryA42 = blockAbstraction()
+        val entryA43 = blockAbstraction()
+        val entryB42 = blockAbstraction()
+        cache.put(IntegerAbstractState(42), null, signatureA, entryA42)
+        cache.put(IntegerAbstractState(43), precision, signatureA, entryA43)
+        cache.put(IntegerAbstractState(42), null, signatureB, entryB42)
+
+        "Entries are found by their keys" {
+            cache.get(IntegerAbstractState(42), null, signatureA) shouldBe entryA42
+            cache.get(IntegerAbstractState(43), precision, signatureA) shouldBe entryA43
+            cache.get(IntegerAbstractState(43), null, signatureA) shouldBe null
+            cache.size() shouldBe 3
+        }
+
+        "Entries are found by method and precision" {
+            cache.get(signatureA) shouldContainExactlyInAnyOrder listOf(entryA42, entryA43)
+            cache.get(precision, signatureA) shouldContainExactlyInAnyOrder listOf(entryA43)
+            cache.get(null, signatureB) shouldContainExactlyInAnyOrder listOf(entryB42)
+            cache.values() shouldContainExactlyInAnyOrder listOf(entryA42, entryA43, entryB42)
+        }
+
+        "getAllMethods returns an unmodifiable set" {
+            cache.allMethods shouldBe setOf(signatureA, signatureB)
+            shouldThrow<UnsupportedOperationException> { cache.allMethods.add(signatureA) }
+        }
+    }
+
+    "Bounded cache evicts the least recently used entries" {
+        val cache = ShardedBamCache<MethodSignature>(2, 1)
+        val entry1 = blockAbstraction()
+        val entry2 = blockAbstraction()
+        val entry3 = blockAbstraction()
+        cache.put(IntegerAbstractState(1), null, signatureA, entry1)
+        cache.put(IntegerAbstractState(2), null, signatureB, entry2)
+        cache.get(IntegerAbstractState(1), null, signatureA) shouldBe entry1
+        cache.put(IntegerAbstractState(3), null, signatureA, entry3)
+
+        cache.size() shouldBe 2
+        cache.get(IntegerAbstractState(2), null, signatureB) shouldBe null
+        cache.get(signatureA) shouldContainExactlyInAnyOrder listOf(entry1, entry3)
+        cache.allMethods shouldBe setOf(signatureA)
+
+        cache.hitCount shouldBe 1
+        cache.missCount shouldBe 1
+        cache.evictionCount shouldBe 1
+    }
+
+    "Bounded cache keeps pinned and incomplete entries" {
+        val cache = ShardedBamCache<MethodSignature>(1, 1)
+        val pinnedEntry = blockAbstraction()
+        val incompleteEntry = BlockAbstraction(DefaultReachedSet(), IndexedBreadthFirstWaitlist().apply { add(IntegerAbstractState(0)) })
+        val entry = blockAbstraction()
+        cache.pin(IntegerAbstractState(1), null, signatureA)
+        cache.put(IntegerAbstractState(1), null, signatureA, pinnedEntry)
+        cache.put(IntegerAbstractState(2), null, signatureA, incompleteEntry)
+        cache.put(IntegerAbstractState(3), null, signatureB, entry)
+
+        cache.size() shouldBe 2
+        cache.get(signatureA) shouldContainExactlyInAnyOrder listOf(pinnedEntry, incompleteEntry)
+        cache.evictionCount shouldBe 1
+
+        cache.unpin(IntegerAbstractState(1), null, signatureA)
+
+        cache.size() shouldBe 1
+        cache.get(signatureA) shouldContainExactlyInAnyOrder listOf(incompleteEntry)
+        cache.evictionCount shouldBe 2
+    }
+
+    "Invalid sizes are rejected" {
+        shouldThrow<IllegalArgumentException> { ShardedBamCache<MethodSignature>(0) }
+        shouldThrow<IllegalArgumentException> { ShardedBamCache<MethodSignature>(10, 0) }
+    }
+})
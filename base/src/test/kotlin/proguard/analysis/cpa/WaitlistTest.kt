@@ -0,0 +1,76 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.DepthFirstWaitlist
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.IndexedDepthFirstWaitlist
+import proguard.analysis.cpa.interfaces.Waitlist
+import proguard.testutils.cpa.IntegerAbstractState
+import kotlin.random.Random
+
+class WaitlistTest : FreeSpec({
+
+    listOf(
+        Pair({ BreadthFirstWaitlist() }, { IndexedBreadthFirstWaitlist() }),
+        Pair({ DepthFirstWaitlist() }, { IndexedDepthFirstWaitlist() }),
+    ).forEach { (referenceSupplier, indexedSupplier) ->
+
+        val name = indexedSupplier.invoke().javaClass.simpleName
+
+        "$name pops the abstract states in the expected order" {
+            val waitlist = indexedSupplier.invoke()
+            listOf(1, 2, 3, 2, 4).forEach { waitlist.add(IntegerAbstractState(it)) }
+            waitlist.remove(IntegerAbstractState(3)) shouldBe true
+            waitlist.remove(IntegerAbstractState(3)) shouldBe false
+            waitlist.size() shouldBe 3
+
+            val popped = generateSequence { if (waitlist.isEmpty) null else waitlist.pop() }.toList()
+            val expected = listOf(1, 2, 4).map { IntegerAbstractState(it) }
+            popped shouldBe if (waitlist is IndexedBreadthFirstWaitlist) expected else expected.reversed()
+        }
+
+        "$name behaves like its carrier collection based counterpart" {
+            val random = Random(0)
+            val reference: Waitlist = referenceSupplier.invoke()
+            val indexed: Waitlist = indexedSupplier.invoke()
+            repeat(1000) {
+                val state = IntegerAbstractState(random.nextInt(50))
+                when (random.nextInt(5)) {
+                    0, 1 -> {
+                        reference.add(state)
+                        indexed.add(state)
+                    }
+                    2 -> if (!reference.isEmpty) indexed.pop() shouldBe reference.pop()
+                    3 -> indexed.remove(state) shouldBe reference.remove(state)
+                    else -> {
+                        reference.removeAll(listOf(state))
+                        indexed.removeAll(listOf(state))
+                    }
+                }
+                indexed.size() shouldBe reference.size()
+                indexed.contains(state) shouldBe reference.contains(state)
+            }
+            indexed.toList() shouldBe reference.toList()
+        }
+    }
+})
@@ -0,0 +1,95 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.visitor.ClassNameCollector
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.util.ClassNameParser
+import proguard.util.ListParser
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentClassPoolTest : FreeSpec({
+    val classNames = (0 until 1000).map { "pkg${it % 7}/C${it * 7919 % 1000}" }
+    fun createClass(name: String) = LibraryClass(PUBLIC, name, "java/lang/Object")
+
+    "Classes added from multiple threads are all present" {
+        val classPool = ConcurrentClassPool()
+        val classPoolFiller = ClassPoolFiller(classPool)
+        val executor = Executors.newFixedThreadPool(4)
+        for (name in classNames) {
+            executor.execute { createClass(name).accept(classPoolFiller) }
+        }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES) shouldBe true
+
+        classPool.size() shouldBe classNames.size
+        classNames.all { classPool.contains(classPool.getClass(it)) } shouldBe true
+        classPoolFiller.isThreadSafe() shouldBe true
+    }
+
+    "Classes are visited in the same order as in a plain class pool" {
+        val classes = classNames.map(::createClass)
+        val classPool = ClassPool(classes)
+        val concurrentClassPool = ConcurrentClassPool()
+        concurrentClassPool.addClasses(classes.shuffled())
+
+        fun visitedNames(classPool: ClassPool, filter: String? = null): List<String> {
+            val names = mutableListOf<String>()
+            if (filter == null) {
+                classPool.classesAccept(ClassNameCollector(names))
+            } else {
+                val matcher = ListParser(ClassNameParser()).parse(filter)
+                classPool.classesAccept(matcher, ClassNameCollector(names))
+            }
+            return names
+        }
+
+        visitedNames(concurrentClassPool) shouldBe visitedNames(classPool)
+        visitedNames(concurrentClassPool, "pkg3/**") shouldBe visitedNames(classPool, "pkg3/**")
+        concurrentClassPool.classNames().asSequence().toList() shouldBe
+            classPool.classNames().asSequence().toList()
+    }
+
+    "Iteration reflects additions and removals" {
+        val classPool = ConcurrentClassPool(createClass("b/B"), createClass("c/C"))
+        classPool.classes().map { it.name } shouldBe listOf("b/B", "c/C")
+
+        classPool.addClass(createClass("a/A"))
+        classPool.removeClass("c/C")
+
+        classPool.classes().map { it.name } shouldBe listOf("a/A", "b/B")
+        classPool.getClass("c/C") shouldBe null
+    }
+
+    "Removing a class while visiting doesn't affect the ongoing iteration" {
+        val classPool = ConcurrentClassPool(classNames.map(::createClass))
+        var visitedCount = 0
+        classPool.classesAccept { clazz ->
+            classPool.removeClass(clazz)
+            visitedCount++
+        }
+
+        visitedCount shouldBe classNames.size
+        classPool.size() shouldBe 0
+    }
+})
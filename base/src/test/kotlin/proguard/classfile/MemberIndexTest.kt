@@ -0,0 +1,107 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.constant.ClassConstant
+import proguard.classfile.constant.visitor.ConstantVisitor
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.editor.ClassEditor
+import proguard.classfile.util.MemberFinder
+import proguard.classfile.util.MemberRenamer
+
+class MemberIndexTest : FreeSpec({
+    val enableMemberIndex = ProgramClass.ENABLE_MEMBER_INDEX
+    beforeSpec { ProgramClass.ENABLE_MEMBER_INDEX = true }
+    afterSpec { ProgramClass.ENABLE_MEMBER_INDEX = enableMemberIndex }
+
+    fun createClass(): ProgramClass {
+        val classBuilder = ClassBuilder(
+            VersionConstants.CLASS_VERSION_1_8,
+            AccessConstants.PUBLIC,
+            "A",
+            ClassConstants.NAME_JAVA_LANG_OBJECT,
+        )
+        for (index in 0 until 10) {
+            classBuilder.addField(AccessConstants.PUBLIC, "f$index", "I")
+            classBuilder.addMethod(AccessConstants.PUBLIC, "m$index", "()V")
+        }
+        classBuilder.addMethod(AccessConstants.PUBLIC, "m3", "(I)V")
+        return classBuilder.programClass
+    }
+
+    "Lookups return the same members as a linear search" {
+        val clazz = createClass()
+        val overload = clazz.methods[clazz.u2methodsCount - 1]
+
+        clazz.findMethod("m3", "(I)V") shouldBeSameInstanceAs overload
+        clazz.findMethod("m3", null) shouldBeSameInstanceAs clazz.methods[3]
+        clazz.findMethod("m3", "(J)V") shouldBe null
+        clazz.findMethod("m10", null) shouldBe null
+        clazz.findField("f7", "I") shouldBeSameInstanceAs clazz.fields[7]
+        clazz.findField("f7", "J") shouldBe null
+    }
+
+    "Lookups see added and removed members" {
+        val clazz = createClass()
+        clazz.findMethod("m10", "()V") shouldBe null
+
+        val method = ClassBuilder(clazz).addAndReturnMethod(AccessConstants.PUBLIC, "m10", "()V")
+        clazz.findMethod("m10", "()V") shouldBeSameInstanceAs method
+
+        ClassEditor(clazz).removeMethod(method)
+        clazz.findMethod("m10", "()V") shouldBe null
+    }
+
+    "Lookups see renamed members" {
+        val clazz = createClass()
+        val method = clazz.findMethod("m5", "()V")
+
+        method.accept(clazz, MemberRenamer { _, _ -> "renamed" })
+
+        clazz.findMethod("m5", "()V") shouldBe null
+        clazz.findMethod("renamed", "()V") shouldBeSameInstanceAs method
+    }
+
+    "A caching member finder sees renamed members in the hierarchy" {
+        val superClass = createClass()
+        val subClass = ClassBuilder(
+            VersionConstants.CLASS_VERSION_1_8,
+            AccessConstants.PUBLIC,
+            "B",
+            "A",
+        ).programClass
+        subClass.superClassConstantAccept(object : ConstantVisitor {
+            override fun visitClassConstant(clazz: Clazz, classConstant: ClassConstant) {
+                classConstant.referencedClass = superClass
+            }
+        })
+        val memberFinder = MemberFinder(true, true)
+        val method = memberFinder.findMethod(subClass, "m5", "()V")
+        method shouldBeSameInstanceAs superClass.findMethod("m5", "()V")
+        memberFinder.correspondingClass() shouldBeSameInstanceAs superClass
+
+        superClass.methodAccept("m5", "()V", MemberRenamer { _, _ -> "renamed" })
+
+        memberFinder.findMethod(subClass, "m5", "()V") shouldBe null
+        memberFinder.findMethod(subClass, "renamed", "()V") shouldBeSameInstanceAs method
+    }
+})
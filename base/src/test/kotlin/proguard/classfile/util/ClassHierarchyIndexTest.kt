@@ -0,0 +1,107 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.VersionConstants
+import proguard.classfile.editor.ClassBuilder
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class ClassHierarchyIndexTest : FreeSpec({
+    val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+        JavaSource("I.java", "interface I {}"),
+        JavaSource("J.java", "interface J extends I {}"),
+        JavaSource("K.java", "interface K {}"),
+        JavaSource("A.java", "class A {}"),
+        JavaSource("B.java", "class B extends A implements J {}"),
+        JavaSource("C.java", "class C extends B implements K, java.io.Serializable {}"),
+        JavaSource("D.java", "class D extends A {}"),
+        JavaSource("E.java", "class E extends java.util.ArrayList<String> implements K {}"),
+        javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+    )
+
+    val classes: List<Clazz> = programClassPool.classes().toList() +
+        listOf("java/lang/Object", "java/io/Serializable", "java/util/AbstractList")
+            .map { libraryClassPool.getClass(it) }
+
+    "The subtype queries match walking the class hierarchy" {
+        val index = ClassHierarchyIndex(programClassPool, libraryClassPool)
+        for (subClass in classes) {
+            for (superClass in classes) {
+                index.extends_(subClass, superClass) shouldBe subClass.extends_(superClass)
+                index.extendsOrImplements(subClass, superClass) shouldBe
+                    subClass.extendsOrImplements(superClass)
+            }
+        }
+    }
+
+    "The common superclass is the most specific shared superclass" {
+        val index = ClassHierarchyIndex(programClassPool, libraryClassPool)
+        val a = programClassPool.getClass("A")
+        val b = programClassPool.getClass("B")
+        val c = programClassPool.getClass("C")
+        val d = programClassPool.getClass("D")
+        val e = programClassPool.getClass("E")
+        val i = programClassPool.getClass("I")
+        val objectClass = libraryClassPool.getClass("java/lang/Object")
+
+        index.findCommonSuperClass(c, d) shouldBe a
+        index.findCommonSuperClass(b, c) shouldBe b
+        index.findCommonSuperClass(c, c) shouldBe c
+        index.findCommonSuperClass(c, e) shouldBe objectClass
+        index.findCommonSuperClass(i, b) shouldBe objectClass
+    }
+
+    fun createClass(name: String, superClassName: String) = ClassBuilder(
+        VersionConstants.CLASS_VERSION_1_8,
+        AccessConstants.PUBLIC,
+        name,
+        superClassName,
+    ).programClass
+
+    "Classes without common superclass have none" {
+        // The superclasses are not in the class pool, so the hierarchies are incomplete.
+        val classPool = ClassPool(createClass("X", "Z"), createClass("Y", "Z"))
+        classPool.classesAccept(ClassSuperHierarchyInitializer(classPool, ClassPool()))
+        val index = ClassHierarchyIndex(classPool)
+
+        index.findCommonSuperClass(classPool.getClass("X"), classPool.getClass("Y")) shouldBe null
+    }
+
+    "The index is rebuilt when a class pool changes" {
+        val classPool = ClassPool(programClassPool)
+        val index = ClassHierarchyIndex(classPool, libraryClassPool)
+        val a = programClassPool.getClass("A")
+        val d = programClassPool.getClass("D")
+        index.extends_(d, a) shouldBe true
+
+        classPool.removeClass(d)
+        val subClass = createClass("F", "A")
+        subClass.accept(ClassSuperHierarchyInitializer(classPool, libraryClassPool))
+        classPool.addClass(subClass)
+
+        index.extends_(subClass, a) shouldBe true
+        index.findCommonSuperClass(subClass, programClassPool.getClass("C")) shouldBe a
+    }
+})
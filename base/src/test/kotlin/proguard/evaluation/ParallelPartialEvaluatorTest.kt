@@ -0,0 +1,177 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.Attribute
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.evaluation.value.BasicValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+
+class ParallelPartialEvaluatorTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        *(0 until 8).map { index ->
+            JavaSource(
+                "C$index.java",
+                """
+                public class C$index
+                {
+                    public static int sum(int[] values)
+                    {
+                        int sum = $index;
+                        for (int value : values)
+                        {
+                            sum += value > 0 ? value : -value;
+                        }
+                        return sum;
+                    }
+
+                    public String describe(Object object)
+                    {
+                        return object instanceof String ? (String)object : String.valueOf(object);
+                    }
+                }
+                """.trimIndent(),
+            )
+        }.toTypedArray(),
+        javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+    )
+
+    fun createPartialEvaluator(): PartialEvaluator {
+        val valueFactory = BasicValueFactory()
+        return PartialEvaluator.Builder.create()
+            .setValueFactory(valueFactory)
+            .setInvocationUnit(BasicInvocationUnit(valueFactory))
+            .build()
+    }
+
+    fun describe(
+        clazz: Clazz,
+        method: Method,
+        codeAttribute: CodeAttribute,
+        partialEvaluator: PartialEvaluator,
+    ): String =
+        (0 until codeAttribute.u4codeLength)
+            .filter { partialEvaluator.isTraced(it) }
+            .joinToString("\n", "${clazz.name}.${method.getName(clazz)}\n") {
+                "$it ${partialEvaluator.getVariablesBefore(it)} ${partialEvaluator.getStackBefore(it)}"
+            }
+
+    fun evaluate(threadCount: Int): Map<String, String> {
+        val results = ConcurrentHashMap<String, String>()
+        programClassPool.accept(
+            ParallelPartialEvaluator(
+                ::createPartialEvaluator,
+                { clazz, method, codeAttribute, partialEvaluator ->
+                    val key = clazz.name + "." + method.getName(clazz) + method.getDescriptor(clazz)
+                    results.put(key, describe(clazz, method, codeAttribute, partialEvaluator)) shouldBe null
+                },
+                threadCount,
+            ),
+        )
+        return results
+    }
+
+    "The results are the same as with a single partial evaluator" {
+        val expected = mutableMapOf<String, String>()
+        val partialEvaluator = createPartialEvaluator()
+        programClassPool.classesAccept(
+            AllMethodVisitor(
+                AllAttributeVisitor(
+                    object : AttributeVisitor {
+                        override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {}
+
+                        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                            partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+                            val key = clazz.name + "." + method.getName(clazz) + method.getDescriptor(clazz)
+                            expected[key] = describe(clazz, method, codeAttribute, partialEvaluator)
+                        }
+                    },
+                ),
+            ),
+        )
+
+        // Each class has a constructor and two methods.
+        expected.size shouldBe 24
+        for (threadCount in listOf(1, 2, 4, 8)) {
+            evaluate(threadCount) shouldBe expected
+        }
+    }
+
+    "Each thread reuses its own partial evaluator" {
+        val createdEvaluators = Collections.synchronizedList(mutableListOf<PartialEvaluator>())
+        val threadEvaluators = ConcurrentHashMap<Thread, PartialEvaluator>()
+        programClassPool.accept(
+            ParallelPartialEvaluator(
+                { createPartialEvaluator().also { createdEvaluators.add(it) } },
+                { _, _, _, partialEvaluator ->
+                    val threadEvaluator = threadEvaluators.getOrPut(Thread.currentThread()) { partialEvaluator }
+                    threadEvaluator shouldBeSameInstanceAs partialEvaluator
+                },
+                4,
+            ),
+        )
+        // Threads without any remaining methods still create their partial evaluators.
+        createdEvaluators.size shouldBe 4
+        threadEvaluators.values.toSet().size shouldBe threadEvaluators.size
+        createdEvaluators.containsAll(threadEvaluators.values) shouldBe true
+    }
+
+    "The largest methods are evaluated first" {
+        val codeLengths = mutableListOf<Int>()
+        programClassPool.accept(
+            ParallelPartialEvaluator(
+                ::createPartialEvaluator,
+                { _, _, codeAttribute, _ -> codeLengths.add(codeAttribute.u4codeLength) },
+                1,
+            ),
+        )
+        codeLengths shouldBe codeLengths.sortedDescending()
+    }
+
+    "Exceptions of the visitor are rethrown" {
+        shouldThrow<IllegalStateException> {
+            programClassPool.accept(
+                ParallelPartialEvaluator(
+                    ::createPartialEvaluator,
+                    { _, _, _, _ -> throw IllegalStateException("Visitor failed") },
+                    4,
+                ),
+            )
+        }
+    }
+
+    "The thread count must be positive" {
+        shouldThrow<IllegalArgumentException> {
+            ParallelPartialEvaluator(::createPartialEvaluator, { _, _, _, _ -> }, 0)
+        }
+    }
+})
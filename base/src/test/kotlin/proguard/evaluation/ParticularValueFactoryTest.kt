@@ -0,0 +1,85 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+import proguard.evaluation.value.ParticularIntegerValue
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.evaluation.value.TypedReferenceValueFactory
+
+class ParticularValueFactoryTest : FreeSpec({
+
+    "Small integer values are shared" - {
+        val valueFactory = ParticularValueFactory()
+
+        "Created values" {
+            valueFactory.createIntegerValue(-128) shouldBeSameInstanceAs valueFactory.createIntegerValue(-128)
+            valueFactory.createIntegerValue(1023) shouldBeSameInstanceAs ParticularIntegerValue.valueOf(1023)
+            valueFactory.createIntegerValue(1024) shouldNotBeSameInstanceAs valueFactory.createIntegerValue(1024)
+            valueFactory.createIntegerValue(1024) shouldBe valueFactory.createIntegerValue(1024)
+        }
+
+        "Computed values" {
+            val sum = valueFactory.createIntegerValue(40).add(valueFactory.createIntegerValue(2))
+
+            sum shouldBeSameInstanceAs valueFactory.createIntegerValue(42)
+            valueFactory.createLongValue(42L).convertToInteger() shouldBeSameInstanceAs sum
+            valueFactory.createDoubleValue(42.5).convertToInteger() shouldBeSameInstanceAs sum
+        }
+    }
+
+    "Equal values are canonicalized when enabled" - {
+        val enableValueCanonicalization = ParticularValueFactory.ENABLE_VALUE_CANONICALIZATION
+        ParticularValueFactory.ENABLE_VALUE_CANONICALIZATION = true
+        val valueFactory = ParticularValueFactory()
+        ParticularValueFactory.ENABLE_VALUE_CANONICALIZATION = enableValueCanonicalization
+
+        "Primitive values" {
+            valueFactory.createIntegerValue(100000) shouldBeSameInstanceAs valueFactory.createIntegerValue(100000)
+            valueFactory.createLongValue(-7L) shouldBeSameInstanceAs valueFactory.createLongValue(-7L)
+            valueFactory.createFloatValue(Float.NaN) shouldBeSameInstanceAs valueFactory.createFloatValue(Float.NaN)
+            valueFactory.createDoubleValue(0.1) shouldBeSameInstanceAs valueFactory.createDoubleValue(0.1)
+        }
+
+        "Positive and negative zero stay distinct" {
+            valueFactory.createFloatValue(-0.0f) shouldNotBe valueFactory.createFloatValue(0.0f)
+            valueFactory.createDoubleValue(-0.0) shouldNotBe valueFactory.createDoubleValue(0.0)
+            valueFactory.createDoubleValue(-0.0) shouldBeSameInstanceAs valueFactory.createDoubleValue(-0.0)
+        }
+
+        "Typed references" {
+            val type = "Ljava/lang/String;"
+            val referenceValue = valueFactory.createReferenceValue(type, null, false, true)
+
+            valueFactory.createReferenceValue(type, null, false, true) shouldBeSameInstanceAs referenceValue
+            valueFactory.createReferenceValue(type, null, false, false) shouldNotBe referenceValue
+        }
+    }
+
+    "Values are not canonicalized by default" {
+        val valueFactory = ParticularValueFactory(TypedReferenceValueFactory())
+
+        valueFactory.createLongValue(-7L) shouldNotBeSameInstanceAs valueFactory.createLongValue(-7L)
+        valueFactory.createLongValue(-7L) shouldBe valueFactory.createLongValue(-7L)
+    }
+})
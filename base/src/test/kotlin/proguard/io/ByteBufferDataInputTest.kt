@@ -0,0 +1,152 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.classfile.AccessConstants
+import proguard.classfile.ClassConstants
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants
+import proguard.classfile.constant.Utf8Constant
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassReader
+import proguard.classfile.io.ProgramClassWriter
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.nio.ByteBuffer
+
+class ByteBufferDataInputTest : FreeSpec({
+
+    fun createClassBytes(): ByteArray {
+        val programClass = ClassBuilder(
+            VersionConstants.CLASS_VERSION_1_8,
+            AccessConstants.PUBLIC,
+            "A",
+            ClassConstants.NAME_JAVA_LANG_OBJECT,
+        )
+            .addField(AccessConstants.PUBLIC, "fé\u0000", "I")
+            .addMethod(AccessConstants.PUBLIC, "m", "()V")
+            .programClass
+        val outputStream = ByteArrayOutputStream()
+        programClass.accept(ProgramClassWriter(DataOutputStream(outputStream)))
+        return outputStream.toByteArray()
+    }
+
+    fun readClass(buffer: ByteBuffer): ProgramClass {
+        val programClass = ProgramClass()
+        programClass.accept(ProgramClassReader(buffer))
+        return programClass
+    }
+
+    fun writeClass(programClass: ProgramClass): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        programClass.accept(ProgramClassWriter(DataOutputStream(outputStream)))
+        return outputStream.toByteArray()
+    }
+
+    "Given a class file in a heap buffer" - {
+        val bytes = createClassBytes()
+        val programClass = readClass(ByteBuffer.wrap(bytes))
+
+        "Then the class is read like from a stream" {
+            programClass.name shouldBe "A"
+            programClass.fields[0].getName(programClass) shouldBe "fé\u0000"
+            programClass.methods[0].getName(programClass) shouldBe "m"
+            writeClass(programClass) shouldBe bytes
+        }
+
+    }
+
+    "Given a class file in a heap buffer that changes" - {
+        val bytes = createClassBytes()
+        val programClass = readClass(ByteBuffer.wrap(bytes))
+        val nameIndex = programClass.fields[0].u2nameIndex
+        val utf8Constant = programClass.constantPool[nameIndex] as Utf8Constant
+
+        "Then the UTF-8 constants refer to the buffer until they are requested" {
+            val offset = String(bytes, Charsets.ISO_8859_1).indexOf("f\u00c3\u00a9")
+            bytes[offset] = 'g'.code.toByte()
+            utf8Constant.string shouldBe "gé\u0000"
+
+            bytes[offset] = 'h'.code.toByte()
+            utf8Constant.string shouldBe "gé\u0000"
+        }
+    }
+
+    "Given a class file in a read-only direct buffer slice" - {
+        val bytes = createClassBytes()
+        val buffer = ByteBuffer.allocateDirect(bytes.size + 4)
+        buffer.position(4)
+        buffer.put(bytes)
+        buffer.position(4)
+
+        "Then the class is read like from a stream" {
+            val programClass = readClass(buffer.slice().asReadOnlyBuffer())
+
+            programClass.fields[0].getName(programClass) shouldBe "fé\u0000"
+            writeClass(programClass) shouldBe bytes
+        }
+    }
+
+    "Given a truncated class file" - {
+        val bytes = createClassBytes()
+
+        "Then reading it fails" {
+            val exception = shouldThrow<RuntimeException> {
+                readClass(ByteBuffer.wrap(bytes, 0, bytes.size - 1))
+            }
+            exception.cause.shouldBeInstanceOf<EOFException>()
+        }
+    }
+
+    "Given a buffer with big endian values" - {
+        val input = ByteBufferDataInput(ByteBuffer.wrap(byteArrayOf(0, 0, 1, 0, -1, -1, 7)))
+
+        "Then the values are read like from a data input stream" {
+            input.readInt() shouldBe 256
+            input.readUnsignedShort() shouldBe 0xffff
+            input.position() shouldBe 6
+            input.skipBytes(2) shouldBe 1
+            shouldThrow<EOFException> { input.readByte() }
+        }
+    }
+
+    "Given a buffer with lines" - {
+        val bytes = "a\nb\rc\r\n\r\nd\u00e9".toByteArray(Charsets.ISO_8859_1)
+
+        "Then the lines are read like from a data input stream" {
+            val input = ByteBufferDataInput(ByteBuffer.wrap(bytes))
+            input.readLine() shouldBe "a"
+            input.readLine() shouldBe "b"
+            input.readLine() shouldBe "c"
+            input.readLine() shouldBe ""
+            input.readLine() shouldBe "d\u00e9"
+            input.readLine() shouldBe null
+        }
+
+        "Then a carriage return at the end of the buffer terminates the line" {
+            val input = ByteBufferDataInput(ByteBuffer.wrap("a\r".toByteArray(Charsets.ISO_8859_1)))
+            input.readLine() shouldBe "a"
+            input.readLine() shouldBe null
+        }
+    }
+})
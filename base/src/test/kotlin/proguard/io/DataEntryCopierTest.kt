@@ -0,0 +1,92 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.engine.spec.tempfile
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.util.FixedStringMatcher
+import java.io.File
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class DataEntryCopierTest : FreeSpec({
+    val deflatedData = "Deflated quickly. ".repeat(1000).toByteArray()
+    val storedData = "Stored. ".repeat(100).toByteArray()
+
+    // Deflate at a different level than the writer, so raw copies can be recognized.
+    val inputJar = tempfile(suffix = ".jar")
+    ZipOutputStream(inputJar.outputStream()).use { zip ->
+        zip.setLevel(Deflater.BEST_SPEED)
+        zip.putNextEntry(ZipEntry("deflated.txt"))
+        zip.write(deflatedData)
+        zip.closeEntry()
+
+        val crc = CRC32()
+        crc.update(storedData)
+        val storedEntry = ZipEntry("stored.txt")
+        storedEntry.method = ZipEntry.STORED
+        storedEntry.size = storedData.size.toLong()
+        storedEntry.crc = crc.value
+        zip.putNextEntry(storedEntry)
+        zip.write(storedData)
+        zip.closeEntry()
+    }
+
+    fun copy(useRawData: Boolean): File {
+        val outputJar = tempfile(suffix = ".jar")
+        val writer = JarWriter(
+            ZipWriter(FixedStringMatcher("stored.txt"), 1, false, 0, FixedFileWriter(outputJar)),
+        )
+        JarReader(DataEntryCopier(writer, useRawData))
+            .read(FileDataEntry(inputJar.parentFile, inputJar))
+        writer.close()
+        return outputJar
+    }
+
+    fun compressedSizes(jar: File) = ZipFile(jar).use { zip ->
+        zip.entries().toList().associate { it.name to it.compressedSize }
+    }
+
+    fun contents(jar: File) = ZipFile(jar).use { zip ->
+        zip.entries().toList().associate { it.name to String(zip.getInputStream(it).readBytes()) }
+    }
+
+    "Given a data entry copier that copies raw data" - {
+        val rawCopy = copy(true)
+        val plainCopy = copy(false)
+
+        "Then it copies the compressed data as is" {
+            val inputSizes = compressedSizes(inputJar)
+
+            compressedSizes(rawCopy)["deflated.txt"] shouldBe inputSizes["deflated.txt"]
+            compressedSizes(plainCopy)["deflated.txt"] shouldNotBe inputSizes["deflated.txt"]
+        }
+
+        "Then the copied entries and the manifest digests are the same as with a plain copy" {
+            contents(rawCopy) shouldBe contents(plainCopy)
+            contents(rawCopy)["stored.txt"] shouldBe String(storedData)
+            contents(rawCopy)["deflated.txt"] shouldBe String(deflatedData)
+        }
+    }
+})
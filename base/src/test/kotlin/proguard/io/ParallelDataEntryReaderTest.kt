@@ -0,0 +1,128 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.engine.spec.tempfile
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants
+import proguard.classfile.ClassConstants
+import proguard.classfile.ClassPool
+import proguard.classfile.VersionConstants
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassVisitor
+import proguard.classfile.visitor.MultiClassVisitor
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ParallelDataEntryReaderTest : FreeSpec({
+    // Reverse alphabetical, so the order of the entries differs from the order in a class pool.
+    val classNames = (0 until 100).map { "C%03d".format(99 - it) }
+
+    fun createJar(): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        ZipOutputStream(outputStream).use { zipOutputStream ->
+            for (className in classNames) {
+                val programClass = ClassBuilder(
+                    VersionConstants.CLASS_VERSION_1_8,
+                    AccessConstants.PUBLIC,
+                    className,
+                    ClassConstants.NAME_JAVA_LANG_OBJECT,
+                ).programClass
+                zipOutputStream.putNextEntry(ZipEntry("$className.class"))
+                programClass.accept(ProgramClassWriter(DataOutputStream(zipOutputStream)))
+                zipOutputStream.closeEntry()
+            }
+            zipOutputStream.putNextEntry(ZipEntry("README.txt"))
+            zipOutputStream.write("Not a class".toByteArray())
+            zipOutputStream.closeEntry()
+        }
+        return outputStream.toByteArray()
+    }
+
+    fun createReader(classVisitor: ClassVisitor) = NameFilteredDataEntryReader(
+        "**.class",
+        ClassReader(false, false, false, false, null, classVisitor),
+    )
+
+    fun readJar(jar: DataEntry, threadCount: Int, maxPendingEntries: Int): List<String> {
+        val visitedClassNames = mutableListOf<String>()
+        val classPool = ClassPool()
+        ParallelDataEntryReader(
+            ::createReader,
+            MultiClassVisitor(
+                ClassVisitor { clazz -> visitedClassNames.add(clazz.name) },
+                ClassPoolFiller(classPool),
+            ),
+            threadCount,
+            maxPendingEntries,
+        ).use { parallelReader ->
+            JarReader(parallelReader).read(jar)
+
+            // The jar reader has already flushed the entries.
+            classPool.size() shouldBe classNames.size
+        }
+        return visitedClassNames
+    }
+
+    "Given a jar file" - {
+        val jarFile = tempfile(suffix = ".jar")
+        jarFile.writeBytes(createJar())
+
+        "Then the classes are visited in the order of the entries" {
+            readJar(FileDataEntry(jarFile), 4, 8) shouldBe classNames
+            readJar(FileDataEntry(jarFile), 4, 1) shouldBe classNames
+            readJar(FileDataEntry(jarFile), 1, 8) shouldBe classNames
+        }
+    }
+
+    "Given a jar stream" - {
+        val jar = createJar()
+
+        "Then the classes are visited in the order of the entries" {
+            val jarEntry = StreamingDataEntry("test.jar", ByteArrayInputStream(jar))
+            readJar(jarEntry, 4, 8) shouldBe classNames
+        }
+    }
+
+    "Given a reader that fails" - {
+        val parallelReader = ParallelDataEntryReader(
+            { DataEntryReader { dataEntry -> throw IOException("Can't read ${dataEntry.name}") } },
+            ClassVisitor { },
+            2,
+            4,
+        )
+
+        "Then its exception is thrown on the calling thread" {
+            val exception = shouldThrow<IOException> {
+                parallelReader.use {
+                    it.read(StreamingDataEntry("A.class", ByteArrayInputStream(ByteArray(0))))
+                    it.flush()
+                }
+            }
+            exception.message shouldBe "Can't read A.class"
+        }
+    }
+})
@@ -0,0 +1,121 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.engine.spec.tempfile
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import proguard.util.FixedStringMatcher
+import proguard.util.StringMatcher
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.Executors
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipFile
+
+class ZipOutputTest : FreeSpec({
+    val entries = (0 until 50).associate { index ->
+        "entry$index.txt" to "Entry $index. ".repeat(index * 100).toByteArray()
+    }
+
+    fun writeZip(zipOutput: ZipOutput) {
+        // Keep some output streams open while others are closed.
+        val openOutputStreams = entries.map { (name, data) ->
+            val outputStream = zipOutput.createOutputStream(name, name != "entry7.txt", 0)
+            outputStream.write(data)
+            outputStream
+        }
+        openOutputStreams.reversed().forEach { it.close() }
+        zipOutput.close()
+    }
+
+    fun readZip(zipBytes: ByteArray): Map<String, ByteArray> {
+        val zipFile = tempfile(suffix = ".zip")
+        zipFile.writeBytes(zipBytes)
+        return ZipFile(zipFile).use { zip ->
+            zip.entries().toList().associate { it.name to zip.getInputStream(it).readBytes() }
+        }
+    }
+
+    "Given a zip output with an executor" - {
+        val executor = Executors.newFixedThreadPool(4)
+        afterSpec { executor.shutdown() }
+
+        "Then it writes the same zip file as without an executor" {
+            val sequentialOutputStream = ByteArrayOutputStream()
+            writeZip(ZipOutput(sequentialOutputStream))
+
+            val parallelOutputStream = ByteArrayOutputStream()
+            writeZip(ZipOutput(parallelOutputStream, null, 1, false, null, executor))
+
+            parallelOutputStream.toByteArray() shouldBe sequentialOutputStream.toByteArray()
+            readZip(parallelOutputStream.toByteArray()).mapValues { String(it.value) } shouldBe
+                entries.mapValues { String(it.value) }
+        }
+    }
+
+    "Given compressed data with a CRC" - {
+        val data = "Copied as is. ".repeat(100).toByteArray()
+        val crc = CRC32()
+        crc.update(data)
+        val deflater = Deflater(Deflater.BEST_COMPRESSION, true)
+        deflater.setInput(data)
+        deflater.finish()
+        val compressedData = ByteArray(data.size)
+        val compressedSize = deflater.deflate(compressedData)
+        deflater.end()
+
+        "Then a raw entry contains the data" {
+            val outputStream = ByteArrayOutputStream()
+            val zipOutput = ZipOutput(outputStream)
+            val rawOutputStream = zipOutput.createRawOutputStream(
+                "raw.txt", true, crc.value.toInt(), data.size.toLong(), 1, 0, null, null,
+            )
+            rawOutputStream.use { it.write(compressedData, 0, compressedSize) }
+            zipOutput.close()
+
+            readZip(outputStream.toByteArray())["raw.txt"] shouldBe data
+        }
+    }
+
+    "Given a zip writer with compression levels" - {
+        val compressionLevels = linkedMapOf<StringMatcher, Int>(
+            FixedStringMatcher("fast.txt") to Deflater.NO_COMPRESSION,
+        )
+
+        "Then the entries are compressed at their levels" {
+            val zipFile = tempfile(suffix = ".zip")
+            val zipWriter = ZipWriter(
+                null, 1, false, null, 1, 0, null, compressionLevels, null, FixedFileWriter(zipFile),
+            )
+            val data = "Compressible. ".repeat(1000).toByteArray()
+            for (name in listOf("fast.txt", "best.txt")) {
+                val dataEntry = DummyDataEntry(null, name, 0, false)
+                zipWriter.createOutputStream(dataEntry).use { it.write(data) }
+            }
+            zipWriter.close()
+
+            ZipFile(zipFile).use { zip ->
+                zip.getEntry("fast.txt").compressedSize shouldBe data.size.toLong() + 5
+                zip.getEntry("best.txt").compressedSize.toInt() shouldBeLessThan data.size / 10
+                zip.getInputStream(zip.getEntry("fast.txt")).readBytes() shouldBe data
+            }
+        }
+    }
+})
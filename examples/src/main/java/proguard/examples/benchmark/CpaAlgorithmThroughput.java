@@ -0,0 +1,121 @@
+package proguard.examples.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.DepthFirstWaitlist;
+import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.IndexedBreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.IndexedDepthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintCpa;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.analysis.cpa.jvm.util.CfaUtil;
+import proguard.classfile.ClassPool;
+import proguard.classfile.MethodSignature;
+import proguard.examples.JarUtil;
+
+/**
+ * This benchmark measures the throughput of the {@link CpaAlgorithm} main loop with the different
+ * {@link Waitlist} implementations. It runs an intra-procedural taint analysis from the entry node
+ * of every method in the input jar, after a number of warm-up runs, and prints the best time and
+ * the bytes allocated by the analysis thread.
+ *
+ * <p>Usage: java proguard.examples.benchmark.CpaAlgorithmThroughput input.jar [warmups
+ * [repetitions]]
+ */
+public class CpaAlgorithmThroughput {
+  public static void main(String[] args) throws IOException {
+    String inputJarFileName = args[0];
+    int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    ClassPool programClassPool = JarUtil.readJar(inputJarFileName, false);
+    JvmCfa cfa = CfaUtil.createIntraproceduralCfaFromClassPool(programClassPool);
+
+    // Some arbitrary source, so the analysis has something to propagate.
+    JvmTaintSource source =
+        new JvmTaintSource(
+            new MethodSignature(
+                "java/lang/System", "getenv", "(Ljava/lang/String;)Ljava/lang/String;"),
+            false,
+            true,
+            Collections.emptySet(),
+            Collections.emptySet());
+    JvmTaintCpa cpa = new JvmTaintCpa(Collections.singleton(source));
+
+    measure("breadth first", cfa, cpa, BreadthFirstWaitlist::new, warmups, repetitions);
+    measure(
+        "indexed breadth first", cfa, cpa, IndexedBreadthFirstWaitlist::new, warmups, repetitions);
+    measure("depth first", cfa, cpa, DepthFirstWaitlist::new, warmups, repetitions);
+    measure(
+        "indexed depth first", cfa, cpa, IndexedDepthFirstWaitlist::new, warmups, repetitions);
+  }
+
+  private static void measure(
+      String name,
+      JvmCfa cfa,
+      JvmTaintCpa cpa,
+      WaitlistFactory waitlistFactory,
+      int warmups,
+      int repetitions) {
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    long bestTime = Long.MAX_VALUE;
+    long bestAllocatedBytes = Long.MAX_VALUE;
+    int reachedCount = 0;
+    for (int run = 0; run < warmups + repetitions; run++) {
+      long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+      long startTime = System.nanoTime();
+      for (JvmCfaNode entryNode : cfa.getFunctionEntryNodes()) {
+        ReachedSet reachedSet = new ProgramLocationDependentReachedSet<>();
+        Waitlist waitlist = waitlistFactory.create();
+        Collection<AbstractState> initialStates = createInitialStates(entryNode);
+        waitlist.addAll(initialStates);
+        reachedSet.addAll(initialStates);
+        new CpaAlgorithm(cpa).run(reachedSet, waitlist);
+        reachedCount += run == 0 ? reachedSet.asCollection().size() : 0;
+      }
+      long time = System.nanoTime() - startTime;
+      allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+      if (run >= warmups) {
+        bestTime = Math.min(bestTime, time);
+        bestAllocatedBytes = Math.min(bestAllocatedBytes, allocatedBytes);
+      }
+    }
+    System.out.printf(
+        "%s: %d ms, %d MB allocated, %d reached states%n",
+        name, bestTime / 1_000_000, bestAllocatedBytes / (1024 * 1024), reachedCount);
+  }
+
+  private static Collection<AbstractState> createInitialStates(JvmCfaNode entryNode) {
+    List<AbstractState> initialStates = new ArrayList<>();
+    initialStates.add(
+        new JvmAbstractState<SetAbstractState<JvmTaintSource>>(
+            entryNode,
+            new JvmFrameAbstractState<>(),
+            new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom),
+            new HashMapAbstractState<>()));
+    return initialStates;
+  }
+
+  private interface WaitlistFactory {
+    Waitlist create();
+  }
+}
@@ -0,0 +1,88 @@
+package proguard.examples.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import proguard.analysis.CallResolver;
+import proguard.analysis.ParallelCallResolver;
+import proguard.analysis.datastructure.callgraph.Call;
+import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.classfile.ClassPool;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.util.ClassReferenceInitializer;
+import proguard.classfile.util.ClassSuperHierarchyInitializer;
+import proguard.examples.JarUtil;
+
+/**
+ * This benchmark measures how the {@link ParallelCallResolver} scales with the number of threads,
+ * compared to a single {@link CallResolver}. It reconstructs the call graph of the input jar, with
+ * the given library jar, and prints the best time and a hash of the call graph, which includes the
+ * order of the calls and should be the same for all runs.
+ *
+ * <p>Usage: java proguard.examples.benchmark.ParallelCallResolverScaling input.jar library.jar
+ * [max_threads [repetitions]]
+ */
+public class ParallelCallResolverScaling {
+  public static void main(String[] args) throws IOException {
+    String inputJarFileName = args[0];
+    String libraryJarFileName = args[1];
+    int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+    int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+    ClassPool programClassPool = JarUtil.readJar(inputJarFileName, false);
+    ClassPool libraryClassPool = JarUtil.readJar(libraryJarFileName, true);
+    programClassPool.classesAccept(
+        new ClassReferenceInitializer(programClassPool, libraryClassPool));
+    programClassPool.classesAccept(
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool));
+
+    long sequentialTime = measure(programClassPool, libraryClassPool, 0, repetitions);
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      long parallelTime = measure(programClassPool, libraryClassPool, threads, repetitions);
+      System.out.printf("    speedup: %.2f%n", (double) sequentialTime / parallelTime);
+    }
+  }
+
+  /**
+   * Returns the best time in milliseconds out of the given number of repetitions, with a single
+   * call resolver if the thread count is 0.
+   */
+  private static long measure(
+      ClassPool programClassPool, ClassPool libraryClassPool, int threads, int repetitions) {
+    long bestTime = Long.MAX_VALUE;
+    int callGraphHash = 0;
+    for (int repetition = 0; repetition < repetitions; repetition++) {
+      CallGraph callGraph = new CallGraph();
+      CallResolver.Builder builder =
+          new CallResolver.Builder(programClassPool, libraryClassPool, callGraph)
+              .setEvaluateAllCode(true);
+
+      long startTime = System.nanoTime();
+      if (threads == 0) {
+        programClassPool.classesAccept(builder.build());
+      } else {
+        programClassPool.accept(builder.buildParallel(threads));
+      }
+      bestTime = Math.min(bestTime, (System.nanoTime() - startTime) / 1_000_000);
+      callGraphHash = hash(callGraph);
+    }
+    System.out.println(
+        (threads == 0 ? "sequential" : "parallel (" + threads + " threads)")
+            + ": "
+            + bestTime
+            + " ms, call graph hash "
+            + Integer.toHexString(callGraphHash));
+    return Math.max(bestTime, 1);
+  }
+
+  private static int hash(CallGraph callGraph) {
+    int hash = 0;
+    for (Map.Entry<MethodSignature, Set<Call>> entry : callGraph.outgoing.entrySet()) {
+      for (Call call : entry.getValue()) {
+        hash = 31 * hash + Objects.hash(call.caller.offset, call.getTarget());
+      }
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,129 @@
+package proguard.examples.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintCpa;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.analysis.cpa.jvm.util.CfaUtil;
+import proguard.classfile.ClassPool;
+import proguard.classfile.MethodSignature;
+import proguard.examples.JarUtil;
+
+/**
+ * This benchmark measures how the {@link ParallelCpaAlgorithm} scales with the number of threads,
+ * compared to the sequential {@link CpaAlgorithm}. It runs an intra-procedural taint analysis
+ * starting from the entry nodes of all methods in the input jar at once, and prints the number of
+ * reached abstract states, which should be the same for all runs.
+ *
+ * <p>Usage: java proguard.examples.benchmark.ParallelCpaScaling input.jar [max_threads
+ * [repetitions]]
+ */
+public class ParallelCpaScaling {
+  public static void main(String[] args) throws IOException {
+    String inputJarFileName = args[0];
+    int maxThreads =
+        args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    ClassPool programClassPool = JarUtil.readJar(inputJarFileName, false);
+    JvmCfa cfa = CfaUtil.createIntraproceduralCfaFromClassPool(programClassPool);
+
+    // Some arbitrary source, so the analysis has something to propagate.
+    JvmTaintSource source =
+        new JvmTaintSource(
+            new MethodSignature(
+                "java/lang/System", "getenv", "(Ljava/lang/String;)Ljava/lang/String;"),
+            false,
+            true,
+            Collections.emptySet(),
+            Collections.emptySet());
+
+    long sequentialTime =
+        measure(
+            "sequential",
+            repetitions,
+            cfa,
+            () -> new CpaAlgorithm(new JvmTaintCpa(Collections.singleton(source))),
+            ProgramLocationDependentReachedSet::new);
+
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      int parallelism = threads;
+      long parallelTime =
+          measure(
+              "parallel (" + threads + " threads)",
+              repetitions,
+              cfa,
+              () ->
+                  new ParallelCpaAlgorithm(
+                      new JvmTaintCpa(Collections.singleton(source)), parallelism),
+              ConcurrentProgramLocationDependentReachedSet::new);
+      System.out.printf("    speedup: %.2f%n", (double) sequentialTime / parallelTime);
+    }
+  }
+
+  /** Returns the best time in milliseconds out of the given number of repetitions. */
+  private static long measure(
+      String name,
+      int repetitions,
+      JvmCfa cfa,
+      AlgorithmFactory algorithmFactory,
+      ReachedSetFactory reachedSetFactory) {
+    long bestTime = Long.MAX_VALUE;
+    int reachedCount = 0;
+    for (int repetition = 0; repetition < repetitions; repetition++) {
+      Algorithm algorithm = algorithmFactory.create();
+      ReachedSet reachedSet = reachedSetFactory.create();
+      Waitlist waitlist = new BreadthFirstWaitlist();
+      Collection<AbstractState> initialStates = createInitialStates(cfa);
+      waitlist.addAll(initialStates);
+      reachedSet.addAll(initialStates);
+
+      long startTime = System.nanoTime();
+      algorithm.run(reachedSet, waitlist);
+      bestTime = Math.min(bestTime, (System.nanoTime() - startTime) / 1_000_000);
+      reachedCount = reachedSet.asCollection().size();
+    }
+    System.out.println(name + ": " + bestTime + " ms, " + reachedCount + " reached states");
+    return Math.max(bestTime, 1);
+  }
+
+  private static Collection<AbstractState> createInitialStates(JvmCfa cfa) {
+    List<AbstractState> initialStates = new ArrayList<>();
+    for (JvmCfaNode entryNode : cfa.getFunctionEntryNodes()) {
+      initialStates.add(
+          new JvmAbstractState<SetAbstractState<JvmTaintSource>>(
+              entryNode,
+              new JvmFrameAbstractState<>(),
+              new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom),
+              new HashMapAbstractState<>()));
+    }
+    return initialStates;
+  }
+
+  private interface AlgorithmFactory {
+    Algorithm create();
+  }
+
+  private interface ReachedSetFactory {
+    ReachedSet create();
+  }
+}